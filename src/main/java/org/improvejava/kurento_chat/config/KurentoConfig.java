@@ -1,14 +0,0 @@
-package org.improvejava.kurento_chat.config;
-
-import org.kurento.client.KurentoClient;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-@Configuration
-public class KurentoConfig {
-
-    @Bean
-    public KurentoClient kurentoClient() {
-        return KurentoClient.create();
-    }
-}
\ No newline at end of file
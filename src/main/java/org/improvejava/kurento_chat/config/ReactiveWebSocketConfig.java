@@ -0,0 +1,64 @@
+package org.improvejava.kurento_chat.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.improvejava.kurento_chat.handler.CallHandler;
+import org.improvejava.kurento_chat.handler.ReactiveSignalingHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.reactive.socket.server.WebSocketService;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registers the Reactor Netty signaling endpoint when the application runs as a reactive web application
+ * ({@code spring.main.web-application-type=reactive}); otherwise {@link WebSocketConfig} registers the
+ * Tomcat one.
+ *
+ * <p><b>한국어:</b>
+ * {@code spring.main.web-application-type=reactive}로 실행할 때 Reactor Netty 시그널링 엔드포인트를 등록합니다.
+ * 그 외에는 {@link WebSocketConfig}가 Tomcat 엔드포인트를 등록합니다.</p>
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebSocketConfig implements WebFluxConfigurer {
+
+    // Tomcat도 클래스패스에 있어서 리액티브 서버로 Tomcat이 먼저 선택되므로 Netty를 직접 지정
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    // 업그레이드 방식도 클래스패스로 고르면 Tomcat용이 선택되므로 Reactor Netty용을 지정
+    @Override
+    public WebSocketService getWebSocketService() {
+        return new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy());
+    }
+
+    @Bean
+    public ReactiveSignalingHandler reactiveSignalingHandler(CallHandler callHandler, MeterRegistry meterRegistry,
+                                                             @Value("${signaling.reactive.dispatch-threads:64}") int dispatchThreads,
+                                                             @Value("${signaling.reactive.outbound-buffer:256}") int outboundBufferSize) {
+        return new ReactiveSignalingHandler(callHandler, meterRegistry, dispatchThreads, outboundBufferSize);
+    }
+
+    @Bean
+    public HandlerMapping signalingHandlerMapping(ReactiveSignalingHandler reactiveSignalingHandler) {
+        final CorsConfiguration cors = new CorsConfiguration();
+        cors.setAllowedOrigins(List.of("https://localhost:3000", "http://localhost:3000"));  // 프론트엔드 도메인 허용
+
+        final SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping(Map.of("/", reactiveSignalingHandler), Ordered.HIGHEST_PRECEDENCE);
+        mapping.setCorsConfigurations(Map.of("/", cors));
+        return mapping;
+    }
+}
@@ -2,12 +2,15 @@ package org.improvejava.kurento_chat.config;
 
 import org.improvejava.kurento_chat.handler.CallHandler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
+// 기본 전송 방식(Tomcat). reactive 모드에서는 ReactiveWebSocketConfig가 대신 등록함
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
@@ -0,0 +1,66 @@
+package org.improvejava.kurento_chat.controller;
+
+import org.improvejava.kurento_chat.controller.RoomQueryController.RoomPage;
+import org.improvejava.kurento_chat.room.RoomDirectory;
+import org.improvejava.kurento_chat.room.RoomDirectory.RoomView;
+import org.improvejava.kurento_chat.room.RoomDirectory.Snapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * The room query API of {@link RoomQueryController} for the Reactor Netty transport, with the same paging,
+ * ETag and {@code 304 Not Modified} behaviour.
+ *
+ * <p><b>한국어:</b>
+ * Reactor Netty 전송 방식에서 {@link RoomQueryController}와 같은 방 조회 API를 제공합니다. 페이지 나누기와 ETag, 304 응답 방식도 같습니다.</p>
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/rooms")
+public class ReactiveRoomQueryController {
+
+  private final RoomDirectory roomDirectory;
+
+  private final int maxPageSize;
+
+  @Autowired
+  public ReactiveRoomQueryController(RoomDirectory roomDirectory, @Value("${room.api.max-page-size:100}") int maxPageSize) {
+    this.roomDirectory = roomDirectory;
+    this.maxPageSize = maxPageSize;
+  }
+
+  @GetMapping
+  public Mono<ResponseEntity<RoomPage>> rooms(@RequestParam(defaultValue = "0") int page,
+                                              @RequestParam(defaultValue = "20") int size,
+                                              ServerWebExchange exchange) {
+    final Snapshot snapshot = roomDirectory.getSnapshot();
+    if (exchange.checkNotModified(snapshot.getETag())) {
+      return Mono.empty();
+    }
+    return Mono.just(ResponseEntity.ok().eTag(snapshot.getETag()).cacheControl(CacheControl.noCache())
+            .body(RoomPage.of(snapshot, page, size, maxPageSize)));
+  }
+
+  @GetMapping("/{roomId}")
+  public Mono<ResponseEntity<RoomView>> room(@PathVariable String roomId, ServerWebExchange exchange) {
+    final Snapshot snapshot = roomDirectory.getSnapshot();
+    final RoomView room = snapshot.getRoom(roomId);
+    if (room == null) {
+      return Mono.just(ResponseEntity.notFound().build());
+    }
+    if (exchange.checkNotModified(snapshot.getETag())) {
+      return Mono.empty();
+    }
+    return Mono.just(ResponseEntity.ok().eTag(snapshot.getETag()).cacheControl(CacheControl.noCache()).body(room));
+  }
+}
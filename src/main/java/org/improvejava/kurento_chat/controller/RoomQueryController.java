@@ -0,0 +1,133 @@
+package org.improvejava.kurento_chat.controller;
+
+import lombok.Getter;
+import org.improvejava.kurento_chat.room.RoomDirectory;
+import org.improvejava.kurento_chat.room.RoomDirectory.RoomView;
+import org.improvejava.kurento_chat.room.RoomDirectory.Snapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Read-only HTTP API over room and participant state for dashboards and the lobby page.
+ *
+ * <p>
+ * Every response comes from the current {@link RoomDirectory} snapshot and carries the snapshot version as
+ * its ETag, so pollers that send {@code If-None-Match} get {@code 304 Not Modified} without a body until
+ * something actually changes. The room list is paged with {@code page} and {@code size}.
+ * </p>
+ *
+ * <p>
+ * The API needs no login, so the list does not say who is in a room or how to reach it: a room ID is
+ * all it takes to join. It carries counts and activity only. The single-room view is for callers who
+ * already hold the room ID.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 대시보드와 로비 화면을 위한 방/참가자 상태 조회 API입니다. 모든 응답은 {@link RoomDirectory} 스냅샷에서 만들고,
+ * 스냅샷 버전을 ETag로 보내므로 {@code If-None-Match}를 보내는 클라이언트는 상태가 바뀌기 전까지 본문 없이 304를 받습니다.
+ * 로그인 없이 열려 있으므로 목록에는 방 ID(알면 누구나 입장 가능)와 참가자 정보를 넣지 않고 인원과 활동 시각만 보냅니다.</p>
+ */
+// 조건부 요청 처리에 서블릿 WebRequest를 쓰므로 Tomcat 전송 방식에서만 등록. Netty 방식은 ReactiveRoomQueryController
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/rooms")
+public class RoomQueryController {
+
+  private final RoomDirectory roomDirectory;
+
+  private final int maxPageSize;
+
+  @Autowired
+  public RoomQueryController(RoomDirectory roomDirectory, @Value("${room.api.max-page-size:100}") int maxPageSize) {
+    this.roomDirectory = roomDirectory;
+    this.maxPageSize = maxPageSize;
+  }
+
+  @GetMapping
+  public ResponseEntity<RoomPage> rooms(@RequestParam(defaultValue = "0") int page,
+                                        @RequestParam(defaultValue = "20") int size,
+                                        WebRequest request) {
+    final Snapshot snapshot = roomDirectory.getSnapshot();
+    if (request.checkNotModified(snapshot.getETag())) {
+      return null;
+    }
+    return ResponseEntity.ok().eTag(snapshot.getETag()).cacheControl(CacheControl.noCache())
+            .body(RoomPage.of(snapshot, page, size, maxPageSize));
+  }
+
+  @GetMapping("/{roomId}")
+  public ResponseEntity<RoomView> room(@PathVariable String roomId, WebRequest request) {
+    final Snapshot snapshot = roomDirectory.getSnapshot();
+    final RoomView room = snapshot.getRoom(roomId);
+    if (room == null) {
+      return ResponseEntity.notFound().build();
+    }
+    if (request.checkNotModified(snapshot.getETag())) {
+      return null;
+    }
+    return ResponseEntity.ok().eTag(snapshot.getETag()).cacheControl(CacheControl.noCache()).body(room);
+  }
+
+  @Getter
+  public static class RoomPage {
+    private final long version;
+    private final Instant builtAt;
+    private final int page;
+    private final int size;
+    private final int totalRooms;
+    private final int totalPages;
+    private final List<RoomSummary> rooms;
+
+    /**
+     * 스냅샷의 방 목록에서 요청한 페이지를 잘라 냅니다. 페이지 크기는 1 이상 {@code maxPageSize} 이하로 맞춥니다.
+     */
+    static RoomPage of(Snapshot snapshot, int page, int size, int maxPageSize) {
+      final int pageSize = Math.max(1, Math.min(size, maxPageSize));
+      final int pageIndex = Math.max(0, page);
+      final List<RoomView> rooms = snapshot.getRooms();
+      final int from = (int) Math.min((long) pageIndex * pageSize, rooms.size());
+      final int to = Math.min(from + pageSize, rooms.size());
+
+      final List<RoomSummary> summaries = rooms.subList(from, to).stream().map(RoomSummary::new).toList();
+      return new RoomPage(snapshot, pageIndex, pageSize, summaries);
+    }
+
+    RoomPage(Snapshot snapshot, int page, int size, List<RoomSummary> rooms) {
+      this.version = snapshot.getVersion();
+      this.builtAt = snapshot.getBuiltAt();
+      this.page = page;
+      this.size = size;
+      this.totalRooms = snapshot.getRooms().size();
+      this.totalPages = (totalRooms + size - 1) / size;
+      this.rooms = rooms;
+    }
+  }
+
+  // 목록에서는 방 ID와 참가자 정보 없이 인원만 보냄
+  @Getter
+  public static class RoomSummary {
+    private final boolean webinar;
+    private final int participantCount;
+    private final int viewerCount;
+    private final Instant lastActivityAt;
+
+    RoomSummary(RoomView room) {
+      this.webinar = room.isWebinar();
+      this.participantCount = room.getParticipantCount();
+      this.viewerCount = room.getViewerCount();
+      this.lastActivityAt = room.getLastActivityAt();
+    }
+  }
+}
@@ -17,11 +17,19 @@ public class CreateRoomDTO {
 
     private final Boolean isVideoOn;
 
-    public CreateRoomDTO(String userName, Boolean isAudioOn, Boolean isVideoOn) {
+    // 방 인원 제한 (0 이하이면 서버 기본값 사용)
+    private final int maxParticipants;
+
+    // 웨비나 방이면 이후 입장자는 발표자로 입장하지 않는 한 시청자가 됨
+    private final boolean webinar;
+
+    public CreateRoomDTO(String userName, Boolean isAudioOn, Boolean isVideoOn, int maxParticipants, boolean webinar) {
         this.userId = UUID.randomUUID().toString();
         this.userName = userName;
         this.roomId = RoomIdGenerator.generateRoomId();
         this.isAudioOn = isAudioOn;
         this.isVideoOn = isVideoOn;
+        this.maxParticipants = maxParticipants;
+        this.webinar = webinar;
     }
 }
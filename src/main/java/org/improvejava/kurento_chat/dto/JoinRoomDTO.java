@@ -16,11 +16,27 @@ public class JoinRoomDTO {
 
     private final Boolean isVideoOn;
 
-    public JoinRoomDTO(String userName, String roomId, Boolean isAudioOn, Boolean isVideoOn) {
+    // 웨비나 방에 발표자로 입장하는지 여부 (일반 방에서는 무시)
+    private final boolean presenter;
+
+    // 연결이 끊긴 뒤 재접속 대신 다시 입장하는 경우, 이전 입장 때 받은 userId와 재접속 토큰 (없으면 null)
+    private final String previousUserId;
+
+    private final String resumeToken;
+
+    public JoinRoomDTO(String userName, String roomId, Boolean isAudioOn, Boolean isVideoOn, boolean presenter) {
+        this(userName, roomId, isAudioOn, isVideoOn, presenter, null, null);
+    }
+
+    public JoinRoomDTO(String userName, String roomId, Boolean isAudioOn, Boolean isVideoOn, boolean presenter,
+                       String previousUserId, String resumeToken) {
         this.userId = UUID.randomUUID().toString();
         this.userName = userName;
         this.roomId = roomId;
         this.isAudioOn = isAudioOn;
         this.isVideoOn = isVideoOn;
+        this.presenter = presenter;
+        this.previousUserId = previousUserId;
+        this.resumeToken = resumeToken;
     }
 }
@@ -8,8 +8,19 @@ import org.improvejava.kurento_chat.dto.SendChatDTO;
 import org.improvejava.kurento_chat.dto.SendEmojiDTO;
 import org.improvejava.kurento_chat.dto.CreateRoomDTO;
 import org.improvejava.kurento_chat.dto.JoinRoomDTO;
+import org.improvejava.kurento_chat.media.BandwidthController;
+import org.improvejava.kurento_chat.media.RoomRecordingService;
+import org.improvejava.kurento_chat.media.ScreenShareService;
+import org.improvejava.kurento_chat.media.SubscriptionHealthMonitor;
+import org.improvejava.kurento_chat.media.ViewportSubscriptionManager;
+import org.improvejava.kurento_chat.room.AdmissionRejectedException;
+import org.improvejava.kurento_chat.room.BreakoutManager;
+import org.improvejava.kurento_chat.room.DrainManager;
+import org.improvejava.kurento_chat.room.JoinTracer;
 import org.improvejava.kurento_chat.room.Room;
 import org.improvejava.kurento_chat.room.RoomManager;
+import org.improvejava.kurento_chat.room.WebinarManager;
+import org.improvejava.kurento_chat.user.SessionResumeManager;
 import org.improvejava.kurento_chat.user.UserRegistry;
 import org.improvejava.kurento_chat.user.UserSession;
 import org.kurento.client.IceCandidate;
@@ -23,7 +34,11 @@ import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class is a handler used for WebSocket connections.
@@ -52,6 +67,30 @@ public class CallHandler extends TextWebSocketHandler {
 
   private final MessageParser messageParser;
 
+  private final SessionResumeManager sessionResumeManager;
+
+  private final HeartbeatMonitor heartbeatMonitor;
+
+  private final RoomRecordingService recordingService;
+
+  private final BandwidthController bandwidthController;
+
+  private final ViewportSubscriptionManager viewportSubscriptionManager;
+
+  private final JoinTracer joinTracer;
+
+  private final DrainManager drainManager;
+
+  private final BreakoutManager breakoutManager;
+
+  private final ScreenShareService screenShareService;
+
+  private final SubscriptionHealthMonitor subscriptionHealthMonitor;
+
+  private final SignalingCapture signalingCapture;
+
+  private final WebinarManager webinarManager;
+
   /**
    * Creates a new {@code CallHandler} instance with the specified {@code roomManager} and {@code userRegistry}.
    *
@@ -61,12 +100,48 @@ public class CallHandler extends TextWebSocketHandler {
    * @param roomManager The object responsible for managing rooms.
    * @param userRegistry The object that handles user registration and management.
    * @param messageParser
+   * @param sessionResumeManager The object that keeps disconnected users alive until they resume or time out.
+   * @param heartbeatMonitor The object that closes sessions which stopped answering pings.
+   * @param recordingService The object that records a room through a single composite recorder.
+   * @param bandwidthController The object that keeps each receiver's video egress within its budget.
+   * @param viewportSubscriptionManager The object that limits subscriptions to the senders visible on screen.
+   * @param joinTracer The object that records how long each stage of a sampled join took.
+   * @param drainManager The object that stops new rooms on this node before it shuts down.
+   * @param breakoutManager The object that moves participants between breakout groups of a room.
+   * @param screenShareService The object that manages screen sharing as a separate outgoing stream.
+   * @param subscriptionHealthMonitor The object that renegotiates a single subscription whose ICE or media flow broke.
+   * @param signalingCapture The object that records inbound frames for offline replay when capture is enabled.
+   * @param webinarManager The object that spreads webinar viewers over edge pipelines.
    */
   @Autowired
-  public CallHandler(RoomManager roomManager, UserRegistry userRegistry, MessageParser messageParser) {
+  public CallHandler(RoomManager roomManager, UserRegistry userRegistry, MessageParser messageParser,
+                     SessionResumeManager sessionResumeManager, HeartbeatMonitor heartbeatMonitor,
+                     RoomRecordingService recordingService, BandwidthController bandwidthController,
+                     ViewportSubscriptionManager viewportSubscriptionManager, JoinTracer joinTracer,
+                     DrainManager drainManager, BreakoutManager breakoutManager,
+                     ScreenShareService screenShareService, SubscriptionHealthMonitor subscriptionHealthMonitor,
+                     SignalingCapture signalingCapture, WebinarManager webinarManager) {
     this.roomManager = roomManager;
     this.userRegistry = userRegistry;
     this.messageParser = messageParser;
+    this.sessionResumeManager = sessionResumeManager;
+    this.heartbeatMonitor = heartbeatMonitor;
+    this.recordingService = recordingService;
+    this.bandwidthController = bandwidthController;
+    this.viewportSubscriptionManager = viewportSubscriptionManager;
+    this.joinTracer = joinTracer;
+    this.drainManager = drainManager;
+    this.breakoutManager = breakoutManager;
+    this.screenShareService = screenShareService;
+    this.subscriptionHealthMonitor = subscriptionHealthMonitor;
+    this.signalingCapture = signalingCapture;
+    this.webinarManager = webinarManager;
+  }
+
+  @Override
+  public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+    signalingCapture.opened(session);
+    heartbeatMonitor.register(session);
   }
 
   /**
@@ -85,6 +160,9 @@ public class CallHandler extends TextWebSocketHandler {
    */
   @Override
   public void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+    signalingCapture.received(session, message.getPayload());
+    heartbeatMonitor.touch(session);
+
     final JsonObject receivedMessage = gson.fromJson(message.getPayload(), JsonObject.class);
 
     final UserSession user = userRegistry.getBySession(session);
@@ -96,6 +174,10 @@ public class CallHandler extends TextWebSocketHandler {
     }
 
     switch (receivedMessage.get("eventId").getAsString()) {
+      // 하트비트 응답. 메시지 수신 자체로 이미 갱신되었으므로 별도 처리 없음
+      case "pong":
+        break;
+
       case "joinRoom":
         joinRoom(receivedMessage, session);
         break;
@@ -104,21 +186,78 @@ public class CallHandler extends TextWebSocketHandler {
         createRoom(receivedMessage, session);
         break;
 
+      case "resumeSession":
+        resumeSession(receivedMessage, session);
+        break;
+
       case "onIceCandidate":
         JsonObject candidateInfo = receivedMessage.get("candidate").getAsJsonObject();
 
         if (user != null) {
           IceCandidate candidate = new IceCandidate(candidateInfo.get("candidate").getAsString(),
                   candidateInfo.get("sdpMid").getAsString(), candidateInfo.get("sdpMLineIndex").getAsInt());
-          user.addCandidate(candidate, receivedMessage.get("userId").getAsString());
+          // 화면 공유 스트림의 후보는 stream 필드로 구분
+          if (receivedMessage.has("stream") && "screen".equals(receivedMessage.get("stream").getAsString())) {
+            user.addScreenCandidate(candidate, receivedMessage.get("userId").getAsString());
+          } else {
+            user.addCandidate(candidate, receivedMessage.get("userId").getAsString());
+          }
         }
         break;
 
       case "receiveVideoFrom":
+        if (user == null) {
+          break;
+        }
         final String videoSenderId = receivedMessage.get("userId").getAsString();
         final UserSession sender = userRegistry.getByUserId(videoSenderId);
         final String sdpOffer = receivedMessage.get("sdpOffer").getAsString();
+        // 화면 단위 구독을 쓰는 클라이언트는 화면에 보이는 송신자만, 소회의실에서는 같은 회의실 참가자만 구독할 수 있음
+        // 웨비나 시청자는 송출하지 않으므로 구독 대상이 될 수 없음
+        if (sender == null || !sender.isPublishing()
+                || !user.isSenderVisible(videoSenderId)
+                || !roomManager.getRoom(user.getRoomId()).isInSameGroup(user.getUserId(), videoSenderId)) {
+          JsonObject rejectMsg = new JsonObject();
+          rejectMsg.addProperty("action", "receiveVideoRejected");
+          rejectMsg.addProperty("userId", videoSenderId);
+          user.sendMessage(rejectMsg);
+          break;
+        }
         user.receiveVideoFrom(sender, sdpOffer);
+        // 자기 송신 엔드포인트의 SDP 협상이 입장 과정의 마지막 시그널링 단계
+        if (videoSenderId.equals(user.getUserId())) {
+          joinTracer.mark(videoSenderId, JoinTracer.STAGE_SDP_ANSWERED);
+        } else {
+          subscriptionHealthMonitor.watch(user, sender);
+          // 받는 스트림 수가 늘었을 수 있으므로 스트림당 대역폭을 다시 계산
+          bandwidthController.subscriptionsChanged(user);
+        }
+        break;
+
+      case "startScreenShare":
+        if (user != null) {
+          changeScreenShareState(user, true);
+        }
+        break;
+
+      case "stopScreenShare":
+        if (user != null) {
+          changeScreenShareState(user, false);
+        }
+        break;
+
+      case "receiveScreenFrom":
+        if (user != null) {
+          receiveScreenFrom(user, receivedMessage.get("userId").getAsString(), receivedMessage.get("sdpOffer").getAsString());
+        }
+        break;
+
+      case "updateVisibleSenders":
+        if (user != null) {
+          final Set<String> visibleSenderIds = new HashSet<>();
+          receivedMessage.get("userIds").getAsJsonArray().forEach(id -> visibleSenderIds.add(id.getAsString()));
+          viewportSubscriptionManager.updateVisibleSenders(user, visibleSenderIds);
+        }
         break;
 
       case "exitRoom":
@@ -163,6 +302,42 @@ public class CallHandler extends TextWebSocketHandler {
         changeVideoState(userId, turnVideoOn);
         break;
 
+      case "startRecording":
+        if (user != null) {
+          changeRecordingState(user, true);
+        }
+        break;
+
+      case "stopRecording":
+        if (user != null) {
+          changeRecordingState(user, false);
+        }
+        break;
+
+      // 방장이 참가자들을 소회의실로 배정. {"assignments": {userId: groupId 또는 null}}
+      case "moveToBreakout":
+        if (user != null) {
+          final Map<String, String> moves = new HashMap<>();
+          receivedMessage.get("assignments").getAsJsonObject().entrySet().forEach(entry ->
+                  moves.put(entry.getKey(), entry.getValue().isJsonNull() ? null : entry.getValue().getAsString()));
+          changeBreakouts(user, moves);
+        }
+        break;
+
+      case "closeBreakouts":
+        if (user != null) {
+          changeBreakouts(user, null);
+        }
+        break;
+
+      // 클라이언트가 측정한 다운링크 대역폭(kbps) 보고
+      case "reportDownlink":
+        if (user != null) {
+          final int downlinkKbps = receivedMessage.get("downlinkKbps").getAsInt();
+          bandwidthController.reportDownlink(roomManager.getRoom(user.getRoomId()), user, downlinkKbps);
+        }
+        break;
+
       default:
         break;
     }
@@ -176,17 +351,19 @@ public class CallHandler extends TextWebSocketHandler {
    * - userSession이 제대로 닫히지 않았다면.. 아마 이거 맞을껄??? registry에 해당 요소가 저장되어 있어서 아직
    *     userSession 사용처가 있어서 gc가 날리지 않았다면 날리게 함
    * - roomManager에서 user가 아직 남아있다면 해당 user를 룸에서 떠나게 함 & userSession 객체 close
+   * - 바로 내보내지 않고 재접속 유예 시간 동안 엔드포인트를 유지, 유예 시간이 지나면 방에서 떠나게 함
    */
   @Override
   public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
     log.info(String.valueOf(status));
-    UserSession userSession = userRegistry.removeBySession(session);
+    signalingCapture.closed(session);
+    heartbeatMonitor.unregister(session);
+    UserSession userSession = sessionResumeManager.suspend(session);
     if (userSession == null) {
       return;
     }
 
     log.info("User {} / {} WebSocket didn't close well", userSession.getUserName(), userSession.getUserId());
-    roomManager.leaveRoom(userSession);
   }
 
   /** 방 참가
@@ -196,9 +373,27 @@ public class CallHandler extends TextWebSocketHandler {
 
     log.info("PARTICIPANT {} / {} : trying to join room {}", joinRoomDTO.getUserName(), joinRoomDTO.getUserId(), joinRoomDTO.getRoomId());
 
-    final UserSession user  = roomManager.joinRoom(joinRoomDTO.getUserName(), joinRoomDTO.getUserId(), joinRoomDTO.getRoomId(), joinRoomDTO.getIsAudioOn(), joinRoomDTO.getIsVideoOn(), session);
+    // 연결이 끊겼던 클라이언트가 재접속 대신 다시 입장하면, 재접속을 기다리던 이전 세션을 먼저 정리해서 방에 남지 않게 함
+    sessionResumeManager.discardSuspended(joinRoomDTO.getPreviousUserId(), joinRoomDTO.getResumeToken());
+
+    joinTracer.start(joinRoomDTO.getUserId(), "joinRoom");
+    joinTracer.mark(joinRoomDTO.getUserId(), JoinTracer.STAGE_RECEIVED);
+
+    final UserSession user;
+    try {
+      user = roomManager.joinRoom(joinRoomDTO.getUserName(), joinRoomDTO.getUserId(), joinRoomDTO.getRoomId(), joinRoomDTO.getIsAudioOn(), joinRoomDTO.getIsVideoOn(),
+              joinRoomDTO.isPresenter(), session);
+    } catch (AdmissionRejectedException e) {
+      joinTracer.abandon(joinRoomDTO.getUserId(), e.getReason());
+      sendAdmissionRejected(session, "joinRejected", joinRoomDTO.getRoomId(), e);
+      return;
+    } catch (RuntimeException e) {
+      joinTracer.abandon(joinRoomDTO.getUserId(), "error");
+      throw e;
+    }
 
     userRegistry.register(user);
+    signalingCapture.identified(session, user.getUserId(), user.getRoomId());
   }
 
   private void createRoom(JsonObject receivedMessage, WebSocketSession session) throws IOException {
@@ -206,10 +401,64 @@ public class CallHandler extends TextWebSocketHandler {
 
     log.info("PARTICIPANT {} / {} : trying to make room", createRoomDTO.getUserName(), createRoomDTO.getUserId());
 
+    // 드레인 중인 노드에는 새 방을 만들지 않고 다른 노드로 안내
+    if (drainManager.isDraining()) {
+      sendAdmissionRejected(session, "createRoomRejected", null,
+              new AdmissionRejectedException("draining", "서버 점검을 위해 새 방을 만들 수 없습니다. 다른 서버로 다시 시도해 주세요."));
+      return;
+    }
+
+    joinTracer.start(createRoomDTO.getUserId(), "createRoom");
+    joinTracer.mark(createRoomDTO.getUserId(), JoinTracer.STAGE_RECEIVED);
+
     // 추후 프론트와 협의 후 삭제
-    final UserSession user = roomManager.createRoom(createRoomDTO.getUserName(), createRoomDTO.getUserId(),
-            createRoomDTO.getIsAudioOn(), createRoomDTO.getIsVideoOn(), session);
+    final UserSession user;
+    try {
+      user = roomManager.createRoom(createRoomDTO.getUserName(), createRoomDTO.getUserId(),
+              createRoomDTO.getIsAudioOn(), createRoomDTO.getIsVideoOn(), createRoomDTO.getMaxParticipants(), createRoomDTO.isWebinar(), session);
+    } catch (AdmissionRejectedException e) {
+      joinTracer.abandon(createRoomDTO.getUserId(), e.getReason());
+      sendAdmissionRejected(session, "createRoomRejected", null, e);
+      return;
+    } catch (RuntimeException e) {
+      joinTracer.abandon(createRoomDTO.getUserId(), "error");
+      throw e;
+    }
     userRegistry.register(user);
+    signalingCapture.identified(session, user.getUserId(), user.getRoomId());
+  }
+
+  // 입장/방 생성이 거절된 사유를 아직 UserSession이 없는 클라이언트에게 직접 알림
+  private void sendAdmissionRejected(WebSocketSession session, String action, String roomId, AdmissionRejectedException e) throws IOException {
+    final JsonObject response = new JsonObject();
+    response.addProperty("action", action);
+    if (roomId != null) {
+      response.addProperty("roomId", roomId);
+    }
+    response.addProperty("reason", e.getReason());
+    response.addProperty("message", e.getMessage());
+    if ("draining".equals(e.getReason()) && !drainManager.getRedirectUrl().isEmpty()) {
+      response.addProperty("redirectUrl", drainManager.getRedirectUrl());
+    }
+    synchronized (session) {
+      session.sendMessage(new TextMessage(response.toString()));
+    }
+  }
+
+  // 끊겼던 클라이언트가 재접속 토큰으로 기존 UserSession에 다시 연결
+  private void resumeSession(JsonObject receivedMessage, WebSocketSession session) throws IOException {
+    final String userId = receivedMessage.get("userId").getAsString();
+    final String resumeToken = receivedMessage.get("resumeToken").getAsString();
+
+    final UserSession user = sessionResumeManager.resume(userId, resumeToken, session);
+    if (user == null) {
+      final JsonObject response = new JsonObject();
+      response.addProperty("action", "resumeFailed");
+      response.addProperty("userId", userId);
+      synchronized (session) {
+        session.sendMessage(new TextMessage(response.toString()));
+      }
+    }
   }
 
   private void exitRoom(UserSession user) throws IOException {
@@ -230,7 +479,8 @@ public class CallHandler extends TextWebSocketHandler {
     UserSession messageSender = userRegistry.getByUserId(sendChatDTO.getSenderId());
     String roomId = messageSender.getRoomId();
 
-    List<UserSession> receiverList = roomManager.getRoom(roomId).getParticipants().stream().toList();
+    // 소회의실에 있으면 같은 회의실 참가자에게만 보냄
+    List<UserSession> receiverList = roomManager.getRoom(roomId).getGroupMembers(messageSender.getUserId());
     UserSession.sendChatToAll(messageSender, receiverList, sendChatDTO.getMessage());
   }
 
@@ -247,7 +497,7 @@ public class CallHandler extends TextWebSocketHandler {
     UserSession emojiSender = userRegistry.getByUserId(sendEmojiDTO.getSenderId());
     String roomId = emojiSender.getRoomId();
 
-    List<UserSession> receiverList = roomManager.getRoom(roomId).getParticipants().stream().toList();
+    List<UserSession> receiverList = roomManager.getRoom(roomId).getGroupMembers(emojiSender.getUserId());
     UserSession.sendEmojiToAll(emojiSender, receiverList, sendEmojiDTO.getEmoji());
   }
 
@@ -255,17 +505,92 @@ public class CallHandler extends TextWebSocketHandler {
     UserSession userSession = userRegistry.getByUserId(userId);
     Room room = roomManager.getRoom(userSession.getRoomId());
     userSession.changeName(newName, room);
+    roomManager.participantUpdated(userSession);
   }
 
+  // 웨비나 시청자도 발표자 목록의 마이크/카메라 상태를 보여 주므로 함께 알림
   private void changeAudioState(String userId, Boolean turnAudioOn) throws IOException {
     UserSession userSession = userRegistry.getByUserId(userId);
-    List<UserSession> receiverList = roomManager.getRoom(userSession.getRoomId()).getParticipants().stream().toList();
-    userSession.changeAudioState(receiverList, turnAudioOn);
+    // 참가자 스냅샷과 시청자를 따로 순회해서 알릴 때마다 목록을 새로 만들지 않음
+    JsonObject message = userSession.changeAudioState(roomManager.getRoom(userSession.getRoomId()).getParticipants(), turnAudioOn);
+    webinarManager.notifyViewers(userSession.getRoomId(), message);
+    roomManager.participantUpdated(userSession);
+  }
+
+  private void changeScreenShareState(UserSession user, boolean startSharing) throws IOException {
+    Room room = roomManager.getRoom(user.getRoomId());
+    try {
+      if (startSharing) {
+        screenShareService.start(room, user);
+      } else {
+        screenShareService.stop(room, user);
+      }
+      roomManager.markStateChanged();
+    } catch (IllegalStateException e) {
+      JsonObject response = new JsonObject();
+      response.addProperty("action", "screenShareRejected");
+      response.addProperty("message", e.getMessage());
+      user.sendMessage(response);
+    }
+  }
+
+  // 화면 공유 구독은 카메라 구독과 별개. 같은 회의실 참가자의 화면만 받을 수 있음
+  private void receiveScreenFrom(UserSession user, String sharerId, String sdpOffer) throws IOException {
+    final UserSession sharer = userRegistry.getByUserId(sharerId);
+    try {
+      if (sharer == null || !roomManager.getRoom(user.getRoomId()).isInSameGroup(user.getUserId(), sharerId)) {
+        throw new IllegalStateException("화면 공유를 받을 수 없는 사용자입니다.");
+      }
+      screenShareService.receive(user, sharer, sdpOffer);
+    } catch (IllegalStateException e) {
+      JsonObject response = new JsonObject();
+      response.addProperty("action", "receiveScreenRejected");
+      response.addProperty("userId", sharerId);
+      response.addProperty("message", e.getMessage());
+      user.sendMessage(response);
+    }
+  }
+
+  // moves가 null이면 모든 소회의실을 닫고 본 회의실로 합침
+  private void changeBreakouts(UserSession user, Map<String, String> moves) throws IOException {
+    Room room = roomManager.getRoom(user.getRoomId());
+    try {
+      if (moves == null) {
+        breakoutManager.closeBreakouts(room, user);
+      } else {
+        breakoutManager.moveParticipants(room, user, moves);
+      }
+      roomManager.markStateChanged();
+    } catch (IllegalStateException | IllegalArgumentException e) {
+      JsonObject response = new JsonObject();
+      response.addProperty("action", "breakoutRejected");
+      response.addProperty("message", e.getMessage());
+      user.sendMessage(response);
+    }
+  }
+
+  // 방장만 녹화를 시작/중지할 수 있고, 실제 미디어 서버 작업은 녹화 전용 스레드에서 수행됨
+  private void changeRecordingState(UserSession user, boolean startRecording) throws IOException {
+    Room room = roomManager.getRoom(user.getRoomId());
+    try {
+      if (startRecording) {
+        recordingService.start(room, user);
+      } else {
+        recordingService.stop(room, user);
+      }
+    } catch (IllegalStateException e) {
+      JsonObject response = new JsonObject();
+      response.addProperty("action", "recordingRejected");
+      response.addProperty("message", e.getMessage());
+      user.sendMessage(response);
+    }
   }
 
   private void changeVideoState(String userId, Boolean turnVideoOn) throws IOException {
     UserSession userSession = userRegistry.getByUserId(userId);
-    List<UserSession> receiverList = roomManager.getRoom(userSession.getRoomId()).getParticipants().stream().toList();
-    userSession.changeVideoState(receiverList, turnVideoOn);
+    Room room = roomManager.getRoom(userSession.getRoomId());
+    JsonObject message = userSession.changeVideoState(room.getParticipants(), room.getGroupMembers(userId), turnVideoOn);
+    webinarManager.notifyViewers(room.getRoomId(), message);
+    roomManager.participantUpdated(userSession);
   }
 }
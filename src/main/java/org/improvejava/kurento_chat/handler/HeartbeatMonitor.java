@@ -0,0 +1,183 @@
+package org.improvejava.kurento_chat.handler;
+
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.improvejava.kurento_chat.user.UserRegistry;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.improvejava.kurento_chat.utils.HashedTimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects WebSocket sessions whose connection died silently, using application-level ping/pong.
+ *
+ * <p>
+ * Every inbound message counts as a sign of life. A session that stays silent for {@code interval}
+ * receives a {@code ping}; if it is still silent after {@code timeout}, the socket is closed and the user
+ * goes through the normal disconnect path in {@link CallHandler#afterConnectionClosed}.
+ * Timers live on a {@link HashedTimingWheel}, so the cost per session is one small object.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 애플리케이션 수준의 ping/pong으로 조용히 끊긴 웹 소켓 세션을 찾아냅니다.
+ * 받은 메시지는 모두 살아 있다는 신호로 보고, {@code interval} 동안 조용하면 {@code ping}을 보내며,
+ * 그 뒤 {@code timeout} 동안도 응답이 없으면 소켓을 닫아 일반 연결 종료 절차를 따르게 합니다.</p>
+ */
+@Component
+public class HeartbeatMonitor {
+
+  private static final Logger log = LoggerFactory.getLogger(HeartbeatMonitor.class);
+
+  private final UserRegistry userRegistry;
+
+  private final long intervalNanos;
+
+  private final long timeoutNanos;
+
+  // 핑 전송이나 소켓 종료는 블로킹될 수 있으므로 휠 스레드가 아닌 별도 풀에서 실행
+  private final ExecutorService heartbeatExecutor = Executors.newFixedThreadPool(4);
+
+  private final HashedTimingWheel wheel;
+
+  private final ConcurrentMap<String, Heartbeat> heartbeatsBySessionId = new ConcurrentHashMap<>();
+
+  private final Counter evictedSessions;
+
+  @Autowired
+  public HeartbeatMonitor(UserRegistry userRegistry, MeterRegistry meterRegistry,
+                          @Value("${heartbeat.interval:20s}") Duration interval,
+                          @Value("${heartbeat.timeout:10s}") Duration timeout) {
+    this.userRegistry = userRegistry;
+    this.intervalNanos = interval.toNanos();
+    this.timeoutNanos = timeout.toNanos();
+    this.wheel = new HashedTimingWheel("heartbeat-wheel", 100, 512, heartbeatExecutor);
+    this.evictedSessions = Counter.builder("heartbeat.sessions.evicted")
+            .description("Sessions closed because they stopped answering pings")
+            .register(meterRegistry);
+    meterRegistry.gauge("heartbeat.sessions.tracked", heartbeatsBySessionId, ConcurrentMap::size);
+  }
+
+  public void register(WebSocketSession session) {
+    final Heartbeat heartbeat = new Heartbeat(session);
+    heartbeatsBySessionId.put(session.getId(), heartbeat);
+    heartbeat.scheduleCheck(intervalNanos);
+  }
+
+  // 메시지를 받을 때마다 호출됨. 타이머를 다시 걸지 않고 시각만 기록해서 비용을 최소화함
+  public void touch(WebSocketSession session) {
+    final Heartbeat heartbeat = heartbeatsBySessionId.get(session.getId());
+    if (heartbeat != null) {
+      heartbeat.lastSeenNanos = System.nanoTime();
+    }
+  }
+
+  public void unregister(WebSocketSession session) {
+    final Heartbeat heartbeat = heartbeatsBySessionId.remove(session.getId());
+    if (heartbeat != null) {
+      heartbeat.cancel();
+    }
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    wheel.stop();
+    heartbeatExecutor.shutdownNow();
+  }
+
+  private final class Heartbeat {
+
+    private final WebSocketSession session;
+
+    private volatile long lastSeenNanos = System.nanoTime();
+
+    private volatile long pingSentNanos;
+
+    private volatile HashedTimingWheel.Timeout pendingCheck;
+
+    private Heartbeat(WebSocketSession session) {
+      this.session = session;
+    }
+
+    private void scheduleCheck(long delayNanos) {
+      pendingCheck = wheel.schedule(this::check, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void cancel() {
+      final HashedTimingWheel.Timeout check = pendingCheck;
+      if (check != null) {
+        check.cancel();
+      }
+    }
+
+    private void check() {
+      if (heartbeatsBySessionId.get(session.getId()) != this) {
+        return;
+      }
+
+      final long now = System.nanoTime();
+      final long silentNanos = now - lastSeenNanos;
+
+      if (silentNanos < intervalNanos) {
+        pingSentNanos = 0;
+        scheduleCheck(intervalNanos - silentNanos);
+        return;
+      }
+
+      if (pingSentNanos == 0 || lastSeenNanos > pingSentNanos) {
+        sendPing();
+        pingSentNanos = now;
+        scheduleCheck(timeoutNanos);
+        return;
+      }
+
+      evict();
+    }
+
+    private void sendPing() {
+      final JsonObject ping = new JsonObject();
+      ping.addProperty("action", "ping");
+      try {
+        final UserSession user = userRegistry.getBySession(session);
+        if (user != null) {
+          user.sendMessage(ping);
+        } else {
+          synchronized (session) {
+            session.sendMessage(new TextMessage(ping.toString()));
+          }
+        }
+      } catch (IOException | IllegalStateException e) {
+        log.debug("Session {}: failed to send ping", session.getId(), e);
+      }
+    }
+
+    private void evict() {
+      if (!heartbeatsBySessionId.remove(session.getId(), this)) {
+        return;
+      }
+
+      evictedSessions.increment();
+      log.info("Session {}: no pong within {} ms, closing", session.getId(), TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+      try {
+        session.close(CloseStatus.SESSION_NOT_RELIABLE);
+      } catch (IOException e) {
+        log.debug("Session {}: failed to close unresponsive session", session.getId(), e);
+      }
+    }
+  }
+}
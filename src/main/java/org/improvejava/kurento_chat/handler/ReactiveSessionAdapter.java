@@ -0,0 +1,178 @@
+package org.improvejava.kurento_chat.handler;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Presents a Reactor Netty WebSocket session as a servlet-style {@link WebSocketSession}, so {@link CallHandler}
+ * and everything that keeps sessions (user sessions, heartbeats, resume) work unchanged on either transport.
+ *
+ * <p>
+ * {@link #sendMessage} never blocks: messages go into a bounded per-session sink that Netty drains as the
+ * socket becomes writable. A client that stops reading until the sink is full is closed instead of
+ * holding memory or a thread.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * Reactor Netty 웹 소켓 세션을 서블릿 방식의 {@link WebSocketSession}으로 보이게 해서, {@link CallHandler}와 세션을 보관하는 다른 코드가
+ * 전송 방식과 관계없이 그대로 동작하게 합니다. {@link #sendMessage}는 블로킹되지 않고 세션별 제한된 버퍼에 메시지를 넣으며,
+ * 버퍼가 찰 때까지 읽지 않는 클라이언트는 연결을 닫습니다.</p>
+ */
+class ReactiveSessionAdapter implements WebSocketSession {
+
+  private final org.springframework.web.reactive.socket.WebSocketSession delegate;
+
+  private final Sinks.Many<org.springframework.web.reactive.socket.WebSocketMessage> outbound;
+
+  private final Runnable onOverflow;
+
+  private volatile CloseStatus closeStatus;
+
+  private int textMessageSizeLimit;
+
+  private int binaryMessageSizeLimit;
+
+  ReactiveSessionAdapter(org.springframework.web.reactive.socket.WebSocketSession delegate, int outboundBufferSize,
+                         Runnable onOverflow) {
+    this.delegate = delegate;
+    this.outbound = Sinks.many().unicast().onBackpressureBuffer(Queues.<org.springframework.web.reactive.socket.WebSocketMessage>get(outboundBufferSize).get());
+    this.onOverflow = onOverflow;
+  }
+
+  Flux<org.springframework.web.reactive.socket.WebSocketMessage> outbound() {
+    return outbound.asFlux();
+  }
+
+  // 수신이 끝나면 송신 스트림도 끝내서 Netty가 연결을 정리하게 함
+  void completeOutbound() {
+    synchronized (this) {
+      outbound.tryEmitComplete();
+    }
+  }
+
+  /**
+   * @return 이쪽에서 닫은 경우의 종료 상태, 아니면 {@code null}
+   */
+  CloseStatus getCloseStatus() {
+    return closeStatus;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public URI getUri() {
+    return delegate.getHandshakeInfo().getUri();
+  }
+
+  @Override
+  public HttpHeaders getHandshakeHeaders() {
+    return delegate.getHandshakeInfo().getHeaders();
+  }
+
+  @Override
+  public Map<String, Object> getAttributes() {
+    return delegate.getAttributes();
+  }
+
+  // 리액티브 세션의 Principal은 Mono라서 블로킹 없이 꺼낼 수 없음. 인증을 쓰지 않으므로 null
+  @Override
+  public Principal getPrincipal() {
+    return null;
+  }
+
+  @Override
+  public InetSocketAddress getLocalAddress() {
+    return null;
+  }
+
+  @Override
+  public InetSocketAddress getRemoteAddress() {
+    return delegate.getHandshakeInfo().getRemoteAddress();
+  }
+
+  @Override
+  public String getAcceptedProtocol() {
+    return delegate.getHandshakeInfo().getSubProtocol();
+  }
+
+  @Override
+  public void setTextMessageSizeLimit(int messageSizeLimit) {
+    this.textMessageSizeLimit = messageSizeLimit;
+  }
+
+  @Override
+  public int getTextMessageSizeLimit() {
+    return textMessageSizeLimit;
+  }
+
+  @Override
+  public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    this.binaryMessageSizeLimit = messageSizeLimit;
+  }
+
+  @Override
+  public int getBinaryMessageSizeLimit() {
+    return binaryMessageSizeLimit;
+  }
+
+  @Override
+  public List<WebSocketExtension> getExtensions() {
+    return List.of();
+  }
+
+  /**
+   * 메시지를 송신 버퍼에 넣고 바로 반환합니다. 여러 스레드에서 호출되므로 버퍼에 넣는 순서만 직렬화합니다.
+   */
+  @Override
+  public void sendMessage(WebSocketMessage<?> message) throws IOException {
+    if (!(message instanceof TextMessage textMessage)) {
+      throw new IllegalArgumentException("Only text messages are supported: " + message.getClass().getSimpleName());
+    }
+
+    final Sinks.EmitResult result;
+    synchronized (this) {
+      result = outbound.tryEmitNext(delegate.textMessage(textMessage.getPayload()));
+    }
+    if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+      onOverflow.run();
+      close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Outbound buffer full"));
+      throw new IOException("Outbound buffer of session " + getId() + " is full");
+    }
+    if (result.isFailure()) {
+      throw new IOException("Session " + getId() + " is closed (" + result + ")");
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return delegate.isOpen();
+  }
+
+  @Override
+  public void close() {
+    close(CloseStatus.NORMAL);
+  }
+
+  @Override
+  public void close(CloseStatus status) {
+    this.closeStatus = status;
+    delegate.close(new org.springframework.web.reactive.socket.CloseStatus(status.getCode(), status.getReason())).subscribe();
+  }
+}
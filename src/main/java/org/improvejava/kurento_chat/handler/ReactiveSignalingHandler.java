@@ -0,0 +1,111 @@
+package org.improvejava.kurento_chat.handler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signaling transport on Spring WebFlux / Reactor Netty, used when {@code spring.main.web-application-type=reactive}.
+ *
+ * <p>
+ * An idle connection costs no thread: Netty event loops read frames and write the per-session outbound sink of
+ * a {@link ReactiveSessionAdapter}. Inbound messages are handed, in order per session, to the same
+ * {@link CallHandler} the Tomcat transport uses, on a bounded {@code signaling-dispatch} pool, because handling
+ * a message calls the media server synchronously and must not block an event loop.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * {@code spring.main.web-application-type=reactive}일 때 쓰는 Spring WebFlux / Reactor Netty 기반 시그널링 전송 방식입니다.
+ * 유휴 연결은 스레드를 차지하지 않고, 받은 메시지는 세션별 순서를 지켜 Tomcat 방식과 같은 {@link CallHandler}로 넘깁니다.
+ * 메시지 처리 중 미디어 서버를 동기로 호출하므로 이벤트 루프가 아닌 별도 {@code signaling-dispatch} 풀에서 처리합니다.</p>
+ */
+public class ReactiveSignalingHandler implements WebSocketHandler {
+
+  private static final Logger log = LoggerFactory.getLogger(ReactiveSignalingHandler.class);
+
+  private final CallHandler callHandler;
+
+  private final int outboundBufferSize;
+
+  private final Scheduler dispatchScheduler;
+
+  private final AtomicInteger openSessions = new AtomicInteger();
+
+  private final Counter outboundOverflows;
+
+  public ReactiveSignalingHandler(CallHandler callHandler, MeterRegistry meterRegistry, int dispatchThreads,
+                                  int outboundBufferSize) {
+    this.callHandler = callHandler;
+    this.outboundBufferSize = outboundBufferSize;
+    this.dispatchScheduler = Schedulers.newBoundedElastic(dispatchThreads, Integer.MAX_VALUE, "signaling-dispatch");
+    this.outboundOverflows = Counter.builder("signaling.outbound.overflows")
+            .description("Reactive sessions closed because their outbound buffer filled up")
+            .register(meterRegistry);
+    meterRegistry.gauge("signaling.sessions.open", openSessions);
+  }
+
+  @Override
+  public Mono<Void> handle(WebSocketSession session) {
+    final ReactiveSessionAdapter adapter = new ReactiveSessionAdapter(session, outboundBufferSize, outboundOverflows::increment);
+
+    final Mono<Void> inbound = Mono.fromRunnable(() -> connected(adapter))
+            .subscribeOn(dispatchScheduler)
+            .thenMany(session.receive().map(WebSocketMessage::getPayloadAsText))
+            // publishOn은 한 세션의 메시지를 한 번에 하나씩 순서대로 넘김
+            .publishOn(dispatchScheduler)
+            .doOnNext(payload -> dispatch(adapter, payload))
+            .doFinally(signal -> adapter.completeOutbound())
+            .then();
+    final Mono<Void> outbound = session.send(adapter.outbound());
+
+    return Mono.when(inbound, outbound)
+            .doFinally(signal -> dispatchScheduler.schedule(() -> disconnected(adapter)));
+  }
+
+  private void connected(ReactiveSessionAdapter adapter) {
+    openSessions.incrementAndGet();
+    try {
+      callHandler.afterConnectionEstablished(adapter);
+    } catch (Exception e) {
+      log.warn("Session {}: failed to set up connection", adapter.getId(), e);
+      adapter.close(CloseStatus.SERVER_ERROR);
+    }
+  }
+
+  // 서블릿 방식의 ExceptionWebSocketHandlerDecorator처럼 처리되지 않은 에러는 세션을 닫음
+  private void dispatch(ReactiveSessionAdapter adapter, String payload) {
+    try {
+      callHandler.handleMessage(adapter, new TextMessage(payload));
+    } catch (Exception e) {
+      log.warn("Session {}: failed to handle message, closing", adapter.getId(), e);
+      adapter.close(CloseStatus.SERVER_ERROR);
+    }
+  }
+
+  private void disconnected(ReactiveSessionAdapter adapter) {
+    openSessions.decrementAndGet();
+    final CloseStatus status = adapter.getCloseStatus() != null ? adapter.getCloseStatus() : CloseStatus.NORMAL;
+    try {
+      callHandler.afterConnectionClosed(adapter, status);
+    } catch (Exception e) {
+      log.warn("Session {}: failed to clean up after disconnect", adapter.getId(), e);
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    dispatchScheduler.dispose();
+  }
+}
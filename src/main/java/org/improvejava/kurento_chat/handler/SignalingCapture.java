@@ -0,0 +1,289 @@
+package org.improvejava.kurento_chat.handler;
+
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Optionally records every inbound signaling frame, with its arrival time and the connection it came on, so a
+ * production traffic peak can be replayed offline.
+ *
+ * <p>
+ * Disabled unless {@code signaling.capture.enabled=true}. Each run writes one gzip-compressed binary file to
+ * {@code signaling.capture.dir}: a header with the capture start time, then one record per connection open,
+ * message, assigned identity (user and room id) and close, holding the offset from the start in microseconds and a per-run connection number instead
+ * of the session id. Signaling threads only enqueue; a single {@code signaling-capture} thread writes, and frames
+ * are dropped (and counted) rather than blocking signaling when the queue is full. The payloads are stored as
+ * received, including chat text, except that {@code resumeToken} values are masked before writing; capture files must
+ * still be handled like production logs.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 받은 시그널링 메시지를 도착 시각, 연결 번호와 함께 기록해서 운영 트래픽 피크를 오프라인에서 재현할 수 있게 합니다.
+ * {@code signaling.capture.enabled=true}일 때만 동작하며, 실행마다 {@code signaling.capture.dir}에 gzip으로 압축한 바이너리 파일 하나를 씁니다.
+ * 시그널링 스레드는 큐에 넣기만 하고 전용 {@code signaling-capture} 스레드가 파일에 쓰며, 큐가 차면 기다리지 않고 버린 뒤 개수를 셉니다.
+ * 재접속 토큰({@code resumeToken}) 값은 가린 뒤 쓰지만 채팅 내용을 포함한 나머지는 그대로 저장하므로 캡처 파일은 운영 로그처럼 다루어야 합니다.</p>
+ */
+@Component
+public class SignalingCapture {
+
+  private static final Logger log = LoggerFactory.getLogger(SignalingCapture.class);
+
+  public static final byte KIND_OPEN = 'O';
+  public static final byte KIND_MESSAGE = 'M';
+  public static final byte KIND_CLOSE = 'C';
+  // 입장/방 생성 후 서버가 정한 userId, roomId. 재현할 때 새로 발급된 ID로 바꿔 끼우는 데 사용
+  public static final byte KIND_IDENTITY = 'I';
+
+  private static final int MAGIC = 0x5343_4150;  // "SCAP"
+
+  private static final int VERSION = 1;
+
+  private static final long POLL_MILLIS = 1000;
+
+  // 캡처 파일만으로 다른 사람의 세션을 가로챌 수 없도록 재접속 토큰 값을 가림
+  private static final Pattern RESUME_TOKEN = Pattern.compile("(\"resumeToken\"\\s*:\\s*)\"(?:[^\"\\\\]|\\\\.)*\"");
+
+  static final String REDACTED = "<redacted>";
+
+  private final boolean enabled;
+
+  private final BlockingQueue<Frame> queue;
+
+  // 세션 ID 대신 기록하는 연결 번호 (sessionId -> 번호)
+  private final ConcurrentMap<String, Integer> connectionNumbers = new ConcurrentHashMap<>();
+
+  private final AtomicInteger nextConnectionNumber = new AtomicInteger();
+
+  private final long startedAtNanos = System.nanoTime();
+
+  private final Counter droppedFrames;
+
+  @Getter
+  private final Path file;
+
+  private final DataOutputStream out;
+
+  private final Thread writerThread;
+
+  private volatile boolean closed;
+
+  @Autowired
+  public SignalingCapture(@Value("${signaling.capture.enabled:false}") boolean enabled,
+                          @Value("${signaling.capture.dir:data/capture}") String dir,
+                          @Value("${signaling.capture.queue-size:65536}") int queueSize,
+                          MeterRegistry meterRegistry) throws IOException {
+    this.enabled = enabled;
+    this.droppedFrames = Counter.builder("signaling.capture.dropped")
+            .description("Inbound frames not captured because the capture queue was full")
+            .register(meterRegistry);
+    if (!enabled) {
+      this.queue = null;
+      this.file = null;
+      this.out = null;
+      this.writerThread = null;
+      return;
+    }
+
+    final Path directory = Path.of(dir);
+    Files.createDirectories(directory);
+    this.file = directory.resolve("signaling-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".cap");
+    this.queue = new LinkedBlockingQueue<>(queueSize);
+    this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file), true)));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(System.currentTimeMillis());
+    log.info("Capturing inbound signaling frames to {}", file);
+
+    this.writerThread = new Thread(this::run, "signaling-capture");
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void opened(WebSocketSession session) {
+    if (enabled) {
+      enqueue(new Frame(KIND_OPEN, offsetMicros(), connectionNumber(session), null));
+    }
+  }
+
+  public void received(WebSocketSession session, String payload) {
+    if (enabled) {
+      enqueue(new Frame(KIND_MESSAGE, offsetMicros(), connectionNumber(session), payload));
+    }
+  }
+
+  public void identified(WebSocketSession session, String userId, String roomId) {
+    if (enabled) {
+      final JsonObject identity = new JsonObject();
+      identity.addProperty("userId", userId);
+      identity.addProperty("roomId", roomId);
+      enqueue(new Frame(KIND_IDENTITY, offsetMicros(), connectionNumber(session), identity.toString()));
+    }
+  }
+
+  public void closed(WebSocketSession session) {
+    if (!enabled) {
+      return;
+    }
+    final Integer number = connectionNumbers.remove(session.getId());
+    if (number != null) {
+      enqueue(new Frame(KIND_CLOSE, offsetMicros(), number, null));
+    }
+  }
+
+  private int connectionNumber(WebSocketSession session) {
+    return connectionNumbers.computeIfAbsent(session.getId(), id -> nextConnectionNumber.getAndIncrement());
+  }
+
+  private long offsetMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAtNanos);
+  }
+
+  private void enqueue(Frame frame) {
+    if (closed || !queue.offer(frame)) {
+      droppedFrames.increment();
+    }
+  }
+
+  private void run() {
+    final List<Frame> batch = new ArrayList<>();
+    while (!closed || !queue.isEmpty()) {
+      try {
+        final Frame first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch);
+        for (final Frame frame : batch) {
+          write(frame);
+        }
+        out.flush();
+        batch.clear();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (IOException | RuntimeException e) {
+        log.warn("Signaling capture write failed, {} frames dropped", batch.size(), e);
+        batch.clear();
+      }
+    }
+  }
+
+  private void write(Frame frame) throws IOException {
+    out.writeByte(frame.kind);
+    out.writeLong(frame.offsetMicros);
+    out.writeInt(frame.connection);
+    if (frame.payload != null) {
+      final byte[] payload = redact(frame.payload).getBytes(StandardCharsets.UTF_8);
+      out.writeInt(payload.length);
+      out.write(payload);
+    }
+  }
+
+  static String redact(String payload) {
+    if (!payload.contains("resumeToken")) {
+      return payload;
+    }
+    return RESUME_TOKEN.matcher(payload).replaceAll("$1\"" + REDACTED + "\"");
+  }
+
+  /**
+   * 캡처 파일을 읽습니다. 쓰는 도중에 종료되어 잘린 마지막 레코드는 버립니다.
+   */
+  public static List<Frame> read(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a signaling capture file: " + file);
+      }
+      in.readLong();
+
+      final List<Frame> frames = new ArrayList<>();
+      try {
+        while (true) {
+          final byte kind = in.readByte();
+          final long offsetMicros = in.readLong();
+          final int connection = in.readInt();
+          String payload = null;
+          if (kind == KIND_MESSAGE || kind == KIND_IDENTITY) {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            payload = new String(bytes, StandardCharsets.UTF_8);
+          }
+          frames.add(new Frame(kind, offsetMicros, connection, payload));
+        }
+      } catch (EOFException e) {
+        // 파일 끝 또는 잘린 마지막 레코드
+      }
+      return frames;
+    }
+  }
+
+  @PreDestroy
+  void close() {
+    if (!enabled) {
+      return;
+    }
+    closed = true;
+    try {
+      writerThread.join(TimeUnit.SECONDS.toMillis(5));
+      out.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Getter
+  public static class Frame {
+    private final byte kind;
+    private final long offsetMicros;
+    private final int connection;
+    // KIND_MESSAGE, KIND_IDENTITY일 때만 있음
+    private final String payload;
+
+    public Frame(byte kind, long offsetMicros, int connection, String payload) {
+      this.kind = kind;
+      this.offsetMicros = offsetMicros;
+      this.connection = connection;
+      this.payload = payload;
+    }
+  }
+}
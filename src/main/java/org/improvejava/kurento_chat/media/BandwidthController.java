@@ -0,0 +1,147 @@
+package org.improvejava.kurento_chat.media;
+
+import jakarta.annotation.PreDestroy;
+import org.improvejava.kurento_chat.room.Room;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps each receiver's total video egress inside a budget by limiting the send bandwidth of its
+ * incoming endpoints, based on how many senders it actually receives and the downlink the client reported.
+ *
+ * <p>
+ * A receiver subscribed to N senders gets {@code budget / N} kbps per stream, clamped to
+ * [{@code minVideoKbps}, {@code maxVideoKbps}]; a receiver that only subscribes to the senders on its
+ * screen therefore gets more per stream than the room size alone would allow. Limits are recomputed off
+ * the signaling thread whenever membership or a receiver's subscriptions change or a client reports a new
+ * downlink, and only pushed to the media server when they change noticeably.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 수신자가 실제로 구독 중인 송신자 수와 클라이언트가 보고한 다운링크를 기준으로 수신 엔드포인트의 송신 대역폭을 제한해서,
+ * 수신자 한 명이 받는 전체 영상 대역폭이 예산을 넘지 않게 합니다.
+ * 인원이나 구독 변경, 다운링크 보고가 있을 때 시그널링 스레드가 아닌 별도 스레드에서 다시 계산하고,
+ * 값이 충분히 바뀐 경우에만 미디어 서버에 반영합니다.</p>
+ */
+@Component
+public class BandwidthController {
+
+  private static final Logger log = LoggerFactory.getLogger(BandwidthController.class);
+
+  // 이 비율 미만의 변화는 미디어 서버에 다시 보내지 않음
+  private static final double CHANGE_THRESHOLD = 0.1;
+
+  private final int receiverBudgetKbps;
+
+  private final int minVideoKbps;
+
+  private final int maxVideoKbps;
+
+  private final ExecutorService bandwidthExecutor = Executors.newSingleThreadExecutor();
+
+  // 같은 방에 대한 재계산 요청이 몰리면 한 번만 수행
+  private final Set<String> pendingRoomIds = ConcurrentHashMap.newKeySet();
+
+  // 같은 수신자에 대한 재계산 요청이 몰리면 한 번만 수행
+  private final Set<String> pendingReceiverIds = ConcurrentHashMap.newKeySet();
+
+  public BandwidthController(@Value("${bandwidth.receiver-budget-kbps:4000}") int receiverBudgetKbps,
+                             @Value("${bandwidth.min-video-kbps:100}") int minVideoKbps,
+                             @Value("${bandwidth.max-video-kbps:1500}") int maxVideoKbps) {
+    this.receiverBudgetKbps = receiverBudgetKbps;
+    this.minVideoKbps = minVideoKbps;
+    this.maxVideoKbps = maxVideoKbps;
+  }
+
+  /**
+   * 새 송신 엔드포인트의 수신 대역폭 상한. SDP 협상 전에 한 번만 적용되므로 입장 시점의 방 크기로 정함
+   */
+  public int initialRecvLimitKbps(int participantCount) {
+    return perStreamKbps(receiverBudgetKbps, participantCount - 1);
+  }
+
+  public int getMinVideoKbps() {
+    return minVideoKbps;
+  }
+
+  public void reportDownlink(Room room, UserSession user, int downlinkKbps) {
+    user.setReportedDownlinkKbps(Math.max(0, downlinkKbps));
+    rebalance(room);
+  }
+
+  /**
+   * 방의 모든 수신자에 대해 스트림당 대역폭을 다시 계산하도록 예약합니다.
+   */
+  public void rebalance(Room room) {
+    if (!pendingRoomIds.add(room.getRoomId())) {
+      return;
+    }
+
+    bandwidthExecutor.execute(() -> {
+      pendingRoomIds.remove(room.getRoomId());
+      try {
+        apply(room);
+      } catch (RuntimeException e) {
+        log.warn("ROOM {}: failed to apply bandwidth limits", room.getRoomId(), e);
+      }
+    });
+  }
+
+  /**
+   * 수신자가 영상을 구독하거나 해제해서 받는 스트림 수가 바뀌었을 때, 그 수신자의 스트림당 대역폭만 다시 계산하도록 예약합니다.
+   */
+  public void subscriptionsChanged(UserSession receiver) {
+    if (!pendingReceiverIds.add(receiver.getUserId())) {
+      return;
+    }
+
+    bandwidthExecutor.execute(() -> {
+      pendingReceiverIds.remove(receiver.getUserId());
+      try {
+        apply(receiver);
+      } catch (RuntimeException e) {
+        log.warn("ROOM {}: failed to apply bandwidth limits of USER {}", receiver.getRoomId(), receiver.getUserId(), e);
+      }
+    });
+  }
+
+  private void apply(Room room) {
+    for (final UserSession receiver : room.getParticipants()) {
+      apply(receiver);
+    }
+  }
+
+  private void apply(UserSession receiver) {
+    final int subscriptions = receiver.getSubscriptionCount();
+    final int budget = receiver.getReportedDownlinkKbps() > 0
+            ? Math.min(receiver.getReportedDownlinkKbps(), receiverBudgetKbps)
+            : receiverBudgetKbps;
+    final int perStream = perStreamKbps(budget, subscriptions);
+
+    final int current = receiver.getVideoSendLimitKbps();
+    if (current > 0 && Math.abs(perStream - current) < current * CHANGE_THRESHOLD) {
+      return;
+    }
+
+    log.debug("ROOM {}: USER {} receives {} kbps per stream ({} subscriptions, budget {} kbps)",
+            receiver.getRoomId(), receiver.getUserId(), perStream, subscriptions, budget);
+    receiver.applyVideoSendLimit(perStream, Math.min(minVideoKbps, perStream));
+  }
+
+  private int perStreamKbps(int budgetKbps, int subscriptions) {
+    return Math.max(minVideoKbps, Math.min(maxVideoKbps, budgetKbps / Math.max(1, subscriptions)));
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    bandwidthExecutor.shutdown();
+  }
+}
@@ -0,0 +1,95 @@
+package org.improvejava.kurento_chat.media;
+
+import jakarta.annotation.PreDestroy;
+import org.kurento.client.KurentoClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out media servers for webinar edge pipelines, round-robin over {@code webinar.edge-kms-urls}.
+ *
+ * <p>
+ * Connections to edge servers are opened on first use and kept for the lifetime of the application. When
+ * no edge servers are configured, or the chosen one cannot be reached, the primary media server is used,
+ * so webinars still spread viewers over several pipelines on a single server. A new edge connection is
+ * opened outside the client map's locks; if two callers race, the loser's connection is closed.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 웨비나 중계 파이프라인을 만들 미디어 서버를 {@code webinar.edge-kms-urls} 목록에서 돌아가며 고릅니다.
+ * 목록이 비어 있거나 고른 서버에 연결할 수 없으면 기본 미디어 서버를 사용합니다.</p>
+ */
+@Component
+public class EdgeMediaServers {
+
+  private static final Logger log = LoggerFactory.getLogger(EdgeMediaServers.class);
+
+  private final MediaServerConnector primary;
+
+  private final List<String> edgeUrls;
+
+  private final ConcurrentMap<String, KurentoClient> clientsByUrl = new ConcurrentHashMap<>();
+
+  private final AtomicInteger nextIndex = new AtomicInteger();
+
+  @Autowired
+  public EdgeMediaServers(MediaServerConnector primary, @Value("${webinar.edge-kms-urls:}") String edgeUrls) {
+    this.primary = primary;
+    this.edgeUrls = Arrays.stream(edgeUrls.split(","))
+            .map(String::trim)
+            .filter(url -> !url.isEmpty())
+            .toList();
+  }
+
+  /**
+   * @return {@link #nextClient()}가 돌려준 클라이언트가 중계 서버가 아닌 기본 미디어 서버인지 여부.
+   *     중계 서버가 없거나 연결할 수 없어 기본 서버로 대체된 경우 {@code true}
+   */
+  public boolean isPrimary(KurentoClient client) {
+    return !clientsByUrl.containsValue(client);
+  }
+
+  /**
+   * 다음 중계 파이프라인을 만들 미디어 서버를 반환합니다. 처음 쓰는 중계 서버면 연결될 때까지 기다립니다.
+   *
+   * @throws IllegalStateException 기본 미디어 서버로 대체해야 하는데 기본 서버에도 연결되어 있지 않은 경우
+   */
+  public KurentoClient nextClient() {
+    if (edgeUrls.isEmpty()) {
+      return primary.getKurentoClient();
+    }
+
+    final String url = edgeUrls.get(Math.floorMod(nextIndex.getAndIncrement(), edgeUrls.size()));
+    final KurentoClient existing = clientsByUrl.get(url);
+    if (existing != null && !existing.isClosed()) {
+      return existing;
+    }
+
+    try {
+      final KurentoClient created = KurentoClient.create(url);
+      final KurentoClient client = clientsByUrl.compute(url, (u, current) -> current == null || current.isClosed() ? created : current);
+      if (client != created) {
+        created.destroy();
+      }
+      return client;
+    } catch (RuntimeException e) {
+      log.warn("Could not connect to edge media server {}, falling back to the primary server: {}", url, e.getMessage());
+      return primary.getKurentoClient();
+    }
+  }
+
+  @PreDestroy
+  private void close() {
+    clientsByUrl.values().forEach(KurentoClient::destroy);
+    clientsByUrl.clear();
+  }
+}
@@ -0,0 +1,232 @@
+package org.improvejava.kurento_chat.media;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.KurentoConnectionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the connection to the media server and opens it lazily, so the application starts and accepts
+ * WebSocket connections without waiting for the media server.
+ *
+ * <p>
+ * The connection is first attempted in the background once the application is ready, or on first use if
+ * that happens earlier. When it fails or the client gives up reconnecting, a new connection is retried in
+ * the background with exponential back-off between {@code minBackoff} and {@code maxBackoff}. While the
+ * media server is unreachable, {@link #getKurentoClient()} fails fast instead of blocking callers. The
+ * connection is opened outside the lock and published through a volatile field, so callers never wait
+ * behind a connection attempt. When the client reconnects to a different media server, or a new
+ * client replaces one whose connection was lost for good, the old client is destroyed and a
+ * {@link MediaServerReplacedEvent} is published because every existing pipeline is gone.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 미디어 서버 연결을 관리하며, 애플리케이션이 미디어 서버를 기다리지 않고 바로 시작되도록 연결을 지연해서 엽니다.
+ * 연결에 실패하거나 끊기면 백그라운드에서 지수 백오프로 다시 연결하고, 그동안 {@link #getKurentoClient()}는 기다리지 않고 바로 실패합니다.
+ * 다른 미디어 서버에 다시 연결되거나, 연결이 완전히 끊긴 클라이언트를 새 클라이언트로 바꾸면 이전 클라이언트를 해제하고, 기존 파이프라인이 모두 사라졌으므로 {@link MediaServerReplacedEvent}를 발행합니다.</p>
+ */
+@Component
+public class MediaServerConnector {
+
+  private static final Logger log = LoggerFactory.getLogger(MediaServerConnector.class);
+
+  private final String kmsUrl;
+
+  private final long minBackoffMillis;
+
+  private final long maxBackoffMillis;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor();
+
+  private final Object connectLock = new Object();
+
+  private volatile KurentoClient kurento;
+
+  private long backoffMillis;
+
+  private boolean reconnectScheduled;
+
+  // 연결 시도는 잠금 밖에서 하므로, 그동안 다른 호출자가 중복으로 연결하지 않도록 표시
+  private boolean connecting;
+
+  private boolean shutdown;
+
+  @Autowired
+  public MediaServerConnector(MeterRegistry meterRegistry, ApplicationEventPublisher eventPublisher,
+                              @Value("${kms.url:ws://localhost:8888/kurento}") String kmsUrl,
+                              @Value("${kms.reconnect.min-backoff:1s}") Duration minBackoff,
+                              @Value("${kms.reconnect.max-backoff:30s}") Duration maxBackoff) {
+    this.eventPublisher = eventPublisher;
+    this.kmsUrl = kmsUrl;
+    this.minBackoffMillis = minBackoff.toMillis();
+    this.maxBackoffMillis = maxBackoff.toMillis();
+    this.backoffMillis = minBackoffMillis;
+
+    meterRegistry.gauge("media.server.connected", this, connector -> connector.isConnected() ? 1 : 0);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  void connectInBackground() {
+    reconnectScheduler.execute(this::tryConnect);
+  }
+
+  public boolean isConnected() {
+    final KurentoClient client = kurento;
+    return client != null && !client.isClosed();
+  }
+
+  /**
+   * 연결된 클라이언트를 반환합니다. 아직 연결 시도 전이면 한 번 연결을 시도합니다.
+   *
+   * @throws IllegalStateException 미디어 서버에 연결되어 있지 않고 재연결을 기다리는 중인 경우
+   */
+  public KurentoClient getKurentoClient() {
+    final KurentoClient client = kurento;
+    if (client != null && !client.isClosed()) {
+      return client;
+    }
+
+    // 재연결 대기 중이거나 다른 스레드가 연결 중이면 시그널링 스레드를 막지 않고 바로 실패
+    final KurentoClient connected = tryConnect();
+    if (connected != null) {
+      return connected;
+    }
+    throw new IllegalStateException("미디어 서버에 연결되어 있지 않습니다.");
+  }
+
+  private KurentoClient tryConnect() {
+    synchronized (connectLock) {
+      if (isConnected()) {
+        return kurento;
+      }
+      if (shutdown || connecting || reconnectScheduled) {
+        return null;
+      }
+      connecting = true;
+    }
+
+    final long startedAt = System.currentTimeMillis();
+    KurentoClient client = null;
+    try {
+      client = KurentoClient.create(kmsUrl, new ConnectionListener());
+    } catch (RuntimeException e) {
+      log.warn("Could not connect to media server {}: {}", kmsUrl, e.getMessage());
+    }
+
+    final KurentoClient previous;
+    synchronized (connectLock) {
+      if (client == null) {
+        connecting = false;
+        scheduleReconnect();
+        return null;
+      }
+      previous = kurento;
+    }
+
+    // 연결이 완전히 끊겼다가 새 클라이언트로 다시 연결된 경우. 이전 클라이언트로 만든 파이프라인은 모두 사라졌으므로
+    // 새 클라이언트를 공개하기 전에 방을 정리해서, 그사이 새 파이프라인에 만든 방까지 닫히지 않게 함
+    if (previous != null) {
+      log.warn("Replaced lost media server client for {}; existing pipelines are gone", kmsUrl);
+      try {
+        previous.destroy();
+      } catch (RuntimeException e) {
+        log.debug("Could not destroy lost media server client", e);
+      }
+      try {
+        eventPublisher.publishEvent(new MediaServerReplacedEvent(this));
+      } catch (RuntimeException e) {
+        log.warn("Failed to close rooms of the lost media server", e);
+      }
+    }
+
+    synchronized (connectLock) {
+      connecting = false;
+      if (shutdown) {
+        client.destroy();
+        return null;
+      }
+      kurento = client;
+      backoffMillis = minBackoffMillis;
+    }
+    log.info("Connected to media server {} in {} ms", kmsUrl, System.currentTimeMillis() - startedAt);
+    return client;
+  }
+
+  private void scheduleReconnect() {
+    synchronized (connectLock) {
+      if (reconnectScheduled || shutdown) {
+        return;
+      }
+      reconnectScheduled = true;
+
+      final long delay = backoffMillis;
+      backoffMillis = Math.min(maxBackoffMillis, backoffMillis * 2);
+      log.info("Reconnecting to media server {} in {} ms", kmsUrl, delay);
+
+      reconnectScheduler.schedule(() -> {
+        synchronized (connectLock) {
+          reconnectScheduled = false;
+        }
+        tryConnect();
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  private void close() {
+    synchronized (connectLock) {
+      shutdown = true;
+    }
+    reconnectScheduler.shutdownNow();
+
+    final KurentoClient client = kurento;
+    if (client != null && !client.isClosed()) {
+      client.destroy();
+    }
+  }
+
+  private class ConnectionListener implements KurentoConnectionListener {
+
+    @Override
+    public void connected() {
+    }
+
+    @Override
+    public void connectionFailed() {
+      scheduleReconnect();
+    }
+
+    // 클라이언트 자체 재연결도 실패해서 연결이 완전히 닫힌 경우. 새 클라이언트가 연결되면 방을 정리함
+    @Override
+    public void disconnected() {
+      log.warn("Connection to media server {} was lost", kmsUrl);
+      scheduleReconnect();
+    }
+
+    @Override
+    public void reconnected(boolean sameServer) {
+      if (sameServer) {
+        log.info("Reconnected to media server {}", kmsUrl);
+      } else {
+        log.warn("Reconnected to a different media server at {}; existing pipelines are gone", kmsUrl);
+        // 클라이언트 이벤트 스레드를 막지 않도록 방 정리는 재연결 스레드에서 함
+        reconnectScheduler.execute(() -> eventPublisher.publishEvent(new MediaServerReplacedEvent(MediaServerConnector.this)));
+      }
+    }
+  }
+}
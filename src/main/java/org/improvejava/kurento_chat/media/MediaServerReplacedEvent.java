@@ -0,0 +1,17 @@
+package org.improvejava.kurento_chat.media;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when the media server client reconnected to a different media server instance, so every
+ * pipeline and endpoint created before is gone.
+ *
+ * <p><b>한국어:</b>
+ * 미디어 서버 클라이언트가 다른 미디어 서버 인스턴스에 다시 연결되어 이전에 만든 파이프라인과 엔드포인트가 모두 사라졌을 때 발행됩니다.</p>
+ */
+public class MediaServerReplacedEvent extends ApplicationEvent {
+
+  public MediaServerReplacedEvent(Object source) {
+    super(source);
+  }
+}
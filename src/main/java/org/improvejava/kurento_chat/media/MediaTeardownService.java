@@ -0,0 +1,240 @@
+package org.improvejava.kurento_chat.media;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.kurento.client.Continuation;
+import org.kurento.client.MediaObject;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Releases Kurento media objects asynchronously, in batches and with a bounded number of in-flight RPCs.
+ *
+ * <p>
+ * Endpoint releases are grouped per {@link MediaPipeline} for a short window and sent as one
+ * {@link Transaction}. When the pipeline itself is released, pending endpoint releases are dropped,
+ * because releasing the pipeline frees every element in it. Failed releases are retried with a back-off.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * Kurento 미디어 객체 해제를 비동기로, 파이프라인 단위로 묶어서, 동시에 보내는 요청 수를 제한하며 처리합니다.
+ * 파이프라인 자체를 해제하면 그 안의 엔드포인트는 함께 해제되므로 대기 중인 엔드포인트 해제 요청은 버립니다.
+ * 실패한 해제 요청은 일정 시간 뒤 다시 시도합니다.</p>
+ */
+@Component
+public class MediaTeardownService {
+
+  private static final Logger log = LoggerFactory.getLogger(MediaTeardownService.class);
+
+  private final Duration batchWindow;
+
+  private final int maxAttempts;
+
+  private final Duration retryBackoff;
+
+  // 현재 노드는 하나의 KurentoClient(=미디어 서버 하나)만 사용하므로 서버당 한도가 곧 전체 한도
+  private final Semaphore inFlightReleases;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  // 퍼밋을 기다리는 동안 scheduler가 막히지 않도록 별도 스레드에서 요청을 보냄
+  private final ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+
+  private final ConcurrentMap<MediaPipeline, List<MediaObject>> pendingByPipeline = new ConcurrentHashMap<>();
+
+  private final Set<MediaPipeline> releasedPipelines = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  private final AtomicInteger inFlightCount = new AtomicInteger();
+
+  private final AtomicLong releasedCount = new AtomicLong();
+
+  private final AtomicLong failedCount = new AtomicLong();
+
+  private final AtomicLong skippedCount = new AtomicLong();
+
+  public MediaTeardownService(@Value("${media.teardown.batch-window:20ms}") Duration batchWindow,
+                              @Value("${media.teardown.max-in-flight:32}") int maxInFlight,
+                              @Value("${media.teardown.max-attempts:3}") int maxAttempts,
+                              @Value("${media.teardown.retry-backoff:500ms}") Duration retryBackoff,
+                              MeterRegistry meterRegistry) {
+    this.batchWindow = batchWindow;
+    this.inFlightReleases = new Semaphore(maxInFlight);
+    this.maxAttempts = maxAttempts;
+    this.retryBackoff = retryBackoff;
+
+    Gauge.builder("media.teardown.pending", this, MediaTeardownService::getPendingCount).register(meterRegistry);
+    Gauge.builder("media.teardown.in-flight", this, MediaTeardownService::getInFlightCount).register(meterRegistry);
+    FunctionCounter.builder("media.teardown.released", releasedCount, AtomicLong::get).register(meterRegistry);
+    FunctionCounter.builder("media.teardown.failed", failedCount, AtomicLong::get).register(meterRegistry);
+    FunctionCounter.builder("media.teardown.skipped", skippedCount, AtomicLong::get).register(meterRegistry);
+  }
+
+  /**
+   * 엔드포인트 해제를 요청합니다. 같은 파이프라인의 요청은 {@code batchWindow} 동안 모아서 한 번에 보냅니다.
+   *
+   * @param pipeline 엔드포인트가 속한 파이프라인
+   * @param endpoint 해제할 엔드포인트
+   */
+  public void releaseEndpoint(MediaPipeline pipeline, MediaObject endpoint) {
+    // 해제 여부 확인과 대기 목록 추가를 같은 compute 안에서 해서 그사이 파이프라인이 해제되는 경우가 없게 함
+    pendingByPipeline.compute(pipeline, (p, pending) -> {
+      if (releasedPipelines.contains(p)) {
+        skippedCount.incrementAndGet();
+        return pending;
+      }
+      if (pending == null) {
+        pending = new ArrayList<>();
+        scheduler.schedule(() -> flush(p), batchWindow.toMillis(), TimeUnit.MILLISECONDS);
+      }
+      pending.add(endpoint);
+      return pending;
+    });
+  }
+
+  /**
+   * 파이프라인 전체를 해제합니다. 아직 보내지 않은 엔드포인트 해제 요청은 파이프라인과 함께 정리되므로 버립니다.
+   *
+   * @param pipeline 해제할 파이프라인
+   */
+  public void releasePipeline(MediaPipeline pipeline) {
+    pendingByPipeline.compute(pipeline, (p, dropped) -> {
+      releasedPipelines.add(p);
+      if (dropped != null) {
+        skippedCount.addAndGet(dropped.size());
+      }
+      return null;
+    });
+
+    submit(pipeline, 1);
+  }
+
+  public int getPendingCount() {
+    return pendingByPipeline.values().stream().mapToInt(List::size).sum();
+  }
+
+  public int getInFlightCount() {
+    return inFlightCount.get();
+  }
+
+  public long getReleasedCount() {
+    return releasedCount.get();
+  }
+
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  // 파이프라인 해제로 대체되어 보내지 않은 엔드포인트 해제 요청 수
+  public long getSkippedCount() {
+    return skippedCount.get();
+  }
+
+  private void flush(MediaPipeline pipeline) {
+    final List<MediaObject> endpoints = pendingByPipeline.remove(pipeline);
+    if (endpoints == null || endpoints.isEmpty()) {
+      return;
+    }
+
+    dispatcher.execute(() -> {
+      // 대기 목록을 꺼낸 뒤 파이프라인이 해제되었다면 엔드포인트도 함께 해제되었으므로 보내지 않음
+      if (releasedPipelines.contains(pipeline)) {
+        skippedCount.addAndGet(endpoints.size());
+        return;
+      }
+      acquire();
+      final Transaction tx = pipeline.beginTransaction();
+      for (final MediaObject endpoint : endpoints) {
+        endpoint.release(tx);
+      }
+
+      tx.commit(new Continuation<Void>() {
+        @Override
+        public void onSuccess(Void result) throws Exception {
+          releaseAcquired();
+          releasedCount.addAndGet(endpoints.size());
+          log.trace("Released {} endpoints in one batch", endpoints.size());
+        }
+
+        @Override
+        public void onError(Throwable cause) throws Exception {
+          releaseAcquired();
+          log.debug("Batch release of {} endpoints failed, retrying one by one", endpoints.size(), cause);
+          for (final MediaObject endpoint : endpoints) {
+            retryLater(endpoint, 2);
+          }
+        }
+      });
+    });
+  }
+
+  private void submit(MediaObject mediaObject, int attempt) {
+    dispatcher.execute(() -> {
+      acquire();
+      mediaObject.release(new Continuation<Void>() {
+        @Override
+        public void onSuccess(Void result) throws Exception {
+          releaseAcquired();
+          releasedCount.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable cause) throws Exception {
+          releaseAcquired();
+          if (attempt >= maxAttempts) {
+            failedCount.incrementAndGet();
+            log.warn("Could not release media object after {} attempts", attempt, cause);
+            return;
+          }
+          retryLater(mediaObject, attempt + 1);
+        }
+      });
+    });
+  }
+
+  private void retryLater(MediaObject mediaObject, int attempt) {
+    if (attempt > maxAttempts) {
+      failedCount.incrementAndGet();
+      return;
+    }
+    final long delay = retryBackoff.toMillis() * (1L << (attempt - 2));
+    scheduler.schedule(() -> submit(mediaObject, attempt), delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void acquire() {
+    inFlightReleases.acquireUninterruptibly();
+    inFlightCount.incrementAndGet();
+  }
+
+  private void releaseAcquired() {
+    inFlightCount.decrementAndGet();
+    inFlightReleases.release();
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    scheduler.shutdown();
+    dispatcher.shutdown();
+  }
+}
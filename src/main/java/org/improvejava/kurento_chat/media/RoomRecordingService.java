@@ -0,0 +1,263 @@
+package org.improvejava.kurento_chat.media;
+
+import com.google.gson.JsonObject;
+import jakarta.annotation.PreDestroy;
+import org.improvejava.kurento_chat.room.Room;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.kurento.client.Composite;
+import org.kurento.client.HubPort;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.MediaProfileSpecType;
+import org.kurento.client.RecorderEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Records a whole room through a single {@link Composite} mixer and one {@link RecorderEndpoint},
+ * built on the room's existing {@link MediaPipeline}.
+ *
+ * <p>
+ * Every participant's outgoing endpoint feeds a {@link HubPort} of the composite, and one output port
+ * feeds the recorder, so recording costs one encoder and one file regardless of room size.
+ * All media-server calls run on a dedicated executor and never on signaling threads.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 방의 기존 {@link MediaPipeline} 위에 {@link Composite} 하나와 {@link RecorderEndpoint} 하나를 만들어 방 전체를 녹화합니다.
+ * 참가자별 송신 엔드포인트를 각각 {@link HubPort}에 연결하고 출력 포트 하나만 녹화하므로 인원과 관계없이 인코딩과 파일은 하나입니다.
+ * 미디어 서버 호출은 모두 별도 스레드에서 실행되어 시그널링 스레드를 막지 않습니다.</p>
+ */
+@Component
+public class RoomRecordingService {
+
+  private static final Logger log = LoggerFactory.getLogger(RoomRecordingService.class);
+
+  private final MediaTeardownService teardown;
+
+  // 미디어 서버 기준 경로 (KMS가 실행되는 호스트의 디스크)
+  private final String recordingDirectory;
+
+  // 방이 닫힐 때 녹화 파일이 마무리될 때까지 파이프라인 해제를 미루는 최대 시간
+  private final Duration stopTimeout;
+
+  private final ExecutorService recordingExecutor = Executors.newSingleThreadExecutor();
+
+  private final ConcurrentMap<String, RoomRecording> recordingsByRoomId = new ConcurrentHashMap<>();
+
+  @Autowired
+  public RoomRecordingService(MediaTeardownService teardown,
+                              @Value("${recording.directory:/tmp/recordings}") String recordingDirectory,
+                              @Value("${recording.stop-timeout:5s}") Duration stopTimeout) {
+    this.teardown = teardown;
+    this.recordingDirectory = recordingDirectory;
+    this.stopTimeout = stopTimeout;
+  }
+
+  public boolean isRecording(String roomId) {
+    return recordingsByRoomId.containsKey(roomId);
+  }
+
+  /**
+   * 방장 요청으로 녹화를 시작합니다.
+   *
+   * @throws IllegalStateException 요청한 사용자가 방장이 아니거나 이미 녹화 중인 경우
+   */
+  public void start(Room room, UserSession requester) {
+    checkRoomLeader(room, requester);
+
+    final RoomRecording recording = new RoomRecording(room.getPipeline());
+    if (recordingsByRoomId.putIfAbsent(room.getRoomId(), recording) != null) {
+      throw new IllegalStateException("이미 녹화 중인 방입니다.");
+    }
+
+    recordingExecutor.execute(() -> {
+      try {
+        final String uri = "file://" + recordingDirectory + "/" + room.getRoomId() + "-" + System.currentTimeMillis() + ".webm";
+        recording.open(uri);
+        for (final UserSession participant : room.getParticipants()) {
+          recording.addParticipant(participant);
+        }
+        recording.recorder.record();
+
+        log.info("ROOM {}: recording started to {}", room.getRoomId(), uri);
+        broadcast(room, "recordingStarted", uri);
+      } catch (RuntimeException e) {
+        log.warn("ROOM {}: failed to start recording", room.getRoomId(), e);
+        recordingsByRoomId.remove(room.getRoomId(), recording);
+        recording.release(teardown);
+        broadcast(room, "recordingFailed", null);
+      }
+    });
+  }
+
+  /**
+   * 방장 요청으로 녹화를 멈추고 녹화용 미디어 요소를 해제합니다.
+   *
+   * @throws IllegalStateException 요청한 사용자가 방장이 아니거나 녹화 중이 아닌 경우
+   */
+  public void stop(Room room, UserSession requester) {
+    checkRoomLeader(room, requester);
+
+    final RoomRecording recording = recordingsByRoomId.remove(room.getRoomId());
+    if (recording == null) {
+      throw new IllegalStateException("녹화 중인 방이 아닙니다.");
+    }
+
+    recordingExecutor.execute(() -> {
+      try {
+        recording.recorder.stopAndWait();
+        log.info("ROOM {}: recording stopped, file {}", room.getRoomId(), recording.uri);
+      } catch (RuntimeException e) {
+        log.warn("ROOM {}: failed to stop recording cleanly", room.getRoomId(), e);
+      }
+      recording.release(teardown);
+      broadcast(room, "recordingStopped", recording.uri);
+    });
+  }
+
+  // 녹화 중에 들어온 참가자를 합성 화면에 추가
+  public void addParticipant(Room room, UserSession participant) {
+    final RoomRecording recording = recordingsByRoomId.get(room.getRoomId());
+    if (recording != null) {
+      recordingExecutor.execute(() -> recording.addParticipant(participant));
+    }
+  }
+
+  public void removeParticipant(Room room, String userId) {
+    final RoomRecording recording = recordingsByRoomId.get(room.getRoomId());
+    if (recording != null) {
+      recordingExecutor.execute(() -> recording.removeParticipant(userId, teardown));
+    }
+  }
+
+  /**
+   * 방이 닫히기 전에 진행 중인 녹화를 멈춥니다. 파이프라인을 해제하기 전에 호출해야 WebM 파일이 마무리됩니다.
+   * 녹화 스레드에서 멈춘 뒤 최대 {@code recording.stop-timeout}까지 기다립니다.
+   */
+  public void forgetRoom(String roomId) {
+    final RoomRecording recording = recordingsByRoomId.remove(roomId);
+    if (recording == null) {
+      return;
+    }
+
+    final Future<?> stopped = recordingExecutor.submit(() -> {
+      try {
+        if (recording.recorder != null) {
+          recording.recorder.stopAndWait();
+          log.info("ROOM {}: recording stopped because the room closed, file {}", roomId, recording.uri);
+        }
+      } catch (RuntimeException e) {
+        log.warn("ROOM {}: failed to stop recording cleanly before the room closed", roomId, e);
+      }
+      recording.release(teardown);
+    });
+    try {
+      stopped.get(stopTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      log.warn("ROOM {}: recording did not stop within {}, the file may be incomplete", roomId, stopTimeout, e);
+    }
+  }
+
+  private void checkRoomLeader(Room room, UserSession requester) {
+    if (!requester.getUserId().equals(room.getRoomLeaderId())) {
+      throw new IllegalStateException("방장만 녹화를 제어할 수 있습니다.");
+    }
+  }
+
+  private void broadcast(Room room, String action, String uri) {
+    final JsonObject message = new JsonObject();
+    message.addProperty("action", action);
+    message.addProperty("roomId", room.getRoomId());
+    if (uri != null) {
+      message.addProperty("uri", uri);
+    }
+
+    for (final UserSession participant : room.getParticipants()) {
+      try {
+        participant.sendMessage(message);
+      } catch (IOException e) {
+        log.debug("ROOM {}: participant {} could not be notified of {}", room.getRoomId(), participant.getUserId(), action);
+      }
+    }
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    recordingExecutor.shutdown();
+  }
+
+  private static final class RoomRecording {
+
+    private final MediaPipeline pipeline;
+
+    private final ConcurrentMap<String, HubPort> portsByUserId = new ConcurrentHashMap<>();
+
+    private Composite composite;
+
+    private HubPort outputPort;
+
+    private RecorderEndpoint recorder;
+
+    private String uri;
+
+    private RoomRecording(MediaPipeline pipeline) {
+      this.pipeline = pipeline;
+    }
+
+    private void open(String uri) {
+      this.uri = uri;
+      this.composite = new Composite.Builder(pipeline).build();
+      this.outputPort = new HubPort.Builder(composite).build();
+      this.recorder = new RecorderEndpoint.Builder(pipeline, uri)
+              .withMediaProfile(MediaProfileSpecType.WEBM)
+              .build();
+      outputPort.connect(recorder);
+    }
+
+    private void addParticipant(UserSession participant) {
+      if (composite == null || portsByUserId.containsKey(participant.getUserId())) {
+        return;
+      }
+      final HubPort port = new HubPort.Builder(composite).build();
+      participant.getOutgoingWebRtcPeer().connect(port);
+      portsByUserId.put(participant.getUserId(), port);
+    }
+
+    private void removeParticipant(String userId, MediaTeardownService teardown) {
+      final HubPort port = portsByUserId.remove(userId);
+      if (port != null) {
+        teardown.releaseEndpoint(pipeline, port);
+      }
+    }
+
+    private void release(MediaTeardownService teardown) {
+      portsByUserId.values().forEach(port -> teardown.releaseEndpoint(pipeline, port));
+      portsByUserId.clear();
+      if (recorder != null) {
+        teardown.releaseEndpoint(pipeline, recorder);
+      }
+      if (outputPort != null) {
+        teardown.releaseEndpoint(pipeline, outputPort);
+      }
+      if (composite != null) {
+        teardown.releaseEndpoint(pipeline, composite);
+      }
+    }
+  }
+}
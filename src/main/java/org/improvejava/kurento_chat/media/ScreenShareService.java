@@ -0,0 +1,101 @@
+package org.improvejava.kurento_chat.media;
+
+import com.google.gson.JsonObject;
+import org.improvejava.kurento_chat.room.Room;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Manages screen sharing as a second outgoing stream per user, separate from the camera.
+ *
+ * <p>
+ * Screen content is high resolution but changes rarely, so the screen endpoints get their own bandwidth
+ * window ({@code screenshare.min-kbps}..{@code screenshare.max-kbps}) and the sharer is told the frame rate
+ * to capture at. Viewers subscribe to the screen with {@code receiveScreenFrom}, independently of the
+ * camera subscription made with {@code receiveVideoFrom}.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 화면 공유를 카메라와 별도의 두 번째 송신 스트림으로 관리합니다.
+ * 화면 공유 엔드포인트에는 고해상도/저프레임 콘텐츠에 맞춘 대역폭 한도를 따로 적용하고,
+ * 시청자는 카메라 구독과 관계없이 {@code receiveScreenFrom}으로 화면만 구독할 수 있습니다.</p>
+ */
+@Component
+public class ScreenShareService {
+
+  private static final Logger log = LoggerFactory.getLogger(ScreenShareService.class);
+
+  private final int maxKbps;
+
+  private final int minKbps;
+
+  private final int maxFrameRate;
+
+  public ScreenShareService(@Value("${screenshare.max-kbps:2500}") int maxKbps,
+                            @Value("${screenshare.min-kbps:300}") int minKbps,
+                            @Value("${screenshare.max-frame-rate:5}") int maxFrameRate) {
+    this.maxKbps = maxKbps;
+    this.minKbps = minKbps;
+    this.maxFrameRate = maxFrameRate;
+  }
+
+  /**
+   * 화면 공유를 시작하고, 공유자에게는 캡처 조건을, 같은 회의실 참가자에게는 시작 알림을 보냅니다.
+   *
+   * @throws IllegalStateException 이미 화면을 공유 중인 경우
+   */
+  public void start(Room room, UserSession sharer) throws IOException {
+    sharer.startScreenShare(maxKbps, minKbps);
+    log.info("ROOM {}: USER {} started screen sharing", room.getRoomId(), sharer.getUserId());
+
+    // 클라이언트가 getDisplayMedia 제약 조건에 반영할 값
+    final JsonObject ready = new JsonObject();
+    ready.addProperty("action", "screenShareReady");
+    ready.addProperty("maxFrameRate", maxFrameRate);
+    ready.addProperty("maxKbps", maxKbps);
+    sharer.sendMessage(ready);
+
+    broadcast(room, sharer, "screenShareStarted");
+  }
+
+  public void stop(Room room, UserSession sharer) {
+    if (!sharer.isSharingScreen()) {
+      return;
+    }
+
+    for (final UserSession participant : room.getParticipants()) {
+      participant.cancelScreenFrom(sharer.getUserId());
+    }
+    sharer.stopScreenShare();
+    log.info("ROOM {}: USER {} stopped screen sharing", room.getRoomId(), sharer.getUserId());
+
+    broadcast(room, sharer, "screenShareStopped");
+  }
+
+  /**
+   * @throws IllegalStateException 송신자가 화면을 공유하고 있지 않은 경우
+   */
+  public void receive(UserSession viewer, UserSession sharer, String sdpOffer) throws IOException {
+    viewer.receiveScreenFrom(sharer, sdpOffer, maxKbps, minKbps);
+  }
+
+  private void broadcast(Room room, UserSession sharer, String action) {
+    final JsonObject message = new JsonObject();
+    message.addProperty("action", action);
+    message.addProperty("userId", sharer.getUserId());
+    message.addProperty("userName", sharer.getUserName());
+
+    for (final UserSession participant : room.getGroupMembers(sharer.getUserId())) {
+      try {
+        participant.sendMessage(message);
+      } catch (IOException e) {
+        log.debug("ROOM {}: participant {} could not be notified of {}", room.getRoomId(), participant.getUserId(), action);
+      }
+    }
+  }
+}
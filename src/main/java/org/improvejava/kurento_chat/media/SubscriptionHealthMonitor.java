@@ -0,0 +1,259 @@
+package org.improvejava.kurento_chat.media;
+
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.kurento.client.IceComponentState;
+import org.kurento.client.MediaFlowState;
+import org.kurento.client.MediaType;
+import org.kurento.client.WebRtcEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the ICE and media-flow state of every subscription (incoming endpoint) and recovers a broken one on
+ * its own, instead of the client leaving and rejoining the room.
+ *
+ * <p>
+ * A subscription is broken when its ICE connection fails, or when it stays disconnected or sends no media to the
+ * receiver for the stall timeout while the sender's media still reaches the server. Only that endpoint is
+ * released, and the receiver gets a {@code renegotiateVideo} message; it answers with a new
+ * {@code receiveVideoFrom} offer, which creates a fresh endpoint for the same sender. Kurento cannot restart ICE
+ * on an endpoint that has already negotiated, so replacing the single endpoint is the smallest renegotiation.
+ * The publisher's outgoing endpoint and the other subscriptions are not touched.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 모든 구독(수신 엔드포인트)의 ICE/미디어 흐름 상태를 지켜보다가, 문제가 생긴 구독만 복구합니다.
+ * ICE 연결이 실패하거나, 송신자의 미디어는 서버에 들어오는데 수신자에게 나가는 미디어가 유예 시간 동안 끊기면
+ * 그 엔드포인트만 해제하고 수신자에게 {@code renegotiateVideo}를 보냅니다. 클라이언트가 다시 보내는
+ * {@code receiveVideoFrom} offer로 같은 송신자의 새 엔드포인트가 만들어집니다.
+ * Kurento는 협상이 끝난 엔드포인트에서 ICE를 다시 시작할 수 없으므로 엔드포인트 하나를 새로 만드는 것이 가장 작은 재협상입니다.</p>
+ */
+@Component
+public class SubscriptionHealthMonitor {
+
+  private static final Logger log = LoggerFactory.getLogger(SubscriptionHealthMonitor.class);
+
+  public static final String REASON_ICE_FAILED = "iceFailed";
+  public static final String REASON_ICE_DISCONNECTED = "iceDisconnected";
+  public static final String REASON_MEDIA_STALLED = "mediaStalled";
+
+  private final long stallTimeoutMillis;
+
+  private final MeterRegistry meterRegistry;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  // "receiverId:senderId" -> 지켜보는 구독
+  private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+  // "receiverId:senderId" -> 복구를 시작한 시각(nanoTime). 새 엔드포인트로 미디어가 흐르면 복구 시간을 기록
+  private final ConcurrentMap<String, Long> recoveringSince = new ConcurrentHashMap<>();
+
+  private final Timer recoveryTimer;
+
+  private final Counter expiredRecoveries;
+
+  public SubscriptionHealthMonitor(@Value("${media.recovery.stall-timeout:10s}") Duration stallTimeout,
+                                   MeterRegistry meterRegistry) {
+    this.stallTimeoutMillis = stallTimeout.toMillis();
+    this.meterRegistry = meterRegistry;
+    this.recoveryTimer = Timer.builder("media.recovery.duration")
+            .description("Time from detecting a broken subscription until media flows on its replacement endpoint")
+            .register(meterRegistry);
+    this.expiredRecoveries = Counter.builder("media.recovery.expired")
+            .description("Broken subscriptions the client did not renegotiate in time")
+            .register(meterRegistry);
+    Gauge.builder("media.recovery.watched", subscriptions, Map::size).register(meterRegistry);
+
+    final long checkIntervalMillis = Math.max(stallTimeoutMillis / 2, 1);
+    scheduler.scheduleWithFixedDelay(this::checkSubscriptions, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * {@code receiveVideoFrom} 협상이 끝난 구독을 지켜보기 시작합니다. 같은 엔드포인트를 다시 넘기면 무시합니다.
+   */
+  public void watch(UserSession receiver, UserSession sender) {
+    final WebRtcEndpoint endpoint = receiver.getIncomingEndpointFrom(sender.getUserId());
+    if (endpoint == null) {
+      return;
+    }
+
+    final String key = key(receiver, sender.getUserId());
+    final Subscription subscription = new Subscription(key, receiver, sender, endpoint);
+    final Subscription previous = subscriptions.get(key);
+    if (previous != null && previous.endpoint == endpoint) {
+      return;
+    }
+    subscriptions.put(key, subscription);
+
+    endpoint.addIceComponentStateChangedListener(event -> onIceStateChanged(subscription, event.getState()));
+    endpoint.addMediaFlowOutStateChangedListener(event -> onMediaFlowChanged(subscription, event.getMediaType(), event.getState()));
+  }
+
+  private void onIceStateChanged(Subscription subscription, IceComponentState state) {
+    if (subscriptions.get(subscription.key) != subscription) {
+      return;
+    }
+
+    subscription.iceState = state;
+    if (state == IceComponentState.FAILED) {
+      // 이벤트 스레드에서 미디어 서버를 호출하지 않도록 넘김
+      scheduler.execute(() -> recover(subscription, REASON_ICE_FAILED));
+      return;
+    }
+    if (state == IceComponentState.CONNECTED || state == IceComponentState.READY) {
+      subscription.connected = true;
+    }
+    subscription.updateHealth();
+  }
+
+  private void onMediaFlowChanged(Subscription subscription, MediaType mediaType, MediaFlowState state) {
+    if (subscriptions.get(subscription.key) != subscription) {
+      return;
+    }
+
+    if (state == MediaFlowState.FLOWING) {
+      subscription.flowing.add(mediaType);
+      final Long since = recoveringSince.remove(subscription.key);
+      if (since != null) {
+        recoveryTimer.record(System.nanoTime() - since, TimeUnit.NANOSECONDS);
+        log.info("PARTICIPANT {}: subscription to {} recovered", subscription.receiver.getUserId(), subscription.sender.getUserId());
+      }
+    } else {
+      subscription.flowing.remove(mediaType);
+    }
+    subscription.updateHealth();
+  }
+
+  private void checkSubscriptions() {
+    try {
+      final long now = System.currentTimeMillis();
+      for (final Subscription subscription : subscriptions.values()) {
+        // 구독이 해제되었거나(퇴장, 화면 밖) 이미 다른 엔드포인트로 바뀐 경우
+        if (subscription.receiver.getIncomingEndpointFrom(subscription.sender.getUserId()) != subscription.endpoint) {
+          subscriptions.remove(subscription.key, subscription);
+          continue;
+        }
+
+        final long unhealthySince = subscription.unhealthySince;
+        if (unhealthySince == 0 || now - unhealthySince < stallTimeoutMillis) {
+          continue;
+        }
+        if (subscription.iceState == IceComponentState.DISCONNECTED) {
+          recover(subscription, REASON_ICE_DISCONNECTED);
+        } else if (isSenderFlowing(subscription.sender)) {
+          recover(subscription, REASON_MEDIA_STALLED);
+        }
+      }
+
+      // 클라이언트가 재협상하지 않은 복구는 포기
+      final long expireBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(stallTimeoutMillis * 6);
+      recoveringSince.entrySet().removeIf(entry -> {
+        if (entry.getValue() - expireBefore >= 0) {
+          return false;
+        }
+        expiredRecoveries.increment();
+        return true;
+      });
+    } catch (RuntimeException e) {
+      log.warn("Failed to check subscription health", e);
+    }
+  }
+
+  // 송신자의 미디어가 서버에 들어오지 않는 경우는 송신자 쪽 문제이므로 구독자를 재협상하지 않음
+  private boolean isSenderFlowing(UserSession sender) {
+    final WebRtcEndpoint outgoing = sender.getOutgoingWebRtcPeer();
+    return outgoing != null && (outgoing.isMediaFlowingIn(MediaType.AUDIO) || outgoing.isMediaFlowingIn(MediaType.VIDEO));
+  }
+
+  private void recover(Subscription subscription, String reason) {
+    if (!subscriptions.remove(subscription.key, subscription)) {
+      return;
+    }
+
+    final UserSession receiver = subscription.receiver;
+    final UserSession sender = subscription.sender;
+    if (!receiver.resetIncomingEndpoint(sender.getUserId(), subscription.endpoint)) {
+      return;
+    }
+
+    log.info("PARTICIPANT {}: subscription to {} is broken ({}), renegotiating it", receiver.getUserId(), sender.getUserId(), reason);
+    meterRegistry.counter("media.recovery.attempts", "reason", reason).increment();
+    recoveringSince.put(subscription.key, System.nanoTime());
+
+    final JsonObject message = new JsonObject();
+    message.addProperty("action", "renegotiateVideo");
+    message.addProperty("userId", sender.getUserId());
+    message.addProperty("userName", sender.getUserName());
+    message.addProperty("reason", reason);
+    try {
+      receiver.sendMessage(message);
+    } catch (IOException e) {
+      log.debug("PARTICIPANT {}: could not be asked to renegotiate {}", receiver.getUserId(), sender.getUserId());
+    }
+  }
+
+  private String key(UserSession receiver, String senderId) {
+    return receiver.getUserId() + ":" + senderId;
+  }
+
+  @PreDestroy
+  void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  private static final class Subscription {
+
+    private final String key;
+
+    private final UserSession receiver;
+
+    private final UserSession sender;
+
+    private final WebRtcEndpoint endpoint;
+
+    private final Set<MediaType> flowing = ConcurrentHashMap.newKeySet();
+
+    private volatile IceComponentState iceState;
+
+    private volatile boolean connected;
+
+    // 문제가 생긴 시각, 정상이면 0
+    private volatile long unhealthySince;
+
+    private Subscription(String key, UserSession receiver, UserSession sender, WebRtcEndpoint endpoint) {
+      this.key = key;
+      this.receiver = receiver;
+      this.sender = sender;
+      this.endpoint = endpoint;
+    }
+
+    // ICE 연결이 끊겼거나, 연결된 뒤 나가는 미디어가 하나도 없으면 문제 상태
+    private synchronized void updateHealth() {
+      final boolean unhealthy = iceState == IceComponentState.DISCONNECTED || (connected && flowing.isEmpty());
+      if (!unhealthy) {
+        unhealthySince = 0;
+      } else if (unhealthySince == 0) {
+        unhealthySince = System.currentTimeMillis();
+      }
+    }
+  }
+}
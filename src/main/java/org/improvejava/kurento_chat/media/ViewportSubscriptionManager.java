@@ -0,0 +1,148 @@
+package org.improvejava.kurento_chat.media;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import jakarta.annotation.PreDestroy;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscribes a receiver only to the senders visible in its video grid.
+ *
+ * <p>
+ * The client declares the visible senders; the server answers which of them still need a subscription
+ * (the client then sends {@code receiveVideoFrom} for those), and releases subscriptions that stayed
+ * off-screen for the hysteresis delay through {@link UserSession#cancelVideoFrom}. This keeps the number of
+ * incoming endpoints per receiver at the page size instead of the room size.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 수신자가 화면에 보이는 송신자에게만 구독하도록 관리합니다.
+ * 클라이언트가 보이는 송신자 목록을 알려 주면 새로 구독해야 할 송신자를 응답하고,
+ * 화면 밖으로 나간 구독은 유예 시간이 지난 뒤 {@link UserSession#cancelVideoFrom}으로 해제합니다.</p>
+ */
+@Component
+public class ViewportSubscriptionManager {
+
+  private static final Logger log = LoggerFactory.getLogger(ViewportSubscriptionManager.class);
+
+  private final long hysteresisMillis;
+
+  private final BandwidthController bandwidthController;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  // "receiverId:senderId" -> 예약된 구독 해제 작업
+  private final ConcurrentMap<String, ScheduledFuture<?>> pendingUnsubscribes = new ConcurrentHashMap<>();
+
+  public ViewportSubscriptionManager(@Value("${subscription.hysteresis:5s}") Duration hysteresis,
+                                     BandwidthController bandwidthController) {
+    this.hysteresisMillis = hysteresis.toMillis();
+    this.bandwidthController = bandwidthController;
+  }
+
+  /**
+   * 수신자의 화면에 보이는 송신자 목록을 갱신합니다.
+   *
+   * @param receiver 목록을 보낸 사용자
+   * @param visibleSenderIds 화면에 보이는 송신자 userId 목록
+   */
+  public void updateVisibleSenders(UserSession receiver, Set<String> visibleSenderIds) throws IOException {
+    receiver.setVisibleSenderIds(visibleSenderIds);
+
+    final JsonArray toSubscribe = new JsonArray();
+    for (final String senderId : visibleSenderIds) {
+      // 예약된 해제 작업과 같은 키의 compute 안에서 취소하므로, 해제가 이미 끝났다면 아래에서 다시 구독함
+      pendingUnsubscribes.computeIfPresent(key(receiver, senderId), (k, pending) -> {
+        pending.cancel(false);
+        return null;
+      });
+      if (!senderId.equals(receiver.getUserId()) && !receiver.isReceivingFrom(senderId)) {
+        toSubscribe.add(senderId);
+      }
+    }
+
+    for (final String senderId : receiver.getReceivingSenderIds()) {
+      if (!visibleSenderIds.contains(senderId)) {
+        scheduleUnsubscribe(receiver, senderId);
+      }
+    }
+
+    final JsonObject response = new JsonObject();
+    response.addProperty("action", "visibleSendersUpdated");
+    response.add("subscribe", toSubscribe);
+    receiver.sendMessage(response);
+  }
+
+  /**
+   * 나간 사용자가 수신자이거나 송신자인 예약된 구독 해제 작업을 모두 취소합니다.
+   *
+   * @param user 방을 나간 사용자
+   */
+  public void forget(UserSession user) {
+    final String userId = user.getUserId();
+    for (final String key : pendingUnsubscribes.keySet()) {
+      if (key.startsWith(userId + ":") || key.endsWith(":" + userId)) {
+        pendingUnsubscribes.computeIfPresent(key, (k, pending) -> {
+          pending.cancel(false);
+          return null;
+        });
+      }
+    }
+  }
+
+  private void scheduleUnsubscribe(UserSession receiver, String senderId) {
+    pendingUnsubscribes.computeIfAbsent(key(receiver, senderId), k -> scheduler.schedule(
+            () -> unsubscribeIfStillHidden(receiver, senderId, k), hysteresisMillis, TimeUnit.MILLISECONDS));
+  }
+
+  private void unsubscribeIfStillHidden(UserSession receiver, String senderId, String key) {
+    // 확인과 해제를 같은 키의 compute 안에서 해서, 그 사이 다시 화면에 들어온 송신자를 해제하지 않도록 함
+    // 항목이 없으면 이미 취소되었거나 사용자가 나간 것
+    final boolean[] unsubscribed = {false};
+    pendingUnsubscribes.computeIfPresent(key, (k, pending) -> {
+      if (!receiver.isSenderVisible(senderId) && receiver.isReceivingFrom(senderId)) {
+        receiver.cancelVideoFrom(senderId);
+        unsubscribed[0] = true;
+      }
+      return null;
+    });
+    if (!unsubscribed[0]) {
+      return;
+    }
+
+    log.debug("PARTICIPANT {}: {} stayed off-screen for {} ms, unsubscribing", receiver.getUserId(), senderId, hysteresisMillis);
+    // 받는 스트림이 줄었으므로 남은 구독에 대역폭을 더 나눠 줌
+    bandwidthController.subscriptionsChanged(receiver);
+    final JsonObject message = new JsonObject();
+    message.addProperty("action", "videoUnsubscribed");
+    message.addProperty("userId", senderId);
+    try {
+      receiver.sendMessage(message);
+    } catch (IOException e) {
+      log.debug("PARTICIPANT {}: could not be notified of unsubscription from {}", receiver.getUserId(), senderId);
+    }
+  }
+
+  private String key(UserSession receiver, String senderId) {
+    return receiver.getUserId() + ":" + senderId;
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    scheduler.shutdownNow();
+  }
+}
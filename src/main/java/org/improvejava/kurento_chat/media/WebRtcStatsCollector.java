@@ -0,0 +1,545 @@
+package org.improvejava.kurento_chat.media;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.improvejava.kurento_chat.room.Room;
+import org.improvejava.kurento_chat.room.RoomManager;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.kurento.client.Continuation;
+import org.kurento.client.RTCInboundRTPStreamStats;
+import org.kurento.client.RTCOutboundRTPStreamStats;
+import org.kurento.client.Stats;
+import org.kurento.client.WebRtcEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Samples the inbound RTP stats of every participant's outgoing endpoint, and the loss and jitter its
+ * subscriptions report back from the receiving side, in the background and keeps a bounded time series
+ * per participant and per room.
+ *
+ * <p>
+ * Stats are requested asynchronously and at most {@code maxInFlight} requests are outstanding on each
+ * media server at any time, so a slow server does not hold back collection on the others; a participant's
+ * endpoints are queried one after another under a single permit, which is given back after {@code requestTimeout} even if the media server never answers. Each participant
+ * has its own sampling interval, which starts at
+ * {@code minInterval}, doubles up to {@code maxInterval} while the stream is stable, and drops back to
+ * {@code minInterval} when loss or bitrate changes. The series name rooms and participants, so they are
+ * exposed only over local JMX as the {@code webrtcstats} actuator endpoint.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 참가자별 송신 엔드포인트의 수신 RTP 통계와 수신 엔드포인트에서 보고된 상대편 손실/지터를 백그라운드에서 수집하고, 참가자/방 단위로 크기가 정해진 시계열로 보관합니다.
+ * 미디어 서버마다 동시에 보내는 요청 수를 {@code maxInFlight}로 제한하고(응답이 없으면 {@code requestTimeout} 뒤 반납), 스트림이 안정적이면 수집 주기를 늘리고
+ * 손실이나 비트레이트 변화가 생기면 다시 줄입니다. 결과에는 방/참가자 식별자가 들어 있으므로 HTTP가 아니라 로컬 JMX의 {@code webrtcstats} actuator 엔드포인트로만 확인할 수 있습니다.</p>
+ */
+@Component
+@JmxEndpoint(id = "webrtcstats")
+public class WebRtcStatsCollector {
+
+  private static final Logger log = LoggerFactory.getLogger(WebRtcStatsCollector.class);
+
+  private static final long TICK_MILLIS = 1000;
+
+  // 이 손실률을 넘거나 비트레이트가 이 비율 이상 바뀌면 수집 주기를 최소로 되돌림
+  private static final double UNSTABLE_LOSS_FRACTION = 0.02;
+  private static final double UNSTABLE_BITRATE_CHANGE = 0.3;
+
+  private final RoomManager roomManager;
+
+  private final long minIntervalMillis;
+
+  private final long maxIntervalMillis;
+
+  private final int historySize;
+
+  private final long requestTimeoutMillis;
+
+  private final int maxInFlight;
+
+  // 미디어 서버 URL -> 그 서버에 나가 있는 요청 수를 제한하는 허가. 느린 서버 하나가 다른 서버의 수집을 막지 않게 서버마다 따로 둠
+  private final ConcurrentMap<String, Semaphore> inFlightByServer = new ConcurrentHashMap<>();
+
+  private final String primaryServerUrl;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "webrtc-stats");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final ConcurrentMap<String, RoomSeries> seriesByRoomId = new ConcurrentHashMap<>();
+
+  @Autowired
+  public WebRtcStatsCollector(RoomManager roomManager,
+                              @Value("${kms.url:ws://localhost:8888/kurento}") String primaryServerUrl,
+                              @Value("${stats.max-in-flight:8}") int maxInFlight,
+                              @Value("${stats.min-interval:5s}") Duration minInterval,
+                              @Value("${stats.max-interval:40s}") Duration maxInterval,
+                              @Value("${stats.history-size:60}") int historySize,
+                              @Value("${stats.request-timeout:10s}") Duration requestTimeout) {
+    this.roomManager = roomManager;
+    this.primaryServerUrl = primaryServerUrl;
+    this.maxInFlight = maxInFlight;
+    this.minIntervalMillis = minInterval.toMillis();
+    this.maxIntervalMillis = maxInterval.toMillis();
+    this.historySize = historySize;
+    this.requestTimeoutMillis = requestTimeout.toMillis();
+
+    scheduler.scheduleWithFixedDelay(this::tickSafely, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  @ReadOperation
+  public List<RoomStats> rooms() {
+    final List<RoomStats> rooms = new ArrayList<>();
+    for (final RoomSeries series : seriesByRoomId.values()) {
+      rooms.add(series.toView(false));
+    }
+    return rooms;
+  }
+
+  @ReadOperation
+  public RoomStats room(@Selector String roomId) {
+    final RoomSeries series = seriesByRoomId.get(roomId);
+    return series == null ? null : series.toView(true);
+  }
+
+  private void tickSafely() {
+    try {
+      tick();
+    } catch (RuntimeException e) {
+      log.warn("WebRTC stats collection failed", e);
+    }
+  }
+
+  private void tick() {
+    final long now = System.currentTimeMillis();
+    final Set<String> liveRoomIds = new HashSet<>();
+    final Set<String> saturatedServers = new HashSet<>();
+
+    for (final Room room : roomManager.getRooms()) {
+      liveRoomIds.add(room.getRoomId());
+      final RoomSeries roomSeries = seriesByRoomId.computeIfAbsent(room.getRoomId(), RoomSeries::new);
+      final String server = serverOf(room);
+      final Semaphore inFlight = inFlightByServer.computeIfAbsent(server, url -> new Semaphore(maxInFlight));
+
+      final Set<String> liveUserIds = new HashSet<>();
+      for (final UserSession participant : room.getParticipants()) {
+        liveUserIds.add(participant.getUserId());
+        final ParticipantSeries series = roomSeries.participants.computeIfAbsent(participant.getUserId(),
+                userId -> new ParticipantSeries(userId, minIntervalMillis));
+
+        if (now < series.nextSampleAtMillis || series.pending) {
+          continue;
+        }
+        // 이 미디어 서버에 나가 있는 요청이 상한에 도달하면 이 서버의 나머지는 다음 틱으로 미룸
+        if (saturatedServers.contains(server) || !inFlight.tryAcquire()) {
+          saturatedServers.add(server);
+          continue;
+        }
+        requestStats(participant, series, inFlight);
+      }
+      roomSeries.participants.keySet().retainAll(liveUserIds);
+      roomSeries.aggregate(now, historySize);
+    }
+
+    seriesByRoomId.keySet().retainAll(liveRoomIds);
+  }
+
+  private void requestStats(UserSession participant, ParticipantSeries series, Semaphore inFlight) {
+    series.pending = true;
+    new StatsRequest(participant, series, inFlight).start();
+  }
+
+  // 방 파이프라인과 참가자 엔드포인트는 모두 기본 미디어 서버에 있음. 웨비나 중계 파이프라인은 다른 서버에 있을 수 있으나 수집 대상이 아님
+  private String serverOf(Room room) {
+    return primaryServerUrl;
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * 참가자 한 명의 송신 엔드포인트와 수신 엔드포인트 통계를 차례로 요청함. 끝나거나 실패하거나 시간 제한이 지나면
+   * 가장 먼저 도착한 쪽만 허가를 반납함
+   */
+  private final class StatsRequest {
+
+    private final UserSession participant;
+
+    private final ParticipantSeries series;
+
+    private final Semaphore inFlight;
+
+    private final Deque<String> senderIds;
+
+    private final Map<String, Map<String, Stats>> incomingStats = new HashMap<>();
+
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private volatile ScheduledFuture<?> timeout;
+
+    private Map<String, Stats> outgoingStats;
+
+    private StatsRequest(UserSession participant, ParticipantSeries series, Semaphore inFlight) {
+      this.participant = participant;
+      this.series = series;
+      this.inFlight = inFlight;
+      this.senderIds = new ArrayDeque<>(participant.getReceivingSenderIds());
+    }
+
+    private void start() {
+      timeout = scheduler.schedule(() -> fail("timed out"), requestTimeoutMillis, TimeUnit.MILLISECONDS);
+      request(participant.getOutgoingWebRtcPeer(), null);
+    }
+
+    private void request(WebRtcEndpoint endpoint, String senderId) {
+      final Continuation<Map<String, Stats>> continuation = new Continuation<Map<String, Stats>>() {
+        @Override
+        public void onSuccess(Map<String, Stats> result) throws Exception {
+          if (senderId == null) {
+            outgoingStats = result;
+          } else {
+            incomingStats.put(senderId, result);
+          }
+          requestNext();
+        }
+
+        @Override
+        public void onError(Throwable cause) throws Exception {
+          failed(senderId, cause);
+        }
+      };
+      try {
+        endpoint.getStats(continuation);
+      } catch (RuntimeException e) {
+        failed(senderId, e);
+      }
+    }
+
+    // 구독 중 해제된 수신 엔드포인트는 건너뛰고, 송신 엔드포인트가 실패하면 이번 샘플을 버림
+    private void failed(String senderId, Throwable cause) {
+      if (senderId != null) {
+        log.trace("USER {}: could not get WebRTC stats of subscription to {}", participant.getUserId(), senderId, cause);
+        requestNext();
+        return;
+      }
+      log.debug("USER {}: could not get WebRTC stats", participant.getUserId(), cause);
+      fail("failed");
+    }
+
+    private void requestNext() {
+      if (finished.get()) {
+        return;
+      }
+      while (!senderIds.isEmpty()) {
+        final String senderId = senderIds.pollFirst();
+        final WebRtcEndpoint incoming = participant.getIncomingEndpointFrom(senderId);
+        if (incoming != null) {
+          request(incoming, senderId);
+          return;
+        }
+      }
+
+      if (!claim()) {
+        return;
+      }
+      try {
+        series.record(outgoingStats, incomingStats, historySize, minIntervalMillis, maxIntervalMillis);
+      } finally {
+        release();
+      }
+    }
+
+    private void fail(String reason) {
+      if (!claim()) {
+        return;
+      }
+      log.debug("USER {}: WebRTC stats request {}", participant.getUserId(), reason);
+      series.nextSampleAtMillis = System.currentTimeMillis() + maxIntervalMillis;
+      release();
+    }
+
+    private boolean claim() {
+      if (!finished.compareAndSet(false, true)) {
+        return false;
+      }
+      final ScheduledFuture<?> pendingTimeout = timeout;
+      if (pendingTimeout != null) {
+        pendingTimeout.cancel(false);
+      }
+      return true;
+    }
+
+    private void release() {
+      series.pending = false;
+      inFlight.release();
+    }
+  }
+
+  private static final class RoomSeries {
+
+    private final String roomId;
+
+    private final ConcurrentMap<String, ParticipantSeries> participants = new ConcurrentHashMap<>();
+
+    private final Deque<RoomSample> samples = new ArrayDeque<>();
+
+    private long lastAggregatedAtMillis;
+
+    private RoomSeries(String roomId) {
+      this.roomId = roomId;
+    }
+
+    // 마지막 집계 이후 새 참가자 샘플이 있을 때만 방 샘플을 추가
+    private synchronized void aggregate(long now, int historySize) {
+      long bitrateKbps = 0;
+      double lossSum = 0;
+      double maxJitter = 0;
+      double receiveLossSum = 0;
+      double maxReceiveJitter = 0;
+      int count = 0;
+      boolean updated = false;
+
+      for (final ParticipantSeries series : participants.values()) {
+        final Sample latest = series.latest();
+        if (latest == null) {
+          continue;
+        }
+        updated |= latest.getAt().toEpochMilli() > lastAggregatedAtMillis;
+        bitrateKbps += latest.getBitrateKbps();
+        lossSum += latest.getPacketLossFraction();
+        maxJitter = Math.max(maxJitter, latest.getJitter());
+        receiveLossSum += latest.getReceivePacketLossFraction();
+        maxReceiveJitter = Math.max(maxReceiveJitter, latest.getReceiveJitter());
+        count++;
+      }
+
+      if (!updated || count == 0) {
+        return;
+      }
+
+      lastAggregatedAtMillis = now;
+      if (samples.size() == historySize) {
+        samples.pollFirst();
+      }
+      samples.addLast(new RoomSample(Instant.ofEpochMilli(now), count, bitrateKbps, lossSum / count, maxJitter,
+              receiveLossSum / count, maxReceiveJitter));
+    }
+
+    private synchronized RoomStats toView(boolean withHistory) {
+      final List<ParticipantStats> participantStats = new ArrayList<>();
+      for (final ParticipantSeries series : participants.values()) {
+        participantStats.add(series.toView(withHistory));
+      }
+      final List<RoomSample> roomSamples = withHistory
+              ? List.copyOf(samples)
+              : samples.isEmpty() ? List.of() : List.of(samples.peekLast());
+      return new RoomStats(roomId, roomSamples, participantStats);
+    }
+  }
+
+  private static final class ParticipantSeries {
+
+    private final String userId;
+
+    private final Deque<Sample> samples = new ArrayDeque<>();
+
+    private volatile long nextSampleAtMillis;
+
+    private volatile boolean pending;
+
+    private long intervalMillis;
+
+    private long lastBytes = -1;
+
+    private long lastPacketsReceived;
+
+    private long lastPacketsLost;
+
+    private long lastTimestampMillis;
+
+    // 송신자 userId -> 해당 수신 엔드포인트의 {보낸 패킷 수, 상대편이 보고한 손실 패킷 수}
+    private Map<String, long[]> lastIncomingCounters = Map.of();
+
+    private ParticipantSeries(String userId, long initialIntervalMillis) {
+      this.userId = userId;
+      this.intervalMillis = initialIntervalMillis;
+    }
+
+    private synchronized void record(Map<String, Stats> stats, Map<String, Map<String, Stats>> incomingStats,
+                                     int historySize, long minIntervalMillis, long maxIntervalMillis) {
+      long bytes = 0;
+      long packetsReceived = 0;
+      long packetsLost = 0;
+      double jitter = 0;
+      for (final Stats value : stats.values()) {
+        if (value instanceof RTCInboundRTPStreamStats inbound && !inbound.getIsRemote()) {
+          bytes += inbound.getBytesReceived();
+          packetsReceived += inbound.getPacketsReceived();
+          packetsLost += inbound.getPacketsLost();
+          jitter = Math.max(jitter, inbound.getJitter());
+        }
+      }
+
+      // 수신 엔드포인트에서는 이 참가자가 RTCP로 보고한 손실과 지터를 봄. 이번에 처음 보이는 구독은 다음 샘플부터 반영
+      long sentDelta = 0;
+      long lostDelta = 0;
+      double receiveJitter = 0;
+      final Map<String, long[]> incomingCounters = new HashMap<>();
+      for (final Map.Entry<String, Map<String, Stats>> entry : incomingStats.entrySet()) {
+        long sent = 0;
+        long lostAtReceiver = 0;
+        for (final Stats value : entry.getValue().values()) {
+          if (value instanceof RTCOutboundRTPStreamStats outbound) {
+            sent += outbound.getPacketsSent();
+            lostAtReceiver += outbound.getPacketsLost();
+          } else if (value instanceof RTCInboundRTPStreamStats remote && remote.getIsRemote()) {
+            receiveJitter = Math.max(receiveJitter, remote.getJitter());
+          }
+        }
+        incomingCounters.put(entry.getKey(), new long[]{sent, lostAtReceiver});
+        final long[] last = lastIncomingCounters.get(entry.getKey());
+        if (last != null) {
+          sentDelta += Math.max(0, sent - last[0]);
+          lostDelta += Math.max(0, lostAtReceiver - last[1]);
+        }
+      }
+      final double receiveLossFraction = sentDelta == 0 ? 0 : Math.min(1, (double) lostDelta / sentDelta);
+
+      final long now = System.currentTimeMillis();
+      if (lastBytes >= 0 && now > lastTimestampMillis) {
+        final long bitrateKbps = Math.max(0, bytes - lastBytes) * 8 / (now - lastTimestampMillis);
+        final long received = Math.max(0, packetsReceived - lastPacketsReceived);
+        final long lost = Math.max(0, packetsLost - lastPacketsLost);
+        final double lossFraction = received + lost == 0 ? 0 : (double) lost / (received + lost);
+
+        final Sample previous = latest();
+        final boolean unstable = lossFraction > UNSTABLE_LOSS_FRACTION
+                || receiveLossFraction > UNSTABLE_LOSS_FRACTION
+                || previous != null && Math.abs(bitrateKbps - previous.getBitrateKbps()) > previous.getBitrateKbps() * UNSTABLE_BITRATE_CHANGE;
+        intervalMillis = unstable ? minIntervalMillis : Math.min(maxIntervalMillis, intervalMillis * 2);
+
+        if (samples.size() == historySize) {
+          samples.pollFirst();
+        }
+        samples.addLast(new Sample(Instant.ofEpochMilli(now), bitrateKbps, lossFraction, jitter, receiveLossFraction, receiveJitter));
+      }
+
+      lastBytes = bytes;
+      lastPacketsReceived = packetsReceived;
+      lastPacketsLost = packetsLost;
+      lastIncomingCounters = incomingCounters;
+      lastTimestampMillis = now;
+      nextSampleAtMillis = now + intervalMillis;
+    }
+
+    private synchronized Sample latest() {
+      return samples.peekLast();
+    }
+
+    private synchronized ParticipantStats toView(boolean withHistory) {
+      final List<Sample> participantSamples = withHistory
+              ? List.copyOf(samples)
+              : samples.isEmpty() ? List.of() : List.of(samples.peekLast());
+      return new ParticipantStats(userId, intervalMillis, participantSamples);
+    }
+  }
+
+  @Getter
+  public static class RoomStats {
+    private final String roomId;
+    private final List<RoomSample> samples;
+    private final List<ParticipantStats> participants;
+
+    RoomStats(String roomId, List<RoomSample> samples, List<ParticipantStats> participants) {
+      this.roomId = roomId;
+      this.samples = samples;
+      this.participants = participants;
+    }
+  }
+
+  @Getter
+  public static class ParticipantStats {
+    private final String userId;
+    private final long samplingIntervalMillis;
+    private final List<Sample> samples;
+
+    ParticipantStats(String userId, long samplingIntervalMillis, List<Sample> samples) {
+      this.userId = userId;
+      this.samplingIntervalMillis = samplingIntervalMillis;
+      this.samples = samples;
+    }
+  }
+
+  @Getter
+  public static class Sample {
+    private final Instant at;
+    private final long bitrateKbps;
+    private final double packetLossFraction;
+    private final double jitter;
+    // 이 참가자가 구독 스트림에 대해 보고한 손실률과 지터
+    private final double receivePacketLossFraction;
+    private final double receiveJitter;
+
+    Sample(Instant at, long bitrateKbps, double packetLossFraction, double jitter,
+           double receivePacketLossFraction, double receiveJitter) {
+      this.at = at;
+      this.bitrateKbps = bitrateKbps;
+      this.packetLossFraction = packetLossFraction;
+      this.jitter = jitter;
+      this.receivePacketLossFraction = receivePacketLossFraction;
+      this.receiveJitter = receiveJitter;
+    }
+  }
+
+  @Getter
+  public static class RoomSample {
+    private final Instant at;
+    private final int participants;
+    // 참가자 송신 비트레이트 합계
+    private final long bitrateKbps;
+    private final double averagePacketLossFraction;
+    private final double maxJitter;
+    private final double averageReceivePacketLossFraction;
+    private final double maxReceiveJitter;
+
+    RoomSample(Instant at, int participants, long bitrateKbps, double averagePacketLossFraction, double maxJitter,
+               double averageReceivePacketLossFraction, double maxReceiveJitter) {
+      this.at = at;
+      this.participants = participants;
+      this.bitrateKbps = bitrateKbps;
+      this.averagePacketLossFraction = averagePacketLossFraction;
+      this.maxJitter = maxJitter;
+      this.averageReceivePacketLossFraction = averageReceivePacketLossFraction;
+      this.maxReceiveJitter = maxReceiveJitter;
+    }
+  }
+}
@@ -19,7 +19,10 @@ public class MessageParser {
         return new JoinRoomDTO(receivedMessage.get("userName").getAsString(),
                 receivedMessage.get("roomId").getAsString(),
                 receivedMessage.get("audioOn").getAsBoolean(),
-                receivedMessage.get("videoOn").getAsBoolean());
+                receivedMessage.get("videoOn").getAsBoolean(),
+                receivedMessage.has("role") && "presenter".equals(receivedMessage.get("role").getAsString()),
+                receivedMessage.has("previousUserId") ? receivedMessage.get("previousUserId").getAsString() : null,
+                receivedMessage.has("resumeToken") ? receivedMessage.get("resumeToken").getAsString() : null);
     }
 
     /**
@@ -28,7 +31,9 @@ public class MessageParser {
     public CreateRoomDTO parseForCreateRoom(JsonObject receivedMessage) {
         return new CreateRoomDTO(receivedMessage.get("userName").getAsString(),
                 receivedMessage.get("audioOn").getAsBoolean(),
-                receivedMessage.get("videoOn").getAsBoolean());
+                receivedMessage.get("videoOn").getAsBoolean(),
+                receivedMessage.has("maxParticipants") ? receivedMessage.get("maxParticipants").getAsInt() : 0,
+                receivedMessage.has("roomType") && "webinar".equals(receivedMessage.get("roomType").getAsString()));
     }
 
     /**
@@ -0,0 +1,261 @@
+package org.improvejava.kurento_chat.room;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control based on the number of {@code WebRtcEndpoint}s a room costs on the media server.
+ *
+ * <p>
+ * A room with N participants holds N outgoing endpoints and N(N-1) incoming endpoints, i.e. N² in total,
+ * so admitting one more participant costs 2N+1 endpoints. Joins are rejected when that cost would exceed
+ * the per-room or per-server budget, or when the room's participant cap is reached. Seats are keyed by userId, so
+ * the same user joining twice is only counted once.
+ * </p>
+ *
+ * <p>
+ * The cost stays at the worst case even though receivers subscribe lazily to the senders visible in their grid:
+ * the grid size is chosen by the client, and clients that never send {@code updateVisibleSenders} subscribe to
+ * every sender, so the server cannot bound a participant's incoming endpoints below N-1.
+ * </p>
+ *
+ * <p>
+ * Webinar viewers are not participants and do not count against the room budget, but when no edge media
+ * servers are configured their endpoints live on this media server, so each viewer is charged one endpoint
+ * per presenter against the server budget.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 방이 미디어 서버에서 차지하는 {@code WebRtcEndpoint} 개수를 기준으로 입장을 제어합니다.
+ * N명이 있는 방은 송신 엔드포인트 N개와 수신 엔드포인트 N(N-1)개, 즉 N²개를 사용하므로 한 명이 더 들어오면 2N+1개가 늘어납니다.
+ * 이 비용이 방 또는 서버 예산을 넘거나 방 인원 제한에 걸리면 입장을 거절합니다. 같은 userId는 한 자리로만 셉니다.
+ * 화면에 보이는 송신자만 구독하더라도 화면 크기는 클라이언트가 정하고 목록을 보내지 않는 클라이언트는 모두를 구독하므로 최악의 경우로 계산합니다.
+ * 중계 미디어 서버가 없으면 웨비나 시청자도 이 서버에 엔드포인트를 만들므로, 시청자마다 발표자 수만큼 서버 예산을 잡습니다.</p>
+ */
+@Component
+public class AdmissionController {
+
+  private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+  // 현재 노드는 미디어 서버 하나에만 연결되므로 서버 예산은 노드 전체 예산과 같음
+  private final long maxEndpointsPerServer;
+
+  private final long maxEndpointsPerRoom;
+
+  private final int maxParticipantsPerRoom;
+
+  private final AtomicLong serverEndpoints = new AtomicLong();
+
+  private final ConcurrentMap<String, RoomBudget> budgetsByRoomId = new ConcurrentHashMap<>();
+
+  private final MeterRegistry meterRegistry;
+
+  @Autowired
+  public AdmissionController(MeterRegistry meterRegistry,
+                             @Value("${admission.max-endpoints-per-server:2000}") long maxEndpointsPerServer,
+                             @Value("${admission.max-endpoints-per-room:500}") long maxEndpointsPerRoom,
+                             @Value("${admission.max-participants-per-room:0}") int maxParticipantsPerRoom) {
+    this.meterRegistry = meterRegistry;
+    this.maxEndpointsPerServer = maxEndpointsPerServer;
+    this.maxEndpointsPerRoom = maxEndpointsPerRoom;
+    this.maxParticipantsPerRoom = maxParticipantsPerRoom;
+
+    meterRegistry.gauge("admission.server.endpoints", serverEndpoints);
+  }
+
+  /**
+   * 새 방의 첫 참가자(엔드포인트 1개)를 받을 수 있는지 확인하고 예산을 미리 잡아 둡니다.
+   * 파이프라인을 만들기 전에 호출하며, 방 생성에 실패하면 {@link #cancelNewRoom()}으로 되돌려야 합니다.
+   */
+  public void reserveNewRoom() {
+    reserveServerEndpoints(1);
+  }
+
+  public void cancelNewRoom() {
+    serverEndpoints.addAndGet(-1);
+  }
+
+  /**
+   * 미리 잡아 둔 첫 참가자 예산을 생성된 방에 연결합니다.
+   *
+   * @param maxParticipants 방별 인원 제한, 0 이하이면 기본 설정을 따름
+   */
+  public void registerRoom(String roomId, int maxParticipants, String ownerUserId) {
+    final RoomBudget budget = new RoomBudget(capFor(maxParticipants));
+    budget.userIds.add(ownerUserId);
+    budgetsByRoomId.put(roomId, budget);
+  }
+
+  /**
+   * 재시작 후 참가자 없이 복구된 방을 등록합니다. 첫 입장자도 {@link #admitJoin(String, String)}으로 예산을 잡습니다.
+   */
+  public void registerRestoredRoom(String roomId, int maxParticipants) {
+    budgetsByRoomId.put(roomId, new RoomBudget(capFor(maxParticipants)));
+  }
+
+  private int capFor(int maxParticipants) {
+    int cap = maxParticipantsPerRoom;
+    if (maxParticipants > 0) {
+      cap = cap > 0 ? Math.min(cap, maxParticipants) : maxParticipants;
+    }
+    return cap;
+  }
+
+  /**
+   * 방에 한 명을 더 받을 수 있는지 확인하고, 가능하면 예산을 잡습니다.
+   *
+   * @return 새로 자리를 잡았으면 {@code true}, 이미 같은 userId로 자리를 잡아 두었으면 {@code false}
+   * @throws AdmissionRejectedException 인원 제한이나 엔드포인트 예산을 넘는 경우
+   */
+  public boolean admitJoin(String roomId, String userId) {
+    final RoomBudget budget = budgetsByRoomId.get(roomId);
+    if (budget == null) {
+      throw new IllegalArgumentException("Room with id " + roomId + " not found");
+    }
+
+    synchronized (budget) {
+      if (budget.userIds.contains(userId)) {
+        return false;
+      }
+      final int seats = budget.userIds.size();
+      if (budget.maxParticipants > 0 && seats >= budget.maxParticipants) {
+        throw reject(roomId, "roomFull", "방 인원이 가득 차서 입장할 수 없습니다.");
+      }
+
+      final long joinCost = 2L * seats + 1;
+      if ((long) seats * seats + joinCost > maxEndpointsPerRoom) {
+        throw reject(roomId, "roomBudgetExceeded", "방의 미디어 처리 한도를 넘어 입장할 수 없습니다.");
+      }
+
+      reserveServerEndpoints(joinCost, roomId);
+      budget.userIds.add(userId);
+      return true;
+    }
+  }
+
+  /**
+   * 참가자 한 명이 나갈 때 그만큼의 예산(2N-1)을 돌려줍니다.
+   */
+  public void leave(String roomId, String userId) {
+    final RoomBudget budget = budgetsByRoomId.get(roomId);
+    if (budget == null) {
+      return;
+    }
+
+    synchronized (budget) {
+      final int seats = budget.userIds.size();
+      if (!budget.userIds.remove(userId)) {
+        return;
+      }
+      serverEndpoints.addAndGet(-(2L * seats - 1));
+    }
+  }
+
+  /**
+   * 웨비나 시청자의 엔드포인트를 이 미디어 서버에 만들 수 있는지 확인하고 서버 예산을 잡습니다.
+   * 시청자는 방 참가자가 아니므로 방 예산과 인원 제한에는 들어가지 않습니다.
+   *
+   * @param cost 시청자가 만들 수신 엔드포인트 수 (발표자 수)
+   * @return 새로 예산을 잡았으면 {@code true}, 이미 같은 userId로 잡아 두었으면 {@code false}
+   * @throws AdmissionRejectedException 서버 예산을 넘는 경우
+   */
+  public boolean admitViewer(String roomId, String userId, long cost) {
+    final RoomBudget budget = budgetsByRoomId.get(roomId);
+    if (budget == null) {
+      throw new IllegalArgumentException("Room with id " + roomId + " not found");
+    }
+
+    synchronized (budget) {
+      if (budget.viewerCosts.containsKey(userId)) {
+        return false;
+      }
+      reserveServerEndpoints(cost, roomId);
+      budget.viewerCosts.put(userId, cost);
+      return true;
+    }
+  }
+
+  /**
+   * 시청자가 나갈 때 잡아 두었던 서버 예산을 돌려줍니다. 예산을 잡지 않은 시청자면 아무 일도 하지 않습니다.
+   */
+  public void leaveViewer(String roomId, String userId) {
+    final RoomBudget budget = budgetsByRoomId.get(roomId);
+    if (budget == null) {
+      return;
+    }
+
+    synchronized (budget) {
+      final Long cost = budget.viewerCosts.remove(userId);
+      if (cost != null) {
+        serverEndpoints.addAndGet(-cost);
+      }
+    }
+  }
+
+  // 방이 사라질 때 남아 있던 예산을 모두 돌려줌
+  public void forgetRoom(String roomId) {
+    final RoomBudget budget = budgetsByRoomId.remove(roomId);
+    if (budget == null) {
+      return;
+    }
+
+    synchronized (budget) {
+      final long seats = budget.userIds.size();
+      final long viewerCost = budget.viewerCosts.values().stream().mapToLong(Long::longValue).sum();
+      serverEndpoints.addAndGet(-(seats * seats + viewerCost));
+      budget.userIds.clear();
+      budget.viewerCosts.clear();
+    }
+  }
+
+  public long getServerEndpoints() {
+    return serverEndpoints.get();
+  }
+
+  private void reserveServerEndpoints(long cost) {
+    reserveServerEndpoints(cost, null);
+  }
+
+  private void reserveServerEndpoints(long cost, String roomId) {
+    long current;
+    do {
+      current = serverEndpoints.get();
+      if (current + cost > maxEndpointsPerServer) {
+        throw reject(roomId, "serverBusy", "미디어 서버가 처리할 수 있는 한도를 넘어 요청을 받을 수 없습니다.");
+      }
+    } while (!serverEndpoints.compareAndSet(current, current + cost));
+  }
+
+  private AdmissionRejectedException reject(String roomId, String reason, String message) {
+    meterRegistry.counter("admission.rejected", "reason", reason).increment();
+    log.info("ROOM {}: admission rejected ({}), server endpoints {} / {}", roomId, reason, serverEndpoints.get(), maxEndpointsPerServer);
+    return new AdmissionRejectedException(reason, message);
+  }
+
+  private static final class RoomBudget {
+
+    private final int maxParticipants;
+
+    // 자리를 잡은 사용자. budget 잠금 안에서만 접근
+    private final Set<String> userIds = new HashSet<>();
+
+    // 시청자 userId -> 잡아 둔 서버 예산. budget 잠금 안에서만 접근
+    private final Map<String, Long> viewerCosts = new HashMap<>();
+
+    private RoomBudget(int maxParticipants) {
+      this.maxParticipants = maxParticipants;
+    }
+  }
+}
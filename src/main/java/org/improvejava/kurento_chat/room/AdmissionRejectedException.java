@@ -0,0 +1,18 @@
+package org.improvejava.kurento_chat.room;
+
+import lombok.Getter;
+
+/**
+ * 미디어 서버나 방의 엔드포인트 예산을 넘어서 입장/방 생성이 거절되었을 때 발생하는 예외
+ */
+@Getter
+public class AdmissionRejectedException extends IllegalStateException {
+
+  // 클라이언트에게 그대로 전달되는 거절 사유 코드 (roomFull, roomBudgetExceeded, serverBusy, draining, mediaServerUnavailable)
+  private final String reason;
+
+  public AdmissionRejectedException(String reason, String message) {
+    super(message);
+    this.reason = reason;
+  }
+}
@@ -0,0 +1,180 @@
+package org.improvejava.kurento_chat.room;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.kurento.client.Continuation;
+import org.kurento.client.Transaction;
+import org.kurento.client.WebRtcEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Moves participants between breakout groups of a room without touching their WebRTC sessions.
+ *
+ * <p>
+ * Breakout groups live inside the parent {@link Room} and share its {@code MediaPipeline}. A move only
+ * connects or disconnects existing endpoints, all in one pipeline transaction: subscriptions to people who
+ * are no longer in the same group are kept but carry no media, and they carry media again when the groups
+ * merge back. Participants are then told their new roster and which members they still need to subscribe to.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 방 안의 소회의실 사이로 참가자를 옮깁니다. 소회의실은 상위 방의 {@code MediaPipeline}을 그대로 쓰고,
+ * 이동 시에는 기존 엔드포인트 사이의 연결만 한 번의 트랜잭션으로 바꾸므로 재협상이 필요 없습니다.
+ * 다른 회의실이 된 상대의 구독은 미디어 없이 유지되다가 다시 합쳐지면 연결됩니다.</p>
+ */
+@Component
+public class BreakoutManager {
+
+  private static final Logger log = LoggerFactory.getLogger(BreakoutManager.class);
+
+  /**
+   * 방장 요청으로 참가자들을 소회의실로 옮깁니다.
+   *
+   * @param moves userId -> groupId. groupId가 {@code null}이면 본 회의실로 이동
+   * @throws IllegalStateException 요청한 사용자가 방장이 아닌 경우
+   */
+  public void moveParticipants(Room room, UserSession requester, Map<String, String> moves) {
+    if (!requester.getUserId().equals(room.getRoomLeaderId())) {
+      throw new IllegalStateException("방장만 소회의실을 배정할 수 있습니다.");
+    }
+
+    synchronized (room) {
+      final List<UserSession> participants = room.getParticipants();
+      final Map<String, String> previousGroups = new HashMap<>();
+      for (final UserSession participant : participants) {
+        previousGroups.put(participant.getUserId(), room.getGroupId(participant.getUserId()));
+      }
+
+      final Set<String> movedUserIds = new HashSet<>();
+      for (final Map.Entry<String, String> move : moves.entrySet()) {
+        if (previousGroups.containsKey(move.getKey())
+                && !Objects.equals(previousGroups.get(move.getKey()), move.getValue())) {
+          room.assignGroup(move.getKey(), move.getValue());
+          movedUserIds.add(move.getKey());
+        }
+      }
+      if (movedUserIds.isEmpty()) {
+        return;
+      }
+
+      final long startedAt = System.currentTimeMillis();
+      final int rewired = rewire(room, participants, previousGroups, movedUserIds);
+      log.info("ROOM {}: moved {} participants between breakout groups, rewired {} connections in {} ms",
+              room.getRoomId(), movedUserIds.size(), rewired, System.currentTimeMillis() - startedAt);
+
+      noticeRosters(room, participants, previousGroups, movedUserIds);
+    }
+  }
+
+  // 모두 본 회의실로 되돌림
+  public void closeBreakouts(Room room, UserSession requester) {
+    final Map<String, String> moves = new HashMap<>();
+    for (final UserSession participant : room.getParticipants()) {
+      moves.put(participant.getUserId(), null);
+    }
+    moveParticipants(room, requester, moves);
+  }
+
+  // 이동한 사람이 끼어 있는 (송신자, 수신자) 쌍 중 같은 회의실 여부가 바뀐 연결만 바꿈
+  private int rewire(Room room, List<UserSession> participants, Map<String, String> previousGroups, Set<String> movedUserIds) {
+    final Transaction tx = room.getPipeline().beginTransaction();
+    int rewired = 0;
+
+    for (final UserSession sender : participants) {
+      for (final UserSession receiver : participants) {
+        if (sender == receiver
+                || !movedUserIds.contains(sender.getUserId()) && !movedUserIds.contains(receiver.getUserId())) {
+          continue;
+        }
+        final boolean wasTogether = Objects.equals(previousGroups.get(sender.getUserId()), previousGroups.get(receiver.getUserId()));
+        final boolean isTogether = room.isInSameGroup(sender.getUserId(), receiver.getUserId());
+        if (wasTogether == isTogether) {
+          continue;
+        }
+
+        // 화면 공유 구독은 다른 회의실이 되면 해제 (다시 합쳐지면 화면 공유 알림을 보고 새로 구독)
+        if (!isTogether) {
+          receiver.cancelScreenFrom(sender.getUserId());
+        }
+
+        final WebRtcEndpoint incoming = receiver.getIncomingEndpointFrom(sender.getUserId());
+        if (incoming == null) {
+          continue;
+        }
+
+        if (isTogether) {
+          sender.connectOutgoingTo(tx, incoming);
+        } else {
+          sender.disconnectOutgoingFrom(tx, incoming);
+        }
+        rewired++;
+      }
+    }
+
+    if (rewired > 0) {
+      tx.commit(new Continuation<Void>() {
+        @Override
+        public void onSuccess(Void result) throws Exception {
+          log.trace("ROOM {}: breakout rewiring committed", room.getRoomId());
+        }
+
+        @Override
+        public void onError(Throwable cause) throws Exception {
+          log.warn("ROOM {}: failed to rewire breakout connections", room.getRoomId(), cause);
+        }
+      });
+    }
+    return rewired;
+  }
+
+  // 이동한 사람과, 이동 전후로 같은 회의실이었던 사람에게 새 명단을 알림
+  private void noticeRosters(Room room, List<UserSession> participants, Map<String, String> previousGroups, Set<String> movedUserIds) {
+    final Set<String> affectedGroups = new HashSet<>();
+    for (final String userId : movedUserIds) {
+      affectedGroups.add(previousGroups.get(userId));
+      affectedGroups.add(room.getGroupId(userId));
+    }
+
+    for (final UserSession participant : participants) {
+      if (!movedUserIds.contains(participant.getUserId()) && !affectedGroups.contains(room.getGroupId(participant.getUserId()))) {
+        continue;
+      }
+
+      final JsonArray members = new JsonArray();
+      final JsonArray subscribe = new JsonArray();
+      for (final UserSession member : room.getGroupMembers(participant.getUserId())) {
+        members.add(member.getUserId());
+        if (member != participant && !participant.isReceivingFrom(member.getUserId())) {
+          subscribe.add(member.getUserId());
+        }
+      }
+
+      final JsonObject message = new JsonObject();
+      message.addProperty("action", "breakoutUpdated");
+      message.addProperty("roomId", room.getRoomId());
+      final String groupId = room.getGroupId(participant.getUserId());
+      if (groupId != null) {
+        message.addProperty("groupId", groupId);
+      }
+      message.add("members", members);
+      message.add("subscribe", subscribe);
+
+      try {
+        participant.sendMessage(message);
+      } catch (IOException e) {
+        log.debug("ROOM {}: participant {} could not be notified of breakout change", room.getRoomId(), participant.getUserId());
+      }
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package org.improvejava.kurento_chat.room;
+
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.improvejava.kurento_chat.user.UserRegistry;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Drains this node before it is stopped: no new rooms are created here, existing rooms may run until the
+ * drain deadline, and whatever is left is then closed in parallel batches.
+ *
+ * <p>
+ * A drain starts either from the {@code drain} actuator endpoint or when the application context is shut
+ * down (for example on SIGTERM), because this bean is stopped before the web server. The endpoint is
+ * JMX-only so that the unauthenticated HTTP actuator can never start a drain. While draining, the
+ * node reports {@link ReadinessState#REFUSING_TRAFFIC} and {@code createRoom} callers are rejected with the
+ * configured redirect URL. Progress is exposed through the {@code drain.*} metrics.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 노드를 내리기 전에 드레인합니다. 새 방은 만들지 않고, 기존 방은 마감 시각까지 유지한 뒤 남은 방을 병렬로 나누어 닫습니다.
+ * JMX 전용 actuator {@code drain} 엔드포인트(인증 없는 HTTP로는 노출하지 않음)나 애플리케이션 종료(SIGTERM 등) 시 시작되며, 진행 상황은 {@code drain.*} 지표로 확인할 수 있습니다.</p>
+ */
+@Component
+@JmxEndpoint(id = "drain")
+public class DrainManager implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(DrainManager.class);
+
+  private static final long POLL_MILLIS = 1000;
+
+  private final RoomManager roomManager;
+
+  private final UserRegistry userRegistry;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final long deadlineMillis;
+
+  private final int closeBatchSize;
+
+  @Getter
+  private final String redirectUrl;
+
+  private final ExecutorService closeExecutor;
+
+  private final Counter closedRooms;
+
+  private final Counter forcedClosedRooms;
+
+  private volatile Instant drainStartedAt;
+
+  private volatile Instant drainDeadline;
+
+  private final CompletableFuture<Void> drainCompletion = new CompletableFuture<>();
+
+  private volatile boolean running;
+
+  @Autowired
+  public DrainManager(RoomManager roomManager, UserRegistry userRegistry,
+                      ApplicationEventPublisher eventPublisher,
+                      MeterRegistry meterRegistry,
+                      @Value("${drain.deadline:5m}") Duration deadline,
+                      @Value("${drain.close-batch-size:8}") int closeBatchSize,
+                      @Value("${drain.redirect-url:}") String redirectUrl) {
+    this.roomManager = roomManager;
+    this.userRegistry = userRegistry;
+    this.eventPublisher = eventPublisher;
+    this.deadlineMillis = deadline.toMillis();
+    this.closeBatchSize = closeBatchSize;
+    this.redirectUrl = redirectUrl;
+    this.closeExecutor = Executors.newFixedThreadPool(closeBatchSize);
+
+    this.closedRooms = Counter.builder("drain.rooms.closed")
+            .description("Rooms that finished on their own while the node was draining")
+            .register(meterRegistry);
+    this.forcedClosedRooms = Counter.builder("drain.rooms.forced")
+            .description("Rooms closed by the node when the drain deadline passed")
+            .register(meterRegistry);
+    meterRegistry.gauge("drain.active", this, manager -> manager.isDraining() ? 1 : 0);
+    meterRegistry.gauge("drain.rooms.remaining", roomManager, manager -> manager.getRooms().size());
+    meterRegistry.gauge("drain.participants.remaining", roomManager,
+            manager -> manager.getRooms().stream().mapToInt(room -> room.getParticipants().size()).sum());
+  }
+
+  public boolean isDraining() {
+    return drainStartedAt != null;
+  }
+
+  @ReadOperation
+  public DrainStatus status() {
+    final int participants = roomManager.getRooms().stream().mapToInt(room -> room.getParticipants().size()).sum();
+    return new DrainStatus(isDraining(), drainStartedAt, drainDeadline, roomManager.getRooms().size(), participants);
+  }
+
+  /**
+   * 드레인을 시작합니다. 이미 드레인 중이면 아무 일도 하지 않습니다.
+   */
+  @WriteOperation
+  public synchronized DrainStatus startDrain() {
+    if (!isDraining()) {
+      final Instant now = Instant.now();
+      drainDeadline = now.plusMillis(deadlineMillis);
+      drainStartedAt = now;
+
+      log.info("Draining node: no new rooms, {} rooms may run until {}", roomManager.getRooms().size(), drainDeadline);
+      AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+      noticeDraining();
+
+      final Thread drainThread = new Thread(() -> {
+        try {
+          awaitRoomsAndClose();
+        } catch (RuntimeException e) {
+          log.warn("Drain did not finish cleanly", e);
+        } finally {
+          drainCompletion.complete(null);
+        }
+      }, "room-drain");
+      drainThread.setDaemon(true);
+      drainThread.start();
+    }
+    return status();
+  }
+
+  /**
+   * 마감 시각까지 방이 스스로 끝나기를 기다린 뒤 남은 방을 닫습니다.
+   */
+  void awaitRoomsAndClose() {
+    final long deadline = drainDeadline.toEpochMilli();
+    int previousRooms = roomManager.getRooms().size();
+
+    while (!roomManager.getRooms().isEmpty() && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(POLL_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      final int rooms = roomManager.getRooms().size();
+      if (rooms < previousRooms) {
+        closedRooms.increment(previousRooms - rooms);
+      }
+      previousRooms = rooms;
+    }
+
+    closeRemainingRooms();
+  }
+
+  private void closeRemainingRooms() {
+    final List<Room> remaining = new ArrayList<>(roomManager.getRooms());
+    if (remaining.isEmpty()) {
+      return;
+    }
+    log.info("Drain deadline reached, closing {} remaining rooms in batches of {}", remaining.size(), closeBatchSize);
+
+    for (int from = 0; from < remaining.size(); from += closeBatchSize) {
+      final List<Room> batch = remaining.subList(from, Math.min(from + closeBatchSize, remaining.size()));
+      final CompletableFuture<?>[] closing = batch.stream()
+              .map(room -> CompletableFuture.runAsync(() -> closeRoom(room), closeExecutor))
+              .toArray(CompletableFuture[]::new);
+      CompletableFuture.allOf(closing).join();
+    }
+  }
+
+  private void closeRoom(Room room) {
+    try {
+      roomManager.removeRoom(room);
+      room.close();
+      // 참가자, 시청자, 재접속을 기다리던 사용자까지 방에 등록된 사용자를 한 번에 해제
+      userRegistry.removeByRoomId(room.getRoomId());
+      forcedClosedRooms.increment();
+    } catch (RuntimeException e) {
+      log.warn("Room {}: failed to close while draining", room.getRoomId(), e);
+    }
+  }
+
+  // 참가자들에게 마감 시각을 알려서 클라이언트가 미리 안내할 수 있게 함
+  private void noticeDraining() {
+    final JsonObject message = new JsonObject();
+    message.addProperty("action", "serverDraining");
+    message.addProperty("deadline", drainDeadline.toString());
+
+    for (final Room room : roomManager.getRooms()) {
+      // 웨비나 시청자와 재접속을 기다리는 사용자도 방 인덱스로 함께 찾음
+      for (final UserSession participant : userRegistry.getByRoomId(room.getRoomId())) {
+        try {
+          participant.sendMessage(message);
+        } catch (IOException e) {
+          log.debug("ROOM {}: participant {} could not be notified of drain", room.getRoomId(), participant.getUserId());
+        }
+      }
+    }
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    stop(() -> { });
+  }
+
+  // 웹 서버보다 먼저 멈추므로 드레인 중에도 기존 웹 소켓 연결은 계속 동작함
+  @Override
+  public void stop(Runnable callback) {
+    startDrain();
+    drainCompletion.whenComplete((result, cause) -> {
+      closeExecutor.shutdown();
+      running = false;
+      callback.run();
+    });
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Getter
+  public static class DrainStatus {
+    private final boolean draining;
+    private final Instant startedAt;
+    private final Instant deadline;
+    private final int rooms;
+    private final int participants;
+
+    DrainStatus(boolean draining, Instant startedAt, Instant deadline, int rooms, int participants) {
+      this.draining = draining;
+      this.startedAt = startedAt;
+      this.deadline = deadline;
+      this.rooms = rooms;
+      this.participants = participants;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.improvejava.kurento_chat.room;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically closes rooms that have had no participants for longer than the idle TTL,
+ * releasing their {@code MediaPipeline}.
+ *
+ * <p><b>한국어:</b>
+ * 참가자가 없는 상태로 유휴 TTL을 넘긴 방을 주기적으로 닫고 {@code MediaPipeline}을 해제합니다.</p>
+ */
+@Component
+public class IdleRoomReaper {
+
+  private static final Logger log = LoggerFactory.getLogger(IdleRoomReaper.class);
+
+  private final RoomManager roomManager;
+
+  private final long idleTtlMillis;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  private final Counter reapedRooms;
+
+  @Autowired
+  public IdleRoomReaper(RoomManager roomManager, MeterRegistry meterRegistry,
+                        @Value("${room.idle-ttl:10m}") Duration idleTtl,
+                        @Value("${room.reaper-interval:1m}") Duration reaperInterval) {
+    this.roomManager = roomManager;
+    this.idleTtlMillis = idleTtl.toMillis();
+    this.reapedRooms = Counter.builder("rooms.reaped")
+            .description("Idle rooms closed and pipelines released by the reaper")
+            .register(meterRegistry);
+    meterRegistry.gauge("rooms.active", roomManager, manager -> manager.getRooms().size());
+
+    scheduler.scheduleWithFixedDelay(this::reap, reaperInterval.toMillis(), reaperInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  void reap() {
+    final long now = System.currentTimeMillis();
+    final List<Room> idleRooms = roomManager.getRooms().stream()
+            .filter(room -> room.getParticipants().isEmpty())
+            .filter(room -> now - room.getLastActivityMillis() > idleTtlMillis)
+            .toList();
+
+    for (final Room room : idleRooms) {
+      try {
+        // 목록을 만든 뒤 입장한 사람이 있을 수 있으므로 입장 처리와 같은 잠금 안에서 다시 확인하고, 같은 방일 때만 제거
+        final boolean removed;
+        room.getJoinLock().lock();
+        try {
+          removed = room.getParticipants().isEmpty() && room.getPendingJoins().isEmpty() && roomManager.removeRoom(room);
+        } finally {
+          room.getJoinLock().unlock();
+        }
+        if (!removed) {
+          continue;
+        }
+        room.close();
+        reapedRooms.increment();
+        log.info("Room {} was idle for more than {} ms and has been reaped", room.getRoomId(), idleTtlMillis);
+      } catch (RuntimeException e) {
+        log.warn("Room {}: failed to reap idle room", room.getRoomId(), e);
+      }
+    }
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    scheduler.shutdownNow();
+  }
+}
@@ -0,0 +1,255 @@
+package org.improvejava.kurento_chat.room;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+import org.kurento.client.IceComponentState;
+import org.kurento.client.MediaFlowState;
+import org.kurento.client.WebRtcEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces a sample of joins from the WebSocket request to the first media flowing into the user's
+ * outgoing endpoint, and records how long each stage took.
+ *
+ * <p>
+ * Stages are marked by userId from the signaling path ({@code received}, {@code pipelineCreated},
+ * {@code endpointCreated}, {@code announced}, {@code sdpAnswered}) and from Kurento events on the outgoing
+ * endpoint ({@code iceGatheringDone}, {@code iceConnected}, {@code mediaFlowing}). Finished traces are kept
+ * in a bounded ring buffer exposed as the {@code jointraces} actuator endpoint, and every stage is also
+ * recorded in the {@code join.stage} timer so it can be exported with the other metrics. Traces carry userIds,
+ * so the endpoint is available only over local JMX.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 입장 요청 일부를 샘플링해서 웹 소켓 요청부터 송신 엔드포인트에 미디어가 처음 들어올 때까지 단계별 소요 시간을 기록합니다.
+ * 끝난 트레이스는 크기가 정해진 버퍼에 보관되어 {@code jointraces} actuator 엔드포인트로 확인할 수 있고(userId가 들어 있으므로 로컬 JMX로만 노출),
+ * 단계별 시간은 {@code join.stage} 타이머에도 기록됩니다.</p>
+ */
+@Component
+@JmxEndpoint(id = "jointraces")
+public class JoinTracer {
+
+  private static final Logger log = LoggerFactory.getLogger(JoinTracer.class);
+
+  public static final String STAGE_RECEIVED = "received";
+  public static final String STAGE_PIPELINE_CREATED = "pipelineCreated";
+  public static final String STAGE_ENDPOINT_CREATED = "endpointCreated";
+  public static final String STAGE_ANNOUNCED = "announced";
+  public static final String STAGE_SDP_ANSWERED = "sdpAnswered";
+  public static final String STAGE_ICE_GATHERING_DONE = "iceGatheringDone";
+  public static final String STAGE_ICE_CONNECTED = "iceConnected";
+  public static final String STAGE_MEDIA_FLOWING = "mediaFlowing";
+
+  private final MeterRegistry meterRegistry;
+
+  private final double sampleRate;
+
+  private final int bufferSize;
+
+  private final long timeoutMillis;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "join-trace-expiry");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // 진행 중인 트레이스 (userId -> trace)
+  private final ConcurrentMap<String, JoinTrace> activeTraces = new ConcurrentHashMap<>();
+
+  private final Deque<JoinTrace> finishedTraces = new ArrayDeque<>();
+
+  private final Timer totalTimer;
+
+  @Autowired
+  public JoinTracer(MeterRegistry meterRegistry,
+                    @Value("${join.trace.sample-rate:0.1}") double sampleRate,
+                    @Value("${join.trace.buffer-size:200}") int bufferSize,
+                    @Value("${join.trace.timeout:60s}") Duration timeout) {
+    this.meterRegistry = meterRegistry;
+    this.sampleRate = sampleRate;
+    this.bufferSize = bufferSize;
+    this.timeoutMillis = timeout.toMillis();
+    this.totalTimer = Timer.builder("join.duration")
+            .description("Time from the join request until media flows from the user")
+            .register(meterRegistry);
+
+    scheduler.scheduleWithFixedDelay(this::expireStaleTraces, timeoutMillis, timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 샘플링에 걸리면 새 트레이스를 시작합니다. 같은 사용자의 이전 트레이스는 버립니다.
+   *
+   * @param action {@code joinRoom} 또는 {@code createRoom}
+   */
+  public void start(String userId, String action) {
+    if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+      return;
+    }
+    activeTraces.put(userId, new JoinTrace(userId, action));
+  }
+
+  public void mark(String userId, String stage) {
+    final JoinTrace trace = activeTraces.get(userId);
+    if (trace == null) {
+      return;
+    }
+    final long sincePreviousMillis = trace.mark(stage);
+    if (sincePreviousMillis >= 0) {
+      meterRegistry.timer("join.stage", "stage", stage).record(sincePreviousMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 송신 엔드포인트의 ICE/미디어 이벤트로 나머지 단계를 기록합니다. 샘플링되지 않은 사용자는 리스너를 달지 않습니다.
+   */
+  public void watch(String userId, WebRtcEndpoint outgoing) {
+    if (!activeTraces.containsKey(userId)) {
+      return;
+    }
+
+    outgoing.addIceGatheringDoneListener(event -> mark(userId, STAGE_ICE_GATHERING_DONE));
+    outgoing.addIceComponentStateChangedListener(event -> {
+      if (event.getState() == IceComponentState.CONNECTED || event.getState() == IceComponentState.READY) {
+        mark(userId, STAGE_ICE_CONNECTED);
+      }
+    });
+    outgoing.addMediaFlowInStateChangedListener(event -> {
+      if (event.getState() == MediaFlowState.FLOWING) {
+        mark(userId, STAGE_MEDIA_FLOWING);
+        finish(userId, null);
+      }
+    });
+  }
+
+  // 입장이 거절되거나 실패한 경우 사유와 함께 종료
+  public void abandon(String userId, String reason) {
+    finish(userId, reason);
+  }
+
+  @ReadOperation
+  public synchronized List<JoinTrace> traces() {
+    return List.copyOf(finishedTraces);
+  }
+
+  private void finish(String userId, String failure) {
+    final JoinTrace trace = activeTraces.remove(userId);
+    if (trace == null) {
+      return;
+    }
+
+    trace.complete(failure);
+    if (failure == null) {
+      totalTimer.record(trace.getTotalMillis(), TimeUnit.MILLISECONDS);
+    }
+    log.debug("USER {}: join trace finished in {} ms ({}), stages {}", userId, trace.getTotalMillis(),
+            failure == null ? "ok" : failure, trace.getStages());
+
+    synchronized (this) {
+      if (finishedTraces.size() == bufferSize) {
+        finishedTraces.pollFirst();
+      }
+      finishedTraces.addLast(trace);
+    }
+  }
+
+  private void expireStaleTraces() {
+    try {
+      final long now = System.currentTimeMillis();
+      for (final JoinTrace trace : activeTraces.values()) {
+        if (now - trace.getStartedAt().toEpochMilli() > timeoutMillis) {
+          finish(trace.getUserId(), "timeout");
+        }
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to expire stale join traces", e);
+    }
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  @Getter
+  public static class JoinTrace {
+    private final String userId;
+    private final String action;
+    private final Instant startedAt;
+    @Getter(AccessLevel.NONE)
+    private final List<Stage> stages = new ArrayList<>();
+    private volatile long totalMillis;
+    private volatile String failure;
+
+    @Getter(AccessLevel.NONE)
+    private final long startNanos = System.nanoTime();
+
+    JoinTrace(String userId, String action) {
+      this.userId = userId;
+      this.action = action;
+      this.startedAt = Instant.now();
+    }
+
+    // 같은 단계는 처음 한 번만 기록하고, 직전 단계로부터 걸린 시간을 반환 (이미 기록된 단계면 -1)
+    private synchronized long mark(String stage) {
+      for (final Stage recorded : stages) {
+        if (recorded.getName().equals(stage)) {
+          return -1;
+        }
+      }
+      final long now = elapsedMillis();
+      final long previous = stages.isEmpty() ? 0 : stages.get(stages.size() - 1).getAtMillis();
+      stages.add(new Stage(stage, now));
+      return now - previous;
+    }
+
+    private synchronized void complete(String failure) {
+      this.failure = failure;
+      this.totalMillis = elapsedMillis();
+    }
+
+    public synchronized List<Stage> getStages() {
+      return List.copyOf(stages);
+    }
+
+    private long elapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+  }
+
+  @Getter
+  @ToString
+  public static class Stage {
+    private final String name;
+    // 트레이스 시작 기준 경과 시간
+    private final long atMillis;
+
+    Stage(String name, long atMillis) {
+      this.name = name;
+      this.atMillis = atMillis;
+    }
+  }
+}
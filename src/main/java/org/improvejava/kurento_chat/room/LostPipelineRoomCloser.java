@@ -0,0 +1,68 @@
+package org.improvejava.kurento_chat.room;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.improvejava.kurento_chat.media.MediaServerReplacedEvent;
+import org.improvejava.kurento_chat.user.UserRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Closes every room when the media server was replaced underneath this node, because their pipelines no
+ * longer exist and no media can flow through them.
+ *
+ * <p>
+ * Participants and viewers receive {@code exitRoom} and are unregistered, the same way the drain closes
+ * rooms at its deadline, so clients can create or join a room again on the new media server.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 미디어 서버가 다른 인스턴스로 바뀌면 방 파이프라인이 더 이상 존재하지 않으므로 모든 방을 닫습니다.
+ * 참가자와 시청자는 드레인 마감 때처럼 {@code exitRoom}을 받고 등록이 해제되므로, 새 미디어 서버에서 방을 다시 만들거나 입장할 수 있습니다.</p>
+ */
+@Component
+public class LostPipelineRoomCloser {
+
+  private static final Logger log = LoggerFactory.getLogger(LostPipelineRoomCloser.class);
+
+  private final RoomManager roomManager;
+
+  private final UserRegistry userRegistry;
+
+  private final Counter closedRooms;
+
+  @Autowired
+  public LostPipelineRoomCloser(RoomManager roomManager, UserRegistry userRegistry, MeterRegistry meterRegistry) {
+    this.roomManager = roomManager;
+    this.userRegistry = userRegistry;
+    this.closedRooms = Counter.builder("rooms.closed.media-server-lost")
+            .description("Rooms closed because the media server holding their pipelines was replaced")
+            .register(meterRegistry);
+  }
+
+  @EventListener(MediaServerReplacedEvent.class)
+  void closeAllRooms() {
+    final List<Room> rooms = new ArrayList<>(roomManager.getRooms());
+    log.warn("Media server was replaced, closing {} rooms whose pipelines are gone", rooms.size());
+
+    for (final Room room : rooms) {
+      try {
+        if (!roomManager.removeRoom(room)) {
+          continue;
+        }
+        room.close();
+        // 참가자, 시청자, 재접속을 기다리던 사용자까지 방에 등록된 사용자를 한 번에 해제
+        userRegistry.removeByRoomId(room.getRoomId());
+        closedRooms.increment();
+      } catch (RuntimeException e) {
+        log.warn("Room {}: failed to close after the media server was replaced", room.getRoomId(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package org.improvejava.kurento_chat.room;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.improvejava.kurento_chat.media.MediaServerConnector;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Reconciles the pipelines that exist on the media server with the rooms this node knows about,
+ * and releases pipelines that no longer belong to any room.
+ *
+ * <p>
+ * Only pipelines tagged with this node's {@code owner} tag are considered. A pipeline must stay
+ * orphaned for {@code safetyDelay} before it is released, so pipelines that are still being set up
+ * are never touched. The result of the last sweeps is exposed as the {@code orphanpipelines} actuator endpoint.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 미디어 서버에 있는 파이프라인과 이 노드가 알고 있는 방을 비교해서, 어떤 방에도 속하지 않는 파이프라인을 해제합니다.
+ * 이 노드의 {@code owner} 태그가 붙은 파이프라인만 대상으로 하며, {@code safetyDelay} 동안 계속 고아 상태여야 해제합니다.
+ * 정리 결과는 {@code orphanpipelines} actuator 엔드포인트로 확인할 수 있습니다.</p>
+ */
+@Component
+@Endpoint(id = "orphanpipelines")
+public class OrphanPipelineSweeper {
+
+  private static final Logger log = LoggerFactory.getLogger(OrphanPipelineSweeper.class);
+
+  private static final int MAX_REPORTED_PIPELINES = 100;
+
+  private final MediaServerConnector mediaServer;
+
+  private final RoomManager roomManager;
+
+  private final WebinarManager webinarManager;
+
+  private final MediaTeardownService teardown;
+
+  private final long safetyDelayMillis;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  // 고아로 처음 발견된 시각 (pipelineId -> epoch millis)
+  private final Map<String, Long> orphanSinceByPipelineId = new HashMap<>();
+
+  private final Deque<ReclaimedPipeline> reclaimedPipelines = new ArrayDeque<>();
+
+  private final Counter reclaimedCounter;
+
+  private volatile Instant lastSweptAt;
+
+  private volatile int lastServerPipelineCount;
+
+  @Autowired
+  public OrphanPipelineSweeper(MediaServerConnector mediaServer, RoomManager roomManager, WebinarManager webinarManager,
+                               MediaTeardownService teardown, MeterRegistry meterRegistry,
+                               @Value("${media.orphan-sweep.initial-delay:30s}") Duration initialDelay,
+                               @Value("${media.orphan-sweep.interval:10m}") Duration interval,
+                               @Value("${media.orphan-sweep.safety-delay:2m}") Duration safetyDelay) {
+    this.mediaServer = mediaServer;
+    this.roomManager = roomManager;
+    this.webinarManager = webinarManager;
+    this.teardown = teardown;
+    this.safetyDelayMillis = safetyDelay.toMillis();
+    this.reclaimedCounter = Counter.builder("media.pipelines.orphans.reclaimed")
+            .description("Orphaned pipelines released by the sweeper")
+            .register(meterRegistry);
+
+    scheduler.scheduleWithFixedDelay(this::sweepSafely, initialDelay.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @ReadOperation
+  public synchronized SweepReport report() {
+    return new SweepReport(lastSweptAt, lastServerPipelineCount, orphanSinceByPipelineId.size(), List.copyOf(reclaimedPipelines));
+  }
+
+  private void sweepSafely() {
+    try {
+      sweep();
+    } catch (RuntimeException e) {
+      log.warn("Orphan pipeline sweep failed", e);
+    }
+  }
+
+  synchronized void sweep() {
+    // 연결이 끊긴 동안에는 서버 상태를 알 수 없으므로 건너뜀
+    if (!mediaServer.isConnected()) {
+      log.debug("Orphan pipeline sweep skipped: media server not connected");
+      return;
+    }
+
+    final long now = System.currentTimeMillis();
+    final List<MediaPipeline> serverPipelines = mediaServer.getKurentoClient().getServerManager().getPipelines();
+
+    final Set<String> knownPipelineIds = roomManager.getRooms().stream()
+            .map(room -> room.getPipeline().getId())
+            .collect(Collectors.toCollection(HashSet::new));
+    // 웨비나 중계 파이프라인도 같은 owner 태그를 달고 있으므로 살아 있는 것은 제외
+    knownPipelineIds.addAll(webinarManager.getEdgePipelineIds());
+
+    final Map<String, Long> stillOrphaned = new HashMap<>();
+    for (final MediaPipeline pipeline : serverPipelines) {
+      final String pipelineId = pipeline.getId();
+      if (knownPipelineIds.contains(pipelineId)) {
+        continue;
+      }
+
+      final Map<String, String> tags = pipeline.getTags().stream()
+              .collect(Collectors.toMap(Tag::getKey, Tag::getValue, (first, second) -> first));
+      if (!roomManager.getNodeId().equals(tags.get(RoomManager.PIPELINE_TAG_OWNER))) {
+        continue;
+      }
+
+      final long orphanSince = orphanSinceByPipelineId.getOrDefault(pipelineId, now);
+      if (now - orphanSince < safetyDelayMillis) {
+        stillOrphaned.put(pipelineId, orphanSince);
+        continue;
+      }
+
+      final String roomId = tags.get(RoomManager.PIPELINE_TAG_ROOM_ID);
+      log.info("Releasing orphaned pipeline {} of room {}", pipelineId, roomId);
+      teardown.releasePipeline(pipeline);
+      reclaimedCounter.increment();
+
+      if (reclaimedPipelines.size() == MAX_REPORTED_PIPELINES) {
+        reclaimedPipelines.pollFirst();
+      }
+      reclaimedPipelines.addLast(new ReclaimedPipeline(pipelineId, roomId, Instant.ofEpochMilli(now)));
+    }
+
+    orphanSinceByPipelineId.clear();
+    orphanSinceByPipelineId.putAll(stillOrphaned);
+    lastServerPipelineCount = serverPipelines.size();
+    lastSweptAt = Instant.ofEpochMilli(now);
+
+    log.debug("Orphan pipeline sweep: {} on server, {} known, {} waiting for safety delay",
+            serverPipelines.size(), knownPipelineIds.size(), stillOrphaned.size());
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  @Getter
+  public static class SweepReport {
+    private final Instant lastSweptAt;
+    private final int serverPipelines;
+    private final int pendingOrphans;
+    private final List<ReclaimedPipeline> reclaimed;
+
+    SweepReport(Instant lastSweptAt, int serverPipelines, int pendingOrphans, List<ReclaimedPipeline> reclaimed) {
+      this.lastSweptAt = lastSweptAt;
+      this.serverPipelines = serverPipelines;
+      this.pendingOrphans = pendingOrphans;
+      this.reclaimed = reclaimed;
+    }
+  }
+
+  @Getter
+  public static class ReclaimedPipeline {
+    private final String pipelineId;
+    private final String roomId;
+    private final Instant releasedAt;
+
+    ReclaimedPipeline(String pipelineId, String roomId, Instant releasedAt) {
+      this.pipelineId = pipelineId;
+      this.roomId = roomId;
+      this.releasedAt = releasedAt;
+    }
+  }
+}
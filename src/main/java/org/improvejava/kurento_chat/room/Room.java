@@ -1,10 +1,11 @@
 package org.improvejava.kurento_chat.room;
 
 import com.google.gson.JsonObject;
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
 import org.improvejava.kurento_chat.user.UserSession;
 import org.improvejava.kurento_chat.utils.RoomIdGenerator;
-import org.kurento.client.Continuation;
 import org.kurento.client.MediaPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,18 +13,28 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PreDestroy;
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Room implements Closeable {
   private final Logger log = LoggerFactory.getLogger(Room.class);
 
   private final ConcurrentMap<String, UserSession> participants = new ConcurrentHashMap<>();
 
+  // 소회의실 배정 (userId -> groupId). 배정되지 않은 참가자는 본 회의실에 있음
+  private final ConcurrentMap<String, String> groupByUserId = new ConcurrentHashMap<>();
+
+  // 참가자 구성이 바뀔 때만 새로 만드는 불변 스냅샷. 브로드캐스트 순회와 임의 선택 시 복사가 필요 없음
+  private volatile List<UserSession> participantSnapshot = List.of();
+
   @Getter
   private final MediaPipeline pipeline;
 
@@ -36,26 +47,76 @@ public class Room implements Closeable {
   @Getter
   private String roomLeaderName;
 
-  public Room(MediaPipeline pipeline, String roomLeaderId, String roomLeaderName) {
-    this.roomId = RoomIdGenerator.generateRoomId();
+  private final MediaTeardownService teardown;
+
+  // 마지막으로 참가자 구성이 바뀐 시각. 빈 방을 정리할 때 사용
+  @Getter
+  private volatile long lastActivityMillis = System.currentTimeMillis();
+
+  // 동시에 들어온 입장 요청을 모아서 한 번에 알리기 위한 대기열과, 모은 요청을 처리하는 스레드를 하나로 제한하는 락 (RoomManager에서만 사용)
+  @Getter(AccessLevel.PACKAGE)
+  private final Queue<RoomManager.PendingJoin> pendingJoins = new ConcurrentLinkedQueue<>();
+
+  @Getter(AccessLevel.PACKAGE)
+  private final ReentrantLock joinLock = new ReentrantLock();
+
+  // 대기열을 처리할 예약이 이미 걸려 있는지 여부
+  @Getter(AccessLevel.PACKAGE)
+  private final AtomicBoolean joinFlushScheduled = new AtomicBoolean();
+
+  public Room(MediaPipeline pipeline, String roomLeaderId, String roomLeaderName, MediaTeardownService teardown) {
+    this(RoomIdGenerator.generateRoomId(), pipeline, roomLeaderId, roomLeaderName, teardown);
+  }
+
+  // 재시작 후 저널에서 복구한 방처럼 이미 정해진 ID로 만들 때 사용
+  public Room(String roomId, MediaPipeline pipeline, String roomLeaderId, String roomLeaderName, MediaTeardownService teardown) {
+    this.roomId = roomId;
     this.pipeline = pipeline;
+    this.teardown = teardown;
     this.roomLeaderId = roomLeaderId;
     this.roomLeaderName = roomLeaderName;
     log.info("{} 방이 생성되었습니다.", this.roomId);
   }
 
-  public Collection<UserSession> getParticipants() {
-    return participants.values();
+  /**
+   * 현재 참가자 목록의 불변 스냅샷. 이후 입장/퇴장은 반영되지 않습니다.
+   */
+  public List<UserSession> getParticipants() {
+    return participantSnapshot;
   }
 
+  public boolean hasParticipant(String userId) {
+    return participants.containsKey(userId);
+  }
+
+  /**
+   * @return 임의의 참가자, 참가자가 없으면 {@code null}
+   */
   public UserSession getRandomParticipant() {
-    List<String> participantKeys = new ArrayList<>(participants.keySet());
-    String keyForRandomParticipant = participantKeys.get(ThreadLocalRandom.current().nextInt(participants.size()));
-    return participants.get(keyForRandomParticipant);
+    final List<UserSession> snapshot = participantSnapshot;
+    if (snapshot.isEmpty()) {
+      return null;
+    }
+    return snapshot.get(ThreadLocalRandom.current().nextInt(snapshot.size()));
   }
 
   public void addParticipant(UserSession participant) {
-    participants.put(participant.getUserId(), participant);
+    synchronized (participants) {
+      participants.put(participant.getUserId(), participant);
+      republishSnapshot();
+    }
+    lastActivityMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * 여러 참가자를 한 번에 추가합니다. 스냅샷은 한 번만 다시 만듭니다.
+   */
+  public void addParticipants(Collection<UserSession> newParticipants) {
+    synchronized (participants) {
+      newParticipants.forEach(participant -> participants.put(participant.getUserId(), participant));
+      republishSnapshot();
+    }
+    lastActivityMillis = System.currentTimeMillis();
   }
 
   public void removeParticipant(String userId) {
@@ -63,11 +124,56 @@ public class Room implements Closeable {
       throw new IllegalArgumentException("해당 ID를 가진 사용자는 참가자 리스트에 없으므로 삭제할 수 없습니다.");
     }
 
-    try (UserSession user = participants.remove(userId)) {
+    final UserSession removed;
+    synchronized (participants) {
+      removed = participants.remove(userId);
+      groupByUserId.remove(userId);
+      republishSnapshot();
+    }
+
+    try (UserSession user = removed) {
 
     } catch (Exception e) {
       log.warn("참가자 삭제 후 사용자 제거 중 오류가 발생했습니다.", e);
     }
+    lastActivityMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * @return 참가자가 있는 소회의실 id, 본 회의실에 있으면 {@code null}
+   */
+  public String getGroupId(String userId) {
+    return groupByUserId.get(userId);
+  }
+
+  /**
+   * 참가자를 소회의실로 옮깁니다. {@code groupId}가 {@code null}이면 본 회의실로 돌아옵니다.
+   */
+  public void assignGroup(String userId, String groupId) {
+    if (!participants.containsKey(userId)) {
+      throw new IllegalArgumentException("해당 ID를 가진 사용자는 참가자 리스트에 없으므로 소회의실을 배정할 수 없습니다.");
+    }
+    if (groupId == null) {
+      groupByUserId.remove(userId);
+    } else {
+      groupByUserId.put(userId, groupId);
+    }
+  }
+
+  public boolean isInSameGroup(String userId, String otherUserId) {
+    return Objects.equals(groupByUserId.get(userId), groupByUserId.get(otherUserId));
+  }
+
+  /**
+   * 해당 참가자와 같은 회의실(본 회의실 또는 소회의실)에 있는 참가자 목록. 소회의실이 없으면 스냅샷을 그대로 반환합니다.
+   */
+  public List<UserSession> getGroupMembers(String userId) {
+    if (groupByUserId.isEmpty()) {
+      return participantSnapshot;
+    }
+    return participantSnapshot.stream()
+            .filter(participant -> isInSameGroup(userId, participant.getUserId()))
+            .toList();
   }
 
   public void changeRoomLeader(String roomLeaderId, String userName) {
@@ -75,6 +181,11 @@ public class Room implements Closeable {
     this.roomLeaderName = userName;
   }
 
+  // participants 락 안에서만 호출
+  private void republishSnapshot() {
+    participantSnapshot = List.copyOf(participants.values());
+  }
+
   @PreDestroy
   private void shutdown() {
     this.close();
@@ -93,20 +204,13 @@ public class Room implements Closeable {
       }
     }
 
-    participants.clear();
-
-    pipeline.release(new Continuation<Void>() {
-
-      @Override
-      public void onSuccess(Void result) throws Exception {
-        log.trace("{} 방 - MediaPipeline 해제 완료", Room.this.roomId);
-      }
+    synchronized (participants) {
+      participants.clear();
+      republishSnapshot();
+    }
 
-      @Override
-      public void onError(Throwable cause) throws Exception {
-        log.warn("{} 방 - MediaPipeline 해제 시 오류 발생", Room.this.roomId, cause);
-      }
-    });
+    // 참가자들의 엔드포인트를 하나씩 해제하는 대신 파이프라인을 통째로 해제 (대기 중인 엔드포인트 해제 요청은 취소됨)
+    teardown.releasePipeline(pipeline);
 
     log.debug("{} 방이 정상적으로 닫혔습니다.", this.roomId);
   }
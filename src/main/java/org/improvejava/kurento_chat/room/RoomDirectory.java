@@ -0,0 +1,198 @@
+package org.improvejava.kurento_chat.room;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an immutable, read-only snapshot of all rooms and their participants for the HTTP API.
+ *
+ * <p>
+ * The snapshot is rebuilt on a dedicated thread, at most once per {@code room.snapshot.refresh-interval}, and
+ * only when {@link RoomManager#getStateVersion()} has moved since the last build. Readers only dereference the
+ * current snapshot, so any amount of polling costs neither signaling threads nor the live room maps. The ETag
+ * of a snapshot is its state version prefixed with this node and the time it booted, because the version
+ * counter restarts at zero and every node counts on its own.
+ * </p>
+ *
+ * <p>
+ * The views carry no userIds, because signaling messages name their target by userId.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * HTTP 조회 API용으로 방과 참가자 상태의 불변 스냅샷을 유지합니다.
+ * 스냅샷은 전용 스레드에서 {@code room.snapshot.refresh-interval}마다 상태 버전이 바뀐 경우에만 다시 만들고,
+ * 조회 요청은 현재 스냅샷만 읽으므로 아무리 자주 조회해도 시그널링 스레드나 실제 방 목록에 부담을 주지 않습니다.
+ * 상태 버전은 재시작하면 0부터 다시 세고 노드마다 따로 세므로, ETag에는 노드와 시작 시각을 붙입니다.
+ * 시그널링 메시지가 userId로 대상을 지정하므로 조회 결과에는 userId를 넣지 않습니다.</p>
+ */
+@Component
+public class RoomDirectory {
+
+  private static final Logger log = LoggerFactory.getLogger(RoomDirectory.class);
+
+  private final RoomManager roomManager;
+
+  private final WebinarManager webinarManager;
+
+  private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "room-snapshot");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // 노드와 시작 시각. 다른 노드나 재시작 전 스냅샷과 상태 버전이 같아도 ETag가 겹치지 않게 함
+  private final String bootEpoch;
+
+  private volatile Snapshot snapshot;
+
+  @Autowired
+  public RoomDirectory(RoomManager roomManager, WebinarManager webinarManager,
+                       @Value("${room.snapshot.refresh-interval:250ms}") Duration refreshInterval,
+                       @Value("${node.id:${HOSTNAME:kurento-chat}}") String nodeId) {
+    this.roomManager = roomManager;
+    this.webinarManager = webinarManager;
+    this.bootEpoch = Integer.toHexString(nodeId.hashCode()) + "-" + Long.toString(System.currentTimeMillis(), 36);
+    this.snapshot = new Snapshot(bootEpoch, -1, Instant.EPOCH, List.of(), Map.of());
+
+    refresher.scheduleWithFixedDelay(this::refreshSafely, refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public Snapshot getSnapshot() {
+    return snapshot;
+  }
+
+  private void refreshSafely() {
+    try {
+      refresh();
+    } catch (RuntimeException e) {
+      log.warn("Could not refresh room snapshot", e);
+    }
+  }
+
+  /**
+   * 상태 버전이 바뀌었으면 스냅샷을 다시 만듭니다.
+   */
+  void refresh() {
+    // 만드는 도중의 변경은 다음 주기에 반영되도록 버전을 먼저 읽음
+    final long version = roomManager.getStateVersion();
+    if (version == snapshot.getVersion()) {
+      return;
+    }
+
+    final List<RoomView> rooms = new ArrayList<>();
+    for (final Room room : roomManager.getRooms()) {
+      rooms.add(new RoomView(room, webinarManager.isWebinar(room.getRoomId()), webinarManager.getViewerCount(room.getRoomId())));
+    }
+    rooms.sort(Comparator.comparing(RoomView::getRoomId));
+
+    final Map<String, RoomView> roomsById = new LinkedHashMap<>();
+    rooms.forEach(room -> roomsById.put(room.getRoomId(), room));
+
+    snapshot = new Snapshot(bootEpoch, version, Instant.now(), List.copyOf(rooms), roomsById);
+    log.trace("Room snapshot {} built with {} rooms", version, rooms.size());
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    refresher.shutdownNow();
+  }
+
+  public static class Snapshot {
+    private final String bootEpoch;
+
+    @Getter
+    private final long version;
+
+    @Getter
+    private final Instant builtAt;
+
+    // roomId 순으로 정렬된 목록
+    @Getter
+    private final List<RoomView> rooms;
+
+    private final Map<String, RoomView> roomsById;
+
+    Snapshot(String bootEpoch, long version, Instant builtAt, List<RoomView> rooms, Map<String, RoomView> roomsById) {
+      this.bootEpoch = bootEpoch;
+      this.version = version;
+      this.builtAt = builtAt;
+      this.rooms = rooms;
+      this.roomsById = roomsById;
+    }
+
+    /**
+     * @return 해당 방, 스냅샷에 없으면 {@code null}
+     */
+    public RoomView getRoom(String roomId) {
+      return roomsById.get(roomId);
+    }
+
+    public String getETag() {
+      return "\"" + bootEpoch + "-" + version + "\"";
+    }
+  }
+
+  @Getter
+  public static class RoomView {
+    private final String roomId;
+    private final String roomLeaderName;
+    private final boolean webinar;
+    private final int participantCount;
+    private final int viewerCount;
+    private final Instant lastActivityAt;
+    private final List<ParticipantView> participants;
+
+    RoomView(Room room, boolean webinar, int viewerCount) {
+      this.roomId = room.getRoomId();
+      this.roomLeaderName = room.getRoomLeaderName();
+      this.webinar = webinar;
+      this.viewerCount = viewerCount;
+      this.lastActivityAt = Instant.ofEpochMilli(room.getLastActivityMillis());
+
+      // 응답마다 순서가 같도록 userId 순으로 정렬하지만 userId 자체는 내보내지 않음
+      final List<UserSession> sorted = new ArrayList<>(room.getParticipants());
+      sorted.sort(Comparator.comparing(UserSession::getUserId));
+      final List<ParticipantView> participantViews = new ArrayList<>();
+      for (final UserSession participant : sorted) {
+        participantViews.add(new ParticipantView(participant, room.getGroupId(participant.getUserId())));
+      }
+      this.participants = List.copyOf(participantViews);
+      this.participantCount = participants.size();
+    }
+  }
+
+  @Getter
+  public static class ParticipantView {
+    private final String userName;
+    private final boolean audioOn;
+    private final boolean videoOn;
+    private final boolean sharingScreen;
+    // 소회의실 ID, 본 회의실이면 null
+    private final String groupId;
+
+    ParticipantView(UserSession participant, String groupId) {
+      this.userName = participant.getUserName();
+      this.audioOn = Boolean.TRUE.equals(participant.getIsAudioOn());
+      this.videoOn = Boolean.TRUE.equals(participant.getIsVideoOn());
+      this.sharingScreen = participant.isSharingScreen();
+      this.groupId = groupId;
+    }
+  }
+}
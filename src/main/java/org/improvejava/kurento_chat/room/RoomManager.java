@@ -4,42 +4,141 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.improvejava.kurento_chat.media.BandwidthController;
+import org.improvejava.kurento_chat.media.MediaServerConnector;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.improvejava.kurento_chat.media.RoomRecordingService;
+import org.improvejava.kurento_chat.media.ViewportSubscriptionManager;
 import org.improvejava.kurento_chat.user.UserSession;
-import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class RoomManager {
 
   private final Logger log = LoggerFactory.getLogger(RoomManager.class);
 
+  // 미디어 서버의 파이프라인이 어느 방/노드 소유인지 식별하기 위한 태그 키
+  public static final String PIPELINE_TAG_ROOM_ID = "roomId";
+  public static final String PIPELINE_TAG_OWNER = "owner";
+  // 웨비나 중계 파이프라인 표시. 재시작 후 방 파이프라인으로 다시 붙이지 않음
+  public static final String PIPELINE_TAG_EDGE = "edge";
+
+  @Autowired
+  private MediaServerConnector mediaServer;
+
+  @Autowired
+  private MediaTeardownService teardown;
+
+  @Autowired
+  private AdmissionController admission;
+
+  @Autowired
+  private RoomRecordingService recordingService;
+
+  @Autowired
+  private BandwidthController bandwidthController;
+
+  @Autowired
+  private JoinTracer joinTracer;
+
+  @Autowired
+  private WebinarManager webinarManager;
+
   @Autowired
-  private KurentoClient kurento;
+  private ViewportSubscriptionManager viewportSubscriptionManager;
+
+  @Autowired
+  private RoomStateJournal journal;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  // 첫 입장자가 이 시간만큼 기다리는 동안 들어온 입장 요청을 모아 한 번에 알림
+  @Value("${join.batch.window:25ms}")
+  private Duration joinBatchWindow;
+
+  // 입장 처리를 기다리는 최대 시간. 시그널링 스레드를 무한정 붙잡지 않도록 넘으면 입장을 취소함
+  @Value("${join.batch.timeout:5s}")
+  private Duration joinBatchTimeout;
 
   private final ConcurrentMap<String, Room> roomsByRoomId = new ConcurrentHashMap<>();
 
-  public UserSession createRoom(String userName, String userId, Boolean isAudioOn, Boolean isVideoOn, WebSocketSession session) throws IOException {
-    Room room = new Room(kurento.createMediaPipeline(), userId, userName);
+  // 방 목록이나 참가자 상태가 바뀔 때마다 증가. 조회용 스냅샷을 다시 만들지 판단하는 데 사용
+  private final AtomicLong stateVersion = new AtomicLong();
+
+  // 모아 둔 입장 요청을 창이 끝난 뒤 처리. 입장자 스레드가 기다리는 동안 방의 joinLock을 잡고 있지 않게 함
+  private final ScheduledExecutorService joinFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "room-join-flush");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // 재시작 후에도 같은 값이어야 이전 프로세스가 남긴 파이프라인을 찾아 정리할 수 있음
+  @Getter
+  @Value("${node.id:${HOSTNAME:kurento-chat}}")
+  private String nodeId;
+
+  /**
+   * @param webinar {@code true}이면 방장과 발표자만 송출하고 나머지 입장자는 시청자로 받는 웨비나 방을 만듦
+   */
+  public UserSession createRoom(String userName, String userId, Boolean isAudioOn, Boolean isVideoOn, int maxParticipants,
+                                boolean webinar, WebSocketSession session) throws IOException {
+    // 파이프라인을 만들기 전에 서버 예산부터 확인
+    admission.reserveNewRoom();
+    Room room;
+    try {
+      room = new Room(mediaServer.getKurentoClient().createMediaPipeline(), userId, userName, teardown);
+    } catch (RuntimeException e) {
+      admission.cancelNewRoom();
+      if (!mediaServer.isConnected()) {
+        throw new AdmissionRejectedException("mediaServerUnavailable", "미디어 서버에 연결할 수 없어 방을 만들 수 없습니다.");
+      }
+      throw e;
+    }
+    joinTracer.mark(userId, JoinTracer.STAGE_PIPELINE_CREATED);
     String roomId = room.getRoomId();
+    admission.registerRoom(roomId, maxParticipants, userId);
+    tagPipeline(room.getPipeline(), roomId);
     roomsByRoomId.put(roomId, room);
+    if (webinar) {
+      webinarManager.open(room);
+    }
     log.debug("Room {} is created", roomId);
 
     log.info("Participant {} / {} created room {}", userName, userId, roomId);
-    final UserSession participant = new UserSession(userName, roomId, userId, isAudioOn, isVideoOn, session, room.getPipeline());
+    final UserSession participant = new UserSession(userName, roomId, userId, isAudioOn, isVideoOn, session, room.getPipeline(), teardown);
+    joinTracer.mark(userId, JoinTracer.STAGE_ENDPOINT_CREATED);
+    joinTracer.watch(userId, participant.getOutgoingWebRtcPeer());
+    participant.limitOutgoingVideo(bandwidthController.initialRecvLimitKbps(1), bandwidthController.getMinVideoKbps());
     announceNewParticipantEnter(participant);
     room.addParticipant(participant);
     room.changeRoomLeader(userId, userName);
+    journal.roomCreated(room, webinar, maxParticipants);
 
     JsonObject createRoomMsg = new JsonObject();
     createRoomMsg.addProperty("action", "roomCreated");
@@ -48,13 +147,25 @@ public class RoomManager {
     createRoomMsg.addProperty("roomId", roomId);
     createRoomMsg.addProperty("roomLeaderId", userId);
     createRoomMsg.addProperty("roomLeaderName", userName);
+    createRoomMsg.addProperty("resumeToken", participant.getResumeToken());
+    createRoomMsg.addProperty("webinar", webinar);
     createRoomMsg.addProperty("audioOn", participant.getIsAudioOn().toString());
     createRoomMsg.addProperty("videoOn", participant.getIsVideoOn().toString());
 
     participant.sendMessage(createRoomMsg);
+    joinTracer.mark(userId, JoinTracer.STAGE_ANNOUNCED);
+    markStateChanged();
     return participant;
   }
 
+  // 태그 두 개를 한 번의 요청으로 설정
+  private void tagPipeline(MediaPipeline pipeline, String roomId) {
+    final Transaction tx = pipeline.beginTransaction();
+    pipeline.addTag(tx, PIPELINE_TAG_ROOM_ID, roomId);
+    pipeline.addTag(tx, PIPELINE_TAG_OWNER, nodeId);
+    tx.commit();
+  }
+
   public Room getRoom(String roomId) {
     log.debug("Searching for room {}", roomId);
     Room room = roomsByRoomId.get(roomId);
@@ -67,37 +178,303 @@ public class RoomManager {
     return room;
   }
 
-  public UserSession joinRoom(String userName, String userId, String roomId, Boolean isAudioOn, Boolean isVideoOn, WebSocketSession session) throws IOException {
+  public Collection<Room> getRooms() {
+    return roomsByRoomId.values();
+  }
+
+  /**
+   * @param presenter 웨비나 방에 발표자로 입장하는지 여부. 아니면 송신 엔드포인트 없이 시청자로 입장하고, 일반 방에서는 무시됨
+   */
+  public UserSession joinRoom(String userName, String userId, String roomId, Boolean isAudioOn, Boolean isVideoOn,
+                              boolean presenter, WebSocketSession session) throws IOException {
     Room room = getRoom(roomId);
 
+    // 시청자는 방 참가자가 아니므로 방의 엔드포인트 예산과 참가자 알림에서 빠짐
+    // 기본 미디어 서버에 배정된 시청자의 서버 예산은 WebinarManager가 배정 직후 잡음
+    if (!presenter && webinarManager.isWebinar(roomId)) {
+      log.info("ROOM {}: adding viewer {} / {}", roomId, userName, userId);
+      final UserSession viewer = webinarManager.joinAsViewer(room, userName, userId, session);
+      joinTracer.mark(userId, JoinTracer.STAGE_ANNOUNCED);
+      markStateChanged();
+      return viewer;
+    }
+
     log.info("ROOM {}: adding participant {} / {}", roomId, userName, userId);
 
-    final UserSession participant = new UserSession(userName, roomId, userId, isAudioOn, isVideoOn, session, room.getPipeline());
-    announceNewParticipantEnter(participant);
-    room.addParticipant(participant);
-    noticeParticipantsList(participant);
+    // 입장 시 늘어나는 엔드포인트 수(2N+1)가 예산을 넘으면 AdmissionRejectedException 발생
+    final boolean reserved = admission.admitJoin(roomId, userId);
+
+    final UserSession participant;
+    try {
+      participant = new UserSession(userName, roomId, userId, isAudioOn, isVideoOn, session, room.getPipeline(), teardown);
+    } catch (RuntimeException e) {
+      if (reserved) {
+        admission.leave(roomId, userId);
+      }
+      throw e;
+    }
+    joinTracer.mark(userId, JoinTracer.STAGE_ENDPOINT_CREATED);
+    joinTracer.watch(userId, participant.getOutgoingWebRtcPeer());
+
+    // 엔드포인트는 입장자마다 자기 스레드에서 동시에 만들고, 알림과 참가자 목록 갱신은 모아서 한 번에 처리
+    final PendingJoin join = new PendingJoin(participant);
+    room.getPendingJoins().add(join);
+    awaitJoin(room, join);
     return participant;
   }
 
-  public void removeRoom(Room room) {
+  /**
+   * 입장 대기열에 넣은 요청이 처리될 때까지 기다립니다. 대기열에 처음 들어온 입장자가 잠시 뒤 처리할 작업을 예약하고,
+   * 그동안 모인 요청은 예약된 작업이 한 번에 처리합니다. 기다리는 동안에는 방의 joinLock을 잡지 않습니다.
+   * {@code join.batch.timeout}이 지나도록 처리되지 않으면 대기열에서 빼고 입장을 실패시킵니다.
+   */
+  private void awaitJoin(Room room, PendingJoin join) throws IOException {
+    if (joinBatchWindow.isZero()) {
+      flushJoinsNow(room);
+    } else if (room.getJoinFlushScheduled().compareAndSet(false, true)) {
+      joinFlusher.schedule(() -> {
+        // 대기열을 꺼내기 전에 예약 표시를 풀어야 그 사이 들어온 요청이 다음 예약을 걸 수 있음
+        room.getJoinFlushScheduled().set(false);
+        flushJoinsNow(room);
+      }, joinBatchWindow.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    try {
+      join.completion.get(joinBatchTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      giveUpJoin(room, join, new IOException("Timed out waiting to join room " + room.getRoomId()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      giveUpJoin(room, join, new IOException("Interrupted while waiting to join room " + room.getRoomId()));
+    } catch (ExecutionException e) {
+      // completion은 예외로 완료되지 않음
+      throw new IllegalStateException(e.getCause());
+    }
+
+    if (join.failure instanceof IOException e) {
+      throw e;
+    }
+    if (join.failure instanceof RuntimeException e) {
+      throw e;
+    }
+  }
+
+  // 아직 대기열에 있으면 빼서 실패시키고, 이미 처리 중이었다면 joinLock을 얻는 동안 처리가 끝났으므로 그 결과를 따름
+  private void giveUpJoin(Room room, PendingJoin join, IOException failure) {
+    if (!withdrawPendingJoin(room, join.participant, failure)) {
+      join.completion.join();
+    }
+  }
+
+  private void flushJoinsNow(Room room) {
+    room.getJoinLock().lock();
+    try {
+      flushJoins(room);
+    } finally {
+      room.getJoinLock().unlock();
+    }
+  }
+
+  // room의 joinLock을 잡은 상태에서만 호출
+  private void flushJoins(Room room) {
+    // 기다리는 동안 방이 닫혔으면 입장시키지 않고, 그 사이 연결이 끊긴 입장자는 빼고 처리
+    final boolean roomOpen = roomsByRoomId.get(room.getRoomId()) == room;
+    final List<PendingJoin> batch = new ArrayList<>();
+    for (PendingJoin pending; (pending = room.getPendingJoins().poll()) != null; ) {
+      if (!roomOpen) {
+        abandonJoin(pending, new IllegalArgumentException("Room with id " + room.getRoomId() + " not found"));
+      } else if (!pending.participant.getSession().isOpen()) {
+        abandonJoin(pending, new IOException("Session closed before joining room " + room.getRoomId()));
+      } else {
+        batch.add(pending);
+      }
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    final List<UserSession> joiners = new ArrayList<>(batch.size());
+    batch.forEach(pending -> joiners.add(pending.participant));
+    log.debug("ROOM {}: admitting {} participants together", room.getRoomId(), joiners.size());
+    meterRegistry.summary("room.join.batch.size").record(joiners.size());
+
+    try {
+      final int participantCount = room.getParticipants().size() + joiners.size();
+      for (final UserSession joiner : joiners) {
+        joiner.limitOutgoingVideo(bandwidthController.initialRecvLimitKbps(participantCount), bandwidthController.getMinVideoKbps());
+      }
+      announceNewParticipantsEnter(room, joiners);
+      // 복구되어 비어 있던 방에서는 첫 입장자가 방장이 됨
+      final boolean firstParticipant = room.getParticipants().isEmpty();
+      room.addParticipants(joiners);
+      if (firstParticipant) {
+        room.changeRoomLeader(joiners.get(0).getUserId(), joiners.get(0).getUserName());
+      }
+      for (final UserSession joiner : joiners) {
+        webinarManager.addPresenter(room, joiner);
+        recordingService.addParticipant(room, joiner);
+      }
+      bandwidthController.rebalance(room);
+      for (final PendingJoin pending : batch) {
+        try {
+          noticeParticipantsList(pending.participant);
+        } catch (IOException e) {
+          pending.failure = e;
+        }
+        joinTracer.mark(pending.participant.getUserId(), JoinTracer.STAGE_ANNOUNCED);
+      }
+      markStateChanged();
+    } catch (IOException | RuntimeException e) {
+      batch.stream().filter(pending -> pending.failure == null).forEach(pending -> pending.failure = e);
+    } finally {
+      batch.forEach(pending -> pending.completion.complete(null));
+    }
+  }
+
+  // 방에 추가하지 않은 입장 요청의 엔드포인트와 예약한 예산을 돌려줌
+  private void abandonJoin(PendingJoin pending, Exception failure) {
+    final UserSession participant = pending.participant;
+    log.info("ROOM {}: join of participant {} / {} abandoned: {}", participant.getRoomId(), participant.getUserName(),
+            participant.getUserId(), failure.getMessage());
     try {
-      this.roomsByRoomId.remove(room.getRoomId());
-    } catch (NullPointerException e) {
+      participant.close();
+    } catch (IOException e) {
+      log.warn("PARTICIPANT {} / {}: failed to release endpoints", participant.getUserName(), participant.getUserId(), e);
+    }
+    admission.leave(participant.getRoomId(), participant.getUserId());
+    pending.failure = failure;
+    pending.completion.complete(null);
+  }
+
+  /**
+   * @return 방을 제거했으면 {@code true}, 이미 제거되었거나 같은 ID로 다른 방이 등록되어 있으면 {@code false}
+   */
+  public boolean removeRoom(Room room) {
+    if (!this.roomsByRoomId.remove(room.getRoomId(), room)) {
       log.warn("Room {} not found", room.getRoomId());
+      return false;
     }
+    admission.forgetRoom(room.getRoomId());
+    recordingService.forgetRoom(room.getRoomId());
+    webinarManager.close(room);
+    journal.roomRemoved(room.getRoomId());
+    markStateChanged();
     log.info("Room {} removed and closed", room.getRoomId());
+    return true;
   }
 
-public void leaveRoom(UserSession userSession) throws IOException {
+  public void leaveRoom(UserSession userSession) throws IOException {
+    viewportSubscriptionManager.forget(userSession);
+    if (!userSession.isPublishing()) {
+      webinarManager.removeViewer(userSession);
+      admission.leaveViewer(userSession.getRoomId(), userSession.getUserId());
+      markStateChanged();
+      return;
+    }
+
     Room room = getRoom(userSession.getRoomId());
-    if (room != null) {
-      log.debug("PARTICIPANT {} / {}: Leaving room {}", userSession.getUserName(), userSession.getUserId(), userSession.getRoomId());
-      this.removeParticipant(userSession);
-      userSession.close();
+    log.debug("PARTICIPANT {} / {}: Leaving room {}", userSession.getUserName(), userSession.getUserId(), userSession.getRoomId());
+    if (withdrawPendingJoin(room, userSession,
+            new IOException("Participant " + userSession.getUserId() + " left before joining room " + room.getRoomId()))) {
+      return;
     }
+    // 참가자 제거 시 userSession도 함께 close 됨
+    this.removeParticipant(userSession);
+    admission.leave(room.getRoomId(), userSession.getUserId());
 
+    // 마지막 참가자가 나가면 남은 엔드포인트를 개별 해제하지 않고 파이프라인을 통째로 해제
     if (room.getParticipants().isEmpty()) {
       removeRoom(room);
+      room.close();
+      return;
+    }
+
+    // 인원이 줄었으므로 남은 수신자들의 스트림당 대역폭을 다시 계산
+    bandwidthController.rebalance(room);
+    markStateChanged();
+  }
+
+  // 아직 입장 대기열에 있는 참가자라면 방에 추가되기 전에 대기열에서 뺌
+  private boolean withdrawPendingJoin(Room room, UserSession userSession, IOException failure) {
+    room.getJoinLock().lock();
+    try {
+      for (final PendingJoin pending : room.getPendingJoins()) {
+        if (pending.participant == userSession && room.getPendingJoins().remove(pending)) {
+          abandonJoin(pending, failure);
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      room.getJoinLock().unlock();
+    }
+  }
+
+  public long getStateVersion() {
+    return stateVersion.get();
+  }
+
+  /**
+   * 방이나 참가자 상태(이름, 음소거, 소회의실 등)가 바뀌었음을 알립니다.
+   */
+  public void markStateChanged() {
+    stateVersion.incrementAndGet();
+  }
+
+  /**
+   * 참가자의 이름, 마이크, 카메라 상태가 바뀌었음을 알립니다. 참가자는 재시작 후 복구하지 않으므로 저널에는 남기지 않습니다.
+   */
+  public void participantUpdated(UserSession participant) {
+    markStateChanged();
+  }
+
+  /**
+   * 재시작 전 저널에 남아 있던 방을 참가자와 방장 없이 다시 엽니다. 참가자는 같은 방 ID로 다시 입장할 수 있고
+   * 처음 들어온 사람이 방장이 되며, 아무도 들어오지 않으면 빈 방 정리 대상이 됩니다.
+   *
+   * @param pipeline 미디어 서버에 남아 있던 방의 파이프라인, 또는 새로 만든 파이프라인
+   */
+  public Room restoreRoom(RoomStateJournal.RoomRecord record, MediaPipeline pipeline) {
+    final Room room = new Room(record.getRoomId(), pipeline, null, null, teardown);
+    admission.registerRestoredRoom(room.getRoomId(), record.getMaxParticipants());
+    roomsByRoomId.put(room.getRoomId(), room);
+    if (record.isWebinar()) {
+      webinarManager.open(room);
+    }
+    markStateChanged();
+    return room;
+  }
+
+  /**
+   * 새 방의 파이프라인을 만들고 이 노드 소유로 태그를 답니다.
+   */
+  public MediaPipeline createTaggedPipeline(String roomId) {
+    final MediaPipeline pipeline = mediaServer.getKurentoClient().createMediaPipeline();
+    tagPipeline(pipeline, roomId);
+    return pipeline;
+  }
+
+  // 기존의 사용자에게 함께 입장한 사용자들의 방 합류 알림. 한 명이면 기존 newUserJoined 메시지를 그대로 보냄
+  private void announceNewParticipantsEnter(Room room, List<UserSession> joiners) throws IOException {
+    if (joiners.size() == 1) {
+      announceNewParticipantEnter(joiners.get(0));
+      return;
+    }
+
+    final JsonArray usersArray = new JsonArray();
+    joiners.forEach(joiner -> usersArray.add(new JsonPrimitive(describeParticipant(joiner).toString())));
+
+    final JsonObject usersJoinedMsg = new JsonObject();
+    usersJoinedMsg.addProperty("action", "usersJoined");
+    usersJoinedMsg.add("users", usersArray);
+
+    log.debug("ROOM {}: notifying other participants of {} new participants", room.getRoomId(), joiners.size());
+
+    for (final UserSession participant : room.getParticipants()) {
+      try {
+        participant.sendMessage(usersJoinedMsg);
+      } catch (final IOException e) {
+        log.debug("ROOM {}: participant {} / {} could not be notified", room.getRoomId(), participant.getUserName(), participant.getUserId());
+      }
     }
   }
 
@@ -136,13 +513,7 @@ public void leaveRoom(UserSession userSession) throws IOException {
 
     for (final UserSession participant : room.getParticipants()) {
       if (!participant.equals(user)) {
-        JsonObject participantJson = new JsonObject();
-        participantJson.addProperty("userId", participant.getUserId());
-        participantJson.addProperty("userName", participant.getUserName());
-        participantJson.addProperty("audioOn", participant.getIsAudioOn().toString());
-        participantJson.addProperty("videoOn", participant.getIsVideoOn().toString());
-
-        final JsonElement jsonParticipant = new JsonPrimitive(participantJson.toString());
+        final JsonElement jsonParticipant = new JsonPrimitive(describeParticipant(participant).toString());
 
         participantsArray.add(jsonParticipant);
       }
@@ -155,6 +526,7 @@ public void leaveRoom(UserSession userSession) throws IOException {
     existingParticipantsMsg.add("participants", participantsArray);
     existingParticipantsMsg.addProperty("roomLeaderId", room.getRoomLeaderId());
     existingParticipantsMsg.addProperty("roomLeaderName", room.getRoomLeaderName());
+    existingParticipantsMsg.addProperty("resumeToken", user.getResumeToken());
 
     log.debug("PARTICIPANT {} / {} : sending a list of {} participants", user.getUserName(), user.getUserId(),
             participantsArray.size());
@@ -162,11 +534,22 @@ public void leaveRoom(UserSession userSession) throws IOException {
     user.sendMessage(existingParticipantsMsg);
   }
 
+  private JsonObject describeParticipant(UserSession participant) {
+    JsonObject participantJson = new JsonObject();
+    participantJson.addProperty("userId", participant.getUserId());
+    participantJson.addProperty("userName", participant.getUserName());
+    participantJson.addProperty("audioOn", participant.getIsAudioOn().toString());
+    participantJson.addProperty("videoOn", participant.getIsVideoOn().toString());
+    return participantJson;
+  }
+
   private void removeParticipant(UserSession userSession) throws IOException {
     System.out.println("romove Participant UserId : " + userSession.getUserId());
 
     Room room = getRoom(userSession.getRoomId());
+    recordingService.removeParticipant(room, userSession.getUserId());
     room.removeParticipant(userSession.getUserId());
+    webinarManager.removePresenter(room, userSession);
 
     log.debug("ROOM {}: notifying all users that {} / {} is leaving the room", room.getRoomId(), userSession.getUserName(), userSession.getUserId());
 
@@ -179,6 +562,7 @@ public void leaveRoom(UserSession userSession) throws IOException {
     for (final UserSession participant : room.getParticipants()) {
       try {
         participant.cancelVideoFrom(userSession.getUserId());
+        participant.cancelScreenFrom(userSession.getUserId());
         participant.sendMessage(participantLeftJson);
       } catch (final IOException e) {
         unnotifiedParticipants.add(participant.getUserId());
@@ -191,8 +575,8 @@ public void leaveRoom(UserSession userSession) throws IOException {
     }
     unnotifiedParticipants.clear();
 
-    if (userSession.getUserId().equals(room.getRoomLeaderId()) && !room.getParticipants().isEmpty()) {
-      UserSession newRoomLeader = room.getRandomParticipant();
+    final UserSession newRoomLeader = room.getRandomParticipant();
+    if (userSession.getUserId().equals(room.getRoomLeaderId()) && newRoomLeader != null) {
       room.changeRoomLeader(newRoomLeader.getUserId(), newRoomLeader.getUserName());
 
       JsonObject roomLeaderChangeMessage = new JsonObject();
@@ -214,4 +598,36 @@ public void leaveRoom(UserSession userSession) throws IOException {
       }
     }
   }
+
+  @PreDestroy
+  private void shutdown() {
+    joinFlusher.shutdownNow();
+    // 예약이 취소되었으므로 기다리던 입장자를 풀어 줌
+    for (final Room room : roomsByRoomId.values()) {
+      room.getJoinLock().lock();
+      try {
+        for (PendingJoin pending; (pending = room.getPendingJoins().poll()) != null; ) {
+          abandonJoin(pending, new IOException("Server is shutting down"));
+        }
+      } finally {
+        room.getJoinLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * 엔드포인트까지 만든 뒤 방 입장 처리를 기다리는 참가자. {@link Room}의 joinLock 안에서 처리를 마치면 completion이 완료됨
+   */
+  static final class PendingJoin {
+
+    private final UserSession participant;
+
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private Exception failure;
+
+    PendingJoin(UserSession participant) {
+      this.participant = participant;
+    }
+  }
 }
@@ -0,0 +1,292 @@
+package org.improvejava.kurento_chat.room;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends room lifecycle events to a local write-ahead log and periodically compacts them into a snapshot,
+ * so room metadata survives a crash of this process.
+ *
+ * <p>
+ * Events are queued by the signaling threads and written by a single {@code room-journal} thread, which
+ * batches whatever is queued into one write and one {@code fsync}, so a batch is on disk before the next one
+ * starts and the cost of syncing is shared by everything queued meanwhile. The same thread applies the events
+ * to its own model of the rooms; every {@code journal.compact-interval} that model is written to
+ * {@code rooms.snapshot} (through a synced temporary file and an atomic rename) and the log is truncated. On
+ * startup the snapshot is read, the log replayed on top of it (a torn last line is skipped), and the result is
+ * kept as the rooms to recover.
+ * </p>
+ *
+ * <p>
+ * Only room creation and removal are journaled. Participants cannot be recovered, because their WebSocket
+ * sessions did not survive and userIds are issued anew on every join, so neither their joins and leaves nor
+ * the room leader are written; the first participant to rejoin a recovered room becomes its leader. Entries of
+ * other types left by older versions are skipped on load.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 방 생성/삭제 이벤트를 로컬 선행 기록 로그(WAL)에 남기고, 주기적으로 스냅샷으로 압축합니다.
+ * 이벤트는 전용 {@code room-journal} 스레드가 모아서 한 번에 쓰고 디스크에 동기화(fsync)하므로 시그널링 스레드는 파일 입출력을 기다리지 않습니다.
+ * 시작 시 스냅샷을 읽고 로그를 다시 적용해서 복구할 방 목록을 만듭니다.
+ * 웹 소켓 세션은 복구할 수 없고 userId도 입장할 때마다 새로 발급되므로 참가자 이벤트와 방장은 기록하지 않으며, 복구된 방에 처음 다시 들어온 사람이 방장이 됩니다.</p>
+ */
+@Component
+public class RoomStateJournal {
+
+  private static final Logger log = LoggerFactory.getLogger(RoomStateJournal.class);
+
+  private static final String SNAPSHOT_FILE = "rooms.snapshot";
+
+  private static final String LOG_FILE = "rooms.wal";
+
+  private static final long POLL_MILLIS = 1000;
+
+  private final Gson gson = new Gson();
+
+  private final Path snapshotPath;
+
+  private final Path logPath;
+
+  private final long compactIntervalMillis;
+
+  private final BlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+
+  // room-journal 스레드만 다룸
+  private final Map<String, RoomRecord> roomsById = new LinkedHashMap<>();
+
+  private FileChannel logChannel;
+
+  private BufferedWriter logWriter;
+
+  private int eventsSinceSnapshot;
+
+  private long lastSnapshotAt;
+
+  // 시작 시 복구한 방. 재시작 직후 한 번만 사용
+  @Getter
+  private final List<RoomRecord> recoveredRooms;
+
+  private final Thread writerThread;
+
+  private volatile boolean closed;
+
+  @Autowired
+  public RoomStateJournal(@Value("${journal.dir:data/journal}") String dir,
+                          @Value("${journal.compact-interval:1m}") Duration compactInterval) throws IOException {
+    final Path directory = Path.of(dir);
+    Files.createDirectories(directory);
+    this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+    this.logPath = directory.resolve(LOG_FILE);
+    this.compactIntervalMillis = compactInterval.toMillis();
+
+    final long startedAt = System.currentTimeMillis();
+    load();
+    // 복구 기준이 되는 상태를 바로 스냅샷으로 남김
+    this.recoveredRooms = roomsById.values().stream()
+            .map(room -> new RoomRecord(room.roomId, room.webinar, room.maxParticipants))
+            .toList();
+    compact();
+    log.info("Loaded {} rooms from the room journal in {} ms", recoveredRooms.size(), System.currentTimeMillis() - startedAt);
+
+    this.writerThread = new Thread(this::run, "room-journal");
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  public void roomCreated(Room room, boolean webinar, int maxParticipants) {
+    final Event event = new Event(EventType.ROOM_CREATED, room.getRoomId());
+    event.webinar = webinar;
+    event.maxParticipants = maxParticipants;
+    append(event);
+  }
+
+  public void roomRemoved(String roomId) {
+    append(new Event(EventType.ROOM_REMOVED, roomId));
+  }
+
+  private void append(Event event) {
+    if (closed) {
+      return;
+    }
+    queue.add(event);
+  }
+
+  private void run() {
+    final List<Event> batch = new ArrayList<>();
+    while (!closed || !queue.isEmpty()) {
+      try {
+        final Event first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch);
+          write(batch);
+          batch.clear();
+        }
+        if (eventsSinceSnapshot > 0 && System.currentTimeMillis() - lastSnapshotAt >= compactIntervalMillis) {
+          compact();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (IOException | RuntimeException e) {
+        log.warn("Room journal write failed, {} events dropped", batch.size(), e);
+        batch.clear();
+      }
+    }
+  }
+
+  private void write(List<Event> batch) throws IOException {
+    for (final Event event : batch) {
+      apply(event);
+      logWriter.write(gson.toJson(event));
+      logWriter.newLine();
+    }
+    logWriter.flush();
+    logChannel.force(false);
+    eventsSinceSnapshot += batch.size();
+  }
+
+  /**
+   * 현재 상태를 스냅샷 파일로 쓰고 로그를 비웁니다. 스냅샷은 임시 파일을 거쳐 원자적으로 교체하므로
+   * 도중에 죽어도 이전 스냅샷과 로그가 남고, 로그를 비우기 전에 죽으면 로그를 한 번 더 적용해도 결과가 같습니다.
+   */
+  private void compact() throws IOException {
+    final Path tmp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      final ByteBuffer content = StandardCharsets.UTF_8.encode(gson.toJson(roomsById.values()));
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+      // 이름을 바꾸기 전에 내용이 디스크에 있어야 빈 스냅샷으로 바뀌지 않음
+      channel.force(true);
+    }
+    Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    if (logWriter != null) {
+      logWriter.close();
+    }
+    logChannel = FileChannel.open(logPath,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    logWriter = new BufferedWriter(Channels.newWriter(logChannel, StandardCharsets.UTF_8));
+
+    log.debug("Room journal compacted: {} rooms, {} events folded into the snapshot", roomsById.size(), eventsSinceSnapshot);
+    eventsSinceSnapshot = 0;
+    lastSnapshotAt = System.currentTimeMillis();
+  }
+
+  private void load() throws IOException {
+    if (Files.exists(snapshotPath)) {
+      final List<RoomRecord> rooms = gson.fromJson(Files.readString(snapshotPath, StandardCharsets.UTF_8),
+              new TypeToken<List<RoomRecord>>() { }.getType());
+      if (rooms != null) {
+        rooms.forEach(room -> roomsById.put(room.roomId, room));
+      }
+    }
+
+    if (!Files.exists(logPath)) {
+      return;
+    }
+    int replayed = 0;
+    try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          final Event event = gson.fromJson(line, Event.class);
+          // 이전 버전이 남긴 참가자/방장 이벤트는 종류를 읽을 수 없어 type이 null이 되므로 건너뜀
+          if (event != null && event.type != null) {
+            apply(event);
+            replayed++;
+          }
+        } catch (JsonParseException e) {
+          // 쓰는 도중에 죽어서 잘린 마지막 줄
+          log.warn("Skipping unreadable room journal entry: {}", line);
+        }
+      }
+    }
+    log.debug("Replayed {} room journal events", replayed);
+  }
+
+  private void apply(Event event) {
+    switch (event.type) {
+      case ROOM_CREATED -> roomsById.put(event.roomId,
+              new RoomRecord(event.roomId, Boolean.TRUE.equals(event.webinar),
+                      event.maxParticipants == null ? 0 : event.maxParticipants));
+      case ROOM_REMOVED -> roomsById.remove(event.roomId);
+    }
+  }
+
+  @PreDestroy
+  void close() {
+    closed = true;
+    try {
+      writerThread.join(TimeUnit.SECONDS.toMillis(5));
+      if (logWriter != null) {
+        logWriter.close();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  enum EventType {
+    ROOM_CREATED, ROOM_REMOVED
+  }
+
+  // 로그 한 줄. 이벤트 종류에 따라 필요한 필드만 채우고 나머지는 null로 두어 기록하지 않음
+  static class Event {
+    EventType type;
+    String roomId;
+    Boolean webinar;
+    Integer maxParticipants;
+
+    Event(EventType type, String roomId) {
+      this.type = type;
+      this.roomId = roomId;
+    }
+  }
+
+  @Getter
+  public static class RoomRecord {
+    private final String roomId;
+    private final boolean webinar;
+    private final int maxParticipants;
+
+    RoomRecord(String roomId, boolean webinar, int maxParticipants) {
+      this.roomId = roomId;
+      this.webinar = webinar;
+      this.maxParticipants = maxParticipants;
+    }
+  }
+}
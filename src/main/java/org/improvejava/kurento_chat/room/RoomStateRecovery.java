@@ -0,0 +1,214 @@
+package org.improvejava.kurento_chat.room;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.improvejava.kurento_chat.media.MediaServerConnector;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.improvejava.kurento_chat.utils.RoomIdGenerator;
+import org.kurento.client.MediaObject;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Reopens the rooms recorded in the {@link RoomStateJournal} after a restart, so clients can rejoin the
+ * same room IDs instead of all recreating their meetings at once.
+ *
+ * <p>
+ * Room IDs are reserved first, then the media server is asked once for its pipelines. A room whose pipeline
+ * (tagged with this node and the room ID) survived gets it back with the stale endpoints of its former
+ * participants released; otherwise a new pipeline is created. If the media server cannot be reached yet, the
+ * journal is left untouched and the remaining rooms are retried every {@code journal.recovery-retry}; a room
+ * is only dropped from the journal when it fails while the media server is connected.
+ * </p>
+ *
+ * <p>
+ * Recovered rooms start empty and without a leader, and rooms nobody returns to are closed by the idle room
+ * reaper. The former leader could not be recognised when they come back, because userIds are issued anew on
+ * every join and there is nothing to authenticate them with, so the leader is not journaled; the first person
+ * to rejoin becomes the leader and everyone is told so through the usual {@code roomLeaderId} of the
+ * participant list. The time from JVM start until recovery
+ * finished is exposed as {@code room.recovery.ready.time}.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 재시작 후 {@link RoomStateJournal}에 남아 있던 방을 다시 열어서, 클라이언트가 한꺼번에 방을 새로 만들지 않고 같은 방 ID로 다시 입장할 수 있게 합니다.
+ * 미디어 서버에 남아 있는 방 파이프라인은 이전 참가자의 엔드포인트만 정리해서 다시 쓰고, 없으면 새로 만듭니다.
+ * 미디어 서버에 아직 연결할 수 없으면 저널을 지우지 않고 {@code journal.recovery-retry}마다 다시 시도하며,
+ * 미디어 서버에 연결된 상태에서 실패한 방만 저널에서 지웁니다.
+ * 복구된 방은 참가자와 방장 없이 시작합니다. userId는 입장할 때마다 새로 발급되어 이전 방장을 알아볼 수 없으므로 방장은 기록하지 않고,
+ * 처음 다시 들어온 사람이 방장이 되고, 참가자 목록의 {@code roomLeaderId}로 모두에게 알려집니다.
+ * JVM 시작부터 복구 완료까지 걸린 시간은 {@code room.recovery.ready.time} 지표로 확인할 수 있습니다.</p>
+ */
+@Component
+public class RoomStateRecovery {
+
+  private static final Logger log = LoggerFactory.getLogger(RoomStateRecovery.class);
+
+  private final RoomStateJournal journal;
+
+  private final RoomManager roomManager;
+
+  private final MediaServerConnector mediaServer;
+
+  private final MediaTeardownService teardown;
+
+  private final Timer recoveryTimer;
+
+  private final long retryMillis;
+
+  private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "room-recovery");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // 아직 복구하지 못한 방. recover()와 retryScheduler 스레드에서 차례로만 다룸
+  private final List<RoomStateJournal.RoomRecord> pending = new ArrayList<>();
+
+  private int total;
+
+  private int reattached;
+
+  private int recreated;
+
+  private long startedAt;
+
+  private volatile long readyMillis;
+
+  @Autowired
+  public RoomStateRecovery(RoomStateJournal journal, RoomManager roomManager, MediaServerConnector mediaServer,
+                           MediaTeardownService teardown, MeterRegistry meterRegistry,
+                           @Value("${journal.recovery-retry:5s}") Duration retry) {
+    this.journal = journal;
+    this.roomManager = roomManager;
+    this.mediaServer = mediaServer;
+    this.teardown = teardown;
+    this.retryMillis = retry.toMillis();
+    this.recoveryTimer = Timer.builder("room.recovery.duration")
+            .description("Time spent reopening journaled rooms after a restart")
+            .register(meterRegistry);
+    TimeGauge.builder("room.recovery.ready.time", this, TimeUnit.MILLISECONDS, recovery -> recovery.readyMillis)
+            .description("Time from JVM start until journaled rooms were reopened")
+            .register(meterRegistry);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  synchronized void recover() {
+    final List<RoomStateJournal.RoomRecord> records = journal.getRecoveredRooms();
+    // 복구하지 못한 방도 ID가 다시 발급되지 않도록 먼저 예약
+    records.forEach(record -> RoomIdGenerator.reserve(record.getRoomId()));
+    if (records.isEmpty()) {
+      readyMillis = sinceJvmStart();
+      return;
+    }
+
+    startedAt = System.nanoTime();
+    total = records.size();
+    pending.addAll(records);
+    attempt();
+  }
+
+  // 미디어 서버에 연결할 수 없으면 남은 방을 그대로 두고 나중에 다시 시도
+  private synchronized void attempt() {
+    final Map<String, MediaPipeline> survivingPipelines;
+    try {
+      survivingPipelines = findSurvivingPipelines();
+    } catch (RuntimeException e) {
+      retryLater(e);
+      return;
+    }
+
+    for (final Iterator<RoomStateJournal.RoomRecord> it = pending.iterator(); it.hasNext(); ) {
+      final RoomStateJournal.RoomRecord record = it.next();
+      try {
+        MediaPipeline pipeline = survivingPipelines.get(record.getRoomId());
+        if (pipeline != null) {
+          releaseStaleElements(pipeline);
+          reattached++;
+        } else {
+          pipeline = roomManager.createTaggedPipeline(record.getRoomId());
+          recreated++;
+        }
+        roomManager.restoreRoom(record, pipeline);
+        it.remove();
+      } catch (RuntimeException e) {
+        if (!mediaServer.isConnected()) {
+          retryLater(e);
+          return;
+        }
+        // 미디어 서버가 연결된 상태에서 실패한 방은 다시 시도해도 복구할 수 없다고 보고 저널에서 지움
+        log.warn("Room {}: could not be recovered", record.getRoomId(), e);
+        journal.roomRemoved(record.getRoomId());
+        it.remove();
+      }
+    }
+
+    final long elapsedNanos = System.nanoTime() - startedAt;
+    recoveryTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    readyMillis = sinceJvmStart();
+    log.info("Recovered {} of {} journaled rooms ({} pipelines reattached, {} recreated) in {} ms, ready {} ms after JVM start",
+            reattached + recreated, total, reattached, recreated, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), readyMillis);
+  }
+
+  private void retryLater(RuntimeException cause) {
+    log.warn("Media server not reachable, retrying recovery of {} journaled rooms in {} ms: {}",
+            pending.size(), retryMillis, cause.getMessage());
+    retryScheduler.schedule(this::attempt, retryMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // 이 노드가 태그를 단 파이프라인만 roomId로 찾음
+  private Map<String, MediaPipeline> findSurvivingPipelines() {
+    final Map<String, MediaPipeline> pipelinesByRoomId = new HashMap<>();
+    for (final MediaPipeline pipeline : mediaServer.getKurentoClient().getServerManager().getPipelines()) {
+      final Map<String, String> tags = pipeline.getTags().stream()
+              .collect(Collectors.toMap(Tag::getKey, Tag::getValue, (first, second) -> first));
+      // 웨비나 중계 파이프라인은 같은 roomId 태그를 달고 있지만 다시 쓰지 않고 OrphanPipelineSweeper가 정리
+      if (!roomManager.getNodeId().equals(tags.get(RoomManager.PIPELINE_TAG_OWNER))
+              || tags.containsKey(RoomManager.PIPELINE_TAG_EDGE)) {
+        continue;
+      }
+      final String roomId = tags.get(RoomManager.PIPELINE_TAG_ROOM_ID);
+      if (roomId != null) {
+        pipelinesByRoomId.putIfAbsent(roomId, pipeline);
+      }
+    }
+    return pipelinesByRoomId;
+  }
+
+  // 세션이 사라진 이전 참가자들의 엔드포인트는 다시 쓸 수 없으므로 해제
+  private void releaseStaleElements(MediaPipeline pipeline) {
+    final List<MediaObject> children = pipeline.getChildren();
+    children.forEach(child -> teardown.releaseEndpoint(pipeline, child));
+    log.debug("Pipeline {}: released {} stale elements", pipeline.getId(), children.size());
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    retryScheduler.shutdownNow();
+  }
+
+  private static long sinceJvmStart() {
+    return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+  }
+}
@@ -0,0 +1,501 @@
+package org.improvejava.kurento_chat.room;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.improvejava.kurento_chat.media.EdgeMediaServers;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.improvejava.kurento_chat.user.UserRegistry;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaElement;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.RtpEndpoint;
+import org.kurento.client.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Runs webinar rooms: a few presenters publish into the room's own pipeline, and any number of
+ * receive-only viewers are spread over edge pipelines that get the presenters' streams relayed over RTP.
+ *
+ * <p>
+ * Viewers never create an outgoing endpoint and are not room participants, so joining costs one endpoint
+ * per presenter on an edge pipeline and no notifications to other viewers. Each edge pipeline holds at most
+ * {@code webinar.viewers-per-edge} viewers; a new one is opened on the next media server from
+ * {@link EdgeMediaServers} when all are full, and released when its last viewer leaves. Every presenter is
+ * linked to every edge by a pair of {@link RtpEndpoint}s, one in the room pipeline and one in the edge pipeline.
+ * Every media server round trip (connecting to an edge server, creating an edge pipeline, negotiating a
+ * relay) runs outside the webinar lock; the result is published under the lock after re-checking that the
+ * edge is still open, the presenter is still in the room and nobody published the same thing first. Viewers on an edge pipeline that ended up on the primary media server,
+ * because no edge server is configured or reachable, are charged against the server's admission budget.
+ * When the webinar ends, its viewers are notified and unregistered.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 웨비나 방을 관리합니다. 소수의 발표자는 방 파이프라인으로 송출하고, 받기만 하는 다수의 시청자는 여러 중계 파이프라인에 나누어 배정됩니다.
+ * 시청자는 송신 엔드포인트를 만들지 않고 방 참가자 목록에도 들어가지 않습니다. 중계 파이프라인 하나에는
+ * {@code webinar.viewers-per-edge}명까지 배정하고, 모두 차면 다음 미디어 서버에 새로 엽니다.
+ * 발표자 스트림은 방 파이프라인과 중계 파이프라인에 하나씩 만든 {@link RtpEndpoint} 쌍으로 전달됩니다.
+ * 미디어 서버 왕복이 필요한 작업은 웨비나 락 밖에서 하고, 결과는 락 안에서 다시 확인한 뒤 반영합니다.
+ * 중계 서버 대신 기본 미디어 서버에 배정된 시청자는 서버 입장 예산에 포함됩니다.
+ * 웨비나가 끝나면 시청자에게 알리고 사용자 등록도 해제합니다.</p>
+ */
+@Component
+public class WebinarManager {
+
+  private static final Logger log = LoggerFactory.getLogger(WebinarManager.class);
+
+  private final EdgeMediaServers edgeServers;
+
+  private final MediaTeardownService teardown;
+
+  private final UserRegistry userRegistry;
+
+  private final AdmissionController admission;
+
+  private final int viewersPerEdge;
+
+  private final String nodeId;
+
+  private final ConcurrentMap<String, Webinar> webinarsByRoomId = new ConcurrentHashMap<>();
+
+  @Autowired
+  public WebinarManager(EdgeMediaServers edgeServers, MediaTeardownService teardown, UserRegistry userRegistry,
+                        AdmissionController admission, MeterRegistry meterRegistry,
+                        @Value("${webinar.viewers-per-edge:200}") int viewersPerEdge,
+                        @Value("${node.id:${HOSTNAME:kurento-chat}}") String nodeId) {
+    this.edgeServers = edgeServers;
+    this.teardown = teardown;
+    this.userRegistry = userRegistry;
+    this.admission = admission;
+    this.viewersPerEdge = viewersPerEdge;
+    this.nodeId = nodeId;
+
+    meterRegistry.gauge("webinar.viewers", webinarsByRoomId,
+            webinars -> webinars.values().stream().mapToInt(Webinar::viewerCount).sum());
+    meterRegistry.gauge("webinar.edges", webinarsByRoomId,
+            webinars -> webinars.values().stream().mapToInt(webinar -> webinar.edges.size()).sum());
+  }
+
+  public void open(Room room) {
+    webinarsByRoomId.put(room.getRoomId(), new Webinar(room));
+    log.info("ROOM {}: opened as a webinar, up to {} viewers per edge pipeline", room.getRoomId(), viewersPerEdge);
+  }
+
+  public boolean isWebinar(String roomId) {
+    return webinarsByRoomId.containsKey(roomId);
+  }
+
+  /**
+   * 발표자 스트림을 열려 있는 모든 중계 파이프라인으로 보내고 시청자에게 알립니다.
+   */
+  public void addPresenter(Room room, UserSession presenter) {
+    final Webinar webinar = webinarsByRoomId.get(room.getRoomId());
+    if (webinar == null) {
+      return;
+    }
+
+    for (final Edge edge : webinar.edges) {
+      relayTo(webinar, presenter, edge);
+    }
+
+    final List<UserSession> viewers;
+    synchronized (webinar) {
+      viewers = webinar.viewers();
+    }
+
+    final JsonObject message = presenterJson(presenter);
+    message.addProperty("action", "presenterJoined");
+    notifyViewers(room, viewers, message);
+  }
+
+  /**
+   * 발표자 중계를 끊고, 시청자들의 해당 발표자 구독을 정리한 뒤 알립니다.
+   */
+  public void removePresenter(Room room, UserSession presenter) {
+    final Webinar webinar = webinarsByRoomId.get(room.getRoomId());
+    if (webinar == null) {
+      return;
+    }
+
+    final List<UserSession> viewers;
+    synchronized (webinar) {
+      for (final Edge edge : webinar.edges) {
+        edge.viewers.forEach(viewer -> viewer.cancelVideoFrom(presenter.getUserId()));
+        final Relay relay = edge.relays.remove(presenter.getUserId());
+        if (relay != null) {
+          release(room, edge, relay);
+        }
+      }
+      viewers = webinar.viewers();
+    }
+
+    final JsonObject message = new JsonObject();
+    message.addProperty("action", "presenterLeft");
+    message.addProperty("userId", presenter.getUserId());
+    message.addProperty("userName", presenter.getUserName());
+    notifyViewers(room, viewers, message);
+  }
+
+  /**
+   * 시청자를 여유가 있는 중계 파이프라인에 배정하고 발표자 목록을 보냅니다.
+   *
+   * @throws IllegalStateException 웨비나 방이 아닌 경우
+   */
+  public UserSession joinAsViewer(Room room, String userName, String userId, WebSocketSession session) throws IOException {
+    final Webinar webinar = webinarsByRoomId.get(room.getRoomId());
+    if (webinar == null) {
+      throw new IllegalStateException("웨비나 방이 아닙니다.");
+    }
+
+    UserSession viewer = null;
+    int viewersOnEdge = 0;
+    boolean onPrimary = false;
+    // 웨비나 락 밖에서 새로 만든 중계 파이프라인. 락 안에서 여전히 필요할 때만 공개함
+    Edge built = null;
+    Edge published = null;
+    while (viewer == null) {
+      synchronized (webinar) {
+        if (webinarsByRoomId.get(room.getRoomId()) != webinar) {
+          break;
+        }
+        Edge edge = leastLoadedEdge(webinar);
+        if (edge == null && built != null) {
+          publishEdge(webinar, built);
+          edge = published = built;
+          built = null;
+        }
+        if (edge != null) {
+          viewer = UserSession.viewer(userName, room.getRoomId(), userId, session, edge.pipeline, teardown, edge::sourceFor);
+          edge.viewers.add(viewer);
+          webinar.edgeByViewerId.put(userId, edge);
+          viewersOnEdge = edge.viewers.size();
+          onPrimary = edge.onPrimary;
+        }
+      }
+      // 중계 서버 연결, 파이프라인 생성, 발표자 중계 협상은 모두 미디어 서버 왕복이므로 웨비나 락 밖에서 함
+      if (viewer == null) {
+        built = buildEdge(room, edgeServers.nextClient());
+      }
+    }
+    // 그사이 다른 시청자가 연 중계 파이프라인에 자리가 생겼거나 웨비나가 끝났으면 만들어 둔 것은 버림
+    if (built != null) {
+      closeEdge(room, built);
+    }
+    if (viewer == null) {
+      throw new IllegalStateException("웨비나 방이 아닙니다.");
+    }
+    // 만드는 동안 들어온 발표자는 공개한 뒤 마저 중계
+    if (published != null) {
+      for (final UserSession presenter : room.getParticipants()) {
+        if (!published.relays.containsKey(presenter.getUserId())) {
+          relayTo(webinar, presenter, published);
+        }
+      }
+    }
+
+    // 중계 서버가 없거나 연결할 수 없어 기본 미디어 서버에 배정된 시청자는 발표자마다 기본 서버의 엔드포인트를 씀
+    if (onPrimary) {
+      try {
+        admission.admitViewer(room.getRoomId(), userId, Math.max(1, room.getParticipants().size()));
+      } catch (RuntimeException e) {
+        removeViewer(viewer);
+        throw e;
+      }
+    }
+    log.info("ROOM {}: viewer {} / {} joined, {} viewers on its edge pipeline", room.getRoomId(), userName, userId, viewersOnEdge);
+
+    final JsonArray presenters = new JsonArray();
+    for (final UserSession presenter : room.getParticipants()) {
+      presenters.add(presenterJson(presenter));
+    }
+
+    final JsonObject message = new JsonObject();
+    message.addProperty("action", "webinarJoined");
+    message.addProperty("roomId", room.getRoomId());
+    message.addProperty("userId", userId);
+    message.addProperty("userName", userName);
+    message.addProperty("roomLeaderId", room.getRoomLeaderId());
+    message.addProperty("roomLeaderName", room.getRoomLeaderName());
+    message.addProperty("resumeToken", viewer.getResumeToken());
+    message.add("presenters", presenters);
+    viewer.sendMessage(message);
+    return viewer;
+  }
+
+  /**
+   * 시청자를 내보내고, 비게 된 중계 파이프라인은 해제합니다. 웨비나가 이미 끝났으면 아무 일도 하지 않습니다.
+   */
+  public void removeViewer(UserSession viewer) throws IOException {
+    final Webinar webinar = webinarsByRoomId.get(viewer.getRoomId());
+    if (webinar == null) {
+      return;
+    }
+
+    synchronized (webinar) {
+      final Edge edge = webinar.edgeByViewerId.remove(viewer.getUserId());
+      if (edge == null) {
+        return;
+      }
+      edge.viewers.remove(viewer);
+      viewer.close();
+
+      if (edge.viewers.isEmpty()) {
+        webinar.edges.remove(edge);
+        closeEdge(webinar.room, edge);
+      }
+    }
+    log.debug("ROOM {}: viewer {} left", viewer.getRoomId(), viewer.getUserId());
+  }
+
+  /**
+   * 웨비나를 끝냅니다. 시청자에게 알리고 중계 파이프라인을 모두 해제합니다.
+   */
+  public void close(Room room) {
+    final Webinar webinar = webinarsByRoomId.remove(room.getRoomId());
+    if (webinar == null) {
+      return;
+    }
+
+    final List<UserSession> viewers;
+    synchronized (webinar) {
+      viewers = webinar.viewers();
+      webinar.edges.forEach(edge -> closeEdge(room, edge));
+      webinar.edges.clear();
+      webinar.edgeByViewerId.clear();
+    }
+
+    final JsonObject message = new JsonObject();
+    message.addProperty("action", "webinarEnded");
+    message.addProperty("roomId", room.getRoomId());
+    notifyViewers(room, viewers, message);
+    viewers.forEach(userRegistry::remove);
+    log.info("ROOM {}: webinar closed, {} viewers disconnected", room.getRoomId(), viewers.size());
+  }
+
+  /**
+   * 웨비나 시청자 모두에게 메시지를 보냅니다. 시청자 목록을 복사하지 않고 중계 파이프라인별 시청자 집합을 락 없이 바로 순회합니다.
+   */
+  public void notifyViewers(String roomId, JsonObject message) {
+    final Webinar webinar = webinarsByRoomId.get(roomId);
+    if (webinar == null) {
+      return;
+    }
+    for (final Edge edge : webinar.edges) {
+      for (final UserSession viewer : edge.viewers) {
+        try {
+          viewer.sendMessage(message);
+        } catch (IOException e) {
+          log.debug("ROOM {}: viewer {} could not be notified", roomId, viewer.getUserId());
+        }
+      }
+    }
+  }
+
+  public List<UserSession> getViewers(String roomId) {
+    final Webinar webinar = webinarsByRoomId.get(roomId);
+    if (webinar == null) {
+      return List.of();
+    }
+    synchronized (webinar) {
+      return webinar.viewers();
+    }
+  }
+
+  public int getViewerCount(String roomId) {
+    final Webinar webinar = webinarsByRoomId.get(roomId);
+    return webinar != null ? webinar.viewerCount() : 0;
+  }
+
+  /**
+   * @return 이 노드가 연 중계 파이프라인 ID. 고아 파이프라인 정리 대상에서 빼기 위해 사용
+   */
+  public Set<String> getEdgePipelineIds() {
+    return webinarsByRoomId.values().stream()
+            .flatMap(webinar -> webinar.edges.stream())
+            .map(edge -> edge.pipeline.getId())
+            .collect(Collectors.toCollection(HashSet::new));
+  }
+
+  // 여유가 있는 중계 파이프라인 중 가장 한가한 것. 모두 차 있으면 null
+  private Edge leastLoadedEdge(Webinar webinar) {
+    Edge least = null;
+    for (final Edge edge : webinar.edges) {
+      if (edge.viewers.size() < viewersPerEdge && (least == null || edge.viewers.size() < least.viewers.size())) {
+        least = edge;
+      }
+    }
+    return least;
+  }
+
+  // 아직 웨비나에 공개하지 않은 중계 파이프라인을 만들고 현재 발표자들을 중계함. 웨비나 락 밖에서 호출
+  private Edge buildEdge(Room room, KurentoClient edgeClient) {
+    final MediaPipeline pipeline = edgeClient.createMediaPipeline();
+
+    final Transaction tx = pipeline.beginTransaction();
+    pipeline.addTag(tx, RoomManager.PIPELINE_TAG_ROOM_ID, room.getRoomId());
+    pipeline.addTag(tx, RoomManager.PIPELINE_TAG_OWNER, nodeId);
+    pipeline.addTag(tx, RoomManager.PIPELINE_TAG_EDGE, "true");
+    tx.commit();
+
+    final Edge edge = new Edge(pipeline, edgeServers.isPrimary(edgeClient));
+    try {
+      for (final UserSession presenter : room.getParticipants()) {
+        edge.relays.put(presenter.getUserId(), relay(room, presenter, edge));
+      }
+    } catch (RuntimeException e) {
+      closeEdge(room, edge);
+      throw e;
+    }
+    return edge;
+  }
+
+  // 웨비나 락 안에서 호출. 만드는 동안 나간 발표자의 중계는 버림
+  private void publishEdge(Webinar webinar, Edge edge) {
+    final Room room = webinar.room;
+    edge.relays.entrySet().removeIf(entry -> {
+      if (room.hasParticipant(entry.getKey())) {
+        return false;
+      }
+      release(room, edge, entry.getValue());
+      return true;
+    });
+    webinar.edges.add(edge);
+    log.info("ROOM {}: opened edge pipeline {} ({} edges)", room.getRoomId(), edge.pipeline.getId(), webinar.edges.size());
+  }
+
+  /**
+   * 발표자를 중계 파이프라인 하나에 연결합니다. 협상은 웨비나 락 밖에서 하고, 락 안에서 중계 파이프라인이 아직 열려 있고
+   * 발표자가 방에 남아 있으며 아직 연결되지 않았을 때만 붙입니다. 아니면 만든 중계를 해제합니다.
+   */
+  private void relayTo(Webinar webinar, UserSession presenter, Edge edge) {
+    final Room room = webinar.room;
+    final Relay relay;
+    try {
+      relay = relay(room, presenter, edge);
+    } catch (RuntimeException e) {
+      log.warn("ROOM {}: could not relay presenter {} to edge pipeline {}", room.getRoomId(), presenter.getUserId(), edge.pipeline.getId(), e);
+      return;
+    }
+    synchronized (webinar) {
+      if (webinar.edges.contains(edge) && room.hasParticipant(presenter.getUserId())
+              && edge.relays.putIfAbsent(presenter.getUserId(), relay) == null) {
+        return;
+      }
+    }
+    release(room, edge, relay);
+  }
+
+  // 중계 파이프라인 쪽이 offer를 만들고 방 파이프라인 쪽이 응답. 서로 다른 미디어 서버여도 SDP에 적힌 주소로 RTP가 오감
+  private Relay relay(Room room, UserSession presenter, Edge edge) {
+    final RtpEndpoint origin = new RtpEndpoint.Builder(room.getPipeline()).build();
+    final RtpEndpoint target = new RtpEndpoint.Builder(edge.pipeline).build();
+
+    final String sdpOffer = target.generateOffer();
+    final String sdpAnswer = origin.processOffer(sdpOffer);
+    target.processAnswer(sdpAnswer);
+
+    presenter.getOutgoingWebRtcPeer().connect(origin);
+    return new Relay(origin, target);
+  }
+
+  private void release(Room room, Edge edge, Relay relay) {
+    teardown.releaseEndpoint(room.getPipeline(), relay.origin);
+    teardown.releaseEndpoint(edge.pipeline, relay.target);
+  }
+
+  // 방 파이프라인 쪽 중계 엔드포인트는 개별 해제하고, 중계 파이프라인은 통째로 해제
+  private void closeEdge(Room room, Edge edge) {
+    for (final Relay relay : edge.relays.values()) {
+      teardown.releaseEndpoint(room.getPipeline(), relay.origin);
+    }
+    edge.relays.clear();
+    teardown.releasePipeline(edge.pipeline);
+    log.info("ROOM {}: released edge pipeline {}", room.getRoomId(), edge.pipeline.getId());
+  }
+
+  private JsonObject presenterJson(UserSession presenter) {
+    final JsonObject json = new JsonObject();
+    json.addProperty("userId", presenter.getUserId());
+    json.addProperty("userName", presenter.getUserName());
+    json.addProperty("audioOn", presenter.getIsAudioOn().toString());
+    json.addProperty("videoOn", presenter.getIsVideoOn().toString());
+    return json;
+  }
+
+  private void notifyViewers(Room room, List<UserSession> viewers, JsonObject message) {
+    for (final UserSession viewer : viewers) {
+      try {
+        viewer.sendMessage(message);
+      } catch (IOException e) {
+        log.debug("ROOM {}: viewer {} could not be notified", room.getRoomId(), viewer.getUserId());
+      }
+    }
+  }
+
+  // 변경은 Webinar 객체의 락을 잡고 하고, 지표 수집과 고아 파이프라인 정리는 락 없이 읽음
+  private static class Webinar {
+    private final Room room;
+    private final List<Edge> edges = new CopyOnWriteArrayList<>();
+    private final Map<String, Edge> edgeByViewerId = new ConcurrentHashMap<>();
+
+    Webinar(Room room) {
+      this.room = room;
+    }
+
+    List<UserSession> viewers() {
+      final List<UserSession> viewers = new ArrayList<>();
+      edges.forEach(edge -> viewers.addAll(edge.viewers));
+      return viewers;
+    }
+
+    int viewerCount() {
+      return edgeByViewerId.size();
+    }
+  }
+
+  private static class Edge {
+    private final MediaPipeline pipeline;
+    private final Map<String, Relay> relays = new ConcurrentHashMap<>();
+    private final Set<UserSession> viewers = ConcurrentHashMap.newKeySet();
+    // 중계 서버 대신 기본 미디어 서버에 연 파이프라인이면 시청자를 서버 예산에 포함
+    private final boolean onPrimary;
+
+    Edge(MediaPipeline pipeline, boolean onPrimary) {
+      this.pipeline = pipeline;
+      this.onPrimary = onPrimary;
+    }
+
+    // 시청자의 수신 엔드포인트에 연결할, 이 중계 파이프라인 안의 발표자 스트림
+    MediaElement sourceFor(UserSession presenter) {
+      final Relay relay = relays.get(presenter.getUserId());
+      return relay != null ? relay.target : null;
+    }
+  }
+
+  private static class Relay {
+    private final RtpEndpoint origin;
+    private final RtpEndpoint target;
+
+    Relay(RtpEndpoint origin, RtpEndpoint target) {
+      this.origin = origin;
+      this.target = target;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package org.improvejava.kurento_chat.user;
+
+import com.google.gson.JsonObject;
+import jakarta.annotation.PreDestroy;
+import org.improvejava.kurento_chat.room.RoomManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a disconnected user's {@link UserSession} and media endpoints alive for a grace period,
+ * so a client that reconnects with its resume token can continue without renegotiating media.
+ *
+ * <p><b>한국어:</b>
+ * 웹 소켓 연결이 끊긴 사용자의 {@link UserSession}과 미디어 엔드포인트를 유예 시간 동안 유지합니다.
+ * 유예 시간 안에 재접속 토큰으로 다시 연결하면 미디어 재협상 없이 이어서 사용할 수 있고,
+ * 시간이 지나면 일반 퇴장 절차로 방에서 내보냅니다.</p>
+ */
+@Component
+public class SessionResumeManager {
+
+  private static final Logger log = LoggerFactory.getLogger(SessionResumeManager.class);
+
+  private final RoomManager roomManager;
+
+  private final UserRegistry userRegistry;
+
+  private final Duration gracePeriod;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  private final ConcurrentMap<String, ScheduledFuture<?>> pendingLeaveByUserId = new ConcurrentHashMap<>();
+
+  @Autowired
+  public SessionResumeManager(RoomManager roomManager, UserRegistry userRegistry,
+                              @Value("${session.resume.grace-period:15s}") Duration gracePeriod) {
+    this.roomManager = roomManager;
+    this.userRegistry = userRegistry;
+    this.gracePeriod = gracePeriod;
+  }
+
+  /**
+   * 연결이 끊긴 세션의 사용자를 재접속 대기 상태로 전환합니다.
+   * 유예 시간이 0 이하라면 즉시 방에서 내보냅니다.
+   *
+   * @param session 닫힌 웹 소켓 세션
+   * @return 대기 상태가 된 사용자, 등록되지 않은 세션이라면 {@code null}
+   */
+  public UserSession suspend(WebSocketSession session) throws IOException {
+    final UserSession user = userRegistry.detachSession(session);
+    if (user == null) {
+      return null;
+    }
+
+    if (gracePeriod.isZero() || gracePeriod.isNegative()) {
+      userRegistry.removeByUserId(user.getUserId());
+      roomManager.leaveRoom(user);
+      return user;
+    }
+
+    user.detach();
+    final ScheduledFuture<?> pendingLeave = scheduler.schedule(() -> expire(user), gracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+    final ScheduledFuture<?> previous = pendingLeaveByUserId.put(user.getUserId(), pendingLeave);
+    if (previous != null) {
+      previous.cancel(false);
+    }
+
+    log.info("USER {} / {}: waiting {} for session resume", user.getUserName(), user.getUserId(), gracePeriod);
+    return user;
+  }
+
+  /**
+   * 재접속 토큰을 확인한 뒤 대기 중인 사용자에게 새 세션을 붙입니다.
+   *
+   * @return 다시 연결된 사용자, 토큰이 맞지 않거나 유예 시간이 지났다면 {@code null}
+   */
+  public UserSession resume(String userId, String resumeToken, WebSocketSession session) throws IOException {
+    final UserSession user = userRegistry.getByUserId(userId);
+    if (!matchesResumeToken(user, resumeToken)) {
+      log.info("USER {}: rejected session resume", userId);
+      return null;
+    }
+
+    final ScheduledFuture<?> pendingLeave = pendingLeaveByUserId.remove(userId);
+    if (pendingLeave == null) {
+      log.info("USER {} / {}: session resume requested but user is not waiting", user.getUserName(), userId);
+      return null;
+    }
+    pendingLeave.cancel(false);
+
+    // 보관했던 메시지보다 재접속 성공 알림이 먼저 도착하도록 새 세션에 바로 전송
+    final JsonObject resumedMsg = new JsonObject();
+    resumedMsg.addProperty("action", "sessionResumed");
+    resumedMsg.addProperty("userId", user.getUserId());
+    resumedMsg.addProperty("roomId", user.getRoomId());
+    synchronized (session) {
+      session.sendMessage(new TextMessage(resumedMsg.toString()));
+    }
+
+    final int replayed = user.reattach(session);
+    userRegistry.register(user);
+
+    log.info("USER {} / {}: session resumed on {}, {} missed messages replayed", user.getUserName(), userId, session.getId(), replayed);
+    return user;
+  }
+
+  /**
+   * 연결이 끊긴 사용자가 재접속 대신 다시 입장할 때, 재접속을 기다리던 이전 세션을 정리합니다.
+   * 입장할 때마다 userId가 새로 발급되므로 클라이언트가 보낸 이전 userId와 재접속 토큰으로 이전 세션을 찾고,
+   * 대기 타이머를 취소한 뒤 이전 세션을 방에서 내보내서 유예 시간 동안 이전 참가자가 방에 남지 않게 합니다.
+   *
+   * @param previousUserId 이전 입장 때 받은 userId, 없으면 {@code null}
+   * @param resumeToken 이전 입장 때 받은 재접속 토큰, 없으면 {@code null}
+   * @return 정리한 이전 세션, 기다리던 세션이 없거나 토큰이 맞지 않으면 {@code null}
+   */
+  public UserSession discardSuspended(String previousUserId, String resumeToken) {
+    if (previousUserId == null) {
+      return null;
+    }
+    // 다른 사람의 userId만으로 그 사람을 내보낼 수 없도록 토큰이 맞을 때만 정리
+    final UserSession suspended = userRegistry.getByUserId(previousUserId);
+    if (!matchesResumeToken(suspended, resumeToken)) {
+      return null;
+    }
+    final ScheduledFuture<?> pendingLeave = pendingLeaveByUserId.remove(previousUserId);
+    if (pendingLeave == null) {
+      return null;
+    }
+    pendingLeave.cancel(false);
+
+    log.info("USER {} / {}: joining again, discarding the session waiting for resume", suspended.getUserName(), previousUserId);
+    leave(suspended);
+    return suspended;
+  }
+
+  // 토큰 비교 시간으로 일치하는 앞부분의 길이를 알아낼 수 없도록 상수 시간 비교
+  private boolean matchesResumeToken(UserSession user, String resumeToken) {
+    return user != null && resumeToken != null && MessageDigest.isEqual(
+            user.getResumeToken().getBytes(StandardCharsets.UTF_8), resumeToken.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void expire(UserSession user) {
+    final ScheduledFuture<?> pendingLeave = pendingLeaveByUserId.get(user.getUserId());
+    if (pendingLeave == null || !pendingLeaveByUserId.remove(user.getUserId(), pendingLeave)) {
+      return;
+    }
+
+    log.info("USER {} / {}: session resume grace period expired", user.getUserName(), user.getUserId());
+    leave(user);
+  }
+
+  private void leave(UserSession user) {
+    // 그사이 같은 userId로 새 세션이 등록되었다면 새 세션은 그대로 두고 이전 세션의 엔드포인트만 해제
+    if (!userRegistry.remove(user)) {
+      try {
+        user.close();
+      } catch (IOException e) {
+        log.warn("USER {} / {}: failed to release replaced session", user.getUserName(), user.getUserId(), e);
+      }
+      return;
+    }
+    try {
+      roomManager.leaveRoom(user);
+    } catch (IOException | IllegalArgumentException e) {
+      log.warn("USER {} / {}: failed to leave room {} after session resume wait", user.getUserName(), user.getUserId(), user.getRoomId(), e);
+    }
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    scheduler.shutdownNow();
+  }
+}
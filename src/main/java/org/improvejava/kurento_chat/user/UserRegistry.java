@@ -3,42 +3,163 @@ package org.improvejava.kurento_chat.user;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.logging.Logger;
 
+/**
+ * Indexes connected users by userId, WebSocket session id and roomId.
+ *
+ * <p>
+ * Lookups are lock-free reads of concurrent maps. Registration and removal update all three indexes
+ * under one lock, so a reader never sees a user in one index and not in another after the write completes,
+ * and a removal never leaves a stale entry behind. The session id a user was registered with is remembered,
+ * so the session index stays correct even after the user's socket has been swapped by a resume.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 접속한 사용자를 userId, 웹 소켓 세션 id, roomId 기준으로 찾을 수 있게 관리합니다.
+ * roomId 인덱스에는 방 참가자뿐 아니라 웨비나 시청자와 재접속을 기다리는 사용자도 들어갑니다.
+ * 조회는 락 없이 하고, 등록과 삭제는 하나의 락 안에서 세 인덱스를 함께 바꿔서 인덱스끼리 어긋나지 않게 합니다.</p>
+ */
 @Component
 public class UserRegistry {
-  Logger logger = Logger.getLogger(UserRegistry.class.getName());
 
-  private final ConcurrentHashMap<String, UserSession> userSessionByUserId = new ConcurrentHashMap<>();
+  private final Object writeLock = new Object();
+
+  private final ConcurrentHashMap<String, Registration> registrationByUserId = new ConcurrentHashMap<>();
   private final ConcurrentHashMap<String, UserSession> userSessionBySessionId = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Set<UserSession>> userSessionsByRoomId = new ConcurrentHashMap<>();
 
   public void register(UserSession user) {
-    userSessionByUserId.put(user.getUserId(), user);
-    userSessionBySessionId.put(user.getSession().getId(), user);
+    synchronized (writeLock) {
+      final Registration previous = registrationByUserId.get(user.getUserId());
+      if (previous != null) {
+        unindex(previous);
+      }
+
+      final Registration registration = new Registration(user, user.getSession().getId());
+      registrationByUserId.put(user.getUserId(), registration);
+      userSessionBySessionId.put(registration.sessionId, user);
+      userSessionsByRoomId.computeIfAbsent(user.getRoomId(), k -> ConcurrentHashMap.newKeySet()).add(user);
+    }
   }
 
   public UserSession getByUserId(String userId) {
-    return userSessionByUserId.get(userId);
+    final Registration registration = registrationByUserId.get(userId);
+    return registration == null ? null : registration.user;
   }
 
   public UserSession getBySession(WebSocketSession session) {
     return userSessionBySessionId.get(session.getId());
   }
 
+  /**
+   * 같은 방에 등록된 사용자 목록. 웨비나 시청자와 재접속을 기다리는 사용자도 포함됩니다.
+   */
+  public List<UserSession> getByRoomId(String roomId) {
+    final Set<UserSession> users = userSessionsByRoomId.get(roomId);
+    return users == null ? Collections.emptyList() : List.copyOf(users);
+  }
+
+  /**
+   * 방에 등록된 사용자를 모두 한 번에 등록 해제합니다. 방을 강제로 닫을 때 사용합니다.
+   *
+   * @return 등록 해제한 사용자 목록
+   */
+  public List<UserSession> removeByRoomId(String roomId) {
+    synchronized (writeLock) {
+      final Set<UserSession> users = userSessionsByRoomId.get(roomId);
+      if (users == null) {
+        return Collections.emptyList();
+      }
+      final List<UserSession> removed = List.copyOf(users);
+      for (final UserSession user : removed) {
+        final Registration registration = registrationByUserId.get(user.getUserId());
+        if (registration != null && registration.user == user) {
+          registrationByUserId.remove(user.getUserId());
+          unindex(registration);
+        }
+      }
+      userSessionsByRoomId.remove(roomId);
+      return removed;
+    }
+  }
+
   public boolean exists(String userId) {
-    return userSessionByUserId.containsKey(userId);
+    return registrationByUserId.containsKey(userId);
   }
 
   public UserSession removeBySession(WebSocketSession session) {
-    final UserSession user = getBySession(session);
-    try {
-      userSessionByUserId.remove(user.getUserId());
-      userSessionBySessionId.remove(session.getId());
-    } catch (NullPointerException e) {
-      logger.warning(e.getMessage() + " session이 null이라 지울 수 없습니다.");
+    synchronized (writeLock) {
+      final UserSession user = userSessionBySessionId.get(session.getId());
+      if (user == null) {
+        return null;
+      }
+
+      final Registration registration = registrationByUserId.get(user.getUserId());
+      if (registration != null && registration.user == user) {
+        registrationByUserId.remove(user.getUserId());
+        unindex(registration);
+      } else {
+        userSessionBySessionId.remove(session.getId(), user);
+      }
+      return user;
+    }
+  }
+
+  // 재접속 대기 중인 사용자는 userId로는 계속 찾을 수 있도록 세션 인덱스만 제거
+  public UserSession detachSession(WebSocketSession session) {
+    synchronized (writeLock) {
+      return userSessionBySessionId.remove(session.getId());
     }
-    return user;
   }
 
+  public UserSession removeByUserId(String userId) {
+    synchronized (writeLock) {
+      final Registration registration = registrationByUserId.remove(userId);
+      if (registration == null) {
+        return null;
+      }
+      unindex(registration);
+      return registration.user;
+    }
+  }
+
+  /**
+   * 주어진 사용자가 아직 그 userId로 등록되어 있을 때만 제거합니다.
+   *
+   * @return 제거했으면 {@code true}, 그사이 같은 userId로 다른 세션이 등록되었거나 이미 제거되었으면 {@code false}
+   */
+  public boolean remove(UserSession user) {
+    synchronized (writeLock) {
+      final Registration registration = registrationByUserId.get(user.getUserId());
+      if (registration == null || registration.user != user) {
+        return false;
+      }
+      registrationByUserId.remove(user.getUserId());
+      unindex(registration);
+      return true;
+    }
+  }
+
+  // writeLock 안에서만 호출
+  private void unindex(Registration registration) {
+    userSessionBySessionId.remove(registration.sessionId, registration.user);
+    userSessionsByRoomId.computeIfPresent(registration.user.getRoomId(), (roomId, users) -> {
+      users.remove(registration.user);
+      return users.isEmpty() ? null : users;
+    });
+  }
+
+  private static final class Registration {
+    private final UserSession user;
+    private final String sessionId;
+
+    private Registration(UserSession user, String sessionId) {
+      this.user = user;
+      this.sessionId = sessionId;
+    }
+  }
 }
@@ -2,9 +2,11 @@ package org.improvejava.kurento_chat.user;
 
 import com.google.gson.JsonObject;
 import lombok.Getter;
-import lombok.ToString;
+import lombok.Setter;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
 import org.improvejava.kurento_chat.room.Room;
 import org.kurento.client.*;
+import org.kurento.client.internal.server.KurentoServerException;
 import org.kurento.jsonrpc.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,16 +15,43 @@ import org.springframework.web.socket.WebSocketSession;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-
-@ToString
+import java.util.function.Function;
+
+/**
+ * One participant's signaling session and media endpoints.
+ *
+ * <p>
+ * Tens of thousands of these can be alive on one node while most of them sit idle, so the per-connection
+ * state is kept small: audio/video state is primitive, the incoming endpoint maps and the missed-message
+ * buffer are only allocated once they are needed, the resume token is kept as a {@link UUID} rather than
+ * its string form, and ICE candidates are forwarded by small named listeners that do not capture more than
+ * they use. {@code UserSessionFootprintTest} enforces the budget of an idle session.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 참가자 한 명의 시그널링 세션과 미디어 엔드포인트입니다. 한 노드에 대부분 유휴 상태인 수만 개가 동시에 있을 수 있으므로,
+ * 마이크/카메라 상태는 기본형으로 두고 수신 엔드포인트 맵과 끊긴 동안의 메시지 버퍼는 필요할 때 만들며,
+ * 재접속 토큰은 문자열 대신 {@link UUID}로 보관합니다. 유휴 세션의 메모리 예산은 {@code UserSessionFootprintTest}로 확인합니다.</p>
+ */
 public class UserSession implements Closeable {
 
   private static final Logger log = LoggerFactory.getLogger(UserSession.class);
 
+  // 연결이 끊긴 동안 보관할 시그널링 메시지 최대 개수 (초과 시 오래된 것부터 버림)
+  private static final int MAX_MISSED_MESSAGES = 256;
+
+  private static final String NOT_SHARING = "화면을 공유하고 있지 않은 사용자입니다.";
+
   @Getter
   private String userName;
 
@@ -30,57 +59,258 @@ public class UserSession implements Closeable {
   private final String userId;
 
   @Getter
-  private final WebSocketSession session;
+  private volatile WebSocketSession session;
+
+  // 웹 소켓이 끊겼을 때 같은 사용자임을 증명하고 세션을 다시 붙이는 데 사용하는 토큰
+  private final UUID resumeToken = UUID.randomUUID();
+
+  // 세션 교체 중에도 메시지 순서를 보장하기 위한 송신 락
+  private final Object sendLock = new Object();
+
+  // 연결이 끊겼을 때만 만듦. sendLock 안에서만 다룸
+  private Deque<String> missedMessages;
+
+  private boolean detached;
 
   @Getter
   private final String roomId;
 
-  @Getter
-  private Boolean isAudioOn;
+  private volatile boolean audioOn;
+
+  private volatile boolean videoOn;
 
-  @Getter
-  private Boolean isVideoOn;
   private final MediaPipeline pipeline;
+
+  // 웨비나 시청자는 받기만 하므로 송신 엔드포인트가 없음 (null)
   private final WebRtcEndpoint outgoingMedia;
 
-  private final ConcurrentMap<String, WebRtcEndpoint> incomingMediaByUserId = new ConcurrentHashMap<>();
+  // 송신자별로 이 사용자의 파이프라인 안에서 미디어를 내보내는 요소. 기본은 송신자의 송신 엔드포인트
+  private final Function<UserSession, MediaElement> mediaSource;
+
+  private final MediaTeardownService teardown;
+
+  // 구독하기 전에는 만들지 않음. 읽을 때는 incomingMedia(), 넣을 때는 incomingMediaForUpdate()로 접근
+  private volatile ConcurrentMap<String, WebRtcEndpoint> incomingMediaByUserId;
+
+  // 화면 공유용 송신 엔드포인트. 공유 중이 아니면 null
+  private volatile WebRtcEndpoint screenMedia;
+
+  private volatile ConcurrentMap<String, WebRtcEndpoint> incomingScreenByUserId;
+
+  // 클라이언트가 보고한 다운링크 대역폭 (kbps, 0이면 보고 없음)
+  @Getter
+  @Setter
+  private volatile int reportedDownlinkKbps;
+
+  // 수신 엔드포인트마다 적용할 영상 송신 대역폭 (kbps, 0이면 기본값)
+  @Getter
+  private volatile int videoSendLimitKbps;
+
+  private volatile int videoSendMinKbps;
+
+  // 클라이언트 화면에 보이는 송신자 목록. null이면 화면 단위 구독을 쓰지 않고 모두 구독
+  private volatile Set<String> visibleSenderIds;
 
   public UserSession(final String userName, String roomId, String userId,
                      Boolean isAudioOn, Boolean isVideoOn,
-                     final WebSocketSession session, MediaPipeline pipeline) {
+                     final WebSocketSession session, MediaPipeline pipeline, MediaTeardownService teardown) {
+    this(userName, roomId, userId, isAudioOn, isVideoOn, session, pipeline, teardown, true, UserSession::getOutgoingWebRtcPeer);
+  }
+
+  private UserSession(final String userName, String roomId, String userId,
+                      Boolean isAudioOn, Boolean isVideoOn,
+                      final WebSocketSession session, MediaPipeline pipeline, MediaTeardownService teardown,
+                      boolean publishing, Function<UserSession, MediaElement> mediaSource) {
     this.userName = userName;
     this.userId = userId;
     this.session = session;
     this.roomId = roomId;
-    this.isAudioOn = isAudioOn;
-    this.isVideoOn = isVideoOn;
+    this.audioOn = Boolean.TRUE.equals(isAudioOn);
+    this.videoOn = Boolean.TRUE.equals(isVideoOn);
     this.pipeline = pipeline;
+    this.teardown = teardown;
+    this.mediaSource = mediaSource;
+    if (!publishing) {
+      this.outgoingMedia = null;
+      return;
+    }
     this.outgoingMedia = new WebRtcEndpoint.Builder(pipeline).build();
 
-    this.outgoingMedia.addIceCandidateFoundListener(event -> {
-      JsonObject response = new JsonObject();
-      response.addProperty("action", "onIceCandidate");
-      response.addProperty("userId", userId);
-      response.add("candidate", JsonUtils.toJsonObject(event.getCandidate()));
-      try {
-        synchronized (this.session) {
-          this.session.sendMessage(new TextMessage(response.toString()));
-        }
-      } catch (IOException e) {
-        log.debug(e.getMessage());
-      }
-    });
+    this.outgoingMedia.addIceCandidateFoundListener(new IceCandidateForwarder(this, this, null));
+  }
+
+  /**
+   * 송신 엔드포인트 없이 받기만 하는 웨비나 시청자 세션을 만듭니다.
+   *
+   * @param pipeline 시청자가 배정된 중계 파이프라인
+   * @param mediaSource 발표자별로 중계 파이프라인 안에서 미디어를 내보내는 요소. 중계가 없으면 {@code null}을 반환
+   */
+  public static UserSession viewer(String userName, String roomId, String userId, WebSocketSession session,
+                                   MediaPipeline pipeline, MediaTeardownService teardown,
+                                   Function<UserSession, MediaElement> mediaSource) {
+    return new UserSession(userName, roomId, userId, false, false, session, pipeline, teardown, false, mediaSource);
   }
 
+  /**
+   * @return 송신 엔드포인트, 웨비나 시청자이면 {@code null}
+   */
   public WebRtcEndpoint getOutgoingWebRtcPeer() {
     return outgoingMedia;
   }
 
+  public String getResumeToken() {
+    return resumeToken.toString();
+  }
+
+  public Boolean getIsAudioOn() {
+    return audioOn;
+  }
+
+  public Boolean getIsVideoOn() {
+    return videoOn;
+  }
+
+  public boolean isPublishing() {
+    return outgoingMedia != null;
+  }
+
+  public boolean isSharingScreen() {
+    return screenMedia != null;
+  }
+
+  /**
+   * 화면 공유용 송신 엔드포인트를 만듭니다. 카메라 엔드포인트와 별개이며 대역폭 한도도 따로 적용됩니다.
+   *
+   * @throws IllegalStateException 이미 화면을 공유 중인 경우
+   */
+  public synchronized void startScreenShare(int maxRecvKbps, int minRecvKbps) {
+    if (!isPublishing()) {
+      throw new IllegalStateException("시청자는 화면을 공유할 수 없습니다.");
+    }
+    if (screenMedia != null) {
+      throw new IllegalStateException("이미 화면을 공유하고 있습니다.");
+    }
+
+    final WebRtcEndpoint screen = new WebRtcEndpoint.Builder(pipeline).build();
+    screen.addIceCandidateFoundListener(new IceCandidateForwarder(this, this, "screen"));
+
+    screen.setMaxVideoRecvBandwidth(maxRecvKbps);
+    screen.setMinVideoRecvBandwidth(minRecvKbps);
+
+    screenMedia = screen;
+  }
+
+  public synchronized void stopScreenShare() {
+    final WebRtcEndpoint screen = screenMedia;
+    if (screen == null) {
+      return;
+    }
+    screenMedia = null;
+    teardown.releaseEndpoint(pipeline, screen);
+  }
+
+  /**
+   * 다른 사용자의 화면 공유를 받습니다. 자기 자신이면 공유 화면을 올리는 송신 엔드포인트와 협상합니다.
+   *
+   * @param maxSendKbps 수신 엔드포인트가 이 사용자에게 보낼 화면 공유 대역폭 상한
+   * @throws IllegalStateException 송신자가 화면을 공유하고 있지 않거나(협상 도중 공유를 끝낸 경우 포함), 이 사용자가 웨비나 시청자인 경우
+   */
+  public void receiveScreenFrom(UserSession sender, String sdpOffer, int maxSendKbps, int minSendKbps) throws IOException {
+    final WebRtcEndpoint senderScreen = sender.screenMedia;
+    if (senderScreen == null) {
+      throw new IllegalStateException(NOT_SHARING);
+    }
+    // 화면 공유는 중계 파이프라인으로 넘기지 않으므로 다른 파이프라인의 시청자는 받을 수 없음
+    if (!isPublishing()) {
+      throw new IllegalStateException("웨비나 시청자는 화면 공유를 받을 수 없습니다.");
+    }
+
+    final WebRtcEndpoint endpoint;
+    if (sender == this) {
+      endpoint = senderScreen;
+    } else {
+      endpoint = incomingScreenForUpdate().computeIfAbsent(sender.getUserId(), senderId -> {
+        final WebRtcEndpoint incoming = new WebRtcEndpoint.Builder(pipeline).build();
+        incoming.addIceCandidateFoundListener(new IceCandidateForwarder(this, sender, "screen"));
+
+        incoming.setMaxVideoSendBandwidth(maxSendKbps);
+        incoming.setMinVideoSendBandwidth(minSendKbps);
+        return incoming;
+      });
+    }
+
+    final String sdpAnswer;
+    try {
+      if (sender != this) {
+        senderScreen.connect(endpoint);
+      }
+      log.info("USER {} / {}: receiving screen share from {}", this.userName, this.userId, sender.getUserName());
+      sdpAnswer = endpoint.processOffer(sdpOffer);
+    } catch (KurentoServerException e) {
+      // 연결하는 사이 공유가 끝나 송신 엔드포인트가 해제된 경우는 공유 중이 아닌 것과 같게 응답
+      if (sender.screenMedia == senderScreen) {
+        throw e;
+      }
+      cancelScreenFrom(sender.getUserId());
+      throw new IllegalStateException(NOT_SHARING, e);
+    }
+    // 공유를 끝낼 때 해제할 수신 엔드포인트 목록을 이미 지나간 뒤라면 여기서 직접 해제
+    if (sender.screenMedia != senderScreen) {
+      cancelScreenFrom(sender.getUserId());
+      throw new IllegalStateException(NOT_SHARING);
+    }
+
+    final JsonObject response = new JsonObject();
+    response.addProperty("action", "receiveScreenFrom");
+    response.addProperty("userId", sender.getUserId());
+    response.addProperty("userName", sender.getUserName());
+    response.addProperty("sdpAnswer", sdpAnswer);
+    this.sendMessage(response);
+
+    endpoint.gatherCandidates();
+  }
+
+  public void cancelScreenFrom(final String senderId) {
+    final WebRtcEndpoint incoming = incomingScreen().remove(senderId);
+    if (incoming == null) {
+      return;
+    }
+
+    log.debug("PARTICIPANT {} / {}: removing screen share endpoint for {}", this.userName, this.userId, senderId);
+    teardown.releaseEndpoint(pipeline, incoming);
+  }
+
+  // ICE 후보 전달. 화면 공유 스트림은 카메라 스트림과 구분하기 위해 stream 필드를 붙임
+  private void sendIceCandidate(UserSession sender, String stream, IceCandidate candidate) {
+    final JsonObject response = new JsonObject();
+    response.addProperty("action", "onIceCandidate");
+    response.addProperty("userId", sender.getUserId());
+    response.addProperty("userName", sender.getUserName());
+    if (stream != null) {
+      response.addProperty("stream", stream);
+    }
+    response.add("candidate", JsonUtils.toJsonObject(candidate));
+    try {
+      sendMessage(response);
+    } catch (IOException e) {
+      log.debug(e.getMessage());
+    }
+  }
+
+  public void addScreenCandidate(IceCandidate candidate, String userId) {
+    final WebRtcEndpoint webRtc = this.userId.equals(userId) ? screenMedia : incomingScreen().get(userId);
+    if (webRtc != null) {
+      webRtc.addIceCandidate(candidate);
+    }
+  }
+
   public void addCandidate(IceCandidate candidate, String userId) throws IOException {
     if (this.userId.compareTo(userId) == 0) {
-      outgoingMedia.addIceCandidate(candidate);
+      if (outgoingMedia != null) {
+        outgoingMedia.addIceCandidate(candidate);
+      }
     } else {
-      WebRtcEndpoint webRtc = incomingMediaByUserId.get(userId);
+      WebRtcEndpoint webRtc = incomingMedia().get(userId);
       if (webRtc != null) {
         webRtc.addIceCandidate(candidate);
       }
@@ -89,41 +319,143 @@ public class UserSession implements Closeable {
 
   private WebRtcEndpoint getEndpointForUser(final UserSession sender) {
     if (sender.getUserId().equals(userId)) {
+      if (outgoingMedia == null) {
+        throw new IllegalStateException("송신 엔드포인트가 없는 시청자입니다.");
+      }
       log.debug("PARTICIPANT {} / {}: configuring loopback", this.userName, this.userId);
       return outgoingMedia;
     }
 
     log.debug("PARTICIPANT {} / {}: receiving video from {} / {}", this.userName, this.userId, sender.getUserName(), sender.getUserId());
 
-    WebRtcEndpoint incoming = incomingMediaByUserId.get(sender.getUserId());
+    final MediaElement source = mediaSource.apply(sender);
+    if (source == null) {
+      throw new IllegalStateException("미디어를 받을 수 없는 송신자입니다.");
+    }
+
+    WebRtcEndpoint incoming = incomingMedia().get(sender.getUserId());
     if (incoming == null) {
       log.debug("PARTICIPANT {} / {}: creating new endpoint for {} / {}", this.userName, this.userId, sender.getUserName(), sender.getUserId());
       incoming = new WebRtcEndpoint.Builder(pipeline).build();
 
-      incoming.addIceCandidateFoundListener(event -> {
-        JsonObject response = new JsonObject();
-        response.addProperty("action", "onIceCandidate");
-        response.addProperty("userName", sender.getUserName());
-        response.addProperty("userId", sender.getUserId());
-        response.add("candidate", JsonUtils.toJsonObject(event.getCandidate()));
-        try {
-          synchronized (session) {
-            session.sendMessage(new TextMessage(response.toString()));
-          }
-        } catch (IOException e) {
-          log.debug(e.getMessage());
-        }
-      });
+      incoming.addIceCandidateFoundListener(new IceCandidateForwarder(this, sender, null));
 
-      incomingMediaByUserId.put(sender.getUserId(), incoming);
+      if (videoSendLimitKbps > 0) {
+        incoming.setMaxVideoSendBandwidth(videoSendLimitKbps);
+        incoming.setMinVideoSendBandwidth(videoSendMinKbps);
+      }
+
+      incomingMediaForUpdate().put(sender.getUserId(), incoming);
     }
 
     log.debug("PARTICIPANT {} / {}: obtained endpoint for {} / {}", this.userName, this.userId, sender.getUserName(), sender.getUserId());
-    sender.getOutgoingWebRtcPeer().connect(incoming);
+    // 송신자가 영상을 끈 상태라면 오디오만 연결해서 미디어 서버가 영상을 중계하지 않게 함
+    if (Boolean.FALSE.equals(sender.getIsVideoOn())) {
+      source.connect(incoming, MediaType.AUDIO);
+    } else {
+      source.connect(incoming);
+    }
 
     return incoming;
   }
 
+  /**
+   * 송신자 한 명으로부터 받을 수 있는 영상 대역폭 상한을 정합니다.
+   * SDP에 반영되는 값이므로 클라이언트가 offer를 보내기 전에 호출해야 합니다.
+   *
+   * <p>kurento-client 6.18은 트랜잭션을 마지막 인자로 받는 속성 setter를 직렬화하지 못하므로(트랜잭션을 첫 인자로만 인식)
+   * 대역폭 속성은 트랜잭션으로 묶지 않고 하나씩 설정합니다.</p>
+   */
+  public void limitOutgoingVideo(int maxRecvKbps, int minRecvKbps) {
+    if (outgoingMedia == null) {
+      return;
+    }
+    outgoingMedia.setMaxVideoRecvBandwidth(maxRecvKbps);
+    outgoingMedia.setMinVideoRecvBandwidth(minRecvKbps);
+  }
+
+  /**
+   * 이 사용자가 구독 중인 모든 수신 엔드포인트의 영상 송신 대역폭을 응답을 기다리지 않고 한꺼번에 바꿉니다.
+   * 이후 새로 만들어지는 수신 엔드포인트에도 같은 값이 적용됩니다.
+   */
+  public void applyVideoSendLimit(int maxKbps, int minKbps) {
+    this.videoSendLimitKbps = maxKbps;
+    this.videoSendMinKbps = minKbps;
+
+    final Map<String, WebRtcEndpoint> incomingMedia = incomingMedia();
+    if (incomingMedia.isEmpty()) {
+      return;
+    }
+
+    final Continuation<Void> onApplied = new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) throws Exception {
+        log.trace("PARTICIPANT {} / {}: video send limit set to {} kbps", UserSession.this.userName, UserSession.this.userId, maxKbps);
+      }
+
+      @Override
+      public void onError(Throwable cause) throws Exception {
+        log.warn("PARTICIPANT {} / {}: Could not set video send limit", UserSession.this.userName, UserSession.this.userId, cause);
+      }
+    };
+    for (final WebRtcEndpoint incoming : incomingMedia.values()) {
+      incoming.setMaxVideoSendBandwidth(maxKbps, onApplied);
+      incoming.setMinVideoSendBandwidth(minKbps, onApplied);
+    }
+  }
+
+  /**
+   * @return 해당 송신자를 받는 수신 엔드포인트, 구독하지 않았으면 {@code null}
+   */
+  public WebRtcEndpoint getIncomingEndpointFrom(String senderId) {
+    return incomingMedia().get(senderId);
+  }
+
+  /**
+   * 이 사용자의 송신 엔드포인트를 다른 사용자의 수신 엔드포인트에 연결합니다. 영상이 꺼져 있으면 오디오만 연결합니다.
+   */
+  public void connectOutgoingTo(Transaction tx, WebRtcEndpoint incoming) {
+    if (outgoingMedia == null) {
+      return;
+    }
+    if (!videoOn) {
+      outgoingMedia.connect(tx, incoming, MediaType.AUDIO);
+    } else {
+      outgoingMedia.connect(tx, incoming);
+    }
+  }
+
+  public void disconnectOutgoingFrom(Transaction tx, WebRtcEndpoint incoming) {
+    if (outgoingMedia == null) {
+      return;
+    }
+    outgoingMedia.disconnect(tx, incoming);
+  }
+
+  public void setVisibleSenderIds(Set<String> visibleSenderIds) {
+    this.visibleSenderIds = Set.copyOf(visibleSenderIds);
+  }
+
+  public boolean isSenderVisible(String senderId) {
+    final Set<String> visible = visibleSenderIds;
+    return visible == null || senderId.equals(userId) || visible.contains(senderId);
+  }
+
+  public boolean isReceivingFrom(String senderId) {
+    return incomingMedia().containsKey(senderId);
+  }
+
+  public Set<String> getReceivingSenderIds() {
+    return Set.copyOf(incomingMedia().keySet());
+  }
+
+  /**
+   * @return 지금 영상을 받고 있는 송신자 수 (자기 자신 제외)
+   */
+  public int getSubscriptionCount() {
+    return incomingMedia().size();
+  }
+
   public void changeName(String newName, Room room) {
     userName = newName;
 
@@ -135,52 +467,77 @@ public class UserSession implements Closeable {
     Collection<UserSession> userSessionList = room.getParticipants();
 
     userSessionList.forEach(userSession -> {
-      synchronized (userSession.getSession()) {
-        try {
-          userSession.getSession().sendMessage(new TextMessage(messageToReceiver.toString()));
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
+      try {
+        userSession.sendMessage(messageToReceiver);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
       }
     });
   }
 
   @Override
   public void close() throws IOException {
-    for (final String remoteParticipantUserId : incomingMediaByUserId.keySet()) {
+    synchronized (sendLock) {
+      missedMessages = null;
+    }
 
-      log.trace("PARTICIPANT {} / {}: Released incoming EP for {}", this.userName, this.userId, remoteParticipantUserId);
+    // 해제 요청은 파이프라인 단위로 모아서 보내고, 방이 비면 파이프라인 해제로 대체됨
+    final Map<String, WebRtcEndpoint> incomingMedia = incomingMedia();
+    for (final String remoteParticipantUserId : incomingMedia.keySet()) {
+      log.trace("PARTICIPANT {} / {}: Releasing incoming EP for {}", this.userName, this.userId, remoteParticipantUserId);
+      final WebRtcEndpoint ep = incomingMedia.remove(remoteParticipantUserId);
+      if (ep != null) {
+        teardown.releaseEndpoint(pipeline, ep);
+      }
+    }
 
-      final WebRtcEndpoint ep = this.incomingMediaByUserId.get(remoteParticipantUserId);
+    for (final String sharerId : incomingScreen().keySet()) {
+      cancelScreenFrom(sharerId);
+    }
+    stopScreenShare();
 
-      ep.release(new Continuation<Void>() {
+    if (outgoingMedia != null) {
+      log.trace("PARTICIPANT {} / {} : Releasing outgoing EP", this.userName, this.userId);
+      teardown.releaseEndpoint(pipeline, outgoingMedia);
+    }
+  }
 
-        @Override
-        public void onSuccess(Void result) throws Exception {
-          log.trace("PARTICIPANT {} / {}: Released successfully incoming EP for {}",
-                  UserSession.this.userName, UserSession.this.userId, remoteParticipantUserId);
-        }
+  private Map<String, WebRtcEndpoint> incomingMedia() {
+    final Map<String, WebRtcEndpoint> incomingMedia = incomingMediaByUserId;
+    return incomingMedia != null ? incomingMedia : Collections.emptyMap();
+  }
 
-        @Override
-        public void onError(Throwable cause) throws Exception {
-          log.warn("PARTICIPANT {} / {}: Could not release incoming EP for {}", UserSession.this.userName,
-                  UserSession.this.userId, remoteParticipantUserId);
+  private ConcurrentMap<String, WebRtcEndpoint> incomingMediaForUpdate() {
+    ConcurrentMap<String, WebRtcEndpoint> incomingMedia = incomingMediaByUserId;
+    if (incomingMedia == null) {
+      synchronized (this) {
+        incomingMedia = incomingMediaByUserId;
+        if (incomingMedia == null) {
+          incomingMedia = new ConcurrentHashMap<>();
+          incomingMediaByUserId = incomingMedia;
         }
-      });
+      }
     }
+    return incomingMedia;
+  }
 
-    outgoingMedia.release(new Continuation<Void>() {
-
-      @Override
-      public void onSuccess(Void result) throws Exception {
-        log.trace("PARTICIPANT {} / {} : Released outgoing EP", UserSession.this.userName, UserSession.this.userId);
-      }
+  private Map<String, WebRtcEndpoint> incomingScreen() {
+    final Map<String, WebRtcEndpoint> incomingScreen = incomingScreenByUserId;
+    return incomingScreen != null ? incomingScreen : Collections.emptyMap();
+  }
 
-      @Override
-      public void onError(Throwable cause) throws Exception {
-        log.warn("USER {} / {}: Could not release outgoing EP", UserSession.this.userName, UserSession.this.userId);
+  private ConcurrentMap<String, WebRtcEndpoint> incomingScreenForUpdate() {
+    ConcurrentMap<String, WebRtcEndpoint> incomingScreen = incomingScreenByUserId;
+    if (incomingScreen == null) {
+      synchronized (this) {
+        incomingScreen = incomingScreenByUserId;
+        if (incomingScreen == null) {
+          incomingScreen = new ConcurrentHashMap<>();
+          incomingScreenByUserId = incomingScreen;
+        }
       }
-    });
+    }
+    return incomingScreen;
   }
 
   @Override
@@ -206,6 +563,12 @@ public class UserSession implements Closeable {
     return result;
   }
 
+  // 로그용. 엔드포인트와 세션까지 따라가지 않도록 식별자만 출력
+  @Override
+  public String toString() {
+    return "UserSession(userId=" + userId + ", userName=" + userName + ", roomId=" + roomId + ")";
+  }
+
   public void receiveVideoFrom(UserSession sender, String sdpOffer) throws IOException {
     log.info("USER {} / {}: connecting with {} in room {}", this.userName, this.userId, sender.getUserName(), this.roomId);
 
@@ -226,32 +589,89 @@ public class UserSession implements Closeable {
 
   public void cancelVideoFrom(final String senderId) {
     log.debug("PARTICIPANT {} / {} : canceling video reception from {}", this.userName, this.userId, senderId);
-    final WebRtcEndpoint incoming = incomingMediaByUserId.remove(senderId);
+    final WebRtcEndpoint incoming = incomingMedia().remove(senderId);
+    if (incoming == null) {
+      return;
+    }
 
     log.debug("PARTICIPANT {} / {}: removing endpoint for {}", this.userName, this.userId, senderId);
-    incoming.release(new Continuation<Void>() {
-      @Override
-      public void onSuccess(Void result) throws Exception {
-        log.trace("PARTICIPANT {} / {}: Released successfully incoming EP for {}",
-                UserSession.this.userName, UserSession.this.userId, senderId);
-      }
+    teardown.releaseEndpoint(pipeline, incoming);
+  }
 
-      @Override
-      public void onError(Throwable cause) throws Exception {
-        log.warn("PARTICIPANT {} / {}: Could not release incoming EP for {}", UserSession.this.userName,
-                UserSession.this.userId, senderId);
-      }
-    });
+  /**
+   * 연결이 끊기거나 미디어가 멈춘 수신 엔드포인트 하나만 해제합니다. 같은 송신자에게 다시 {@code receiveVideoFrom}을 보내면
+   * 새 엔드포인트가 만들어집니다.
+   *
+   * @return 해당 엔드포인트가 아직 이 송신자의 구독이어서 해제했으면 {@code true}
+   */
+  public boolean resetIncomingEndpoint(String senderId, WebRtcEndpoint endpoint) {
+    if (!incomingMedia().remove(senderId, endpoint)) {
+      return false;
+    }
+
+    log.debug("PARTICIPANT {} / {}: resetting endpoint for {}", this.userName, this.userId, senderId);
+    teardown.releaseEndpoint(pipeline, endpoint);
+    return true;
   }
 
   // 해당 유저 세션을 가진 사용자에게 메시지 보낼 때 이용하는 메서드
+  // 연결이 끊긴 상태라면 재접속 시 재전송할 수 있도록 보관함
   public void sendMessage(JsonObject message) throws IOException {
     log.debug("USER {} / {}: Sending message {}", userName, userId, message);
-    synchronized (session) {
+    synchronized (sendLock) {
+      if (detached || !session.isOpen()) {
+        keepMissedMessage(message.toString());
+        return;
+      }
       session.sendMessage(new TextMessage(message.toString()));
     }
   }
 
+  /**
+   * 웹 소켓 연결이 끊겼지만 미디어 엔드포인트는 유지하는 상태로 전환합니다.
+   * 이후 전송되는 메시지는 재접속 시까지 보관됩니다.
+   */
+  public void detach() {
+    synchronized (sendLock) {
+      detached = true;
+    }
+    log.debug("USER {} / {}: detached from session {}", userName, userId, session.getId());
+  }
+
+  /**
+   * 새 웹 소켓 세션을 붙이고, 끊긴 동안 보관했던 메시지를 순서대로 재전송합니다.
+   *
+   * @param newSession 재접속한 클라이언트의 웹 소켓 세션
+   * @return 재전송한 메시지 개수
+   */
+  public int reattach(WebSocketSession newSession) throws IOException {
+    synchronized (sendLock) {
+      this.session = newSession;
+      this.detached = false;
+
+      int replayed = 0;
+      while (missedMessages != null && !missedMessages.isEmpty()) {
+        newSession.sendMessage(new TextMessage(missedMessages.peekFirst()));
+        missedMessages.pollFirst();
+        replayed++;
+      }
+      missedMessages = null;
+
+      log.debug("USER {} / {}: reattached to session {}, replayed {} messages", userName, userId, newSession.getId(), replayed);
+      return replayed;
+    }
+  }
+
+  private void keepMissedMessage(String message) {
+    if (missedMessages == null) {
+      missedMessages = new ArrayDeque<>();
+    }
+    if (missedMessages.size() == MAX_MISSED_MESSAGES) {
+      missedMessages.pollFirst();
+    }
+    missedMessages.addLast(message);
+  }
+
   // 같은 방에 있는 사용자끼리만 보낼 수 있게 설정 추가 필요
   public void sendChat(UserSession sender, String message) throws IOException {
     JsonObject messageToSend = new JsonObject();
@@ -266,13 +686,8 @@ public class UserSession implements Closeable {
     messageToSend.addProperty("message", message);
     messageToSend.addProperty("isSendToAll", false);
 
-    synchronized (sender.session) {
-      sender.session.sendMessage(new TextMessage(messageToSend.toString()));
-    }
-
-    synchronized (session) {
-      session.sendMessage(new TextMessage(messageToSend.toString()));
-    }
+    sender.sendMessage(messageToSend);
+    sendMessage(messageToSend);
   }
 
   static public void sendChatToAll(UserSession sender, List<UserSession> recieverList, String message) throws IOException {
@@ -290,9 +705,7 @@ public class UserSession implements Closeable {
       messageToReceiver.addProperty("message", message);
       messageToReceiver.addProperty("isSendToAll", true);
 
-      synchronized (reciever.getSession()) {
-        reciever.getSession().sendMessage(new TextMessage(messageToReceiver.toString()));
-      }
+      reciever.sendMessage(messageToReceiver);
     }
 
     JsonObject messageToSender = new JsonObject();
@@ -302,9 +715,7 @@ public class UserSession implements Closeable {
     messageToSender.addProperty("message", message);
     messageToSender.addProperty("isSendToAll", true);
 
-    synchronized (sender.session) {
-      sender.session.sendMessage(new TextMessage(messageToSender.toString()));
-    }
+    sender.sendMessage(messageToSender);
   }
 
   // 같은 방에 있는 사용자끼리만 보낼 수 있게 설정 추가 필요
@@ -321,13 +732,8 @@ public class UserSession implements Closeable {
     emojiToSend.addProperty("emoji", selectedEmoji);
     emojiToSend.addProperty("isSendToAll", false);
 
-    synchronized (sender.session) {
-      sender.session.sendMessage(new TextMessage(emojiToSend.toString()));
-    }
-
-    synchronized (session) {
-      session.sendMessage(new TextMessage(emojiToSend.toString()));
-    }
+    sender.sendMessage(emojiToSend);
+    sendMessage(emojiToSend);
   }
 
   // 같은 방에 있는 사용자끼리만 보낼 수 있게 설정 추가 필요
@@ -346,9 +752,7 @@ public class UserSession implements Closeable {
       emojiToSend.addProperty("emoji", selectedEmoji);
       emojiToSend.addProperty("isSendToAll", true);
 
-      synchronized (receiver.getSession()) {
-        receiver.getSession().sendMessage(new TextMessage(emojiToSend.toString()));
-      }
+      receiver.sendMessage(emojiToSend);
     }
 
     JsonObject emojiToSender = new JsonObject();
@@ -358,40 +762,114 @@ public class UserSession implements Closeable {
     emojiToSender.addProperty("emoji", selectedEmoji);
     emojiToSender.addProperty("isSendToAll", true);
 
-    synchronized (sender.session) {
-      sender.session.sendMessage(new TextMessage(emojiToSender.toString()));
-    }
+    sender.sendMessage(emojiToSender);
   }
 
-  public void changeAudioState(List<UserSession> receiverList, Boolean turnAudioOn) throws IOException {
-    this.isAudioOn = turnAudioOn;
+  /**
+   * @return 수신자들에게 보낸 상태 변경 메시지. 같은 메시지를 다른 수신자에게도 보낼 때 사용
+   */
+  public JsonObject changeAudioState(List<UserSession> receiverList, Boolean turnAudioOn) throws IOException {
+    this.audioOn = turnAudioOn;
 
-    receiverList.forEach(r -> System.out.println(r.getUserId()));
+    log.debug("PARTICIPANT {} / {}: notifying {} users of audio state {}", this.userName, this.userId, receiverList.size(), turnAudioOn);
 
     JsonObject audioStateChangeMsg = new JsonObject();
     audioStateChangeMsg.addProperty("action", "changeAudioState");
     audioStateChangeMsg.addProperty("userId", userId);
-    audioStateChangeMsg.addProperty("audioOn", isAudioOn);
+    audioStateChangeMsg.addProperty("audioOn", audioOn);
 
     for (UserSession receiver : receiverList) {
-      synchronized (receiver.getSession()) {
-        receiver.getSession().sendMessage(new TextMessage(audioStateChangeMsg.toString()));
-      }
+      receiver.sendMessage(audioStateChangeMsg);
     }
+    return audioStateChangeMsg;
   }
 
-  public void changeVideoState(List<UserSession> receiverList, Boolean turnVideoOn) throws IOException {
-    this.isVideoOn = turnVideoOn;
+  /**
+   * @param receiverList 상태 변경을 알릴 사용자 목록
+   * @param mediaReceivers 이 사용자의 미디어를 실제로 받는 사용자 목록 (같은 회의실 참가자)
+   * @return 수신자들에게 보낸 상태 변경 메시지. 같은 메시지를 다른 수신자에게도 보낼 때 사용
+   */
+  public JsonObject changeVideoState(List<UserSession> receiverList, List<UserSession> mediaReceivers, Boolean turnVideoOn) throws IOException {
+    final boolean changed = turnVideoOn != this.videoOn;
+    this.videoOn = turnVideoOn;
+
+    if (changed) {
+      rewireVideo(mediaReceivers, turnVideoOn);
+    }
 
     JsonObject videoStateChangeMsg = new JsonObject();
     videoStateChangeMsg.addProperty("action", "changeVideoState");
     videoStateChangeMsg.addProperty("userId", userId);
-    videoStateChangeMsg.addProperty("videoOn", isVideoOn);
+    videoStateChangeMsg.addProperty("videoOn", videoOn);
 
     for (UserSession receiver : receiverList) {
-      synchronized (receiver.getSession()) {
-        receiver.getSession().sendMessage(new TextMessage(videoStateChangeMsg.toString()));
+      receiver.sendMessage(videoStateChangeMsg);
+    }
+    return videoStateChangeMsg;
+  }
+
+  /**
+   * 구독자들의 수신 엔드포인트로 가는 영상 연결만 끊거나 다시 잇습니다.
+   * 오디오 연결은 건드리지 않으므로 전환 중에도 소리가 끊기지 않고, 모든 변경은 한 번의 요청으로 보냅니다.
+   */
+  private void rewireVideo(List<UserSession> receiverList, boolean turnVideoOn) {
+    if (outgoingMedia == null) {
+      return;
+    }
+    final Transaction tx = pipeline.beginTransaction();
+    int rewired = 0;
+    for (final UserSession receiver : receiverList) {
+      final WebRtcEndpoint incoming = receiver.incomingMedia().get(userId);
+      if (incoming == null) {
+        continue;
+      }
+      if (turnVideoOn) {
+        outgoingMedia.connect(tx, incoming, MediaType.VIDEO);
+      } else {
+        outgoingMedia.disconnect(tx, incoming, MediaType.VIDEO);
+      }
+      rewired++;
+    }
+
+    if (rewired == 0) {
+      return;
+    }
+
+    final int rewiredCount = rewired;
+    tx.commit(new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) throws Exception {
+        log.debug("PARTICIPANT {} / {}: video {} for {} subscribers", userName, userId, turnVideoOn ? "restored" : "stopped", rewiredCount);
       }
+
+      @Override
+      public void onError(Throwable cause) throws Exception {
+        log.warn("PARTICIPANT {} / {}: Could not {} video for subscribers", userName, userId, turnVideoOn ? "restore" : "stop", cause);
+      }
+    });
+  }
+
+  /**
+   * 엔드포인트에서 찾은 ICE 후보를 받는 사람에게 전달합니다. 람다 대신 필요한 필드만 가진 작은 객체로 둠
+   */
+  private static final class IceCandidateForwarder implements EventListener<IceCandidateFoundEvent> {
+
+    private final UserSession receiver;
+
+    private final UserSession sender;
+
+    // null이면 카메라 스트림
+    private final String stream;
+
+    private IceCandidateForwarder(UserSession receiver, UserSession sender, String stream) {
+      this.receiver = receiver;
+      this.sender = sender;
+      this.stream = stream;
+    }
+
+    @Override
+    public void onEvent(IceCandidateFoundEvent event) {
+      receiver.sendIceCandidate(sender, stream, event.getCandidate());
     }
   }
 }
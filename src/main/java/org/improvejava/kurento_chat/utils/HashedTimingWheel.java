@@ -0,0 +1,174 @@
+package org.improvejava.kurento_chat.utils;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A hashed timing wheel for large numbers of coarse-grained timers.
+ *
+ * <p>
+ * Scheduling and cancelling are O(1). A single ticker thread advances the wheel every {@code tickMillis}
+ * and hands expired tasks to the given {@link Executor}, so slow tasks never delay the wheel itself.
+ * </p><br>
+ *
+ * <p><b>한국어:</b>
+ * 많은 수의 타이머를 저렴하게 관리하기 위한 해시 타이밍 휠입니다.
+ * 등록과 취소는 O(1)이며, 하나의 스레드가 {@code tickMillis}마다 휠을 돌리고 만료된 작업은 {@link Executor}에 넘깁니다.</p>
+ */
+public class HashedTimingWheel {
+
+  private final long tickNanos;
+
+  private final Queue<Timeout>[] buckets;
+
+  private final int mask;
+
+  private final Executor taskExecutor;
+
+  // 다른 스레드에서 등록한 타이머는 ticker 스레드가 다음 tick에 버킷으로 옮김
+  private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+  private final AtomicBoolean started = new AtomicBoolean();
+
+  private final Thread ticker;
+
+  private volatile boolean running = true;
+
+  private long startNanos;
+
+  private long tick;
+
+  @SuppressWarnings("unchecked")
+  public HashedTimingWheel(String name, long tickMillis, int wheelSize, Executor taskExecutor) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("tick 간격은 0보다 커야 합니다.");
+    }
+
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.buckets = new Queue[size];
+    for (int i = 0; i < size; i++) {
+      buckets[i] = new ArrayDeque<>();
+    }
+    this.mask = size - 1;
+    this.taskExecutor = taskExecutor;
+    this.ticker = new Thread(this::run, name);
+    this.ticker.setDaemon(true);
+  }
+
+  /**
+   * {@code delay} 후에 {@code task}를 실행하도록 등록합니다. 실제 실행 시점은 최대 한 tick만큼 늦어질 수 있습니다.
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    if (started.compareAndSet(false, true)) {
+      startNanos = System.nanoTime();
+      ticker.start();
+    }
+
+    final Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+    newTimeouts.add(timeout);
+    return timeout;
+  }
+
+  public void stop() {
+    running = false;
+    ticker.interrupt();
+  }
+
+  private void run() {
+    while (running) {
+      final long deadline = startNanos + (tick + 1) * tickNanos;
+      long sleepNanos = deadline - System.nanoTime();
+      while (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          if (!running) {
+            return;
+          }
+        }
+        sleepNanos = deadline - System.nanoTime();
+      }
+
+      transferNewTimeouts();
+      expire(buckets[(int) (tick & mask)]);
+      tick++;
+    }
+  }
+
+  private void transferNewTimeouts() {
+    Timeout timeout;
+    while ((timeout = newTimeouts.poll()) != null) {
+      if (timeout.isCancelled()) {
+        continue;
+      }
+
+      // tick t의 버킷은 startNanos + (t + 1) * tickNanos에 만료되므로, 만료 시각이 deadline보다 앞서지 않는 첫 tick에 넣음
+      // (나눗셈을 올림해야 deadline보다 먼저 실행되지 않음)
+      final long elapsedNanos = timeout.deadlineNanos - startNanos;
+      final long targetTick = Math.max(Math.floorDiv(elapsedNanos + tickNanos - 1, tickNanos) - 1, tick);
+      timeout.remainingRounds = (targetTick - tick) / buckets.length;
+      buckets[(int) (targetTick & mask)].add(timeout);
+    }
+  }
+
+  private void expire(Queue<Timeout> bucket) {
+    final Iterator<Timeout> it = bucket.iterator();
+    while (it.hasNext()) {
+      final Timeout timeout = it.next();
+      if (timeout.isCancelled()) {
+        it.remove();
+      } else if (timeout.remainingRounds > 0) {
+        timeout.remainingRounds--;
+      } else {
+        it.remove();
+        if (timeout.state.compareAndSet(false, true)) {
+          taskExecutor.execute(timeout.task);
+        }
+      }
+    }
+  }
+
+  /**
+   * 등록된 타이머 핸들. {@link #cancel()}로 실행 전에 취소할 수 있습니다.
+   */
+  public static final class Timeout {
+
+    private final Runnable task;
+
+    private final long deadlineNanos;
+
+    // true가 되면 만료(실행) 또는 취소된 상태
+    private final AtomicBoolean state = new AtomicBoolean();
+
+    private volatile boolean cancelled;
+
+    private long remainingRounds;
+
+    private Timeout(Runnable task, long deadlineNanos) {
+      this.task = task;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    public boolean cancel() {
+      if (state.compareAndSet(false, true)) {
+        cancelled = true;
+        return true;
+      }
+      return false;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+  }
+}
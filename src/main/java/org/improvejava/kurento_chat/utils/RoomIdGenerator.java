@@ -24,5 +24,12 @@ public class RoomIdGenerator {
         generatedRoomIds.add(roomId); // 중복 체크 통과한 roomId 리스트에 추가
         return roomId;
     }
+
+    /**
+     * 재시작 후 복구한 방 ID를 다시 발급하지 않도록 사용 중으로 표시
+     */
+    public static synchronized void reserve(String roomId) {
+        generatedRoomIds.add(roomId);
+    }
 }
 
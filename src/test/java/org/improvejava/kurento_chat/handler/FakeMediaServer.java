@@ -0,0 +1,89 @@
+package org.improvejava.kurento_chat.handler;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.kurento.client.KurentoClient;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 미디어 서버 대신 Kurento JSON-RPC 요청에 바로 응답하는 가짜 서버.
+ * 진짜 KurentoClient가 이 서버에 붙으므로 애플리케이션 코드는 그대로 동작하고, 요청 직렬화 비용도 그대로 든다.
+ * 미디어는 흐르지 않으므로 ICE 후보나 미디어 흐름 이벤트는 보내지 않는다.
+ */
+public class FakeMediaServer extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    // 요청마다 더하는 처리 시간. 실제 미디어 서버의 응답 시간을 흉내 낼 때 사용
+    private final long latencyNanos;
+
+    public FakeMediaServer(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    public KurentoClient newClient() {
+        return KurentoClient.createFromJsonRpcClient(new JsonRpcClientLocal(this));
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request) throws Exception {
+        requests.incrementAndGet();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+
+        if ("transaction".equals(request.getMethod())) {
+            final JsonArray responses = new JsonArray();
+            for (final JsonElement operation : request.getParams().getAsJsonArray("operations")) {
+                final JsonObject operationRequest = operation.getAsJsonObject();
+                final JsonObject response = new JsonObject();
+                response.addProperty("jsonrpc", "2.0");
+                response.add("id", operationRequest.get("id"));
+                response.add("result", result(operationRequest.get("method").getAsString(), operationRequest.getAsJsonObject("params")));
+                responses.add(response);
+            }
+            final JsonObject result = new JsonObject();
+            result.add("value", responses);
+            transaction.sendResponse(result);
+            return;
+        }
+
+        transaction.sendResponse(result(request.getMethod(), request.getParams()));
+    }
+
+    private JsonObject result(String method, JsonObject params) {
+        final JsonObject result = new JsonObject();
+        result.addProperty("sessionId", "fake-session");
+        switch (method) {
+            case "create" -> result.addProperty("value", params.get("type").getAsString() + "-" + nextId.incrementAndGet());
+            case "subscribe" -> result.addProperty("value", "subscription-" + nextId.incrementAndGet());
+            case "invoke" -> invokeResult(params.get("operation").getAsString(), result);
+            default -> { }
+        }
+        return result;
+    }
+
+    private void invokeResult(String operation, JsonObject result) {
+        switch (operation) {
+            case "processOffer", "processAnswer" -> result.addProperty("value", "v=0\r\no=- 0 0 IN IP4 127.0.0.1\r\ns=fake\r\n");
+            case "generateOffer" -> result.addProperty("value", "v=0\r\no=- 0 0 IN IP4 127.0.0.1\r\ns=fake-offer\r\n");
+            case "isMediaFlowingIn", "isMediaFlowingOut" -> result.addProperty("value", false);
+            case "getPipelines", "getChildren", "getTags" -> result.add("value", new JsonArray());
+            default -> { }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.improvejava.kurento_chat.handler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.socket.TextMessage;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ReactiveSignalingHandlerTest {
+
+    private CallHandler callHandler;
+
+    private ReactiveSignalingHandler handler;
+
+    private WebSocketSession session;
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        callHandler = mock(CallHandler.class);
+        handler = new ReactiveSignalingHandler(callHandler, new SimpleMeterRegistry(), 2, 4);
+
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        when(session.close(any())).thenReturn(Mono.empty());
+        when(session.textMessage(anyString())).thenAnswer(invocation -> message(invocation.getArgument(0)));
+        when(session.send(any())).thenAnswer(invocation ->
+                Flux.<WebSocketMessage>from(invocation.getArgument(0)).doOnNext(message -> sent.add(message.getPayloadAsText())).then());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        handler.shutdown();
+    }
+
+    @DisplayName("받은 메시지를 순서대로 CallHandler에 넘기고, 보낸 메시지는 송신 스트림으로 나간다.")
+    @Test
+    public void dispatchesInOrderAndStreamsReplies() throws Exception {
+        // given
+        when(session.receive()).thenReturn(Flux.just(message("first"), message("second")));
+        List<String> handled = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            org.springframework.web.socket.WebSocketSession adapter = invocation.getArgument(0);
+            String payload = invocation.<TextMessage>getArgument(1).getPayload();
+            handled.add(payload);
+            adapter.sendMessage(new TextMessage("re:" + payload));
+            return null;
+        }).when(callHandler).handleMessage(any(), any());
+
+        // when
+        handler.handle(session).block(Duration.ofSeconds(5));
+
+        // then
+        assertThat(handled).containsExactly("first", "second");
+        assertThat(sent).containsExactly("re:first", "re:second");
+        verify(callHandler).afterConnectionEstablished(any());
+        verify(callHandler, timeout(1000)).afterConnectionClosed(any(), any());
+    }
+
+    @DisplayName("송신 버퍼가 차면 블로킹하지 않고 세션을 닫는다.")
+    @Test
+    public void closesSessionWhenOutboundBufferIsFull() throws Exception {
+        // given
+        ReactiveSessionAdapter adapter = new ReactiveSessionAdapter(session, 8, () -> { });
+        // 구독은 했지만 소켓에 쓰지 못해 요청을 하지 않는 느린 클라이언트
+        adapter.outbound().subscribe(new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+        });
+
+        // when
+        for (int i = 0; i < 8; i++) {
+            adapter.sendMessage(new TextMessage("m" + i));
+        }
+
+        // then
+        assertThatThrownBy(() -> adapter.sendMessage(new TextMessage("overflow"))).hasMessageContaining("full");
+        verify(session).close(any());
+    }
+
+    private WebSocketMessage message(String payload) {
+        return new WebSocketMessage(WebSocketMessage.Type.TEXT,
+                DefaultDataBufferFactory.sharedInstance.wrap(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,19 @@
+package org.improvejava.kurento_chat.handler;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@EnabledIfSystemProperty(named = "transport.bench", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.main.web-application-type=reactive",
+        "journal.dir=target/transport-bench/reactive/journal",
+        "join.batch.window=0ms",
+        "drain.deadline=0s"
+})
+public class ReactiveTransportBenchmarkTest extends SignalingTransportBenchmark {
+
+    @Override
+    protected String transport() {
+        return "Reactor Netty";
+    }
+}
@@ -0,0 +1,87 @@
+package org.improvejava.kurento_chat.handler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SignalingCaptureTest {
+
+    @TempDir
+    Path dir;
+
+    @DisplayName("받은 메시지를 연결 번호, 시각과 함께 기록하고 순서대로 다시 읽는다.")
+    @Test
+    public void capturedFramesAreReadBackInOrder() throws Exception {
+        // given
+        SignalingCapture capture = new SignalingCapture(true, dir.toString(), 1024, new SimpleMeterRegistry());
+        WebSocketSession first = session("a");
+        WebSocketSession second = session("b");
+
+        // when
+        capture.opened(first);
+        capture.opened(second);
+        capture.received(first, "{\"eventId\":\"createRoom\",\"userName\":\"방장\"}");
+        capture.identified(first, "user-1", "123456");
+        capture.received(second, "{\"eventId\":\"sendChat\",\"message\":\"안녕\\n하세요\"}");
+        capture.closed(first);
+        capture.close();
+        List<SignalingCapture.Frame> frames = SignalingCapture.read(capture.getFile());
+
+        // then
+        assertThat(frames).extracting(SignalingCapture.Frame::getKind).containsExactly(
+                SignalingCapture.KIND_OPEN, SignalingCapture.KIND_OPEN, SignalingCapture.KIND_MESSAGE,
+                SignalingCapture.KIND_IDENTITY, SignalingCapture.KIND_MESSAGE, SignalingCapture.KIND_CLOSE);
+        assertThat(frames).extracting(SignalingCapture.Frame::getConnection).containsExactly(0, 1, 0, 0, 1, 0);
+        assertThat(frames.get(4).getPayload()).isEqualTo("{\"eventId\":\"sendChat\",\"message\":\"안녕\\n하세요\"}");
+        assertThat(frames.get(3).getPayload()).contains("user-1", "123456");
+        assertThat(frames).extracting(SignalingCapture.Frame::getOffsetMicros).isSorted();
+    }
+
+    @DisplayName("재접속 토큰 값은 가린 채로 기록하고 나머지 필드는 그대로 둔다.")
+    @Test
+    public void resumeTokensAreRedacted() throws Exception {
+        // given
+        SignalingCapture capture = new SignalingCapture(true, dir.toString(), 1024, new SimpleMeterRegistry());
+        WebSocketSession session = session("a");
+
+        // when
+        capture.received(session, "{\"eventId\":\"resumeSession\",\"userId\":\"user-1\",\"resumeToken\" : \"s3cr\\\"et\"}");
+        capture.close();
+        List<SignalingCapture.Frame> frames = SignalingCapture.read(capture.getFile());
+
+        // then
+        assertThat(frames).hasSize(1);
+        assertThat(frames.get(0).getPayload())
+                .isEqualTo("{\"eventId\":\"resumeSession\",\"userId\":\"user-1\",\"resumeToken\" : \"" + SignalingCapture.REDACTED + "\"}")
+                .doesNotContain("s3cr");
+    }
+
+    @DisplayName("캡처가 꺼져 있으면 파일을 만들지 않는다.")
+    @Test
+    public void disabledCaptureWritesNothing() throws Exception {
+        // given
+        SignalingCapture capture = new SignalingCapture(false, dir.resolve("off").toString(), 1024, new SimpleMeterRegistry());
+
+        // when
+        capture.received(session("a"), "{}");
+        capture.close();
+
+        // then
+        assertThat(capture.getFile()).isNull();
+        assertThat(dir.resolve("off")).doesNotExist();
+    }
+
+    private WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        return session;
+    }
+}
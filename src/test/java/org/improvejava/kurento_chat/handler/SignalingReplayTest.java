@@ -0,0 +1,186 @@
+package org.improvejava.kurento_chat.handler;
+
+import com.google.gson.JsonObject;
+import org.improvejava.kurento_chat.media.MediaServerConnector;
+import org.improvejava.kurento_chat.user.UserRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 캡처한 시그널링 트래픽을 가짜 미디어 서버에 붙은 애플리케이션에 배속으로 다시 보낸다.
+ *
+ * <p>운영 캡처 파일로 돌리려면:
+ * {@code mvn test -Dtest=SignalingReplayTest -Dreplay.file=data/capture/signaling-....cap -Dreplay.speed=10}
+ * ({@code replay.kms-latency-ms}로 미디어 서버 요청마다 응답 시간을 더할 수 있음)</p>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.main.web-application-type=none",
+        "journal.dir=target/replay-test/journal",
+        "join.batch.window=0ms",
+        "drain.deadline=0s"
+})
+public class SignalingReplayTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SignalingReplayTest.class);
+
+    // 방 미디어 예산(admission.max-endpoints-per-room) 안에 들어가는 인원
+    private static final int JOINERS = 15;
+
+    @MockitoBean
+    private MediaServerConnector mediaServer;
+
+    @Autowired
+    private CallHandler callHandler;
+
+    @Autowired
+    private UserRegistry userRegistry;
+
+    private FakeMediaServer fakeMediaServer;
+
+    @BeforeEach
+    public void setUp() {
+        fakeMediaServer = new FakeMediaServer(Long.getLong("replay.kms-latency-ms", 0), TimeUnit.MILLISECONDS);
+        when(mediaServer.getKurentoClient()).thenReturn(fakeMediaServer.newClient());
+        when(mediaServer.isConnected()).thenReturn(true);
+    }
+
+    @DisplayName("입장, 구독, ICE 후보, 채팅으로 이루어진 트래픽을 50배속으로 재현하고 메시지 종류별 지연을 잰다.")
+    @Test
+    public void replaysSyntheticTrafficAtFiftyTimesSpeed() throws Exception {
+        // given
+        List<SignalingCapture.Frame> frames = syntheticCapture();
+
+        // when
+        SignalingReplayer.Report report = new SignalingReplayer(callHandler, userRegistry).replay(frames, 50);
+        log.info("Synthetic replay latencies\n{}", report);
+
+        // then
+        assertThat(report.errors()).isZero();
+        assertThat(report.count("createRoom")).isEqualTo(1);
+        assertThat(report.count("joinRoom")).isEqualTo(JOINERS);
+        assertThat(report.count("receiveVideoFrom")).isEqualTo(JOINERS * 2L + 1);
+        assertThat(report.count("sendChat")).isEqualTo(JOINERS);
+        assertThat(report.percentileMillis("joinRoom", 50)).isPositive();
+        assertThat(fakeMediaServer.getRequestCount()).isPositive();
+    }
+
+    @DisplayName("replay.file로 지정한 캡처 파일을 replay.speed 배속으로 재현하고 지연 분포를 로그로 남긴다.")
+    @Test
+    @EnabledIfSystemProperty(named = "replay.file", matches = ".+")
+    public void replaysCaptureFile() throws Exception {
+        // given
+        List<SignalingCapture.Frame> frames = SignalingCapture.read(Path.of(System.getProperty("replay.file")));
+        double speed = Double.parseDouble(System.getProperty("replay.speed", "1"));
+
+        // when
+        SignalingReplayer.Report report = new SignalingReplayer(callHandler, userRegistry).replay(frames, speed);
+
+        // then
+        log.info("Replayed {} frames at {}x, {} media server requests\n{}", frames.size(), speed, fakeMediaServer.getRequestCount(), report);
+        assertThat(frames).isNotEmpty();
+    }
+
+    /**
+     * 방장 한 명이 방을 만들고 참가자가 200ms 간격으로 들어와 방장을 구독하고, 후보를 보내고, 마이크를 껐다 켜고, 채팅한 뒤 나가는 트래픽.
+     */
+    private List<SignalingCapture.Frame> syntheticCapture() {
+        final List<SignalingCapture.Frame> frames = new ArrayList<>();
+        final String roomId = "captured-room";
+        final String hostId = "captured-host";
+
+        final JsonObject createRoom = new JsonObject();
+        createRoom.addProperty("eventId", "createRoom");
+        createRoom.addProperty("userName", "방장");
+        createRoom.addProperty("audioOn", true);
+        createRoom.addProperty("videoOn", true);
+        frames.add(new SignalingCapture.Frame(SignalingCapture.KIND_OPEN, 0, 0, null));
+        frames.add(message(1_000, 0, createRoom));
+        frames.add(identity(2_000, 0, hostId, roomId));
+        frames.add(message(3_000, 0, receiveVideoFrom(hostId)));
+
+        for (int i = 1; i <= JOINERS; i++) {
+            final String userId = "captured-user-" + i;
+            long offset = i * 200_000L;
+
+            final JsonObject joinRoom = new JsonObject();
+            joinRoom.addProperty("eventId", "joinRoom");
+            joinRoom.addProperty("userName", "참가자" + i);
+            joinRoom.addProperty("roomId", roomId);
+            joinRoom.addProperty("audioOn", true);
+            joinRoom.addProperty("videoOn", true);
+            frames.add(new SignalingCapture.Frame(SignalingCapture.KIND_OPEN, offset, i, null));
+            frames.add(message(offset += 1_000, i, joinRoom));
+            frames.add(identity(offset += 1_000, i, userId, roomId));
+            frames.add(message(offset += 20_000, i, receiveVideoFrom(userId)));
+            frames.add(message(offset += 5_000, i, receiveVideoFrom(hostId)));
+            for (int c = 0; c < 4; c++) {
+                frames.add(message(offset += 2_000, i, iceCandidate(c % 2 == 0 ? userId : hostId, c)));
+            }
+
+            final JsonObject mute = new JsonObject();
+            mute.addProperty("eventId", "audioStateChange");
+            mute.addProperty("userId", userId);
+            mute.addProperty("audioOn", "false");
+            frames.add(message(offset += 30_000, i, mute));
+
+            final JsonObject chat = new JsonObject();
+            chat.addProperty("eventId", "sendChat");
+            chat.addProperty("senderId", userId);
+            chat.addProperty("receiverId", "");
+            chat.addProperty("message", "안녕하세요 " + i);
+            chat.addProperty("isSendToAll", true);
+            frames.add(message(offset += 30_000, i, chat));
+            frames.add(new SignalingCapture.Frame(SignalingCapture.KIND_CLOSE, offset + 500_000, i, null));
+        }
+
+        frames.sort((a, b) -> Long.compare(a.getOffsetMicros(), b.getOffsetMicros()));
+        return frames;
+    }
+
+    private SignalingCapture.Frame message(long offsetMicros, int connection, JsonObject payload) {
+        return new SignalingCapture.Frame(SignalingCapture.KIND_MESSAGE, offsetMicros, connection, payload.toString());
+    }
+
+    private SignalingCapture.Frame identity(long offsetMicros, int connection, String userId, String roomId) {
+        final JsonObject identity = new JsonObject();
+        identity.addProperty("userId", userId);
+        identity.addProperty("roomId", roomId);
+        return new SignalingCapture.Frame(SignalingCapture.KIND_IDENTITY, offsetMicros, connection, identity.toString());
+    }
+
+    private JsonObject receiveVideoFrom(String senderId) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("eventId", "receiveVideoFrom");
+        message.addProperty("userId", senderId);
+        message.addProperty("sdpOffer", "v=0\r\no=- 0 0 IN IP4 127.0.0.1\r\ns=-\r\n");
+        return message;
+    }
+
+    private JsonObject iceCandidate(String senderId, int index) {
+        final JsonObject candidate = new JsonObject();
+        candidate.addProperty("candidate", "candidate:" + index + " 1 UDP 2122260223 10.0.0." + index + " 5000" + index + " typ host");
+        candidate.addProperty("sdpMid", "0");
+        candidate.addProperty("sdpMLineIndex", 0);
+
+        final JsonObject message = new JsonObject();
+        message.addProperty("eventId", "onIceCandidate");
+        message.addProperty("userId", senderId);
+        message.add("candidate", candidate);
+        return message;
+    }
+}
@@ -0,0 +1,332 @@
+package org.improvejava.kurento_chat.handler;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.improvejava.kurento_chat.user.UserRegistry;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 캡처한 시그널링 메시지를 원래 간격을 배속으로 줄여서 {@link CallHandler}에 다시 보내고, 메시지 종류(eventId)별 지연 분포를 잰다.
+ *
+ * <p>연결마다 메시지를 순서대로 하나씩 처리하는 전용 스레드를 두어 웹 소켓 연결과 같은 순서를 지킨다.
+ * 지연은 원래 간격대로라면 메시지가 도착했어야 할 시각부터 처리가 끝난 시각까지로, 같은 연결의 앞선 메시지를 기다린 시간도 포함한다.
+ * 서버가 새로 발급하는 userId, roomId는 캡처의 식별 레코드를 보고 재현 중에 발급된 값으로 바꿔 끼운다.
+ * 뒤의 메시지가 그 ID를 가리킬 수 있으므로 식별 레코드까지 처리가 끝나야 다음 메시지를 보낸다.
+ * 캡처 시작 전에 만들어진 방이나 사용자를 가리키는 메시지는 처리에 실패하고 오류로 집계된다.</p>
+ */
+public class SignalingReplayer {
+
+    private final WebSocketHandler handler;
+
+    private final UserRegistry userRegistry;
+
+    // 캡처 당시 ID -> 재현 중 발급된 ID
+    private final ConcurrentMap<String, String> idMapping = new ConcurrentHashMap<>();
+
+    public SignalingReplayer(WebSocketHandler handler, UserRegistry userRegistry) {
+        this.handler = handler;
+        this.userRegistry = userRegistry;
+    }
+
+    /**
+     * @param speed 재생 배속. 1이면 캡처 당시 간격 그대로, 50이면 50배 빠르게 보냄
+     */
+    public Report replay(List<SignalingCapture.Frame> frames, double speed) throws InterruptedException {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Replay speed must be positive: " + speed);
+        }
+
+        final Map<Integer, Connection> connections = new ConcurrentHashMap<>();
+        final Report report = new Report();
+        final long startedAt = System.nanoTime();
+
+        for (final SignalingCapture.Frame frame : frames) {
+            final long dueAt = startedAt + (long) (TimeUnit.MICROSECONDS.toNanos(frame.getOffsetMicros()) / speed);
+            final long waitNanos = dueAt - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+
+            final Connection connection = connections.computeIfAbsent(frame.getConnection(), Connection::new);
+            final Future<?> dispatched = connection.executor.submit(() -> dispatch(connection, frame, dueAt, report));
+            if (frame.getKind() == SignalingCapture.KIND_IDENTITY) {
+                try {
+                    dispatched.get();
+                } catch (ExecutionException e) {
+                    report.recordError("identity", e.getCause());
+                }
+            }
+        }
+
+        for (final Connection connection : connections.values()) {
+            connection.executor.shutdown();
+        }
+        for (final Connection connection : connections.values()) {
+            connection.executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        report.elapsedNanos = System.nanoTime() - startedAt;
+        return report;
+    }
+
+    private void dispatch(Connection connection, SignalingCapture.Frame frame, long dueAt, Report report) {
+        final ReplaySession session = connection.session;
+        try {
+            switch (frame.getKind()) {
+                case SignalingCapture.KIND_OPEN -> handler.afterConnectionEstablished(session);
+                case SignalingCapture.KIND_CLOSE -> handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+                case SignalingCapture.KIND_IDENTITY -> mapIdentity(session, frame.getPayload());
+                case SignalingCapture.KIND_MESSAGE -> {
+                    final JsonObject message = JsonParser.parseString(frame.getPayload()).getAsJsonObject();
+                    final String eventId = message.has("eventId") ? message.get("eventId").getAsString() : "unknown";
+                    try {
+                        handler.handleMessage(session, new TextMessage(remapIds(message).toString()));
+                        report.record(eventId, System.nanoTime() - dueAt);
+                    } catch (Exception e) {
+                        report.recordError(eventId, e);
+                    }
+                }
+                default -> { }
+            }
+        } catch (Exception e) {
+            report.recordError("connection", e);
+        }
+    }
+
+    private void mapIdentity(ReplaySession session, String payload) {
+        final UserSession user = userRegistry.getBySession(session);
+        if (user == null) {
+            return;
+        }
+        final JsonObject captured = JsonParser.parseString(payload).getAsJsonObject();
+        idMapping.put(captured.get("userId").getAsString(), user.getUserId());
+        idMapping.putIfAbsent(captured.get("roomId").getAsString(), user.getRoomId());
+    }
+
+    private JsonElement remapIds(JsonElement element) {
+        if (element.isJsonObject()) {
+            final JsonObject object = element.getAsJsonObject();
+            for (final Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                entry.setValue(remapIds(entry.getValue()));
+            }
+        } else if (element.isJsonArray()) {
+            final JsonArray array = element.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, remapIds(array.get(i)));
+            }
+        } else if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+            final String mapped = idMapping.get(element.getAsString());
+            if (mapped != null) {
+                return new JsonPrimitive(mapped);
+            }
+        }
+        return element;
+    }
+
+    private static final class Connection {
+
+        private final ReplaySession session;
+
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        private Connection(int number) {
+            this.session = new ReplaySession("replay-" + number);
+        }
+    }
+
+    /**
+     * 메시지 종류별 지연 분포와 오류 수.
+     */
+    public static class Report {
+
+        private final Map<String, List<Long>> latenciesByEvent = new TreeMap<>();
+
+        private final Map<String, AtomicLong> errorsByEvent = new ConcurrentHashMap<>();
+
+        // 메시지 종류별 첫 오류. 원인을 찾을 수 있게 보고서 끝에 출력
+        private final Map<String, Throwable> firstErrors = new ConcurrentHashMap<>();
+
+        private volatile long elapsedNanos;
+
+        private synchronized void record(String eventId, long latencyNanos) {
+            latenciesByEvent.computeIfAbsent(eventId, e -> new ArrayList<>()).add(latencyNanos);
+        }
+
+        private void recordError(String eventId, Throwable error) {
+            errorsByEvent.computeIfAbsent(eventId, e -> new AtomicLong()).incrementAndGet();
+            firstErrors.putIfAbsent(eventId, error);
+        }
+
+        public synchronized long count(String eventId) {
+            final List<Long> latencies = latenciesByEvent.get(eventId);
+            return latencies == null ? 0 : latencies.size();
+        }
+
+        public long errors() {
+            return errorsByEvent.values().stream().mapToLong(AtomicLong::get).sum();
+        }
+
+        /**
+         * @param percentile 0~100
+         */
+        public synchronized double percentileMillis(String eventId, double percentile) {
+            final long[] sorted = latenciesByEvent.getOrDefault(eventId, List.of()).stream().mapToLong(Long::longValue).sorted().toArray();
+            if (sorted.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+
+        @Override
+        public synchronized String toString() {
+            final StringBuilder table = new StringBuilder(String.format("%-22s %8s %9s %9s %9s %9s %7s%n",
+                    "eventId", "count", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)", "errors"));
+            for (final String eventId : latenciesByEvent.keySet()) {
+                final AtomicLong errors = errorsByEvent.get(eventId);
+                table.append(String.format("%-22s %8d %9.2f %9.2f %9.2f %9.2f %7d%n", eventId, count(eventId),
+                        percentileMillis(eventId, 50), percentileMillis(eventId, 90), percentileMillis(eventId, 99),
+                        percentileMillis(eventId, 100), errors == null ? 0 : errors.get()));
+            }
+            errorsByEvent.forEach((eventId, errors) -> {
+                if (!latenciesByEvent.containsKey(eventId)) {
+                    table.append(String.format("%-22s %8d %9s %9s %9s %9s %7d%n", eventId, 0, "-", "-", "-", "-", errors.get()));
+                }
+            });
+            firstErrors.forEach((eventId, error) -> table.append(String.format("first %s error: %s%n", eventId, error)));
+            table.append(String.format("elapsed %.1f s", elapsedNanos / 1e9));
+            return table.toString();
+        }
+    }
+
+    /**
+     * 보낸 메시지는 버리고 개수만 세는 웹 소켓 세션.
+     */
+    static class ReplaySession implements WebSocketSession {
+
+        private final String id;
+
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        private final AtomicLong sentMessages = new AtomicLong();
+
+        private volatile boolean open = true;
+
+        ReplaySession(String id) {
+            this.id = id;
+        }
+
+        long getSentMessages() {
+            return sentMessages.get();
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return URI.create("ws://localhost/");
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            sentMessages.incrementAndGet();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.improvejava.kurento_chat.handler;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.improvejava.kurento_chat.media.MediaServerConnector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 실제 웹 소켓 클라이언트로 방 입장, 구독 협상, 1:1 채팅 왕복을 보내고 전송 방식(Tomcat, Reactor Netty)별 지연과 처리량을 잰다.
+ * 미디어 서버는 {@link FakeMediaServer}로 대신하므로 시그널링 전송과 처리 비용만 비교된다.
+ *
+ * <p>전송 방식마다 애플리케이션을 새로 띄우므로 기본 빌드에서는 건너뛴다.
+ * 실행: {@code mvn test -Dtest='*TransportBenchmarkTest' -Dtransport.bench=true}
+ * ({@code transport.bench.rooms}, {@code transport.bench.room-size}, {@code transport.bench.chats}로 규모를 바꿀 수 있음)</p>
+ */
+abstract class SignalingTransportBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(SignalingTransportBenchmark.class);
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final int rooms = Integer.getInteger("transport.bench.rooms", 10);
+
+    private final int roomSize = Integer.getInteger("transport.bench.room-size", 10);
+
+    private final int chats = Integer.getInteger("transport.bench.chats", 200);
+
+    @MockitoBean
+    private MediaServerConnector mediaServer;
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void setUp() {
+        FakeMediaServer fakeMediaServer = new FakeMediaServer(0, TimeUnit.MILLISECONDS);
+        when(mediaServer.getKurentoClient()).thenReturn(fakeMediaServer.newClient());
+        when(mediaServer.isConnected()).thenReturn(true);
+    }
+
+    protected abstract String transport();
+
+    @DisplayName("방마다 참가자가 동시에 입장해 구독을 협상하고 1:1 채팅을 주고받는 동안 단계별 지연과 처리량을 잰다.")
+    @Test
+    public void measuresSignalingLatencyAndThroughput() throws Exception {
+        // 첫 측정에서 클래스 로딩과 JIT 비용이 빠지도록 한 번 돌리고 버림
+        run(false);
+        run(true);
+    }
+
+    private void run(boolean report) throws Exception {
+        final List<Long> joinMicros = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> negotiateMicros = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> chatMicros = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService clients = Executors.newFixedThreadPool(rooms * roomSize);
+        try {
+            final long startedAt = System.nanoTime();
+            final List<Future<?>> results = new ArrayList<>();
+            final List<Client> hosts = new ArrayList<>();
+            for (int r = 0; r < rooms; r++) {
+                final Client host = connect();
+                hosts.add(host);
+                final JsonObject created = host.request(createRoom(), "roomCreated");
+                final String roomId = created.get("roomId").getAsString();
+                final String hostId = created.get("userId").getAsString();
+                for (int i = 1; i < roomSize; i++) {
+                    final int index = i;
+                    results.add(clients.submit(() -> {
+                        final Client joiner = connect();
+                        long sentAt = System.nanoTime();
+                        final String userId = joiner.request(joinRoom(roomId, index), "sendExistingUsers").get("userId").getAsString();
+                        joinMicros.add(micros(sentAt));
+
+                        for (final String senderId : List.of(userId, hostId)) {
+                            sentAt = System.nanoTime();
+                            joiner.request(receiveVideoFrom(senderId), "receiveVideoFrom");
+                            negotiateMicros.add(micros(sentAt));
+                        }
+
+                        for (int c = 0; c < chats; c++) {
+                            sentAt = System.nanoTime();
+                            joiner.request(chat(userId, hostId, c), "sendChat");
+                            chatMicros.add(micros(sentAt));
+                        }
+                        joiner.close();
+                        return null;
+                    }));
+                }
+            }
+            for (final Future<?> result : results) {
+                result.get(TIMEOUT_SECONDS * 4, TimeUnit.SECONDS);
+            }
+            final long elapsedMicros = micros(startedAt);
+            hosts.forEach(Client::close);
+
+            if (report) {
+                final long messages = joinMicros.size() + negotiateMicros.size() + chatMicros.size();
+                log.info("{} transport, {} rooms x {} participants: {} request/response pairs in {} ms ({} per second)\n{}\n{}\n{}",
+                        transport(), rooms, roomSize, messages, elapsedMicros / 1000, messages * 1_000_000 / elapsedMicros,
+                        summary("joinRoom", joinMicros), summary("receiveVideoFrom", negotiateMicros), summary("sendChat", chatMicros));
+                assertThat(chatMicros).hasSize(rooms * (roomSize - 1) * chats);
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private Client connect() throws Exception {
+        final Client client = new Client();
+        client.socket = httpClient.newWebSocketBuilder()
+                .header("Origin", "http://localhost:3000")
+                .buildAsync(URI.create("ws://localhost:" + port + "/"), client)
+                .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return client;
+    }
+
+    private JsonObject createRoom() {
+        final JsonObject message = new JsonObject();
+        message.addProperty("eventId", "createRoom");
+        message.addProperty("userName", "방장");
+        message.addProperty("audioOn", true);
+        message.addProperty("videoOn", true);
+        return message;
+    }
+
+    private JsonObject joinRoom(String roomId, int index) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("eventId", "joinRoom");
+        message.addProperty("userName", "참가자" + index);
+        message.addProperty("roomId", roomId);
+        message.addProperty("audioOn", true);
+        message.addProperty("videoOn", true);
+        return message;
+    }
+
+    private JsonObject receiveVideoFrom(String senderId) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("eventId", "receiveVideoFrom");
+        message.addProperty("userId", senderId);
+        message.addProperty("sdpOffer", "v=0\r\no=- 0 0 IN IP4 127.0.0.1\r\ns=-\r\n");
+        return message;
+    }
+
+    // 1:1 채팅은 보낸 사람에게도 그대로 돌아오므로 요청/응답 왕복으로 쓸 수 있음
+    private JsonObject chat(String senderId, String receiverId, int index) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("eventId", "sendChat");
+        message.addProperty("senderId", senderId);
+        message.addProperty("receiverId", receiverId);
+        message.addProperty("message", "메시지 " + index);
+        message.addProperty("isSendToAll", false);
+        return message;
+    }
+
+    private static long micros(long sinceNanos) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sinceNanos);
+    }
+
+    private static String summary(String eventId, List<Long> samples) {
+        final List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        return String.format("  %-17s n=%-6d p50=%6.2f ms  p99=%6.2f ms  max=%6.2f ms", eventId, sorted.size(),
+                percentile(sorted, 50) / 1000.0, percentile(sorted, 99) / 1000.0, sorted.get(sorted.size() - 1) / 1000.0);
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        return sorted.get(Math.max(0, (int) Math.ceil(sorted.size() * percentile / 100.0) - 1));
+    }
+
+    /**
+     * 연결 하나. 받은 메시지를 큐에 넣고, 요청을 보낸 스레드가 기다리는 action이 올 때까지 나머지는 버림
+     */
+    private static final class Client implements WebSocket.Listener {
+
+        private final BlockingQueue<JsonObject> received = new LinkedBlockingQueue<>();
+
+        private final StringBuilder partial = new StringBuilder();
+
+        private WebSocket socket;
+
+        JsonObject request(JsonObject message, String expectedAction) throws Exception {
+            socket.sendText(message.toString(), true).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (true) {
+                final JsonObject response = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (response == null) {
+                    throw new AssertionError("No " + expectedAction + " within " + TIMEOUT_SECONDS + "s");
+                }
+                if (expectedAction.equals(response.get("action").getAsString())) {
+                    return response;
+                }
+            }
+        }
+
+        void close() {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                received.add(JsonParser.parseString(partial.toString()).getAsJsonObject());
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+    }
+}
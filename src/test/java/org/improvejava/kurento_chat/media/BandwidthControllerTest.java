@@ -0,0 +1,68 @@
+package org.improvejava.kurento_chat.media;
+
+import org.improvejava.kurento_chat.user.UserSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.mockito.Mockito.*;
+
+public class BandwidthControllerTest {
+
+    private BandwidthController bandwidthController;
+
+    private UserSession receiver;
+
+    @BeforeEach
+    public void setUp() {
+        bandwidthController = new BandwidthController(4000, 100, 1500);
+        receiver = mock(UserSession.class);
+        when(receiver.getUserId()).thenReturn("receiver");
+        when(receiver.getRoomId()).thenReturn("123456");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(bandwidthController, "shutdown");
+    }
+
+    @DisplayName("방 인원이 아니라 수신자가 실제로 구독 중인 송신자 수로 예산을 나눈다.")
+    @Test
+    public void dividesBudgetBySubscriptionCount() {
+        // given: 큰 방이지만 화면에 보이는 송신자 4명만 구독 중
+        when(receiver.getSubscriptionCount()).thenReturn(4);
+
+        // when
+        bandwidthController.subscriptionsChanged(receiver);
+
+        // then
+        verify(receiver, timeout(1000)).applyVideoSendLimit(1000, 100);
+    }
+
+    @DisplayName("구독 수가 바뀔 때마다 바뀐 수에 맞춰 스트림당 대역폭을 다시 적용한다.")
+    @Test
+    public void reappliesWhenSubscriptionCountChanges() {
+        // given
+        when(receiver.getSubscriptionCount()).thenReturn(8);
+        bandwidthController.subscriptionsChanged(receiver);
+        verify(receiver, timeout(1000)).applyVideoSendLimit(500, 100);
+        when(receiver.getVideoSendLimitKbps()).thenReturn(500);
+
+        // when
+        when(receiver.getSubscriptionCount()).thenReturn(2);
+        bandwidthController.subscriptionsChanged(receiver);
+
+        // then
+        verify(receiver, timeout(1000)).applyVideoSendLimit(1500, 100);
+        when(receiver.getVideoSendLimitKbps()).thenReturn(1500);
+
+        // when: 1500 -> 1333 kbps 는 다시 보낼 만큼 큰 변화
+        when(receiver.getSubscriptionCount()).thenReturn(3);
+        bandwidthController.subscriptionsChanged(receiver);
+
+        // then
+        verify(receiver, timeout(1000)).applyVideoSendLimit(1333, 100);
+    }
+}
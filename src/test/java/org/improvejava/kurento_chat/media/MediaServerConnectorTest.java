@@ -0,0 +1,45 @@
+package org.improvejava.kurento_chat.media;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.KurentoConnectionListener;
+import org.mockito.MockedStatic;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class MediaServerConnectorTest {
+
+    @DisplayName("연결이 완전히 끊긴 뒤 새 클라이언트로 연결되면 이전 클라이언트를 해제하고 미디어 서버 교체를 알린다.")
+    @Test
+    public void replacingLostClientDestroysItAndPublishesEvent() {
+        // given
+        ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        KurentoClient lost = mock(KurentoClient.class);
+        KurentoClient replacement = mock(KurentoClient.class);
+        MediaServerConnector connector = new MediaServerConnector(new SimpleMeterRegistry(), eventPublisher,
+                "ws://kms:8888/kurento", Duration.ofSeconds(1), Duration.ofSeconds(30));
+
+        try (MockedStatic<KurentoClient> kurentoClient = mockStatic(KurentoClient.class)) {
+            kurentoClient.when(() -> KurentoClient.create(anyString(), any(KurentoConnectionListener.class)))
+                    .thenReturn(lost, replacement);
+            assertThat(connector.getKurentoClient()).isSameAs(lost);
+            verifyNoInteractions(eventPublisher);
+
+            // when
+            when(lost.isClosed()).thenReturn(true);
+            KurentoClient client = connector.getKurentoClient();
+
+            // then
+            assertThat(client).isSameAs(replacement);
+            verify(lost).destroy();
+            verify(eventPublisher).publishEvent(any(MediaServerReplacedEvent.class));
+        }
+    }
+}
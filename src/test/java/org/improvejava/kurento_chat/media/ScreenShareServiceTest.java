@@ -0,0 +1,180 @@
+package org.improvejava.kurento_chat.media;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.improvejava.kurento_chat.room.Room;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.MediaElement;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.jsonrpc.message.ResponseError;
+import org.mockito.MockedConstruction;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ScreenShareServiceTest {
+
+    private final List<WebRtcEndpoint> builtEndpoints = new ArrayList<>();
+
+    private final Map<String, List<JsonObject>> messagesByUserId = new ConcurrentHashMap<>();
+
+    private MockedConstruction<WebRtcEndpoint.Builder> builders;
+
+    private MediaPipeline pipeline;
+
+    private MediaTeardownService teardown;
+
+    private ScreenShareService screenShareService;
+
+    private Room room;
+
+    private UserSession sharer;
+
+    private UserSession viewer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        builders = mockConstruction(WebRtcEndpoint.Builder.class, (builder, context) -> when(builder.build()).thenAnswer(invocation -> {
+            WebRtcEndpoint endpoint = mock(WebRtcEndpoint.class);
+            when(endpoint.processOffer(anyString())).thenReturn("answer");
+            builtEndpoints.add(endpoint);
+            return endpoint;
+        }));
+        pipeline = mock(MediaPipeline.class);
+        teardown = mock(MediaTeardownService.class);
+        screenShareService = new ScreenShareService(2500, 300, 5);
+
+        sharer = participant("sharer");
+        viewer = participant("viewer");
+        room = new Room("123456", pipeline, "sharer", "sharer", teardown);
+        room.addParticipant(sharer);
+        room.addParticipant(viewer);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        builders.close();
+    }
+
+    @DisplayName("화면 공유를 시작하면 공유자에게 캡처 조건을, 같은 회의실 참가자에게 시작 알림을 보낸다.")
+    @Test
+    public void startSendsCaptureConstraintsAndNotifiesGroup() throws Exception {
+        // when
+        screenShareService.start(room, sharer);
+
+        // then
+        assertThat(sharer.isSharingScreen()).isTrue();
+        WebRtcEndpoint screen = lastBuiltEndpoint();
+        verify(screen).setMaxVideoRecvBandwidth(2500);
+        verify(screen).setMinVideoRecvBandwidth(300);
+        assertThat(actions("sharer")).containsExactly("screenShareReady", "screenShareStarted");
+        assertThat(messages("sharer").get(0).get("maxFrameRate").getAsInt()).isEqualTo(5);
+        assertThat(actions("viewer")).containsExactly("screenShareStarted");
+    }
+
+    @DisplayName("화면 공유를 끝내면 시청자의 수신 엔드포인트와 공유 엔드포인트를 해제하고 종료를 알린다.")
+    @Test
+    public void stopReleasesScreenEndpointsAndNotifiesGroup() throws Exception {
+        // given
+        screenShareService.start(room, sharer);
+        WebRtcEndpoint screen = lastBuiltEndpoint();
+        screenShareService.receive(viewer, sharer, "offer");
+        WebRtcEndpoint incoming = lastBuiltEndpoint();
+
+        // when
+        screenShareService.stop(room, sharer);
+
+        // then
+        assertThat(sharer.isSharingScreen()).isFalse();
+        verify(teardown).releaseEndpoint(pipeline, incoming);
+        verify(teardown).releaseEndpoint(pipeline, screen);
+        assertThat(actions("viewer")).endsWith("screenShareStopped");
+    }
+
+    @DisplayName("화면 공유를 받으면 공유 엔드포인트를 새 수신 엔드포인트에 연결하고 SDP 응답을 보낸다.")
+    @Test
+    public void receiveConnectsScreenAndAnswers() throws Exception {
+        // given
+        screenShareService.start(room, sharer);
+        WebRtcEndpoint screen = lastBuiltEndpoint();
+
+        // when
+        screenShareService.receive(viewer, sharer, "offer");
+
+        // then
+        WebRtcEndpoint incoming = lastBuiltEndpoint();
+        verify(screen).connect(incoming);
+        verify(incoming).setMaxVideoSendBandwidth(2500);
+        verify(incoming).gatherCandidates();
+        JsonObject answer = messages("viewer").get(messages("viewer").size() - 1);
+        assertThat(answer.get("action").getAsString()).isEqualTo("receiveScreenFrom");
+        assertThat(answer.get("sdpAnswer").getAsString()).isEqualTo("answer");
+    }
+
+    @DisplayName("공유하지 않는 사용자의 화면은 받을 수 없다.")
+    @Test
+    public void receiveFromNonSharerIsRejected() {
+        // when & then
+        assertThatThrownBy(() -> screenShareService.receive(viewer, sharer, "offer"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("화면을 공유하고 있지 않은 사용자입니다.");
+    }
+
+    @DisplayName("연결하는 사이 공유자가 공유를 끝내면 미디어 서버 오류 대신 공유 중이 아니라고 응답하고 수신 엔드포인트를 해제한다.")
+    @Test
+    public void receiveRacingWithStopAnswersNotSharing() throws Exception {
+        // given
+        screenShareService.start(room, sharer);
+        WebRtcEndpoint screen = lastBuiltEndpoint();
+        doAnswer(invocation -> {
+            screenShareService.stop(room, sharer);
+            throw new KurentoServerException(new ResponseError(40101, "Object not found"));
+        }).when(screen).connect(any(MediaElement.class));
+
+        // when & then
+        assertThatThrownBy(() -> screenShareService.receive(viewer, sharer, "offer"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("화면을 공유하고 있지 않은 사용자입니다.");
+        WebRtcEndpoint incoming = lastBuiltEndpoint();
+        verify(teardown).releaseEndpoint(pipeline, incoming);
+        verify(incoming, never()).processOffer(anyString());
+        assertThat(actions("viewer")).doesNotContain("receiveScreenFrom");
+    }
+
+    private UserSession participant(String userId) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            JsonObject message = JsonParser.parseString(invocation.<TextMessage>getArgument(0).getPayload()).getAsJsonObject();
+            messagesByUserId.computeIfAbsent(userId, u -> new ArrayList<>()).add(message);
+            return null;
+        }).when(session).sendMessage(any());
+        return new UserSession(userId, "123456", userId, true, true, session, pipeline, teardown);
+    }
+
+    private WebRtcEndpoint lastBuiltEndpoint() {
+        return builtEndpoints.get(builtEndpoints.size() - 1);
+    }
+
+    private List<JsonObject> messages(String userId) {
+        return messagesByUserId.getOrDefault(userId, List.of());
+    }
+
+    private List<String> actions(String userId) {
+        return messages(userId).stream().map(message -> message.get("action").getAsString()).toList();
+    }
+}
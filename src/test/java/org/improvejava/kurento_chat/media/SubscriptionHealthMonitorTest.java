@@ -0,0 +1,154 @@
+package org.improvejava.kurento_chat.media;
+
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.EventListener;
+import org.kurento.client.IceComponentState;
+import org.kurento.client.IceComponentStateChangedEvent;
+import org.kurento.client.MediaFlowOutStateChangedEvent;
+import org.kurento.client.MediaFlowState;
+import org.kurento.client.MediaType;
+import org.kurento.client.WebRtcEndpoint;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class SubscriptionHealthMonitorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private SubscriptionHealthMonitor monitor;
+
+    private UserSession receiver;
+
+    private UserSession sender;
+
+    private WebRtcEndpoint senderOutgoing;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        monitor = new SubscriptionHealthMonitor(Duration.ofMillis(100), meterRegistry);
+
+        receiver = mock(UserSession.class);
+        when(receiver.getUserId()).thenReturn("receiver");
+        when(receiver.resetIncomingEndpoint(anyString(), any())).thenReturn(true);
+
+        senderOutgoing = mock(WebRtcEndpoint.class);
+        sender = mock(UserSession.class);
+        when(sender.getUserId()).thenReturn("sender");
+        when(sender.getUserName()).thenReturn("송신자");
+        when(sender.getOutgoingWebRtcPeer()).thenReturn(senderOutgoing);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        monitor.shutdown();
+    }
+
+    @DisplayName("ICE 연결이 실패한 구독만 해제하고 수신자에게 재협상을 요청한다.")
+    @Test
+    public void renegotiatesOnlyFailedSubscription() throws Exception {
+        // given
+        WebRtcEndpoint failing = subscribe(sender);
+        UserSession otherSender = mock(UserSession.class);
+        when(otherSender.getUserId()).thenReturn("other");
+        WebRtcEndpoint healthy = subscribe(otherSender);
+
+        // when
+        iceListener(failing).onEvent(iceEvent(IceComponentState.FAILED));
+
+        // then
+        ArgumentCaptor<JsonObject> message = ArgumentCaptor.forClass(JsonObject.class);
+        verify(receiver, timeout(1000)).sendMessage(message.capture());
+        assertThat(message.getValue().get("action").getAsString()).isEqualTo("renegotiateVideo");
+        assertThat(message.getValue().get("userId").getAsString()).isEqualTo("sender");
+        assertThat(message.getValue().get("reason").getAsString()).isEqualTo(SubscriptionHealthMonitor.REASON_ICE_FAILED);
+        verify(receiver).resetIncomingEndpoint("sender", failing);
+        verify(receiver, never()).resetIncomingEndpoint("other", healthy);
+        assertThat(meterRegistry.counter("media.recovery.attempts", "reason", "iceFailed").count()).isEqualTo(1);
+    }
+
+    @DisplayName("재협상으로 만든 새 엔드포인트에서 미디어가 흐르면 복구 시간을 기록한다.")
+    @Test
+    public void recordsRecoveryTimeOnReplacementEndpoint() throws Exception {
+        // given
+        WebRtcEndpoint failing = subscribe(sender);
+        iceListener(failing).onEvent(iceEvent(IceComponentState.FAILED));
+        verify(receiver, timeout(1000)).sendMessage(any());
+
+        // when
+        WebRtcEndpoint replacement = subscribe(sender);
+        flowListener(replacement).onEvent(flowEvent(MediaType.VIDEO, MediaFlowState.FLOWING));
+
+        // then
+        assertThat(meterRegistry.timer("media.recovery.duration").count()).isEqualTo(1);
+    }
+
+    @DisplayName("송신자의 미디어는 들어오는데 수신자에게 나가지 않으면 유예 시간 뒤 재협상하고, 송신자 쪽 문제면 두지 않는다.")
+    @Test
+    public void renegotiatesStalledSubscriptionOnlyWhenSenderIsFlowing() throws Exception {
+        // given
+        WebRtcEndpoint endpoint = subscribe(sender);
+        iceListener(endpoint).onEvent(iceEvent(IceComponentState.CONNECTED));
+        when(senderOutgoing.isMediaFlowingIn(any(MediaType.class))).thenReturn(false);
+
+        // when
+        flowListener(endpoint).onEvent(flowEvent(MediaType.AUDIO, MediaFlowState.NOT_FLOWING));
+        Thread.sleep(300);
+
+        // then
+        verify(receiver, never()).resetIncomingEndpoint(anyString(), any());
+
+        // when
+        when(senderOutgoing.isMediaFlowingIn(MediaType.AUDIO)).thenReturn(true);
+
+        // then
+        verify(receiver, timeout(1000)).sendMessage(any());
+        verify(receiver).resetIncomingEndpoint("sender", endpoint);
+        assertThat(meterRegistry.counter("media.recovery.attempts", "reason", "mediaStalled").count()).isEqualTo(1);
+    }
+
+    private WebRtcEndpoint subscribe(UserSession from) {
+        WebRtcEndpoint endpoint = mock(WebRtcEndpoint.class);
+        when(receiver.getIncomingEndpointFrom(from.getUserId())).thenReturn(endpoint);
+        monitor.watch(receiver, from);
+        return endpoint;
+    }
+
+    @SuppressWarnings("unchecked")
+    private EventListener<IceComponentStateChangedEvent> iceListener(WebRtcEndpoint endpoint) {
+        ArgumentCaptor<EventListener<IceComponentStateChangedEvent>> listener = ArgumentCaptor.forClass(EventListener.class);
+        verify(endpoint).addIceComponentStateChangedListener(listener.capture());
+        return listener.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private EventListener<MediaFlowOutStateChangedEvent> flowListener(WebRtcEndpoint endpoint) {
+        ArgumentCaptor<EventListener<MediaFlowOutStateChangedEvent>> listener = ArgumentCaptor.forClass(EventListener.class);
+        verify(endpoint).addMediaFlowOutStateChangedListener(listener.capture());
+        return listener.getValue();
+    }
+
+    private IceComponentStateChangedEvent iceEvent(IceComponentState state) {
+        IceComponentStateChangedEvent event = mock(IceComponentStateChangedEvent.class);
+        when(event.getState()).thenReturn(state);
+        return event;
+    }
+
+    private MediaFlowOutStateChangedEvent flowEvent(MediaType mediaType, MediaFlowState state) {
+        MediaFlowOutStateChangedEvent event = mock(MediaFlowOutStateChangedEvent.class);
+        when(event.getMediaType()).thenReturn(mediaType);
+        when(event.getState()).thenReturn(state);
+        return event;
+    }
+}
@@ -0,0 +1,181 @@
+package org.improvejava.kurento_chat.media;
+
+import org.improvejava.kurento_chat.room.Room;
+import org.improvejava.kurento_chat.room.RoomManager;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.Stats;
+import org.kurento.client.WebRtcEndpoint;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class WebRtcStatsCollectorTest {
+
+    private RoomManager roomManager;
+
+    private Room room;
+
+    private List<Continuation<Map<String, Stats>>> pendingRequests;
+
+    private WebRtcStatsCollector collector;
+
+    @BeforeEach
+    public void setUp() {
+        roomManager = mock(RoomManager.class);
+        room = mock(Room.class);
+        when(room.getRoomId()).thenReturn("123456");
+        when(roomManager.getRooms()).thenReturn(List.of(room));
+        pendingRequests = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(collector, "shutdown");
+    }
+
+    @DisplayName("미디어 서버에 나가 있는 요청이 상한에 도달하면 나머지 참가자는 다음 틱으로 미룬다.")
+    @Test
+    public void defersParticipantsWhenServerIsSaturated() {
+        // given
+        collector = collector(1, Duration.ofSeconds(10));
+        WebRtcEndpoint first = answeringLater();
+        WebRtcEndpoint second = answeringLater();
+        List<UserSession> participants = List.of(participant("u1", first), participant("u2", second));
+        when(room.getParticipants()).thenReturn(participants);
+
+        // when
+        tick();
+
+        // then
+        verify(first).getStats(any(Continuation.class));
+        verify(second, never()).getStats(any(Continuation.class));
+
+        // when: 첫 요청이 끝나 허가가 반납되면
+        complete(0);
+        tick();
+
+        // then
+        verify(second).getStats(any(Continuation.class));
+    }
+
+    @DisplayName("미디어 서버가 응답하지 않아도 시간 제한이 지나면 허가를 반납하고, 늦게 온 응답은 허가를 다시 반납하지 않는다.")
+    @Test
+    public void releasesPermitWhenRequestTimesOut() throws Exception {
+        // given
+        collector = collector(1, Duration.ofMillis(50));
+        WebRtcEndpoint silent = answeringLater();
+        WebRtcEndpoint waiting = answeringLater();
+        List<UserSession> participants = List.of(participant("u1", silent), participant("u2", waiting));
+        when(room.getParticipants()).thenReturn(participants);
+        tick();
+        verify(waiting, never()).getStats(any(Continuation.class));
+
+        // when
+        Thread.sleep(300);
+        complete(0);
+        tick();
+
+        // then
+        verify(waiting).getStats(any(Continuation.class));
+        assertThat(availablePermits()).isZero();
+    }
+
+    @DisplayName("송신 엔드포인트 통계를 받은 뒤에 수신 엔드포인트 통계를 하나씩 차례로 요청한다.")
+    @Test
+    public void requestsIncomingStatsAfterOutgoing() {
+        // given
+        collector = collector(1, Duration.ofSeconds(10));
+        WebRtcEndpoint outgoing = answeringLater();
+        WebRtcEndpoint fromA = answeringLater();
+        WebRtcEndpoint fromB = answeringLater();
+        UserSession participant = participant("u1", outgoing);
+        when(participant.getReceivingSenderIds()).thenReturn(Set.of("a", "b"));
+        when(participant.getIncomingEndpointFrom("a")).thenReturn(fromA);
+        when(participant.getIncomingEndpointFrom("b")).thenReturn(fromB);
+        when(room.getParticipants()).thenReturn(List.of(participant));
+
+        // when
+        tick();
+
+        // then
+        verify(outgoing).getStats(any(Continuation.class));
+        verifyNoInteractions(fromA, fromB);
+
+        // when: 송신 통계가 오면 수신 엔드포인트 하나만 요청하고
+        complete(0);
+
+        // then
+        assertThat(pendingRequests).hasSize(2);
+        assertThat(availablePermits()).isZero();
+
+        // when: 그 응답이 와야 다음 수신 엔드포인트를 요청함
+        complete(1);
+
+        // then
+        assertThat(pendingRequests).hasSize(3);
+        verify(fromA).getStats(any(Continuation.class));
+        verify(fromB).getStats(any(Continuation.class));
+        assertThat(availablePermits()).isZero();
+
+        // when
+        complete(2);
+
+        // then
+        assertThat(availablePermits()).isEqualTo(1);
+    }
+
+    private WebRtcStatsCollector collector(int maxInFlight, Duration requestTimeout) {
+        return new WebRtcStatsCollector(roomManager, "ws://kms:8888/kurento", maxInFlight,
+                Duration.ofSeconds(5), Duration.ofSeconds(40), 60, requestTimeout);
+    }
+
+    private UserSession participant(String userId, WebRtcEndpoint outgoing) {
+        UserSession participant = mock(UserSession.class);
+        when(participant.getUserId()).thenReturn(userId);
+        when(participant.getOutgoingWebRtcPeer()).thenReturn(outgoing);
+        when(participant.getReceivingSenderIds()).thenReturn(Set.of());
+        return participant;
+    }
+
+    // 통계 요청을 보관해 두었다가 테스트가 원하는 시점에 응답함
+    private WebRtcEndpoint answeringLater() {
+        WebRtcEndpoint endpoint = mock(WebRtcEndpoint.class);
+        doAnswer(invocation -> {
+            pendingRequests.add(invocation.getArgument(0));
+            return null;
+        }).when(endpoint).getStats(any(Continuation.class));
+        return endpoint;
+    }
+
+    private void complete(int index) {
+        try {
+            pendingRequests.get(index).onSuccess(Map.of());
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void tick() {
+        ReflectionTestUtils.invokeMethod(collector, "tick");
+    }
+
+    private int availablePermits() {
+        Map<?, ?> inFlightByServer = (Map<?, ?>) ReflectionTestUtils.getField(collector, "inFlightByServer");
+        return ((Semaphore) inFlightByServer.get("ws://kms:8888/kurento")).availablePermits();
+    }
+}
@@ -0,0 +1,121 @@
+package org.improvejava.kurento_chat.room;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class AdmissionControllerTest {
+
+    private final String ROOMID = "123456";
+
+    @DisplayName("참가자가 N명인 방에 입장하면 서버 엔드포인트 예산이 2N+1만큼 늘어난다.")
+    @Test
+    public void admitJoinReservesEndpoints() {
+        // given
+        AdmissionController admission = new AdmissionController(new SimpleMeterRegistry(), 100, 100, 0);
+        admission.reserveNewRoom();
+        admission.registerRoom(ROOMID, 0, "owner");
+
+        // when
+        admission.admitJoin(ROOMID, "u1");
+        admission.admitJoin(ROOMID, "u2");
+
+        // then (3명 = 3² 엔드포인트)
+        assertThat(admission.getServerEndpoints()).isEqualTo(9);
+    }
+
+    @DisplayName("방 인원 제한에 도달하면 입장이 거절된다.")
+    @Test
+    public void rejectWhenRoomIsFull() {
+        // given
+        AdmissionController admission = new AdmissionController(new SimpleMeterRegistry(), 100, 100, 0);
+        admission.reserveNewRoom();
+        admission.registerRoom(ROOMID, 2, "owner");
+        admission.admitJoin(ROOMID, "u1");
+
+        // when & then
+        assertThatThrownBy(() -> admission.admitJoin(ROOMID, "u2"))
+                .isInstanceOf(AdmissionRejectedException.class)
+                .extracting("reason").isEqualTo("roomFull");
+    }
+
+    @DisplayName("서버 엔드포인트 예산을 넘는 입장은 거절되고 예산은 변하지 않는다.")
+    @Test
+    public void rejectWhenServerBudgetExceeded() {
+        // given
+        AdmissionController admission = new AdmissionController(new SimpleMeterRegistry(), 5, 100, 0);
+        admission.reserveNewRoom();
+        admission.registerRoom(ROOMID, 0, "owner");
+        admission.admitJoin(ROOMID, "u1");
+
+        // when & then
+        assertThatThrownBy(() -> admission.admitJoin(ROOMID, "u2"))
+                .isInstanceOf(AdmissionRejectedException.class)
+                .extracting("reason").isEqualTo("serverBusy");
+        assertThat(admission.getServerEndpoints()).isEqualTo(4);
+    }
+
+    @DisplayName("참가자가 나가고 방이 사라지면 예산이 모두 반환된다.")
+    @Test
+    public void releaseBudgetOnLeaveAndForget() {
+        // given
+        AdmissionController admission = new AdmissionController(new SimpleMeterRegistry(), 100, 100, 0);
+        admission.reserveNewRoom();
+        admission.registerRoom(ROOMID, 0, "owner");
+        admission.admitJoin(ROOMID, "u1");
+        admission.admitJoin(ROOMID, "u2");
+
+        // when
+        admission.leave(ROOMID, "u1");
+        admission.forgetRoom(ROOMID);
+
+        // then
+        assertThat(admission.getServerEndpoints()).isZero();
+    }
+
+    @DisplayName("같은 userId로 다시 입장하면 자리를 한 번만 센다.")
+    @Test
+    public void duplicateUserIdIsCountedOnce() {
+        // given
+        AdmissionController admission = new AdmissionController(new SimpleMeterRegistry(), 100, 100, 0);
+        admission.reserveNewRoom();
+        admission.registerRoom(ROOMID, 0, "owner");
+        admission.admitJoin(ROOMID, "u1");
+
+        // when
+        boolean reserved = admission.admitJoin(ROOMID, "u1");
+        admission.leave(ROOMID, "unknown");
+
+        // then (2명 = 2² 엔드포인트)
+        assertThat(reserved).isFalse();
+        assertThat(admission.getServerEndpoints()).isEqualTo(4);
+    }
+
+    @DisplayName("시청자는 방 인원에 들어가지 않고 서버 예산만 잡으며, 예산을 넘으면 거절되고 방이 사라지면 반환된다.")
+    @Test
+    public void viewersAreChargedAgainstServerBudget() {
+        // given
+        AdmissionController admission = new AdmissionController(new SimpleMeterRegistry(), 5, 100, 1);
+        admission.reserveNewRoom();
+        admission.registerRoom(ROOMID, 0, "presenter");
+
+        // when
+        admission.admitViewer(ROOMID, "v1", 2);
+        admission.admitViewer(ROOMID, "v2", 2);
+
+        // then
+        assertThat(admission.getServerEndpoints()).isEqualTo(5);
+        assertThatThrownBy(() -> admission.admitViewer(ROOMID, "v3", 2))
+                .isInstanceOf(AdmissionRejectedException.class)
+                .extracting("reason").isEqualTo("serverBusy");
+
+        // when
+        admission.leaveViewer(ROOMID, "v1");
+        admission.forgetRoom(ROOMID);
+
+        // then
+        assertThat(admission.getServerEndpoints()).isZero();
+    }
+}
@@ -0,0 +1,84 @@
+package org.improvejava.kurento_chat.room;
+
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.Transaction;
+import org.kurento.client.WebRtcEndpoint;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BreakoutManagerTest {
+
+    private Transaction tx;
+    private Room room;
+    private UserSession leader;
+    private UserSession member;
+    private WebRtcEndpoint leaderFromMember;
+    private WebRtcEndpoint memberFromLeader;
+
+    @BeforeEach
+    public void setUp() {
+        MediaPipeline pipeline = mock(MediaPipeline.class);
+        tx = mock(Transaction.class);
+        when(pipeline.beginTransaction()).thenReturn(tx);
+        room = new Room(pipeline, "leader", "방장", mock(MediaTeardownService.class));
+
+        leader = mockUser("leader");
+        member = mockUser("member");
+        leaderFromMember = mock(WebRtcEndpoint.class);
+        memberFromLeader = mock(WebRtcEndpoint.class);
+        when(leader.getIncomingEndpointFrom("member")).thenReturn(leaderFromMember);
+        when(member.getIncomingEndpointFrom("leader")).thenReturn(memberFromLeader);
+
+        room.addParticipant(leader);
+        room.addParticipant(member);
+    }
+
+    @DisplayName("소회의실로 옮기면 기존 엔드포인트 사이의 연결만 끊고, 다시 합치면 연결한다.")
+    @Test
+    public void moveRewiresExistingEndpoints() {
+        // given
+        BreakoutManager breakoutManager = new BreakoutManager();
+
+        // when
+        breakoutManager.moveParticipants(room, leader, Map.of("member", "group-1"));
+
+        // then
+        assertThat(room.isInSameGroup("leader", "member")).isFalse();
+        verify(leader).disconnectOutgoingFrom(tx, memberFromLeader);
+        verify(member).disconnectOutgoingFrom(tx, leaderFromMember);
+
+        // when
+        breakoutManager.closeBreakouts(room, leader);
+
+        // then
+        assertThat(room.isInSameGroup("leader", "member")).isTrue();
+        verify(leader).connectOutgoingTo(tx, memberFromLeader);
+        verify(member).connectOutgoingTo(tx, leaderFromMember);
+    }
+
+    @DisplayName("방장이 아니면 소회의실을 배정할 수 없다.")
+    @Test
+    public void onlyLeaderCanMove() {
+        // given
+        BreakoutManager breakoutManager = new BreakoutManager();
+
+        // when & then
+        assertThatThrownBy(() -> breakoutManager.moveParticipants(room, member, Map.of("leader", "group-1")))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(room.getGroupId("leader")).isNull();
+    }
+
+    private UserSession mockUser(String userId) {
+        UserSession user = mock(UserSession.class);
+        when(user.getUserId()).thenReturn(userId);
+        return user;
+    }
+}
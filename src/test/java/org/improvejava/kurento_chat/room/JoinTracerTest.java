@@ -0,0 +1,66 @@
+package org.improvejava.kurento_chat.room;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class JoinTracerTest {
+
+    private final String USERID = "user-1";
+
+    @DisplayName("샘플링된 입장은 단계가 순서대로 한 번씩만 기록되고 종료 후 조회된다.")
+    @Test
+    public void recordsStagesOnce() {
+        // given
+        JoinTracer tracer = new JoinTracer(new SimpleMeterRegistry(), 1.0, 10, Duration.ofMinutes(1));
+        tracer.start(USERID, "joinRoom");
+
+        // when
+        tracer.mark(USERID, JoinTracer.STAGE_RECEIVED);
+        tracer.mark(USERID, JoinTracer.STAGE_ENDPOINT_CREATED);
+        tracer.mark(USERID, JoinTracer.STAGE_ENDPOINT_CREATED);
+        tracer.abandon(USERID, "roomFull");
+
+        // then
+        assertThat(tracer.traces()).hasSize(1);
+        JoinTracer.JoinTrace trace = tracer.traces().get(0);
+        assertThat(trace.getFailure()).isEqualTo("roomFull");
+        assertThat(trace.getStages()).extracting("name")
+                .containsExactly(JoinTracer.STAGE_RECEIVED, JoinTracer.STAGE_ENDPOINT_CREATED);
+    }
+
+    @DisplayName("샘플링되지 않은 입장은 기록되지 않는다.")
+    @Test
+    public void skipsUnsampledJoins() {
+        // given
+        JoinTracer tracer = new JoinTracer(new SimpleMeterRegistry(), 0.0, 10, Duration.ofMinutes(1));
+
+        // when
+        tracer.start(USERID, "joinRoom");
+        tracer.mark(USERID, JoinTracer.STAGE_RECEIVED);
+        tracer.abandon(USERID, "error");
+
+        // then
+        assertThat(tracer.traces()).isEmpty();
+    }
+
+    @DisplayName("보관 개수를 넘으면 오래된 트레이스부터 버린다.")
+    @Test
+    public void ringBufferDropsOldest() {
+        // given
+        JoinTracer tracer = new JoinTracer(new SimpleMeterRegistry(), 1.0, 2, Duration.ofMinutes(1));
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            tracer.start("user-" + i, "joinRoom");
+            tracer.abandon("user-" + i, "error");
+        }
+
+        // then
+        assertThat(tracer.traces()).extracting("userId").containsExactly("user-1", "user-2");
+    }
+}
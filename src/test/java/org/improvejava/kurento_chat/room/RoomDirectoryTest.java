@@ -0,0 +1,156 @@
+package org.improvejava.kurento_chat.room;
+
+import org.improvejava.kurento_chat.controller.ReactiveRoomQueryController;
+import org.improvejava.kurento_chat.controller.RoomQueryController;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.MediaPipeline;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class RoomDirectoryTest {
+
+    private RoomManager roomManager;
+
+    private RoomDirectory roomDirectory;
+
+    @BeforeEach
+    public void setUp() {
+        roomManager = mock(RoomManager.class);
+        when(roomManager.getStateVersion()).thenReturn(1L);
+        List<Room> rooms = List.of(room("a"), room("b"), room("c"));
+        when(roomManager.getRooms()).thenReturn(rooms);
+
+        WebinarManager webinarManager = mock(WebinarManager.class);
+        // 테스트에서는 refresh()를 직접 호출하도록 주기를 길게 설정
+        roomDirectory = new RoomDirectory(roomManager, webinarManager, Duration.ofHours(1), "node-1");
+    }
+
+    @DisplayName("상태 버전이 그대로이면 스냅샷을 다시 만들지 않는다.")
+    @Test
+    public void rebuildsOnlyWhenVersionChanges() {
+        // given
+        roomDirectory.refresh();
+        RoomDirectory.Snapshot first = roomDirectory.getSnapshot();
+
+        // when
+        roomDirectory.refresh();
+
+        // then
+        assertThat(roomDirectory.getSnapshot()).isSameAs(first);
+        verify(roomManager, times(1)).getRooms();
+
+        // when
+        when(roomManager.getStateVersion()).thenReturn(2L);
+        roomDirectory.refresh();
+
+        // then
+        assertThat(roomDirectory.getSnapshot().getVersion()).isEqualTo(2L);
+        assertThat(roomDirectory.getSnapshot().getETag()).isNotEqualTo(first.getETag());
+    }
+
+    @DisplayName("방 목록은 페이지로 나누어 주고, ETag가 같으면 본문 없이 304를 준다.")
+    @Test
+    public void pagesRoomsAndHonorsETag() {
+        // given
+        roomDirectory.refresh();
+        RoomQueryController controller = new RoomQueryController(roomDirectory, 100);
+
+        // when
+        ResponseEntity<RoomQueryController.RoomPage> firstPage = controller.rooms(0, 2, webRequest(null).request);
+        ResponseEntity<RoomQueryController.RoomPage> secondPage = controller.rooms(1, 2, webRequest(null).request);
+
+        // then
+        assertThat(firstPage.getBody().getRooms()).hasSize(2);
+        assertThat(firstPage.getBody().getTotalPages()).isEqualTo(2);
+        assertThat(secondPage.getBody().getRooms()).hasSize(1);
+        String eTag = firstPage.getHeaders().getETag();
+        assertThat(eTag).isEqualTo(roomDirectory.getSnapshot().getETag()).endsWith("-1\"");
+
+        // when
+        WebRequestAndResponse conditional = webRequest(eTag);
+        ResponseEntity<RoomQueryController.RoomPage> notModified = controller.rooms(0, 2, conditional.request);
+
+        // then
+        assertThat(notModified).isNull();
+        assertThat(conditional.response.getStatus()).isEqualTo(304);
+    }
+
+    @DisplayName("Netty 전송 방식의 방 목록도 같은 페이지와 ETag를 주고, ETag가 같으면 본문 없이 304를 준다.")
+    @Test
+    public void reactiveControllerPagesRoomsAndHonorsETag() {
+        // given
+        roomDirectory.refresh();
+        ReactiveRoomQueryController controller = new ReactiveRoomQueryController(roomDirectory, 100);
+        String eTag = roomDirectory.getSnapshot().getETag();
+
+        // when
+        ResponseEntity<RoomQueryController.RoomPage> firstPage = controller.rooms(0, 2,
+                MockServerWebExchange.from(MockServerHttpRequest.get("/api/rooms"))).block();
+
+        // then
+        assertThat(firstPage.getBody().getRooms()).hasSize(2);
+        assertThat(firstPage.getBody().getTotalPages()).isEqualTo(2);
+        assertThat(firstPage.getHeaders().getETag()).isEqualTo(eTag);
+
+        // when
+        MockServerWebExchange conditional = MockServerWebExchange.from(MockServerHttpRequest.get("/api/rooms").ifNoneMatch(eTag));
+        ResponseEntity<RoomQueryController.RoomPage> notModified = controller.rooms(0, 2, conditional).block();
+
+        // then
+        assertThat(notModified).isNull();
+        assertThat(conditional.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @DisplayName("노드나 시작 시각이 다르면 상태 버전이 같아도 ETag가 다르다.")
+    @Test
+    public void eTagIncludesNodeAndBootEpoch() {
+        // given
+        RoomDirectory otherNode = new RoomDirectory(roomManager, mock(WebinarManager.class), Duration.ofHours(1), "node-2");
+
+        // when
+        roomDirectory.refresh();
+        otherNode.refresh();
+
+        // then
+        assertThat(otherNode.getSnapshot().getVersion()).isEqualTo(roomDirectory.getSnapshot().getVersion());
+        assertThat(otherNode.getSnapshot().getETag()).isNotEqualTo(roomDirectory.getSnapshot().getETag());
+    }
+
+    private Room room(String userId) {
+        Room room = new Room(mock(MediaPipeline.class), userId, userId, mock(MediaTeardownService.class));
+        UserSession participant = mock(UserSession.class);
+        when(participant.getUserId()).thenReturn(userId);
+        when(participant.getUserName()).thenReturn(userId);
+        when(participant.getIsAudioOn()).thenReturn(true);
+        when(participant.getIsVideoOn()).thenReturn(false);
+        room.addParticipant(participant);
+        return room;
+    }
+
+    private WebRequestAndResponse webRequest(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/rooms");
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        return new WebRequestAndResponse(new ServletWebRequest(request, response), response);
+    }
+
+    private record WebRequestAndResponse(ServletWebRequest request, MockHttpServletResponse response) {
+    }
+}
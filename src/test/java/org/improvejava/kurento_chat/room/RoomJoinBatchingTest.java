@@ -0,0 +1,247 @@
+package org.improvejava.kurento_chat.room;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.improvejava.kurento_chat.media.BandwidthController;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.improvejava.kurento_chat.media.RoomRecordingService;
+import org.improvejava.kurento_chat.media.ViewportSubscriptionManager;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.Transaction;
+import org.kurento.client.WebRtcEndpoint;
+import org.mockito.MockedConstruction;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 미디어 서버 없이 RoomManager로 200명이 한꺼번에 입장하는 상황을 만들고, 참가자들이 받은 입장 알림 수를 센다.
+ */
+public class RoomJoinBatchingTest {
+
+    private static final int COHORT_SIZE = 200;
+
+    private static final String ROOM_ID = "123456";
+
+    private final Map<String, AtomicInteger> messagesByAction = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> rostersByUserId = new ConcurrentHashMap<>();
+
+    private final WebRtcEndpoint endpoint = mock(WebRtcEndpoint.class, withSettings().stubOnly());
+
+    private RoomManager roomManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ExecutorService joiners;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        WebinarManager webinarManager = mock(WebinarManager.class);
+        MediaTeardownService teardown = mock(MediaTeardownService.class);
+
+        roomManager = new RoomManager();
+        ReflectionTestUtils.setField(roomManager, "teardown", teardown);
+        ReflectionTestUtils.setField(roomManager, "admission", mock(AdmissionController.class));
+        ReflectionTestUtils.setField(roomManager, "recordingService", mock(RoomRecordingService.class));
+        ReflectionTestUtils.setField(roomManager, "bandwidthController", mock(BandwidthController.class));
+        ReflectionTestUtils.setField(roomManager, "joinTracer", mock(JoinTracer.class));
+        ReflectionTestUtils.setField(roomManager, "webinarManager", webinarManager);
+        ReflectionTestUtils.setField(roomManager, "viewportSubscriptionManager", mock(ViewportSubscriptionManager.class));
+        ReflectionTestUtils.setField(roomManager, "journal", mock(RoomStateJournal.class));
+        ReflectionTestUtils.setField(roomManager, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(roomManager, "joinBatchWindow", Duration.ofMillis(25));
+        ReflectionTestUtils.setField(roomManager, "joinBatchTimeout", Duration.ofSeconds(5));
+
+        MediaPipeline pipeline = mock(MediaPipeline.class);
+        when(pipeline.beginTransaction()).thenReturn(mock(Transaction.class));
+        Room room = new Room(ROOM_ID, pipeline, "leader", "방장", teardown);
+        @SuppressWarnings("unchecked")
+        Map<String, Room> rooms = (Map<String, Room>) ReflectionTestUtils.getField(roomManager, "roomsByRoomId");
+        rooms.put(ROOM_ID, room);
+
+        joiners = Executors.newFixedThreadPool(COHORT_SIZE);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        joiners.shutdownNow();
+    }
+
+    @DisplayName("한 명씩 입장하면 기존 방식처럼 입장 알림이 N(N-1)/2개 나간다.")
+    @Test
+    public void sequentialJoinsAnnounceEachParticipant() throws Exception {
+        // given
+        ReflectionTestUtils.setField(roomManager, "joinBatchWindow", Duration.ZERO);
+
+        // when
+        for (int i = 0; i < COHORT_SIZE; i++) {
+            join(i);
+        }
+
+        // then
+        assertThat(count("newUserJoined")).isEqualTo(COHORT_SIZE * (COHORT_SIZE - 1) / 2);
+        assertThat(count("usersJoined")).isZero();
+        assertThat(count("sendExistingUsers")).isEqualTo(COHORT_SIZE);
+    }
+
+    @DisplayName("동시에 입장한 참가자들은 묶어서 알리고, 모두 참가자 목록을 한 번씩 받는다.")
+    @Test
+    public void concurrentJoinWaveIsAnnouncedInBatches() throws Exception {
+        // given
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> joins = new ArrayList<>();
+        for (int i = 0; i < COHORT_SIZE; i++) {
+            final int index = i;
+            joins.add(joiners.submit(() -> {
+                start.await();
+                join(index);
+                return null;
+            }));
+        }
+
+        // when
+        start.countDown();
+        for (Future<?> join : joins) {
+            join.get(30, TimeUnit.SECONDS);
+        }
+
+        // then
+        Room room = roomManager.getRoom(ROOM_ID);
+        assertThat(room.getParticipants()).hasSize(COHORT_SIZE);
+        assertThat(room.getRoomLeaderId()).isNotNull();
+        assertThat(rostersByUserId).hasSize(COHORT_SIZE);
+        assertThat(rostersByUserId.values()).allSatisfy(rosters -> assertThat(rosters.get()).isEqualTo(1));
+        // 묶음마다 기존 참가자에게 한 번씩만 나가므로 한 명씩 알릴 때(19,900개)보다 훨씬 적음
+        assertThat(count("newUserJoined") + count("usersJoined")).isLessThan(COHORT_SIZE * (COHORT_SIZE - 1) / 20);
+        assertThat(meterRegistry.summary("room.join.batch.size").totalAmount()).isEqualTo(COHORT_SIZE);
+    }
+
+    @DisplayName("입장 창이 끝나기 전에 나간 입장자는 방에 추가되지 않고, 기다리는 동안 방의 잠금도 잡혀 있지 않다.")
+    @Test
+    public void joinerLeavingBeforeFlushIsWithdrawn() throws Exception {
+        // given
+        ReflectionTestUtils.setField(roomManager, "joinBatchWindow", Duration.ofMillis(500));
+        AdmissionController admission = mock(AdmissionController.class);
+        ReflectionTestUtils.setField(roomManager, "admission", admission);
+        Room room = roomManager.getRoom(ROOM_ID);
+        Future<?> pendingJoin = joiners.submit(() -> {
+            join(0);
+            return null;
+        });
+        UserSession joiner = awaitPendingJoiner(room);
+
+        // when
+        assertThat(room.getJoinLock().isLocked()).isFalse();
+        roomManager.leaveRoom(joiner);
+
+        // then
+        assertThatThrownBy(() -> pendingJoin.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+        assertThat(room.getParticipants()).isEmpty();
+        assertThat(room.getPendingJoins()).isEmpty();
+        verify(admission).leave(ROOM_ID, "user-0");
+    }
+
+    @DisplayName("입장 처리를 제한 시간보다 오래 기다리면 대기열에서 빠지고 입장이 실패한다.")
+    @Test
+    public void joinGivesUpAfterTimeout() throws Exception {
+        // given
+        ReflectionTestUtils.setField(roomManager, "joinBatchWindow", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(roomManager, "joinBatchTimeout", Duration.ofMillis(100));
+        AdmissionController admission = mock(AdmissionController.class);
+        ReflectionTestUtils.setField(roomManager, "admission", admission);
+        Room room = roomManager.getRoom(ROOM_ID);
+
+        // when
+        Future<?> pendingJoin = joiners.submit(() -> {
+            join(0);
+            return null;
+        });
+
+        // then
+        assertThatThrownBy(() -> pendingJoin.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+        assertThat(room.getParticipants()).isEmpty();
+        assertThat(room.getPendingJoins()).isEmpty();
+        verify(admission).leave(ROOM_ID, "user-0");
+    }
+
+    @DisplayName("입장 창 동안 방이 닫히면 모아 둔 입장자를 닫힌 방에 추가하지 않는다.")
+    @Test
+    public void joinsAreRejectedWhenRoomClosesDuringWindow() throws Exception {
+        // given
+        ReflectionTestUtils.setField(roomManager, "joinBatchWindow", Duration.ofMillis(500));
+        Room room = roomManager.getRoom(ROOM_ID);
+        Future<?> pendingJoin = joiners.submit(() -> {
+            join(0);
+            return null;
+        });
+        awaitPendingJoiner(room);
+
+        // when
+        roomManager.removeRoom(room);
+
+        // then
+        assertThatThrownBy(() -> pendingJoin.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(room.getParticipants()).isEmpty();
+        assertThat(count("newUserJoined") + count("sendExistingUsers")).isZero();
+    }
+
+    private UserSession awaitPendingJoiner(Room room) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (room.getPendingJoins().isEmpty()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+        return (UserSession) ReflectionTestUtils.getField(room.getPendingJoins().peek(), "participant");
+    }
+
+    // 엔드포인트 Builder 가로채기는 스레드마다 따로 걸어야 함
+    private void join(int index) throws Exception {
+        String userId = "user-" + index;
+        WebSocketSession session = mock(WebSocketSession.class, withSettings().stubOnly());
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            JsonObject message = JsonParser.parseString(invocation.<TextMessage>getArgument(0).getPayload()).getAsJsonObject();
+            String action = message.get("action").getAsString();
+            messagesByAction.computeIfAbsent(action, a -> new AtomicInteger()).incrementAndGet();
+            if ("sendExistingUsers".equals(action)) {
+                rostersByUserId.computeIfAbsent(userId, u -> new AtomicInteger()).incrementAndGet();
+            }
+            return null;
+        }).when(session).sendMessage(any());
+
+        try (MockedConstruction<WebRtcEndpoint.Builder> ignored = mockConstruction(WebRtcEndpoint.Builder.class,
+                (builder, context) -> when(builder.build()).thenReturn(endpoint))) {
+            roomManager.joinRoom("참가자" + index, userId, ROOM_ID, true, true, true, session);
+        }
+    }
+
+    private int count(String action) {
+        AtomicInteger counter = messagesByAction.get(action);
+        return counter == null ? 0 : counter.get();
+    }
+}
@@ -0,0 +1,93 @@
+package org.improvejava.kurento_chat.room;
+
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kurento.client.MediaPipeline;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class RoomStateJournalTest {
+
+    @TempDir
+    private Path dir;
+
+    @DisplayName("다시 열면 닫히지 않은 방을 복구한다.")
+    @Test
+    public void recoversOpenRoomsAfterRestart() throws IOException {
+        // given
+        RoomStateJournal journal = open();
+        Room kept = new Room("room-kept", mock(MediaPipeline.class), "u1", "leader", mock(MediaTeardownService.class));
+        Room removed = new Room("room-removed", mock(MediaPipeline.class), "u2", "other", mock(MediaTeardownService.class));
+        journal.roomCreated(kept, false, 8);
+        journal.roomCreated(removed, true, 0);
+        journal.roomRemoved("room-removed");
+        journal.close();
+
+        // when
+        RoomStateJournal reopened = open();
+        reopened.close();
+
+        // then
+        List<RoomStateJournal.RoomRecord> rooms = reopened.getRecoveredRooms();
+        assertThat(rooms).extracting(RoomStateJournal.RoomRecord::getRoomId).containsExactly("room-kept");
+        assertThat(rooms.get(0).getMaxParticipants()).isEqualTo(8);
+        // 시작할 때 바로 압축하므로 로그는 비어 있음
+        assertThat(Files.readString(dir.resolve("rooms.wal"))).isEmpty();
+        assertThat(Files.readString(dir.resolve("rooms.snapshot"))).contains("room-kept");
+    }
+
+    @DisplayName("쓰는 도중에 잘린 마지막 로그 줄은 건너뛴다.")
+    @Test
+    public void skipsTornLastLine() throws IOException {
+        // given
+        RoomStateJournal journal = open();
+        journal.roomCreated(new Room("room-a", mock(MediaPipeline.class), "u1", "leader", mock(MediaTeardownService.class)), false, 0);
+        journal.close();
+        Files.writeString(dir.resolve("rooms.wal"), "{\"type\":\"ROOM_REMOVED\",\"roomId\":\"roo",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        // when
+        RoomStateJournal reopened = open();
+        reopened.close();
+
+        // then
+        assertThat(reopened.getRecoveredRooms()).extracting(RoomStateJournal.RoomRecord::getRoomId).containsExactly("room-a");
+    }
+
+    @DisplayName("이전 버전이 남긴 참가자/방장 이벤트는 복구에 쓰지 않고 건너뛴다.")
+    @Test
+    public void ignoresLegacyParticipantEvents() throws IOException {
+        // given
+        RoomStateJournal journal = open();
+        journal.roomCreated(new Room("room-a", mock(MediaPipeline.class), "u1", "leader", mock(MediaTeardownService.class)), false, 0);
+        journal.close();
+        Files.writeString(dir.resolve("rooms.wal"),
+                "{\"type\":\"JOINED\",\"roomId\":\"room-a\",\"userId\":\"u2\",\"userName\":\"guest\",\"audioOn\":true,\"videoOn\":true}\n"
+                        + "{\"type\":\"LEADER_CHANGED\",\"roomId\":\"room-a\",\"userId\":\"u2\",\"userName\":\"guest\"}\n"
+                        + "{\"type\":\"LEFT\",\"roomId\":\"room-a\",\"userId\":\"u2\"}\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        // when
+        RoomStateJournal reopened = open();
+        reopened.close();
+
+        // then
+        assertThat(reopened.getRecoveredRooms()).extracting(RoomStateJournal.RoomRecord::getRoomId).containsExactly("room-a");
+        assertThat(Files.readString(dir.resolve("rooms.snapshot"))).doesNotContain("guest");
+    }
+
+    private RoomStateJournal open() throws IOException {
+        return new RoomStateJournal(dir.toString(), Duration.ofHours(1));
+    }
+}
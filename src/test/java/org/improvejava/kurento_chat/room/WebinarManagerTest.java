@@ -0,0 +1,305 @@
+package org.improvejava.kurento_chat.room;
+
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.improvejava.kurento_chat.media.EdgeMediaServers;
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.improvejava.kurento_chat.user.UserRegistry;
+import org.improvejava.kurento_chat.user.UserSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.RtpEndpoint;
+import org.kurento.client.Transaction;
+import org.kurento.client.WebRtcEndpoint;
+import org.mockito.MockedConstruction;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 미디어 서버 두 대를 mock KurentoClient로 흉내 내고, 엔드포인트 Builder 생성을 가로채서 만들어진 요소를 확인한다.
+ */
+public class WebinarManagerTest {
+
+    private final Map<MediaPipeline, List<RtpEndpoint>> rtpEndpointsByPipeline = new HashMap<>();
+
+    private final List<MediaPipeline> edgePipelines = new ArrayList<>();
+
+    // 미디어 서버 요청마다 그 순간 웨비나 락을 잡고 있었는지 기록
+    private final List<Boolean> lockHeldDuringKmsCalls = new ArrayList<>();
+
+    private Object webinarLock;
+
+    private MockedConstruction<RtpEndpoint.Builder> rtpBuilders;
+
+    private MockedConstruction<WebRtcEndpoint.Builder> webRtcBuilders;
+
+    private KurentoClient serverA;
+
+    private KurentoClient serverB;
+
+    private EdgeMediaServers edgeServers;
+
+    private MediaTeardownService teardown;
+
+    private UserRegistry userRegistry;
+
+    private AdmissionController admission;
+
+    private Room room;
+
+    private UserSession presenter;
+
+    private WebRtcEndpoint presenterOutgoing;
+
+    @BeforeEach
+    public void setUp() {
+        rtpBuilders = mockConstruction(RtpEndpoint.Builder.class, (builder, context) -> {
+            RtpEndpoint endpoint = mock(RtpEndpoint.class);
+            when(endpoint.generateOffer()).thenAnswer(invocation -> {
+                recordLockDuringKmsCall();
+                return "offer";
+            });
+            when(endpoint.processOffer("offer")).thenReturn("answer");
+            rtpEndpointsByPipeline.computeIfAbsent((MediaPipeline) context.arguments().get(0), p -> new ArrayList<>()).add(endpoint);
+            when(builder.build()).thenReturn(endpoint);
+        });
+        webRtcBuilders = mockConstruction(WebRtcEndpoint.Builder.class, (builder, context) -> {
+            WebRtcEndpoint endpoint = mock(WebRtcEndpoint.class);
+            when(endpoint.processOffer(anyString())).thenReturn("sdpAnswer");
+            when(builder.build()).thenReturn(endpoint);
+        });
+
+        serverA = simulatedServer("a");
+        serverB = simulatedServer("b");
+        edgeServers = mock(EdgeMediaServers.class);
+        when(edgeServers.nextClient()).thenReturn(serverA, serverB);
+        teardown = mock(MediaTeardownService.class);
+        userRegistry = mock(UserRegistry.class);
+        admission = mock(AdmissionController.class);
+
+        MediaPipeline originPipeline = mock(MediaPipeline.class);
+        room = new Room(originPipeline, "presenter", "발표자", teardown);
+
+        presenter = mock(UserSession.class);
+        presenterOutgoing = mock(WebRtcEndpoint.class);
+        when(presenter.getUserId()).thenReturn("presenter");
+        when(presenter.getUserName()).thenReturn("발표자");
+        when(presenter.getIsAudioOn()).thenReturn(true);
+        when(presenter.getIsVideoOn()).thenReturn(true);
+        when(presenter.getOutgoingWebRtcPeer()).thenReturn(presenterOutgoing);
+        when(presenter.isPublishing()).thenReturn(true);
+        room.addParticipant(presenter);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        rtpBuilders.close();
+        webRtcBuilders.close();
+    }
+
+    @DisplayName("중계 파이프라인이 차면 다음 미디어 서버에 새 중계 파이프라인을 열고, 시청자는 송신 엔드포인트를 만들지 않는다.")
+    @Test
+    public void viewersAreSpreadOverEdges() throws Exception {
+        // given
+        WebinarManager webinarManager = new WebinarManager(edgeServers, teardown, userRegistry, admission, new SimpleMeterRegistry(), 2, "node-1");
+        webinarManager.open(room);
+
+        // when
+        List<UserSession> viewers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            viewers.add(webinarManager.joinAsViewer(room, "시청자" + i, "viewer-" + i, openSession()));
+        }
+
+        // then
+        assertThat(edgePipelines).hasSize(2);
+        verify(serverA).createMediaPipeline();
+        verify(serverB).createMediaPipeline();
+        assertThat(webinarManager.getEdgePipelineIds()).containsExactlyInAnyOrder("a-0", "b-0");
+        assertThat(viewers).noneMatch(UserSession::isPublishing);
+        assertThat(webRtcBuilders.constructed()).isEmpty();
+
+        // 발표자 스트림은 중계 파이프라인마다 RTP 한 쌍으로 전달
+        verify(presenterOutgoing, times(2)).connect(any(RtpEndpoint.class));
+        for (MediaPipeline edgePipeline : edgePipelines) {
+            RtpEndpoint target = rtpEndpointsByPipeline.get(edgePipeline).get(0);
+            verify(target).processAnswer("answer");
+        }
+    }
+
+    @DisplayName("시청자는 자기 중계 파이프라인의 RTP 엔드포인트에서 발표자 영상을 받는다.")
+    @Test
+    public void viewerReceivesFromRelay() throws Exception {
+        // given
+        WebinarManager webinarManager = new WebinarManager(edgeServers, teardown, userRegistry, admission, new SimpleMeterRegistry(), 2, "node-1");
+        webinarManager.open(room);
+        UserSession viewer = webinarManager.joinAsViewer(room, "시청자", "viewer", openSession());
+
+        // when
+        viewer.receiveVideoFrom(presenter, "sdpOffer");
+
+        // then
+        RtpEndpoint relay = rtpEndpointsByPipeline.get(edgePipelines.get(0)).get(0);
+        WebRtcEndpoint incoming = webRtcBuilders.constructed().get(0).build();
+        verify(relay, atLeastOnce()).connect(incoming);
+        verify(presenterOutgoing, never()).connect(incoming);
+        assertThat(viewer.isReceivingFrom("presenter")).isTrue();
+    }
+
+    @DisplayName("마지막 시청자가 나가면 중계 파이프라인을 해제하고, 웨비나가 끝나면 남은 중계 파이프라인도 해제하고 시청자 등록을 지운다.")
+    @Test
+    public void edgesAreReleased() throws Exception {
+        // given
+        WebinarManager webinarManager = new WebinarManager(edgeServers, teardown, userRegistry, admission, new SimpleMeterRegistry(), 1, "node-1");
+        webinarManager.open(room);
+        UserSession first = webinarManager.joinAsViewer(room, "시청자1", "viewer-1", openSession());
+        UserSession second = webinarManager.joinAsViewer(room, "시청자2", "viewer-2", openSession());
+
+        // when
+        webinarManager.removeViewer(first);
+
+        // then
+        verify(teardown).releasePipeline(edgePipelines.get(0));
+        verify(teardown, never()).releasePipeline(edgePipelines.get(1));
+        assertThat(webinarManager.getViewers(room.getRoomId())).extracting(UserSession::getUserId).containsExactly("viewer-2");
+
+        // when
+        webinarManager.close(room);
+
+        // then
+        verify(teardown).releasePipeline(edgePipelines.get(1));
+        assertThat(webinarManager.isWebinar(room.getRoomId())).isFalse();
+        assertThat(webinarManager.getEdgePipelineIds()).isEmpty();
+        verify(userRegistry).remove(second);
+    }
+
+    @DisplayName("중계 서버 대신 기본 미디어 서버에 배정된 시청자만 서버 예산에 포함하고, 예산이 없으면 배정을 되돌린다.")
+    @Test
+    public void viewersOnPrimaryServerAreCharged() throws Exception {
+        // given
+        when(edgeServers.isPrimary(serverA)).thenReturn(false);
+        when(edgeServers.isPrimary(serverB)).thenReturn(true);
+        WebinarManager webinarManager = new WebinarManager(edgeServers, teardown, userRegistry, admission, new SimpleMeterRegistry(), 1, "node-1");
+        webinarManager.open(room);
+        webinarManager.joinAsViewer(room, "시청자1", "viewer-1", openSession());
+        doThrow(new AdmissionRejectedException("serverBusy", "full"))
+                .when(admission).admitViewer(room.getRoomId(), "viewer-2", 1);
+
+        // when & then
+        assertThatThrownBy(() -> webinarManager.joinAsViewer(room, "시청자2", "viewer-2", openSession()))
+                .isInstanceOf(AdmissionRejectedException.class);
+        verify(admission, never()).admitViewer(eq(room.getRoomId()), eq("viewer-1"), anyLong());
+        verify(teardown).releasePipeline(edgePipelines.get(1));
+        assertThat(webinarManager.getViewers(room.getRoomId())).extracting(UserSession::getUserId).containsExactly("viewer-1");
+    }
+
+    @DisplayName("중계 파이프라인 생성과 발표자 중계 협상은 웨비나 락 밖에서 하고, 새 발표자는 열린 중계 파이프라인마다 한 번씩 중계된다.")
+    @Test
+    public void mediaServerCallsRunOutsideWebinarLock() throws Exception {
+        // given
+        WebinarManager webinarManager = new WebinarManager(edgeServers, teardown, userRegistry, admission, new SimpleMeterRegistry(), 1, "node-1");
+        webinarManager.open(room);
+        Map<?, ?> webinars = (Map<?, ?>) ReflectionTestUtils.getField(webinarManager, "webinarsByRoomId");
+        webinarLock = webinars.get(room.getRoomId());
+        webinarManager.joinAsViewer(room, "시청자1", "viewer-1", openSession());
+        webinarManager.joinAsViewer(room, "시청자2", "viewer-2", openSession());
+        UserSession second = mockPresenter("presenter-2");
+        room.addParticipant(second);
+
+        // when
+        webinarManager.addPresenter(room, second);
+
+        // then
+        assertThat(lockHeldDuringKmsCalls).isNotEmpty().containsOnly(false);
+        verify(second.getOutgoingWebRtcPeer(), times(2)).connect(any(RtpEndpoint.class));
+        verify(teardown, never()).releaseEndpoint(any(), any());
+    }
+
+    @DisplayName("중계를 협상하는 동안 발표자가 나가면 만든 중계를 붙이지 않고 해제한다.")
+    @Test
+    public void relayForDepartedPresenterIsReleased() throws Exception {
+        // given
+        WebinarManager webinarManager = new WebinarManager(edgeServers, teardown, userRegistry, admission, new SimpleMeterRegistry(), 1, "node-1");
+        webinarManager.open(room);
+        webinarManager.joinAsViewer(room, "시청자1", "viewer-1", openSession());
+        UserSession second = mockPresenter("presenter-2");
+
+        // when
+        webinarManager.addPresenter(room, second);
+
+        // then
+        verify(teardown, times(2)).releaseEndpoint(any(), any(RtpEndpoint.class));
+    }
+
+    @DisplayName("시청자 알림은 모든 중계 파이프라인의 시청자에게 한 번씩 간다.")
+    @Test
+    public void notifyViewersReachesEveryEdge() throws Exception {
+        // given
+        WebinarManager webinarManager = new WebinarManager(edgeServers, teardown, userRegistry, admission, new SimpleMeterRegistry(), 1, "node-1");
+        webinarManager.open(room);
+        WebSocketSession first = openSession();
+        WebSocketSession second = openSession();
+        webinarManager.joinAsViewer(room, "시청자1", "viewer-1", first);
+        webinarManager.joinAsViewer(room, "시청자2", "viewer-2", second);
+        clearInvocations(first, second);
+        JsonObject message = new JsonObject();
+        message.addProperty("action", "changeAudioState");
+
+        // when
+        webinarManager.notifyViewers(room.getRoomId(), message);
+
+        // then
+        verify(first).sendMessage(new TextMessage(message.toString()));
+        verify(second).sendMessage(new TextMessage(message.toString()));
+    }
+
+    private void recordLockDuringKmsCall() {
+        if (webinarLock != null) {
+            lockHeldDuringKmsCalls.add(Thread.holdsLock(webinarLock));
+        }
+    }
+
+    private UserSession mockPresenter(String userId) {
+        UserSession presenter = mock(UserSession.class);
+        WebRtcEndpoint outgoing = mock(WebRtcEndpoint.class);
+        when(presenter.getUserId()).thenReturn(userId);
+        when(presenter.getUserName()).thenReturn(userId);
+        when(presenter.getIsAudioOn()).thenReturn(true);
+        when(presenter.getIsVideoOn()).thenReturn(true);
+        when(presenter.getOutgoingWebRtcPeer()).thenReturn(outgoing);
+        when(presenter.isPublishing()).thenReturn(true);
+        return presenter;
+    }
+
+    private KurentoClient simulatedServer(String name) {
+        KurentoClient server = mock(KurentoClient.class);
+        when(server.createMediaPipeline()).thenAnswer(invocation -> {
+            recordLockDuringKmsCall();
+            String id = name + "-" + edgePipelines.stream().filter(p -> p.getId().startsWith(name)).count();
+            MediaPipeline pipeline = mock(MediaPipeline.class);
+            when(pipeline.getId()).thenReturn(id);
+            when(pipeline.beginTransaction()).thenReturn(mock(Transaction.class));
+            edgePipelines.add(pipeline);
+            return pipeline;
+        });
+        return server;
+    }
+
+    private WebSocketSession openSession() {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
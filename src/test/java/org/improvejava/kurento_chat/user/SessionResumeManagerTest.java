@@ -0,0 +1,85 @@
+package org.improvejava.kurento_chat.user;
+
+import org.improvejava.kurento_chat.room.RoomManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SessionResumeManagerTest {
+
+    private RoomManager roomManager;
+
+    private UserRegistry userRegistry;
+
+    private SessionResumeManager sessionResumeManager;
+
+    private WebSocketSession droppedSession;
+
+    private UserSession dropped;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        roomManager = mock(RoomManager.class);
+        userRegistry = new UserRegistry();
+        sessionResumeManager = new SessionResumeManager(roomManager, userRegistry, Duration.ofMinutes(1));
+
+        droppedSession = mock(WebSocketSession.class);
+        when(droppedSession.getId()).thenReturn("s1");
+        dropped = mock(UserSession.class);
+        when(dropped.getUserId()).thenReturn("old-user");
+        when(dropped.getRoomId()).thenReturn("123456");
+        when(dropped.getResumeToken()).thenReturn("token");
+        when(dropped.getSession()).thenReturn(droppedSession);
+        userRegistry.register(dropped);
+        sessionResumeManager.suspend(droppedSession);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(sessionResumeManager, "shutdown");
+    }
+
+    @DisplayName("연결이 끊긴 뒤 이전 userId와 재접속 토큰을 들고 다시 입장하면 기다리던 이전 세션을 바로 방에서 내보낸다.")
+    @Test
+    public void rejoinAfterDropDiscardsSuspendedSession() throws Exception {
+        // given
+        assertThat(userRegistry.exists("old-user")).isTrue();
+
+        // when
+        UserSession discarded = sessionResumeManager.discardSuspended("old-user", "token");
+
+        // then
+        assertThat(discarded).isSameAs(dropped);
+        assertThat(userRegistry.exists("old-user")).isFalse();
+        verify(roomManager).leaveRoom(dropped);
+        assertThat(sessionResumeManager.resume("old-user", "token", mock(WebSocketSession.class))).isNull();
+    }
+
+    @DisplayName("재접속 토큰이 맞지 않으면 기다리던 세션을 그대로 둔다.")
+    @Test
+    public void rejoinWithWrongTokenKeepsSuspendedSession() throws Exception {
+        // when
+        UserSession discarded = sessionResumeManager.discardSuspended("old-user", "guess");
+
+        // then
+        assertThat(discarded).isNull();
+        assertThat(userRegistry.exists("old-user")).isTrue();
+        verify(roomManager, never()).leaveRoom(any());
+    }
+
+    @DisplayName("이전 userId 없이 입장하면 아무것도 정리하지 않는다.")
+    @Test
+    public void joinWithoutPreviousUserDiscardsNothing() throws Exception {
+        // when & then
+        assertThat(sessionResumeManager.discardSuspended(null, null)).isNull();
+        assertThat(userRegistry.exists("old-user")).isTrue();
+    }
+}
@@ -0,0 +1,143 @@
+package org.improvejava.kurento_chat.user;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class UserRegistryTest {
+
+    private final String ROOMID = "123456";
+
+    @DisplayName("등록한 사용자는 userId, 세션, roomId로 모두 찾을 수 있다.")
+    @Test
+    public void registerIndexesUser() {
+        // given
+        UserRegistry registry = new UserRegistry();
+        WebSocketSession session = mockSession("s1");
+        UserSession user = mockUser("u1", session);
+
+        // when
+        registry.register(user);
+
+        // then
+        assertThat(registry.getByUserId("u1")).isSameAs(user);
+        assertThat(registry.getBySession(session)).isSameAs(user);
+        assertThat(registry.getByRoomId(ROOMID)).containsExactly(user);
+    }
+
+    @DisplayName("세션으로 삭제하면 모든 인덱스에서 사라진다.")
+    @Test
+    public void removeBySessionClearsAllIndexes() {
+        // given
+        UserRegistry registry = new UserRegistry();
+        WebSocketSession session = mockSession("s1");
+        UserSession user = mockUser("u1", session);
+        registry.register(user);
+
+        // when
+        UserSession removed = registry.removeBySession(session);
+
+        // then
+        assertThat(removed).isSameAs(user);
+        assertThat(registry.exists("u1")).isFalse();
+        assertThat(registry.getBySession(session)).isNull();
+        assertThat(registry.getByRoomId(ROOMID)).isEmpty();
+    }
+
+    @DisplayName("등록되지 않은 세션을 삭제하면 예외 없이 null을 반환한다.")
+    @Test
+    public void removeUnknownSessionReturnsNull() {
+        // given
+        UserRegistry registry = new UserRegistry();
+
+        // when & then
+        assertThat(registry.removeBySession(mockSession("unknown"))).isNull();
+    }
+
+    @DisplayName("세션이 바뀐 뒤 다시 등록하면 이전 세션 인덱스는 남지 않는다.")
+    @Test
+    public void reRegisterWithNewSessionReplacesOldIndex() {
+        // given
+        UserRegistry registry = new UserRegistry();
+        WebSocketSession oldSession = mockSession("s1");
+        WebSocketSession newSession = mockSession("s2");
+        UserSession user = mockUser("u1", oldSession);
+        registry.register(user);
+
+        // when
+        when(user.getSession()).thenReturn(newSession);
+        registry.register(user);
+
+        // then
+        assertThat(registry.getBySession(oldSession)).isNull();
+        assertThat(registry.getBySession(newSession)).isSameAs(user);
+        assertThat(registry.getByRoomId(ROOMID)).containsExactly(user);
+    }
+
+    @DisplayName("같은 userId로 다른 세션이 등록된 뒤에는 이전 사용자로 삭제해도 새 세션이 남는다.")
+    @Test
+    public void removeKeepsReplacementRegistration() {
+        // given
+        UserRegistry registry = new UserRegistry();
+        UserSession suspended = mockUser("u1", mockSession("s1"));
+        WebSocketSession newSession = mockSession("s2");
+        UserSession replacement = mockUser("u1", newSession);
+        registry.register(suspended);
+        registry.register(replacement);
+
+        // when
+        boolean removed = registry.remove(suspended);
+
+        // then
+        assertThat(removed).isFalse();
+        assertThat(registry.getByUserId("u1")).isSameAs(replacement);
+        assertThat(registry.getBySession(newSession)).isSameAs(replacement);
+        assertThat(registry.remove(replacement)).isTrue();
+        assertThat(registry.exists("u1")).isFalse();
+    }
+
+    @DisplayName("재접속을 기다리는 사용자도 방 인덱스에 남고, 방 단위로 삭제하면 모든 인덱스에서 사라진다.")
+    @Test
+    public void removeByRoomIdClearsRoomMembers() {
+        // given
+        UserRegistry registry = new UserRegistry();
+        WebSocketSession suspendedSession = mockSession("s1");
+        UserSession suspended = mockUser("u1", suspendedSession);
+        UserSession connected = mockUser("u2", mockSession("s2"));
+        UserSession otherRoom = mockUser("u3", mockSession("s3"));
+        when(otherRoom.getRoomId()).thenReturn("654321");
+        registry.register(suspended);
+        registry.register(connected);
+        registry.register(otherRoom);
+        registry.detachSession(suspendedSession);
+
+        // when
+        List<UserSession> removed = registry.removeByRoomId(ROOMID);
+
+        // then
+        assertThat(removed).containsExactlyInAnyOrder(suspended, connected);
+        assertThat(registry.exists("u1")).isFalse();
+        assertThat(registry.exists("u2")).isFalse();
+        assertThat(registry.getByRoomId(ROOMID)).isEmpty();
+        assertThat(registry.getByRoomId("654321")).containsExactly(otherRoom);
+    }
+
+    private WebSocketSession mockSession(String sessionId) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(sessionId);
+        return session;
+    }
+
+    private UserSession mockUser(String userId, WebSocketSession session) {
+        UserSession user = mock(UserSession.class);
+        when(user.getUserId()).thenReturn(userId);
+        when(user.getRoomId()).thenReturn(ROOMID);
+        when(user.getSession()).thenReturn(session);
+        return user;
+    }
+}
@@ -0,0 +1,44 @@
+package org.improvejava.kurento_chat.user;
+
+import org.improvejava.kurento_chat.media.MediaTeardownService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+import org.mockito.MockedConstruction;
+import org.openjdk.jol.info.GraphLayout;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class UserSessionFootprintTest {
+
+    // 입장만 하고 아무도 구독하지 않은 연결 하나가 차지하는 힙 상한 (미디어 서버 프록시와 웹 소켓 세션 제외)
+    // 10만 연결 기준 약 37MB. 줄이기 전에는 640바이트였음
+    private static final long IDLE_SESSION_BUDGET_BYTES = 384;
+
+    @DisplayName("유휴 참가자 세션 하나의 힙 사용량은 예산 안에 있다.")
+    @Test
+    public void idleSessionFitsBudget() {
+        // given
+        MediaPipeline pipeline = mock(MediaPipeline.class, withSettings().stubOnly());
+        MediaTeardownService teardown = mock(MediaTeardownService.class, withSettings().stubOnly());
+        WebSocketSession session = mock(WebSocketSession.class, withSettings().stubOnly());
+        WebRtcEndpoint endpoint = mock(WebRtcEndpoint.class, withSettings().stubOnly());
+
+        try (MockedConstruction<WebRtcEndpoint.Builder> ignored = mockConstruction(WebRtcEndpoint.Builder.class,
+                (builder, context) -> when(builder.build()).thenReturn(endpoint))) {
+            UserSession user = new UserSession("user-name", "123456", "user-0001", true, false, session, pipeline, teardown);
+            // 목 객체가 마지막 호출 인자(리스너)를 들고 있으면 사용자 객체까지 공유 객체로 빠지므로 초기화
+            reset(endpoint);
+
+            // when
+            GraphLayout own = GraphLayout.parseInstance(user)
+                    .subtract(GraphLayout.parseInstance(pipeline, teardown, session, endpoint));
+
+            // then
+            assertThat(own.totalSize()).as(own.toFootprint()).isLessThanOrEqualTo(IDLE_SESSION_BUDGET_BYTES);
+        }
+    }
+}
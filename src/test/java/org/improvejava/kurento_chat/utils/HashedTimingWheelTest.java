@@ -0,0 +1,99 @@
+package org.improvejava.kurento_chat.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class HashedTimingWheelTest {
+
+    private HashedTimingWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new HashedTimingWheel("test-wheel", 10, 8, Runnable::run);
+    }
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @DisplayName("등록한 작업은 지연 시간이 지난 뒤 실행된다.")
+    @Test
+    public void runTaskAfterDelay() throws InterruptedException {
+        // given
+        CountDownLatch latch = new CountDownLatch(1);
+        long startNanos = System.nanoTime();
+
+        // when
+        wheel.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).isGreaterThanOrEqualTo(40);
+    }
+
+    @DisplayName("휠 한 바퀴보다 긴 지연 시간도 남은 바퀴 수만큼 기다린 뒤 실행된다.")
+    @Test
+    public void runTaskLongerThanOneRound() throws InterruptedException {
+        // given
+        CountDownLatch latch = new CountDownLatch(1);
+        long startNanos = System.nanoTime();
+
+        // when (한 바퀴 = 10ms * 8 = 80ms)
+        wheel.schedule(latch::countDown, 200, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)).isGreaterThanOrEqualTo(190);
+    }
+
+    @DisplayName("취소한 작업은 실행되지 않는다.")
+    @Test
+    public void cancelledTaskIsNotRun() throws InterruptedException {
+        // given
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        HashedTimingWheel.Timeout timeout = wheel.schedule(counter::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+
+        // when
+        boolean cancelled = timeout.cancel();
+        wheel.schedule(latch::countDown, 60, TimeUnit.MILLISECONDS);
+
+        // then
+        assertThat(cancelled).isTrue();
+        assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(counter.get()).isZero();
+    }
+
+    @DisplayName("tick 경계와 맞지 않는 지연 시간이어도 마감 시각보다 먼저 실행되지 않는다.")
+    @Test
+    public void neverRunsBeforeDeadline() throws InterruptedException {
+        // given
+        int tasks = 40;
+        CountDownLatch latch = new CountDownLatch(tasks);
+        AtomicInteger early = new AtomicInteger();
+
+        // when (3ms 간격이라 여러 작업이 tick 중간에 마감됨)
+        for (int i = 1; i <= tasks; i++) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(i * 3L);
+            wheel.schedule(() -> {
+                if (System.nanoTime() < deadline) {
+                    early.incrementAndGet();
+                }
+                latch.countDown();
+            }, i * 3L, TimeUnit.MILLISECONDS);
+        }
+
+        // then
+        assertThat(latch.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(early.get()).isZero();
+    }
+}